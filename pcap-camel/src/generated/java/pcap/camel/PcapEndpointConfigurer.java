@@ -19,8 +19,14 @@ public class PcapEndpointConfigurer extends PropertyConfigurerSupport implements
     public boolean configure(CamelContext camelContext, Object obj, String name, Object value, boolean ignoreCase) {
         PcapEndpoint target = (PcapEndpoint) obj;
         switch (ignoreCase ? name.toLowerCase() : name) {
+        case "asyncwrite":
+        case "asyncWrite": target.setAsyncWrite(property(camelContext, boolean.class, value)); return true;
         case "basicpropertybinding":
         case "basicPropertyBinding": target.setBasicPropertyBinding(property(camelContext, boolean.class, value)); return true;
+        case "batchsize":
+        case "batchSize": target.setBatchSize(property(camelContext, int.class, value)); return true;
+        case "batchtimeoutms":
+        case "batchTimeoutMs": target.setBatchTimeoutMs(property(camelContext, long.class, value)); return true;
         case "bridgeerrorhandler":
         case "bridgeErrorHandler": target.setBridgeErrorHandler(property(camelContext, boolean.class, value)); return true;
         case "exceptionhandler":
@@ -28,15 +34,28 @@ public class PcapEndpointConfigurer extends PropertyConfigurerSupport implements
         case "exchangepattern":
         case "exchangePattern": target.setExchangePattern(property(camelContext, org.apache.camel.ExchangePattern.class, value)); return true;
         case "filter": target.setFilter(property(camelContext, java.lang.String.class, value)); return true;
+        case "flushintervalms":
+        case "flushIntervalMs": target.setFlushIntervalMs(property(camelContext, long.class, value)); return true;
+        case "flushsize":
+        case "flushSize": target.setFlushSize(property(camelContext, int.class, value)); return true;
         case "lazystartproducer":
         case "lazyStartProducer": target.setLazyStartProducer(property(camelContext, boolean.class, value)); return true;
         case "name": target.setName(property(camelContext, java.lang.String.class, value)); return true;
         case "promiscuousmode":
         case "promiscuousMode": target.setPromiscuousMode(property(camelContext, boolean.class, value)); return true;
+        case "ringfullpolicy":
+        case "ringFullPolicy": target.setRingFullPolicy(property(camelContext, pcap.camel.RingFullPolicy.class, value)); return true;
+        case "ringsize":
+        case "ringSize": target.setRingSize(property(camelContext, int.class, value)); return true;
         case "snaplength":
         case "snapLength": target.setSnapLength(property(camelContext, int.class, value)); return true;
         case "synchronous": target.setSynchronous(property(camelContext, boolean.class, value)); return true;
         case "timeout": target.setTimeout(property(camelContext, int.class, value)); return true;
+        case "workers": target.setWorkers(property(camelContext, int.class, value)); return true;
+        case "writequeuefullpolicy":
+        case "writeQueueFullPolicy": target.setWriteQueueFullPolicy(property(camelContext, pcap.camel.RingFullPolicy.class, value)); return true;
+        case "writequeuesize":
+        case "writeQueueSize": target.setWriteQueueSize(property(camelContext, int.class, value)); return true;
         default: return false;
         }
     }
@@ -44,17 +63,27 @@ public class PcapEndpointConfigurer extends PropertyConfigurerSupport implements
     @Override
     public Map<String, Object> getAllOptions(Object target) {
         Map<String, Object> answer = new CaseInsensitiveMap();
+        answer.put("asyncWrite", boolean.class);
         answer.put("basicPropertyBinding", boolean.class);
+        answer.put("batchSize", int.class);
+        answer.put("batchTimeoutMs", long.class);
         answer.put("bridgeErrorHandler", boolean.class);
         answer.put("exceptionHandler", org.apache.camel.spi.ExceptionHandler.class);
         answer.put("exchangePattern", org.apache.camel.ExchangePattern.class);
         answer.put("filter", java.lang.String.class);
+        answer.put("flushIntervalMs", long.class);
+        answer.put("flushSize", int.class);
         answer.put("lazyStartProducer", boolean.class);
         answer.put("name", java.lang.String.class);
         answer.put("promiscuousMode", boolean.class);
+        answer.put("ringFullPolicy", pcap.camel.RingFullPolicy.class);
+        answer.put("ringSize", int.class);
         answer.put("snapLength", int.class);
         answer.put("synchronous", boolean.class);
         answer.put("timeout", int.class);
+        answer.put("workers", int.class);
+        answer.put("writeQueueFullPolicy", pcap.camel.RingFullPolicy.class);
+        answer.put("writeQueueSize", int.class);
         return answer;
     }
 
@@ -62,8 +91,14 @@ public class PcapEndpointConfigurer extends PropertyConfigurerSupport implements
     public Object getOptionValue(Object obj, String name, boolean ignoreCase) {
         PcapEndpoint target = (PcapEndpoint) obj;
         switch (ignoreCase ? name.toLowerCase() : name) {
+        case "asyncwrite":
+        case "asyncWrite": return target.isAsyncWrite();
         case "basicpropertybinding":
         case "basicPropertyBinding": return target.isBasicPropertyBinding();
+        case "batchsize":
+        case "batchSize": return target.getBatchSize();
+        case "batchtimeoutms":
+        case "batchTimeoutMs": return target.getBatchTimeoutMs();
         case "bridgeerrorhandler":
         case "bridgeErrorHandler": return target.isBridgeErrorHandler();
         case "exceptionhandler":
@@ -71,15 +106,28 @@ public class PcapEndpointConfigurer extends PropertyConfigurerSupport implements
         case "exchangepattern":
         case "exchangePattern": return target.getExchangePattern();
         case "filter": return target.getFilter();
+        case "flushintervalms":
+        case "flushIntervalMs": return target.getFlushIntervalMs();
+        case "flushsize":
+        case "flushSize": return target.getFlushSize();
         case "lazystartproducer":
         case "lazyStartProducer": return target.isLazyStartProducer();
         case "name": return target.getName();
         case "promiscuousmode":
         case "promiscuousMode": return target.isPromiscuousMode();
+        case "ringfullpolicy":
+        case "ringFullPolicy": return target.getRingFullPolicy();
+        case "ringsize":
+        case "ringSize": return target.getRingSize();
         case "snaplength":
         case "snapLength": return target.getSnapLength();
         case "synchronous": return target.isSynchronous();
         case "timeout": return target.getTimeout();
+        case "workers": return target.getWorkers();
+        case "writequeuefullpolicy":
+        case "writeQueueFullPolicy": return target.getWriteQueueFullPolicy();
+        case "writequeuesize":
+        case "writeQueueSize": return target.getWriteQueueSize();
         default: return null;
         }
     }
@@ -0,0 +1,255 @@
+package pcap.camel;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes packets on a background thread so that the routes writing to a
+ * pcap file don't have to wait for the disk.
+ *
+ * The packets are handed over to the writer thread through a
+ * {@link PcapRingBuffer}, which is then drained into the {@link Sink}. The
+ * sink is flushed once every flushSize packets, or once the oldest unflushed
+ * packet is flushIntervalMs old, so that a busy writer syncs with the disk
+ * for a whole group of packets at a time rather than for every single one.
+ * If the ring is full, the caller either waits for the writer to catch up or
+ * drops the packet, depending on the {@link RingFullPolicy}.
+ *
+ * @param <E> the type of the packets
+ */
+public class PcapAsyncWriter<E> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PcapAsyncWriter.class);
+
+    /**
+     * How long an idle writer (or a blocked caller) waits on the ring before
+     * checking whether we are being closed. They are woken up as soon as
+     * there is something to do, or when we close.
+     */
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * Where the packets end up, which is only ever touched by the writer
+     * thread.
+     */
+    public interface Sink<E> {
+        void write(E packet) throws Exception;
+
+        void flush() throws Exception;
+
+        void close() throws Exception;
+    }
+
+    private final Sink<E> sink;
+    private final PcapRingBuffer<E> ring;
+    private final RingFullPolicy ringFullPolicy;
+    private final int flushSize;
+    private final long flushIntervalNanos;
+
+    private final ExecutorService executorService;
+    private Future<?> writer;
+    private volatile boolean running;
+    private volatile boolean closed;
+
+    /**
+     * The reason the writer thread gave up, if it did, which is handed to the
+     * next caller.
+     */
+    private volatile Exception failure;
+
+    private final AtomicLong droppedPackets = new AtomicLong();
+    private final AtomicLong writtenPackets = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    /**
+     * @param sink
+     *            where to write the packets
+     * @param executorService
+     *            the executor running the writer thread, which is shut down
+     *            when the writer is closed
+     * @param queueSize
+     *            the number of packets that can be waiting to be written,
+     *            rounded up to the next power of two
+     * @param ringFullPolicy
+     *            what to do with a packet when the queue is full
+     * @param flushSize
+     *            flush the sink after this many packets
+     * @param flushIntervalMs
+     *            flush the sink when the oldest unflushed packet has waited
+     *            this long
+     */
+    public PcapAsyncWriter(Sink<E> sink, ExecutorService executorService, int queueSize,
+            RingFullPolicy ringFullPolicy, int flushSize, long flushIntervalMs) {
+        if (flushSize <= 0) {
+            throw new IllegalArgumentException("The flush size must be greater than zero");
+        }
+        if (flushIntervalMs < 0) {
+            throw new IllegalArgumentException("The flush interval cannot be negative");
+        }
+
+        this.sink = sink;
+        this.executorService = executorService;
+        this.ring = new PcapRingBuffer<>(queueSize);
+        this.ringFullPolicy = ringFullPolicy;
+        this.flushSize = flushSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+    }
+
+    public void start() {
+        running = true;
+        writer = executorService.submit(this::work);
+    }
+
+    /**
+     * Queue the packet for writing.
+     *
+     * @param packet
+     * @return false if the packet was dropped because the queue was full
+     * @throws IllegalStateException
+     *             if the writer has been closed
+     * @throws Exception
+     *             if the writer has failed to write to the sink, in which
+     *             case nothing more will be written
+     */
+    public boolean write(E packet) throws Exception {
+        if (closed) {
+            throw new IllegalStateException("The writer has been closed");
+        }
+        if (!ring.offer(packet)) {
+            checkFailure();
+            if (ringFullPolicy == RingFullPolicy.drop) {
+                droppedPackets.incrementAndGet();
+                return false;
+            }
+            while (!ring.offer(packet, IDLE_WAIT_NANOS, TimeUnit.NANOSECONDS)) {
+                checkFailure();
+                if (!running) {
+                    droppedPackets.incrementAndGet();
+                    return false;
+                }
+            }
+        }
+        checkFailure();
+        return true;
+    }
+
+    private void checkFailure() throws Exception {
+        Exception e = failure;
+        if (e != null) {
+            throw new IllegalStateException("Failed writing packets", e);
+        }
+    }
+
+    /**
+     * The loop the writer thread runs, until we are closed and the ring has
+     * been drained.
+     */
+    private void work() {
+        int unflushed = 0;
+        long oldestUnflushed = 0;
+        try {
+            while (true) {
+                E packet = ring.poll();
+                if (packet == null) {
+                    if (unflushed > 0 && System.nanoTime() - oldestUnflushed >= flushIntervalNanos) {
+                        flush();
+                        unflushed = 0;
+                    }
+                    if (!running && ring.size() == 0) {
+                        break;
+                    }
+
+                    // wait for the next packet, but no longer than until the
+                    // oldest unflushed one is due
+                    long wait = unflushed > 0 ? oldestUnflushed + flushIntervalNanos - System.nanoTime()
+                            : IDLE_WAIT_NANOS;
+                    packet = ring.poll(wait, TimeUnit.NANOSECONDS);
+                    if (packet == null) {
+                        continue;
+                    }
+                }
+
+                if (unflushed == 0) {
+                    oldestUnflushed = System.nanoTime();
+                }
+                sink.write(packet);
+                writtenPackets.incrementAndGet();
+                ++unflushed;
+
+                if (unflushed >= flushSize) {
+                    flush();
+                    unflushed = 0;
+                }
+            }
+
+            if (unflushed > 0) {
+                flush();
+            }
+        } catch (Exception e) {
+            LOG.error("Failed writing packets, giving up: " + e.getMessage(), e);
+            failure = e;
+            running = false;
+            // let the callers waiting for a slot know
+            ring.wakeUp();
+        }
+    }
+
+    private void flush() throws Exception {
+        sink.flush();
+        flushes.incrementAndGet();
+    }
+
+    /**
+     * Write and flush whatever is still queued, then close the sink.
+     */
+    public void close() throws Exception {
+        closed = true;
+        running = false;
+        ring.wakeUp();
+        try {
+            if (writer != null) {
+                writer.get();
+            }
+        } finally {
+            executorService.shutdown();
+            sink.close();
+        }
+
+        // anything that snuck in while we were closing is left behind by
+        // the writer thread, so at least own up to it
+        while (ring.poll() != null) {
+            droppedPackets.incrementAndGet();
+        }
+
+        if (droppedPackets.get() > 0) {
+            LOG.warn("Dropped " + droppedPackets.get() + " packets since the writer couldn't keep up");
+        }
+        checkFailure();
+    }
+
+    /**
+     * The number of packets that were dropped because the queue was full.
+     */
+    public long getDroppedPackets() {
+        return droppedPackets.get();
+    }
+
+    /**
+     * The number of packets handed over to the sink.
+     */
+    public long getWrittenPackets() {
+        return writtenPackets.get();
+    }
+
+    /**
+     * The number of times the sink has been flushed.
+     */
+    public long getFlushes() {
+        return flushes.get();
+    }
+}
@@ -10,16 +10,45 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.pcap4j.core.PcapPacket;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PcapConsumer extends DefaultConsumer {
     private final PcapEndpoint endpoint;
 
     private ExecutorService executorService;
+    private ScheduledExecutorService batchTimeoutService;
+    private ExecutorService workerService;
     private PcapHandle pcapHandle;
 
+    /**
+     * Hands the exchanges over from the capture thread to the workers. Null
+     * if the exchanges are routed on the capture thread.
+     */
+    private PcapRingBuffer<Exchange> ring;
+    private volatile boolean running;
+    private final AtomicLong droppedPackets = new AtomicLong();
+
+    /**
+     * Packets gathered for the next batch. Guarded by itself since the batch
+     * timeout fires on a different thread than the pcap loop.
+     */
+    private final List<PcapPacket> batch = new ArrayList<>();
+    private long batchStarted;
+
     private static final Logger LOG = LoggerFactory.getLogger(PcapConsumer.class);
 
+    /**
+     * How long an idle worker (or a blocked capture thread) waits on the ring
+     * before checking whether we are being stopped. They are woken up as soon
+     * as there is something to do, or when we stop.
+     */
+    private static final long IDLE_WAIT_MS = 100;
+
     public PcapConsumer(PcapEndpoint endpoint, Processor processor) {
         super(endpoint, processor);
         this.endpoint = endpoint;
@@ -29,11 +58,35 @@ public class PcapConsumer extends DefaultConsumer {
     protected void doStart() throws Exception {
         super.doStart();
 
+        running = true;
+
+        if (endpoint.getWorkers() > 0) {
+            ring = new PcapRingBuffer<>(endpoint.getRingSize());
+            workerService = endpoint.createWorkerExecutor();
+            for (int i = 0; i < endpoint.getWorkers(); ++i) {
+                workerService.submit(this::work);
+            }
+        }
+
+        if (endpoint.getBatchSize() > 1 && endpoint.getBatchTimeoutMs() > 0) {
+            // flush whatever we have gathered if the traffic dries up
+            long timeout = endpoint.getBatchTimeoutMs();
+            batchTimeoutService = endpoint.createBatchTimeoutExecutor();
+            batchTimeoutService.scheduleAtFixedRate(this::flushExpiredBatch, timeout, timeout, TimeUnit.MILLISECONDS);
+        }
+
+        startCapture();
+    }
+
+    /**
+     * Open the pcap handle and loop over it on a thread of our own, handing
+     * every packet to {@link #onPacket(PcapPacket)}.
+     */
+    void startCapture() throws Exception {
         pcapHandle = PcapHandleFactory.createHandle(endpoint);
 
         // start a single threaded pool to monitor events
         executorService = endpoint.createExecutor();
-        Exchange exchange = endpoint.createExchange();
 
         // submit task to the thread pool
         executorService.submit(() -> {
@@ -43,15 +96,7 @@ public class PcapConsumer extends DefaultConsumer {
 
                     @Override
                     public void gotPacket(PcapPacket arg0) {
-                        LOG.info("Received Packet: " + arg0.getClass().getSimpleName());
-
-                        exchange.getIn().setBody(arg0);
-                        try {
-                            getProcessor().process(exchange);
-                        } catch (Exception e) {
-                            LOG.error(e.getMessage());
-                            LOG.error(e.getStackTrace().toString());
-                        }
+                        onPacket(arg0);
                     }
                 });
             } catch (Exception e) {
@@ -61,14 +106,169 @@ public class PcapConsumer extends DefaultConsumer {
         });
     }
 
-    @Override
-    protected void doStop() throws Exception {
+    /**
+     * Break the loop and wait for the capture thread to go away, so that no
+     * more packets arrive once this returns.
+     */
+    void stopCapture() throws Exception {
         pcapHandle.breakLoop();
         pcapHandle.close();
 
-        super.doStop();
-
         // shutdown the thread pool gracefully
         getEndpoint().getCamelContext().getExecutorServiceManager().shutdownGraceful(executorService);
     }
+
+    void onPacket(PcapPacket packet) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Received Packet: " + packet.getClass().getSimpleName());
+        }
+
+        if (endpoint.getBatchSize() > 1) {
+            addToBatch(packet);
+        } else {
+            Exchange exchange = endpoint.createExchange();
+            exchange.getIn().setBody(packet);
+            dispatch(exchange, 1);
+        }
+    }
+
+    private void addToBatch(PcapPacket packet) {
+        synchronized (batch) {
+            if (batch.isEmpty()) {
+                batchStarted = System.currentTimeMillis();
+            }
+            batch.add(packet);
+            if (batch.size() >= endpoint.getBatchSize()) {
+                flushBatch();
+            }
+        }
+    }
+
+    private void flushExpiredBatch() {
+        synchronized (batch) {
+            if (!batch.isEmpty() && System.currentTimeMillis() - batchStarted >= endpoint.getBatchTimeoutMs()) {
+                flushBatch();
+            }
+        }
+    }
+
+    /**
+     * Send the gathered packets, as a list, in a brand new exchange. Must be
+     * called while holding the lock on the batch so that batches are routed
+     * in the order the packets were captured.
+     */
+    private void flushBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<PcapPacket> packets = new ArrayList<>(batch);
+        batch.clear();
+
+        Exchange exchange = endpoint.createExchange();
+        exchange.setProperty(Exchange.BATCH_SIZE, packets.size());
+        exchange.getIn().setBody(packets);
+        dispatch(exchange, packets.size());
+    }
+
+    /**
+     * Route the exchange right here or, if we have workers, hand it over to
+     * them.
+     * 
+     * @param exchange
+     * @param packets the number of packets in the exchange, for the drop count
+     */
+    private void dispatch(Exchange exchange, int packets) {
+        if (ring == null) {
+            process(exchange);
+            return;
+        }
+
+        if (ring.offer(exchange)) {
+            return;
+        }
+        if (endpoint.getRingFullPolicy() == RingFullPolicy.drop) {
+            droppedPackets.addAndGet(packets);
+            return;
+        }
+
+        try {
+            while (!ring.offer(exchange, IDLE_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                if (!running) {
+                    droppedPackets.addAndGet(packets);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedPackets.addAndGet(packets);
+        }
+    }
+
+    /**
+     * The loop each worker runs, taking exchanges off of the ring until we
+     * are stopped and the ring has been drained.
+     */
+    private void work() {
+        try {
+            while (true) {
+                Exchange exchange = ring.poll(IDLE_WAIT_MS, TimeUnit.MILLISECONDS);
+                if (exchange != null) {
+                    process(exchange);
+                } else if (!running && ring.size() == 0) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * The number of packets that were dropped because the ring buffer was
+     * full.
+     */
+    public long getDroppedPackets() {
+        return droppedPackets.get();
+    }
+
+    private void process(Exchange exchange) {
+        try {
+            getProcessor().process(exchange);
+        } catch (Exception e) {
+            LOG.error(e.getMessage());
+            LOG.error(e.getStackTrace().toString());
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        stopCapture();
+
+        if (batchTimeoutService != null) {
+            getEndpoint().getCamelContext().getExecutorServiceManager().shutdownNow(batchTimeoutService);
+            batchTimeoutService = null;
+        }
+
+        // don't lose the packets we have gathered so far
+        synchronized (batch) {
+            flushBatch();
+        }
+
+        // let the workers drain the ring before they go away
+        running = false;
+        if (ring != null) {
+            ring.wakeUp();
+        }
+        if (workerService != null) {
+            getEndpoint().getCamelContext().getExecutorServiceManager().shutdownGraceful(workerService);
+            workerService = null;
+        }
+
+        if (droppedPackets.get() > 0) {
+            LOG.warn("Dropped " + droppedPackets.get() + " packets since the workers couldn't keep up");
+        }
+
+        super.doStop();
+    }
 }
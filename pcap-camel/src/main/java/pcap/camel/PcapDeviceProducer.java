@@ -20,11 +20,13 @@ public class PcapDeviceProducer extends DefaultProducer {
     @Override
     public void process(Exchange exchange) throws Exception {
         LOG.info("Sending PcapPacket");
-        PcapPacket packet = (PcapPacket) exchange.getIn().getBody();
 
         pcapHandle = pcapHandle == null ? PcapHandleFactory.createHandle(endpoint) : pcapHandle;
 
-        pcapHandle.sendPacket(packet);
+        // a batching consumer sends a list of packets
+        for (PcapPacket packet : PcapPackets.fromBody(exchange)) {
+            pcapHandle.sendPacket(packet);
+        }
     }
 
     @Override
@@ -10,6 +10,7 @@ import org.apache.camel.spi.UriParam;
 import org.apache.camel.spi.UriPath;
 
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
 /**
  * pcap component gets packet data from a Network Interface.
@@ -38,6 +39,36 @@ public class PcapEndpoint extends DefaultEndpoint {
     @UriParam(defaultValue = "")
     private String filter = "";
 
+    @UriParam(label = "consumer", defaultValue = "1")
+    private int batchSize = 1;
+
+    @UriParam(label = "consumer", defaultValue = "0")
+    private long batchTimeoutMs = 0;
+
+    @UriParam(label = "consumer", defaultValue = "0")
+    private int workers = 0;
+
+    @UriParam(label = "consumer", defaultValue = "65536")
+    private int ringSize = 65536;
+
+    @UriParam(label = "consumer", defaultValue = "drop")
+    private RingFullPolicy ringFullPolicy = RingFullPolicy.drop;
+
+    @UriParam(label = "producer", defaultValue = "false")
+    private boolean asyncWrite = false;
+
+    @UriParam(label = "producer", defaultValue = "65536")
+    private int writeQueueSize = 65536;
+
+    @UriParam(label = "producer", defaultValue = "block")
+    private RingFullPolicy writeQueueFullPolicy = RingFullPolicy.block;
+
+    @UriParam(label = "producer", defaultValue = "1024")
+    private int flushSize = 1024;
+
+    @UriParam(label = "producer", defaultValue = "100")
+    private long flushIntervalMs = 100;
+
     public PcapEndpoint() {
     }
 
@@ -73,6 +104,18 @@ public class PcapEndpoint extends DefaultEndpoint {
         return getCamelContext().getExecutorServiceManager().newSingleThreadExecutor(this, "pcapConsumer");
     }
 
+    public ExecutorService createWorkerExecutor() {
+        return getCamelContext().getExecutorServiceManager().newFixedThreadPool(this, "pcapWorker", workers);
+    }
+
+    public ExecutorService createWriterExecutor() {
+        return getCamelContext().getExecutorServiceManager().newSingleThreadExecutor(this, "pcapWriter");
+    }
+
+    public ScheduledExecutorService createBatchTimeoutExecutor() {
+        return getCamelContext().getExecutorServiceManager().newSingleThreadScheduledExecutor(this, "pcapBatchTimeout");
+    }
+
     public int getSnapLength() {
         return snapLength;
     }
@@ -136,4 +179,149 @@ public class PcapEndpoint extends DefaultEndpoint {
     public void setFilter(String filter) {
         this.filter = filter;
     }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Number of packets to gather before sending them on, as a list, in a
+     * single exchange. The default of 1 sends each packet in its own exchange.
+     * 
+     * @param batchSize
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getBatchTimeoutMs() {
+        return batchTimeoutMs;
+    }
+
+    /**
+     * Max time in millis to wait for a batch to fill up before sending on
+     * whatever has been gathered so far. 0 waits for a full batch.
+     * 
+     * @param batchTimeoutMs
+     */
+    public void setBatchTimeoutMs(long batchTimeoutMs) {
+        this.batchTimeoutMs = batchTimeoutMs;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * Number of threads routing the captured packets. If greater than 0, the
+     * capture thread hands the packets over to the workers through a ring
+     * buffer so that a slow route doesn't stall the capture. The default of
+     * 0 routes the packets on the capture thread.
+     * 
+     * @param workers
+     */
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public int getRingSize() {
+        return ringSize;
+    }
+
+    /**
+     * Size of the ring buffer between the capture thread and the workers,
+     * rounded up to the next power of two. Only used if workers is greater
+     * than 0.
+     * 
+     * @param ringSize
+     */
+    public void setRingSize(int ringSize) {
+        this.ringSize = ringSize;
+    }
+
+    public RingFullPolicy getRingFullPolicy() {
+        return ringFullPolicy;
+    }
+
+    /**
+     * What to do when the ring buffer is full. Either drop the packet, which
+     * is counted, or block the capture thread until a worker catches up.
+     * 
+     * @param ringFullPolicy
+     */
+    public void setRingFullPolicy(RingFullPolicy ringFullPolicy) {
+        this.ringFullPolicy = ringFullPolicy;
+    }
+
+    public boolean isAsyncWrite() {
+        return asyncWrite;
+    }
+
+    /**
+     * Write the packets to the pcap file on a background thread, which
+     * flushes the file for a whole group of packets at a time, instead of
+     * writing and flushing on the thread routing the exchange.
+     * 
+     * @param asyncWrite
+     */
+    public void setAsyncWrite(boolean asyncWrite) {
+        this.asyncWrite = asyncWrite;
+    }
+
+    public int getWriteQueueSize() {
+        return writeQueueSize;
+    }
+
+    /**
+     * Number of packets that can be waiting for the background writer,
+     * rounded up to the next power of two. Only used if asyncWrite is true.
+     * 
+     * @param writeQueueSize
+     */
+    public void setWriteQueueSize(int writeQueueSize) {
+        this.writeQueueSize = writeQueueSize;
+    }
+
+    public RingFullPolicy getWriteQueueFullPolicy() {
+        return writeQueueFullPolicy;
+    }
+
+    /**
+     * What to do when the queue of the background writer is full. Either
+     * block the route until the writer catches up or drop the packet, which
+     * is counted.
+     * 
+     * @param writeQueueFullPolicy
+     */
+    public void setWriteQueueFullPolicy(RingFullPolicy writeQueueFullPolicy) {
+        this.writeQueueFullPolicy = writeQueueFullPolicy;
+    }
+
+    public int getFlushSize() {
+        return flushSize;
+    }
+
+    /**
+     * Number of packets the background writer writes before flushing the
+     * file.
+     * 
+     * @param flushSize
+     */
+    public void setFlushSize(int flushSize) {
+        this.flushSize = flushSize;
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    /**
+     * Max time in millis a packet written by the background writer may wait
+     * before the file is flushed.
+     * 
+     * @param flushIntervalMs
+     */
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+    }
 }
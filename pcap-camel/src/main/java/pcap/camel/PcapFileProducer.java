@@ -14,30 +14,114 @@ public class PcapFileProducer extends DefaultProducer {
     private PcapDumper pcapDumper;
     private PcapHandle pcapHandle;
 
+    /**
+     * Writes the packets on a background thread. Null unless asyncWrite is
+     * set on the endpoint.
+     */
+    private PcapAsyncWriter<PcapPacket> writer;
+
     public PcapFileProducer(PcapEndpoint endpoint) {
         super(endpoint);
         this.endpoint = endpoint;
     }
 
+    @Override
+    protected void doStart() throws Exception {
+        super.doStart();
+
+        if (endpoint.isAsyncWrite()) {
+            pcapHandle = PcapHandleFactory.createHandle(endpoint);
+            pcapDumper = pcapHandle.dumpOpen(endpoint.getName());
+            writer = new PcapAsyncWriter<>(new DumperSink(pcapDumper), endpoint.createWriterExecutor(),
+                    endpoint.getWriteQueueSize(), endpoint.getWriteQueueFullPolicy(), endpoint.getFlushSize(),
+                    endpoint.getFlushIntervalMs());
+            writer.start();
+        }
+    }
+
     public void process(Exchange exchange) throws Exception {
-        LOG.info("Sending PcapPacket");
-        PcapPacket packet = (PcapPacket) exchange.getIn().getBody();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Sending PcapPacket");
+        }
+
+        if (writer != null) {
+            // a batching consumer sends a list of packets
+            for (PcapPacket packet : PcapPackets.fromBody(exchange)) {
+                writer.write(packet);
+            }
+            return;
+        }
 
         pcapHandle = pcapHandle == null ? PcapHandleFactory.createHandle(endpoint) : pcapHandle;
         pcapDumper = pcapDumper == null ? pcapHandle.dumpOpen(endpoint.getName()) : pcapDumper;
-        
-        pcapDumper.dump(packet);
+
+        // a batching consumer sends a list of packets
+        for (PcapPacket packet : PcapPackets.fromBody(exchange)) {
+            pcapDumper.dump(packet);
+        }
         pcapDumper.flush();
     }
 
+    /**
+     * The number of packets that were dropped because the queue of the
+     * background writer was full.
+     */
+    public long getDroppedPackets() {
+        return writer == null ? 0 : writer.getDroppedPackets();
+    }
+
     @Override
     protected void doStop() throws Exception {
         super.doStop();
-        if (pcapDumper != null)
-            pcapDumper.close();
 
-        if (pcapHandle != null)
-            pcapHandle.close();
+        try {
+            // write out, and flush, whatever is still queued. Closes the dumper.
+            // The writer is kept so that a packet showing up after we have
+            // stopped is refused by it, instead of the file being reopened.
+            if (writer != null) {
+                try {
+                    writer.close();
+                } finally {
+                    pcapDumper = null;
+                }
+            }
+
+            if (pcapDumper != null) {
+                pcapDumper.close();
+                pcapDumper = null;
+            }
+        } finally {
+            if (pcapHandle != null) {
+                pcapHandle.close();
+                pcapHandle = null;
+            }
+        }
+    }
+
+    /**
+     * Hands the packets of the background writer to the dumper.
+     */
+    private static class DumperSink implements PcapAsyncWriter.Sink<PcapPacket> {
+        private final PcapDumper dumper;
+
+        DumperSink(PcapDumper dumper) {
+            this.dumper = dumper;
+        }
+
+        @Override
+        public void write(PcapPacket packet) throws Exception {
+            dumper.dump(packet);
+        }
+
+        @Override
+        public void flush() throws Exception {
+            dumper.flush();
+        }
+
+        @Override
+        public void close() throws Exception {
+            dumper.close();
+        }
     }
 
 }
@@ -0,0 +1,34 @@
+package pcap.camel;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.camel.Exchange;
+import org.pcap4j.core.PcapPacket;
+
+/**
+ * Helpers for dealing with exchanges carrying pcap packets.
+ */
+public final class PcapPackets {
+
+    private PcapPackets() {
+    }
+
+    /**
+     * Get the packets of the exchange, which is either a single packet or, if
+     * the exchange was created by a batching {@link PcapConsumer}, a list of
+     * packets.
+     * 
+     * @param exchange
+     * @return the packets in the order they were captured
+     */
+    @SuppressWarnings("unchecked")
+    public static List<PcapPacket> fromBody(Exchange exchange) {
+        Object body = exchange.getIn().getBody();
+        if (body instanceof List) {
+            return (List<PcapPacket>) body;
+        }
+
+        return Collections.singletonList((PcapPacket) body);
+    }
+}
@@ -0,0 +1,231 @@
+package pcap.camel;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded, lock-free ring buffer used to hand captured packets over from the
+ * pcap loop thread to the route workers.
+ * 
+ * Every slot carries a sequence number telling whether it is ready to be
+ * written to or read from for a given lap around the ring (the scheme
+ * described by Dmitry Vyukov for bounded MPMC queues). Producers claim a slot
+ * by CAS on the tail and consumers by CAS on the head, so neither side takes
+ * a lock and any number of threads may {@link #offer(Object)} and
+ * {@link #poll()} at the same time. The pcap consumer happens to have a
+ * single producer, the loop thread, but nothing here relies on that.
+ *
+ * Threads that have nothing to do can wait in {@link #poll(long, TimeUnit)}
+ * or {@link #offer(Object, long, TimeUnit)} instead of spinning. Only those
+ * take a lock, and the other side only takes it to wake them up if someone is
+ * actually waiting, so a busy ring never gets near it.
+ *
+ * @param <E> the type of the elements
+ */
+public class PcapRingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+
+    /**
+     * @param capacity
+     *            the size of the ring, which will be rounded up to the next
+     *            power of two, and to at least two since a single slot
+     *            cannot tell a full ring from an empty one.
+     */
+    public PcapRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be greater than zero");
+        }
+
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+
+        mask = size - 1;
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add the element to the ring.
+     * 
+     * @param element
+     * @return false if the ring is full
+     */
+    public boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    if (waitingConsumers.get() > 0) {
+                        signal(notEmpty);
+                    }
+                    return true;
+                }
+            } else if (diff < 0) {
+                // the consumers haven't got to this slot yet on the previous lap
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Take the oldest element off of the ring.
+     * 
+     * @return the element or null if the ring is empty
+     */
+    public E poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long diff = sequences.get(index) - (position + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.set(index, position + mask + 1);
+                    if (waitingProducers.get() > 0) {
+                        signal(notFull);
+                    }
+                    return element;
+                }
+            } else if (diff < 0) {
+                // nothing has been published in this slot yet
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Add the element to the ring, waiting for a slot to be freed if it is
+     * full. Gives up early if {@link #wakeUp()} is called.
+     * 
+     * @param element
+     * @param timeout how long to wait at most
+     * @param unit
+     * @return false if the ring is still full
+     * @throws InterruptedException
+     */
+    public boolean offer(E element, long timeout, TimeUnit unit) throws InterruptedException {
+        if (offer(element)) {
+            return true;
+        }
+
+        lock.lockInterruptibly();
+        try {
+            // announce ourselves before the last look so that a consumer
+            // either sees us waiting or frees the slot before we look
+            waitingProducers.incrementAndGet();
+            try {
+                if (offer(element)) {
+                    return true;
+                }
+                long nanos = unit.toNanos(timeout);
+                if (nanos > 0) {
+                    notFull.awaitNanos(nanos);
+                }
+                return offer(element);
+            } finally {
+                waitingProducers.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take the oldest element off of the ring, waiting for one to be added if
+     * it is empty. Gives up early if {@link #wakeUp()} is called.
+     * 
+     * @param timeout how long to wait at most
+     * @param unit
+     * @return the element or null if the ring is still empty
+     * @throws InterruptedException
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E element = poll();
+        if (element != null) {
+            return element;
+        }
+
+        lock.lockInterruptibly();
+        try {
+            waitingConsumers.incrementAndGet();
+            try {
+                element = poll();
+                if (element != null) {
+                    return element;
+                }
+                long nanos = unit.toNanos(timeout);
+                if (nanos > 0) {
+                    notEmpty.awaitNanos(nanos);
+                }
+                return poll();
+            } finally {
+                waitingConsumers.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wake up everyone waiting to add or take an element, e.g. so that they
+     * notice that they are being stopped.
+     */
+    public void wakeUp() {
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signal(Condition condition) {
+        lock.lock();
+        try {
+            condition.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * The number of elements currently in the ring. Only an estimate while
+     * others are adding or removing elements.
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+}
@@ -0,0 +1,17 @@
+package pcap.camel;
+
+/**
+ * What the capture thread does when the ring between it and the route workers
+ * is full, or what a route writing to a pcap file does when the queue of the
+ * background writer is full.
+ */
+public enum RingFullPolicy {
+    /**
+     * Drop the packet (and count it) so that capture never stalls
+     */
+    drop,
+    /**
+     * Wait for a worker, or the writer, to free up a slot
+     */
+    block
+}
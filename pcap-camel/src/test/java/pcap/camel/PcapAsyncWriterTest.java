@@ -0,0 +1,226 @@
+package pcap.camel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PcapAsyncWriterTest {
+
+    /**
+     * Remembers what it was given and when it was flushed.
+     */
+    private static class TestSink implements PcapAsyncWriter.Sink<Integer> {
+        private final List<Integer> written = new ArrayList<>();
+        private final List<Integer> flushedAt = new ArrayList<>();
+        private volatile boolean closed;
+        private volatile CountDownLatch gate;
+
+        @Override
+        public void write(Integer packet) throws Exception {
+            if (gate != null) {
+                gate.await();
+            }
+            written.add(packet);
+        }
+
+        @Override
+        public void flush() {
+            flushedAt.add(written.size());
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testFlushOnClose() throws Exception {
+        TestSink sink = new TestSink();
+        PcapAsyncWriter<Integer> writer = new PcapAsyncWriter<>(sink, Executors.newSingleThreadExecutor(), 16,
+                RingFullPolicy.block, 1000, 60000);
+        writer.start();
+        for (int i = 0; i < 100; ++i) {
+            assertTrue(writer.write(i));
+        }
+        writer.close();
+
+        assertTrue(sink.closed);
+        assertEquals(100, sink.written.size());
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(Integer.valueOf(i), sink.written.get(i));
+        }
+
+        // never reached the flush size nor the interval so only the final one
+        assertEquals(1, sink.flushedAt.size());
+        assertEquals(Integer.valueOf(100), sink.flushedAt.get(0));
+    }
+
+    @Test(timeout = 10000)
+    public void testWriteAfterClose() throws Exception {
+        TestSink sink = new TestSink();
+        PcapAsyncWriter<Integer> writer = new PcapAsyncWriter<>(sink, Executors.newSingleThreadExecutor(), 16,
+                RingFullPolicy.block, 1000, 60000);
+        writer.start();
+        writer.write(1);
+        writer.close();
+
+        try {
+            writer.write(2);
+            fail("Expected an IllegalStateException since the writer is closed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(1, sink.written.size());
+    }
+
+    @Test(timeout = 10000)
+    public void testFlushBySize() throws Exception {
+        TestSink sink = new TestSink();
+        PcapAsyncWriter<Integer> writer = new PcapAsyncWriter<>(sink, Executors.newSingleThreadExecutor(), 16,
+                RingFullPolicy.block, 10, 60000);
+        writer.start();
+        for (int i = 0; i < 95; ++i) {
+            writer.write(i);
+        }
+        writer.close();
+
+        assertEquals(10, sink.flushedAt.size());
+        for (int i = 0; i < 9; ++i) {
+            assertEquals(Integer.valueOf(10 * (i + 1)), sink.flushedAt.get(i));
+        }
+        assertEquals(Integer.valueOf(95), sink.flushedAt.get(9));
+        assertEquals(10, writer.getFlushes());
+    }
+
+    @Test(timeout = 10000)
+    public void testFlushByInterval() throws Exception {
+        TestSink sink = new TestSink();
+        PcapAsyncWriter<Integer> writer = new PcapAsyncWriter<>(sink, Executors.newSingleThreadExecutor(), 16,
+                RingFullPolicy.block, 1000, 10);
+        writer.start();
+        writer.write(1);
+        writer.write(2);
+
+        // the writer flushes on its own once the packets have waited long enough
+        while (writer.getFlushes() == 0) {
+            Thread.sleep(1);
+        }
+        assertEquals(2, writer.getWrittenPackets());
+        writer.close();
+        assertEquals(1, writer.getFlushes());
+    }
+
+    @Test(timeout = 10000)
+    public void testDropWhenFull() throws Exception {
+        TestSink sink = new TestSink();
+        sink.gate = new CountDownLatch(1);
+        PcapAsyncWriter<Integer> writer = new PcapAsyncWriter<>(sink, Executors.newSingleThreadExecutor(), 4,
+                RingFullPolicy.drop, 1000, 60000);
+        writer.start();
+
+        // the writer is stuck on the first packet, which leaves room for 4 more
+        int accepted = 0;
+        for (int i = 0; i < 20; ++i) {
+            if (writer.write(i)) {
+                ++accepted;
+            }
+        }
+        assertTrue(accepted >= 4 && accepted <= 5);
+        assertEquals(20 - accepted, writer.getDroppedPackets());
+
+        sink.gate.countDown();
+        writer.close();
+        assertEquals(accepted, sink.written.size());
+    }
+
+    @Test(timeout = 10000)
+    public void testFailure() throws Exception {
+        PcapAsyncWriter.Sink<Integer> sink = new TestSink() {
+            @Override
+            public void write(Integer packet) throws Exception {
+                throw new Exception("disk full");
+            }
+        };
+        PcapAsyncWriter<Integer> writer = new PcapAsyncWriter<>(sink, Executors.newSingleThreadExecutor(), 4,
+                RingFullPolicy.block, 1000, 60000);
+        writer.start();
+        writer.write(1);
+
+        try {
+            for (int i = 0; i < 100; ++i) {
+                writer.write(i);
+                Thread.sleep(10);
+            }
+            fail("Expected the failure of the writer to be handed back to us");
+        } catch (IllegalStateException e) {
+            assertEquals("disk full", e.getCause().getMessage());
+        }
+
+        try {
+            writer.close();
+            fail("Expected the failure of the writer to be handed back to us");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Push a few million packets through the writer from a couple of threads
+     * with the queue blocking when full, and make sure nothing is lost.
+     */
+    @Test(timeout = 60000)
+    public void testManyProducers() throws Exception {
+        final int producers = 4;
+        final int count = 1000000;
+        final long[] sum = new long[1];
+        final long[] written = new long[1];
+        PcapAsyncWriter.Sink<Integer> sink = new PcapAsyncWriter.Sink<Integer>() {
+            @Override
+            public void write(Integer packet) {
+                sum[0] += packet;
+                ++written[0];
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        final PcapAsyncWriter<Integer> writer = new PcapAsyncWriter<>(sink, Executors.newSingleThreadExecutor(),
+                65536, RingFullPolicy.block, 1024, 100);
+        writer.start();
+
+        ExecutorService routes = Executors.newFixedThreadPool(producers);
+        for (int p = 0; p < producers; ++p) {
+            routes.submit(() -> {
+                for (int i = 0; i < count; ++i) {
+                    assertTrue(writer.write(i));
+                }
+                return null;
+            });
+        }
+        routes.shutdown();
+        assertTrue(routes.awaitTermination(50, TimeUnit.SECONDS));
+        writer.close();
+
+        assertEquals((long) producers * count, written[0]);
+        assertEquals((long) producers * count * (count - 1) / 2, sum[0]);
+        assertFalse(writer.getFlushes() < producers * count / 1024);
+        assertEquals(0, writer.getDroppedPackets());
+    }
+}
@@ -0,0 +1,178 @@
+package pcap.camel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pcap4j.core.PcapPacket;
+import org.pcap4j.packet.UnknownPacket;
+
+public class PcapConsumerTest {
+
+    /**
+     * Doesn't open a pcap handle, the packets are handed to it by the test.
+     */
+    private static class TestConsumer extends PcapConsumer {
+
+        private TestConsumer(PcapEndpoint endpoint, Processor processor) {
+            super(endpoint, processor);
+        }
+
+        @Override
+        void startCapture() {
+        }
+
+        @Override
+        void stopCapture() {
+        }
+    }
+
+    /**
+     * Keeps the exchanges in the order they were routed.
+     */
+    private static class Recorder implements Processor {
+        private final List<Exchange> exchanges = new ArrayList<>();
+
+        @Override
+        public synchronized void process(Exchange exchange) {
+            exchanges.add(exchange);
+        }
+
+        private synchronized List<Exchange> getExchanges() {
+            return new ArrayList<>(exchanges);
+        }
+
+        /**
+         * All the packets in all the batches.
+         */
+        @SuppressWarnings("unchecked")
+        private synchronized List<PcapPacket> getPackets() {
+            List<PcapPacket> packets = new ArrayList<>();
+            for (Exchange exchange : exchanges) {
+                packets.addAll(exchange.getIn().getBody(List.class));
+            }
+            return packets;
+        }
+    }
+
+    private CamelContext context;
+    private Recorder recorder;
+
+    @Before
+    public void setUp() throws Exception {
+        context = new DefaultCamelContext();
+        context.start();
+        recorder = new Recorder();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        context.stop();
+    }
+
+    private TestConsumer start(String options) throws Exception {
+        PcapEndpoint endpoint = context.getEndpoint("pcap:file?name=test.pcap&" + options, PcapEndpoint.class);
+        TestConsumer consumer = new TestConsumer(endpoint, recorder);
+        consumer.start();
+        return consumer;
+    }
+
+    private static List<PcapPacket> packets(int count) {
+        List<PcapPacket> packets = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            packets.add(new PcapPacket.Builder().timestamp(Instant.ofEpochSecond(i)).originalLength(1)
+                    .payloadBuilder(new UnknownPacket.Builder().rawData(new byte[] { (byte) i })).build());
+        }
+        return packets;
+    }
+
+    private static void assertSamePackets(List<PcapPacket> expected, List<PcapPacket> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertSame(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    public void testFullBatch() throws Exception {
+        TestConsumer consumer = start("batchSize=3");
+        List<PcapPacket> packets = packets(6);
+        for (PcapPacket packet : packets) {
+            consumer.onPacket(packet);
+        }
+
+        List<Exchange> exchanges = recorder.getExchanges();
+        assertEquals(2, exchanges.size());
+        for (Exchange exchange : exchanges) {
+            assertEquals(Integer.valueOf(3), exchange.getProperty(Exchange.BATCH_SIZE, Integer.class));
+        }
+        assertSamePackets(packets, recorder.getPackets());
+
+        consumer.stop();
+        assertEquals(2, recorder.getExchanges().size());
+    }
+
+    @Test(timeout = 10000)
+    public void testPartialBatchIsFlushedAfterTimeout() throws Exception {
+        TestConsumer consumer = start("batchSize=100&batchTimeoutMs=50");
+        List<PcapPacket> packets = packets(2);
+        for (PcapPacket packet : packets) {
+            consumer.onPacket(packet);
+        }
+
+        while (recorder.getExchanges().isEmpty()) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, recorder.getExchanges().size());
+        assertSamePackets(packets, recorder.getPackets());
+
+        // nothing left to flush
+        consumer.stop();
+        assertEquals(1, recorder.getExchanges().size());
+    }
+
+    @Test
+    public void testStopFlushes() throws Exception {
+        TestConsumer consumer = start("batchSize=4&batchTimeoutMs=60000");
+        List<PcapPacket> packets = packets(10);
+        for (PcapPacket packet : packets) {
+            consumer.onPacket(packet);
+        }
+        assertEquals(2, recorder.getExchanges().size());
+
+        consumer.stop();
+        assertEquals(3, recorder.getExchanges().size());
+        assertEquals(Integer.valueOf(2),
+                recorder.getExchanges().get(2).getProperty(Exchange.BATCH_SIZE, Integer.class));
+        assertSamePackets(packets, recorder.getPackets());
+    }
+
+    /**
+     * Same thing with the batches being routed by the workers, which must
+     * drain the ring before they go away.
+     */
+    @Test
+    public void testStopFlushesThroughWorkers() throws Exception {
+        TestConsumer consumer = start("batchSize=4&workers=1&ringFullPolicy=block&ringSize=2");
+        List<PcapPacket> packets = packets(1001);
+        for (PcapPacket packet : packets) {
+            consumer.onPacket(packet);
+        }
+
+        consumer.stop();
+        assertEquals(251, recorder.getExchanges().size());
+        assertSamePackets(packets, recorder.getPackets());
+        assertEquals(0, consumer.getDroppedPackets());
+        assertEquals(1, recorder.getExchanges().get(250).getIn().getBody(List.class).size());
+    }
+}
@@ -0,0 +1,157 @@
+package pcap.camel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class PcapRingBufferTest {
+
+    @Test
+    public void testOfferAndPoll() {
+        PcapRingBuffer<Integer> ring = new PcapRingBuffer<>(3);
+        assertEquals(4, ring.capacity());
+        assertNull(ring.poll());
+
+        for (int i = 0; i < 4; ++i) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertEquals(4, ring.size());
+
+        // go around the ring a couple of times
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(Integer.valueOf(i), ring.poll());
+            assertTrue(ring.offer(i + 4));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testSingleProducerManyConsumers() throws Exception {
+        final int count = 1000000;
+        final PcapRingBuffer<Integer> ring = new PcapRingBuffer<>(1024);
+        final ConcurrentHashMap<Integer, Boolean> seen = new ConcurrentHashMap<>();
+        final AtomicBoolean done = new AtomicBoolean();
+
+        ExecutorService consumers = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; ++i) {
+            consumers.submit(() -> {
+                while (true) {
+                    Integer element = ring.poll();
+                    if (element != null) {
+                        assertNull(seen.put(element, Boolean.TRUE));
+                    } else if (done.get()) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        for (int i = 0; i < count; ++i) {
+            while (!ring.offer(i)) {
+                Thread.yield();
+            }
+        }
+        done.set(true);
+        consumers.shutdown();
+        assertTrue(consumers.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(count, seen.size());
+    }
+
+    @Test(timeout = 30000)
+    public void testWaitingConsumerIsWoken() throws Exception {
+        final PcapRingBuffer<Integer> ring = new PcapRingBuffer<>(4);
+        ExecutorService consumer = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> element = consumer.submit(() -> ring.poll(1, TimeUnit.HOURS));
+            Thread.sleep(50);
+            assertTrue(ring.offer(17));
+            assertEquals(Integer.valueOf(17), element.get(10, TimeUnit.SECONDS));
+        } finally {
+            consumer.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testWaitingProducerIsWoken() throws Exception {
+        final PcapRingBuffer<Integer> ring = new PcapRingBuffer<>(1);
+        assertEquals(2, ring.capacity());
+        assertTrue(ring.offer(0));
+        assertTrue(ring.offer(1));
+        assertFalse(ring.offer(2));
+
+        ExecutorService producer = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> offered = producer.submit(() -> ring.offer(2, 1, TimeUnit.HOURS));
+            Thread.sleep(50);
+            assertEquals(Integer.valueOf(0), ring.poll());
+            assertTrue(offered.get(10, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(1), ring.poll());
+            assertEquals(Integer.valueOf(2), ring.poll());
+        } finally {
+            producer.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testWakeUp() throws Exception {
+        final PcapRingBuffer<Integer> ring = new PcapRingBuffer<>(4);
+        ExecutorService consumer = Executors.newSingleThreadExecutor();
+        try {
+            Future<Integer> element = consumer.submit(() -> ring.poll(1, TimeUnit.HOURS));
+            Thread.sleep(50);
+            ring.wakeUp();
+            assertNull(element.get(10, TimeUnit.SECONDS));
+        } finally {
+            consumer.shutdownNow();
+        }
+    }
+
+    /**
+     * Both sides wait on the small ring all the time, so a wake up that gets
+     * lost leaves everyone waiting for an hour.
+     */
+    @Test(timeout = 30000)
+    public void testWaitingProducerAndConsumers() throws Exception {
+        final int count = 200000;
+        final PcapRingBuffer<Integer> ring = new PcapRingBuffer<>(16);
+        final ConcurrentHashMap<Integer, Boolean> seen = new ConcurrentHashMap<>();
+
+        ExecutorService consumers = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4; ++i) {
+            consumers.submit(() -> {
+                while (true) {
+                    Integer element = ring.poll(1, TimeUnit.HOURS);
+                    if (element == null) {
+                        continue;
+                    } else if (element < 0) {
+                        return null;
+                    }
+                    assertNull(seen.put(element, Boolean.TRUE));
+                }
+            });
+        }
+
+        // followed by one negative element per consumer to stop them
+        for (int i = 0; i < count + 4; ++i) {
+            Integer element = i < count ? i : -1;
+            while (!ring.offer(element, 1, TimeUnit.HOURS)) {
+                // woken up for nothing, try again
+            }
+        }
+        consumers.shutdown();
+        assertTrue(consumers.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(count, seen.size());
+    }
+}
@@ -1,14 +1,22 @@
-package main.java.pcap.master.camel;
+package pcap.master.camel;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import main.java.pcap.master.core.ISocketDecorator;
-import main.java.pcap.master.core.Packet;
-import main.java.pcap.master.core.SocketDetails;
+import pcap.master.core.IAsyncSocketDecorator;
+import pcap.master.core.ISocketDecorator;
+import pcap.master.core.Packet;
+import pcap.master.core.SocketDetails;
 
 public class PacketDecoratorAllBean {
 	private final ISocketDecorator socketDecorator;
+	/**
+	 * If set all the decorations run concurrently, see {@link #decorateAsync(Packet)}.
+	 */
+	private final IAsyncSocketDecorator asyncSocketDecorator;
 	private final Logger logger;
 	/**
 	 * If true exceptions are only logged. Otherwise the bean throws an error. The message should be routed to an error path.
@@ -18,6 +26,7 @@ public class PacketDecoratorAllBean {
 	public PacketDecoratorAllBean(ISocketDecorator socketDecorator) {
 		super();
 		this.socketDecorator = socketDecorator;
+		this.asyncSocketDecorator = null;
 		this.logger = LoggerFactory.getLogger(PacketDecoratorAllBean.class);
 	}
 	
@@ -27,7 +36,29 @@ public class PacketDecoratorAllBean {
 		
 	}
 
+	public PacketDecoratorAllBean(IAsyncSocketDecorator asyncSocketDecorator) {
+		super();
+		this.socketDecorator = null;
+		this.asyncSocketDecorator = asyncSocketDecorator;
+		this.logger = LoggerFactory.getLogger(PacketDecoratorAllBean.class);
+	}
+
+	public PacketDecoratorAllBean(IAsyncSocketDecorator asyncSocketDecorator, boolean allowFaults) {
+		this(asyncSocketDecorator);
+		this.allowFaults = allowFaults;
+	}
+
 	public void decorate(Packet packet) throws Exception {
+		if (asyncSocketDecorator != null) {
+			// all decorations run at the same time, we only wait for the slowest one
+			try {
+				decorateAsync(packet).join();
+			} catch (CompletionException e) {
+				throw unwrap(e);
+			}
+			return;
+		}
+
 		SocketDetails source = packet.getSource();
 		SocketDetails destination= packet.getDestination();
 
@@ -67,6 +98,59 @@ public class PacketDecoratorAllBean {
 		}
 	}
 
+	/**
+	 * Start all the decorations of the source and destination at once. The
+	 * returned future completes when all of them are done. The calling thread
+	 * is never blocked.
+	 * 
+	 * If faults are not allowed the future completes exceptionally if any of
+	 * the decorations failed. Otherwise failures are only logged.
+	 * 
+	 * @param packet
+	 * @throws IllegalStateException if the bean was created with a synchronous decorator
+	 */
+	public CompletableFuture<Packet> decorateAsync(Packet packet) {
+		if (asyncSocketDecorator == null) {
+			throw new IllegalStateException("No asynchronous socket decorator configured");
+		}
+
+		SocketDetails source = packet.getSource();
+		SocketDetails destination = packet.getDestination();
+
+		CompletableFuture<?>[] decorations = new CompletableFuture<?>[] {
+			logged(asyncSocketDecorator.decorateHostname(source), "Failed to decorate source hostname", source),
+			logged(asyncSocketDecorator.decorateHostname(destination), "Failed to decorate destination hostname", destination),
+			logged(asyncSocketDecorator.decorateGeoInfo(source), "Failed to decorate source geo information", source),
+			logged(asyncSocketDecorator.decorateGeoInfo(destination), "Failed to decorate destination geo information", destination),
+			logged(asyncSocketDecorator.decorateTraceroute(source), "Failed to decorate source traceroute information", source),
+			logged(asyncSocketDecorator.decorateTraceroute(destination), "Failed to decorate destination tracerouteinformation", destination)
+		};
+
+		return CompletableFuture.allOf(decorations).thenApply(v -> packet);
+	}
+
+	private CompletableFuture<SocketDetails> logged(CompletableFuture<SocketDetails> decoration, String message,
+			SocketDetails socketDetails) {
+		return decoration.handle((result, e) -> {
+			if (e != null) {
+				try {
+					logException(unwrap(e), message, socketDetails);
+				} catch (Exception fault) {
+					throw new CompletionException(fault);
+				}
+			}
+			return socketDetails;
+		});
+	}
+
+	private static Exception unwrap(Throwable e) {
+		Throwable cause = e;
+		while (cause instanceof CompletionException && cause.getCause() != null) {
+			cause = cause.getCause();
+		}
+		return cause instanceof Exception ? (Exception) cause : new Exception(cause);
+	}
+
 	private void logException(Exception e, String message, SocketDetails socketDetails) throws Exception {
 		logger.error(message + " " + socketDetails.getIpAddress());
 		logger.error(e.getMessage());
@@ -13,10 +13,12 @@ public class PcapRouteBuilder extends RouteBuilder {
 		// Polling delay by 5000ms. Default is 500ms which is overloading disk access.
 		from("file:/home/egerpaul/workspaces/networkAnalyser/pcapAnalyser/testFiles?delay=5000")
 				// ToDo Dependency injection
-				// The Processor creates a list of Packets from the PCAP file.
-				.process(new PcapProcessor(new PacketFactory(new PktsPacketFactory())))
-				// Body is a list of packets - hence will be split into a stream of packets
-				.split(simple("${body}"))
+				// The Processor creates an iterator of Packets, read from the PCAP file
+				// while they are being consumed.
+				.process(new StreamingPcapProcessor(new PacketFactory(new PktsPacketFactory())))
+				// Body is an iterator of packets - split it as a stream so that the file is
+				// never held in memory all at once.
+				.split(body()).streaming()
 				.log("Processed pcap file: ${body}")
 				.to("seda:packets");
 	
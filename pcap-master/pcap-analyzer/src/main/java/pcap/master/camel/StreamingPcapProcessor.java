@@ -0,0 +1,36 @@
+package pcap.master.camel;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.component.file.GenericFile;
+
+import pcap.master.core.IPacketFactory;
+
+/**
+ * Processes a PCAP file into an iterator of Packet information. Unlike the
+ * {@link PcapProcessor} the packets are parsed while the route consumes them,
+ * so use it together with a streaming splitter, e.g.
+ * <code>.split(body()).streaming()</code>, to process large files with
+ * bounded memory.
+ * 
+ * @author egerpaul
+ *
+ */
+public class StreamingPcapProcessor implements Processor {
+
+	final IPacketFactory packetFactory;
+
+	public StreamingPcapProcessor(IPacketFactory packetFactory) {
+		super();
+		this.packetFactory = packetFactory;
+	}
+
+	@Override
+	public void process(Exchange exchange) throws Exception {
+
+		GenericFile<?> file = (GenericFile<?>) exchange.getIn().getBody();
+
+		exchange.getOut().setBody(packetFactory.streamPackets(file.getAbsoluteFilePath()));
+	}
+
+}
@@ -0,0 +1,32 @@
+package pcap.master.core;
+
+import java.util.concurrent.CompletableFuture;
+
+import pcap.master.core.SocketDetails;
+
+/**
+ * Non blocking variant of {@link ISocketDecorator}. Each call returns right
+ * away, the future completes with the (same) socketDetails once the
+ * decoration is done, or exceptionally if it failed or timed out.
+ */
+public interface IAsyncSocketDecorator {
+
+	/**
+	 * Hostname is resolved for the IP Address.
+	 * @param socketDetails
+	 */
+	CompletableFuture<SocketDetails> decorateHostname(SocketDetails socketDetails);
+
+	/**
+	 * Geo information is decorated for the socketDetails.
+	 * @param socketDetails
+	 */
+	CompletableFuture<SocketDetails> decorateGeoInfo(SocketDetails socketDetails);
+
+	/**
+	 * Traceroute information is decorated for the socketDetails.
+	 * @param socketDetails
+	 */
+	CompletableFuture<SocketDetails> decorateTraceroute(SocketDetails socketDetails);
+
+}
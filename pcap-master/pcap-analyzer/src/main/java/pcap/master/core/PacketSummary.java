@@ -0,0 +1,247 @@
+package pcap.master.core;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * The addresses, ports and protocol of a packet kept as plain numbers.
+ *
+ * Unlike {@link Packet} nothing is formatted while the packet is parsed. An
+ * instance can be reused for every packet of a file (see {@link #reset()}), so
+ * going through a capture this way doesn't allocate anything per packet. The
+ * String views are only created when someone asks for them.
+ *
+ * Addresses are kept as two longs (the high and low 64 bits). An IPv4 address
+ * is in the lower 32 bits of the low part.
+ *
+ * @author egerpaul
+ *
+ */
+public class PacketSummary implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	public static final int PROTOCOL_ICMP = 1;
+	public static final int PROTOCOL_IGMP = 2;
+	public static final int PROTOCOL_TCP = 6;
+	public static final int PROTOCOL_UDP = 17;
+	public static final int PROTOCOL_ICMP6 = 58;
+	public static final int PROTOCOL_SCTP = 132;
+
+	/**
+	 * As reported by pkts, i.e. in micro (or nano) seconds since the epoch.
+	 */
+	private long arrivalTime;
+
+	/**
+	 * 4, 6 or 0 if this isn't an IP packet.
+	 */
+	private int ipVersion;
+
+	/**
+	 * The IANA protocol number of the transport, e.g. {@link #PROTOCOL_TCP}. -1
+	 * if unknown.
+	 */
+	private int protocol = -1;
+
+	private long sourceAddressHigh;
+	private long sourceAddressLow;
+	private long destinationAddressHigh;
+	private long destinationAddressLow;
+
+	private int sourcePort;
+	private int destinationPort;
+
+	private transient String sourceAddress;
+	private transient String destinationAddress;
+
+	/**
+	 * Clear everything so that the instance can be used for the next packet.
+	 */
+	public void reset() {
+		arrivalTime = 0;
+		ipVersion = 0;
+		protocol = -1;
+		sourceAddressHigh = 0;
+		sourceAddressLow = 0;
+		destinationAddressHigh = 0;
+		destinationAddressLow = 0;
+		sourcePort = 0;
+		destinationPort = 0;
+		sourceAddress = null;
+		destinationAddress = null;
+	}
+
+	public long getArrivalTime() {
+		return arrivalTime;
+	}
+
+	public void setArrivalTime(long arrivalTime) {
+		this.arrivalTime = arrivalTime;
+	}
+
+	public int getIpVersion() {
+		return ipVersion;
+	}
+
+	public int getProtocol() {
+		return protocol;
+	}
+
+	public void setProtocol(int protocol) {
+		this.protocol = protocol;
+	}
+
+	public void setIPv4(int sourceAddress, int destinationAddress) {
+		this.ipVersion = 4;
+		this.sourceAddressHigh = 0;
+		this.sourceAddressLow = sourceAddress & 0xFFFFFFFFL;
+		this.destinationAddressHigh = 0;
+		this.destinationAddressLow = destinationAddress & 0xFFFFFFFFL;
+		this.sourceAddress = null;
+		this.destinationAddress = null;
+	}
+
+	public void setIPv6(long sourceHigh, long sourceLow, long destinationHigh, long destinationLow) {
+		this.ipVersion = 6;
+		this.sourceAddressHigh = sourceHigh;
+		this.sourceAddressLow = sourceLow;
+		this.destinationAddressHigh = destinationHigh;
+		this.destinationAddressLow = destinationLow;
+		this.sourceAddress = null;
+		this.destinationAddress = null;
+	}
+
+	/**
+	 * Only meaningful for IPv4.
+	 */
+	public int getSourceIPv4() {
+		return (int) sourceAddressLow;
+	}
+
+	/**
+	 * Only meaningful for IPv4.
+	 */
+	public int getDestinationIPv4() {
+		return (int) destinationAddressLow;
+	}
+
+	public long getSourceAddressHigh() {
+		return sourceAddressHigh;
+	}
+
+	public long getSourceAddressLow() {
+		return sourceAddressLow;
+	}
+
+	public long getDestinationAddressHigh() {
+		return destinationAddressHigh;
+	}
+
+	public long getDestinationAddressLow() {
+		return destinationAddressLow;
+	}
+
+	public int getSourcePort() {
+		return sourcePort;
+	}
+
+	public int getDestinationPort() {
+		return destinationPort;
+	}
+
+	public void setPorts(int sourcePort, int destinationPort) {
+		this.sourcePort = sourcePort;
+		this.destinationPort = destinationPort;
+	}
+
+	/**
+	 * The source address formatted the usual way. Created the first time it
+	 * is asked for.
+	 */
+	public String getSourceAddress() {
+		if (sourceAddress == null) {
+			sourceAddress = formatAddress(ipVersion, sourceAddressHigh, sourceAddressLow);
+		}
+		return sourceAddress;
+	}
+
+	/**
+	 * The destination address formatted the usual way. Created the first time
+	 * it is asked for.
+	 */
+	public String getDestinationAddress() {
+		if (destinationAddress == null) {
+			destinationAddress = formatAddress(ipVersion, destinationAddressHigh, destinationAddressLow);
+		}
+		return destinationAddress;
+	}
+
+	public String getProtocolName() {
+		switch (protocol) {
+		case PROTOCOL_ICMP:
+			return "ICMP";
+		case PROTOCOL_IGMP:
+			return "IGMP";
+		case PROTOCOL_TCP:
+			return "TCP";
+		case PROTOCOL_UDP:
+			return "UDP";
+		case PROTOCOL_ICMP6:
+			return "ICMP6";
+		case PROTOCOL_SCTP:
+			return "SCTP";
+		case -1:
+			return "undefined";
+		default:
+			return "IP-" + protocol;
+		}
+	}
+
+	/**
+	 * Create a {@link Packet} from the summary, for the consumers that need
+	 * one.
+	 */
+	public Packet toPacket() {
+		SocketDetails source = new SocketDetails();
+		source.setIpAddress(getSourceAddress());
+		source.setPort(sourcePort);
+
+		SocketDetails destination = new SocketDetails();
+		destination.setIpAddress(getDestinationAddress());
+		destination.setPort(destinationPort);
+
+		Packet packet = new Packet();
+		packet.setConnectionDate(new Date(arrivalTime / 1000L));
+		packet.setProtocol(getProtocolName());
+		packet.setSource(source);
+		packet.setDestination(destination);
+		return packet;
+	}
+
+	private static String formatAddress(int ipVersion, long high, long low) {
+		if (ipVersion == 4) {
+			return ((low >>> 24) & 0xFF) + "." + ((low >>> 16) & 0xFF) + "." + ((low >>> 8) & 0xFF) + "." + (low & 0xFF);
+		}
+
+		if (ipVersion == 6) {
+			StringBuilder sb = new StringBuilder(39);
+			for (int i = 0; i < 8; ++i) {
+				long part = i < 4 ? high : low;
+				int shift = (3 - (i % 4)) * 16;
+				if (i > 0) {
+					sb.append(':');
+				}
+				sb.append(Integer.toHexString((int) ((part >>> shift) & 0xFFFF)));
+			}
+			return sb.toString();
+		}
+
+		return "undefined";
+	}
+
+	@Override
+	public String toString() {
+		return arrivalTime + " " + getProtocolName() + " Src: " + getSourceAddress() + ":" + sourcePort + " Dst: "
+				+ getDestinationAddress() + ":" + destinationPort;
+	}
+}
@@ -0,0 +1,181 @@
+package pcap.master.decorator;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pcap.master.core.IAsyncSocketDecorator;
+import pcap.master.core.ISocketDecorator;
+import pcap.master.core.SocketDetails;
+
+/**
+ * Runs the decorations of an {@link ISocketDecorator} (typically the
+ * {@link CachedDecorator}) in the background.
+ * 
+ * Every kind of decoration gets its own bounded thread pool so that e.g. a
+ * bunch of slow traceroutes can't starve the hostname lookups. If a pool is
+ * full the returned future fails right away with a
+ * {@link RejectedExecutionException} instead of blocking the caller. A
+ * decoration that doesn't finish within its timeout fails with a
+ * {@link TimeoutException} and its thread is interrupted.
+ * 
+ * @author egerpaul
+ *
+ */
+public class AsyncDecorator implements IAsyncSocketDecorator, Closeable {
+	public static final int DEFAULT_HOSTNAME_THREADS = 8;
+	public static final int DEFAULT_GEO_INFO_THREADS = 4;
+	public static final int DEFAULT_TRACEROUTE_THREADS = 4;
+	public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+	public static final long DEFAULT_HOSTNAME_TIMEOUT_MS = 5000;
+	public static final long DEFAULT_GEO_INFO_TIMEOUT_MS = 5000;
+	public static final long DEFAULT_TRACEROUTE_TIMEOUT_MS = 30000;
+
+	private final ISocketDecorator socketDecorator;
+
+	private final ThreadPoolExecutor hostnameExecutor;
+	private final ThreadPoolExecutor geoInfoExecutor;
+	private final ThreadPoolExecutor tracerouteExecutor;
+
+	private final long hostnameTimeoutMs;
+	private final long geoInfoTimeoutMs;
+	private final long tracerouteTimeoutMs;
+
+	/**
+	 * Fails the futures that take too long.
+	 */
+	private final ScheduledExecutorService timeoutExecutor;
+
+	public AsyncDecorator(ISocketDecorator socketDecorator) {
+		this(socketDecorator, 
+				DEFAULT_HOSTNAME_THREADS, DEFAULT_HOSTNAME_TIMEOUT_MS,
+				DEFAULT_GEO_INFO_THREADS, DEFAULT_GEO_INFO_TIMEOUT_MS,
+				DEFAULT_TRACEROUTE_THREADS, DEFAULT_TRACEROUTE_TIMEOUT_MS, 
+				DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * @param socketDecorator the decorator doing the actual work
+	 * @param hostnameThreads
+	 * @param hostnameTimeoutMs
+	 * @param geoInfoThreads
+	 * @param geoInfoTimeoutMs
+	 * @param tracerouteThreads
+	 * @param tracerouteTimeoutMs
+	 * @param queueSize the number of decorations each pool queues up before it rejects new ones
+	 */
+	public AsyncDecorator(ISocketDecorator socketDecorator, 
+			int hostnameThreads, long hostnameTimeoutMs,
+			int geoInfoThreads, long geoInfoTimeoutMs,
+			int tracerouteThreads, long tracerouteTimeoutMs,
+			int queueSize) {
+		super();
+		this.socketDecorator = socketDecorator;
+		this.hostnameTimeoutMs = hostnameTimeoutMs;
+		this.geoInfoTimeoutMs = geoInfoTimeoutMs;
+		this.tracerouteTimeoutMs = tracerouteTimeoutMs;
+
+		this.hostnameExecutor = createExecutor("hostname", hostnameThreads, queueSize);
+		this.geoInfoExecutor = createExecutor("geoInfo", geoInfoThreads, queueSize);
+		this.tracerouteExecutor = createExecutor("traceroute", tracerouteThreads, queueSize);
+		this.timeoutExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory("decorator-timeout"));
+	}
+
+	/* (non-Javadoc)
+	 * @see pcap.master.core.IAsyncSocketDecorator#decorateHostname(pcap.master.core.SocketDetails)
+	 */
+	@Override
+	public CompletableFuture<SocketDetails> decorateHostname(SocketDetails socketDetails) {
+		return submit(hostnameExecutor, hostnameTimeoutMs, socketDetails, socketDecorator::decorateHostname);
+	}
+
+	/* (non-Javadoc)
+	 * @see pcap.master.core.IAsyncSocketDecorator#decorateGeoInfo(pcap.master.core.SocketDetails)
+	 */
+	@Override
+	public CompletableFuture<SocketDetails> decorateGeoInfo(SocketDetails socketDetails) {
+		return submit(geoInfoExecutor, geoInfoTimeoutMs, socketDetails, socketDecorator::decorateGeoInfo);
+	}
+
+	/* (non-Javadoc)
+	 * @see pcap.master.core.IAsyncSocketDecorator#decorateTraceroute(pcap.master.core.SocketDetails)
+	 */
+	@Override
+	public CompletableFuture<SocketDetails> decorateTraceroute(SocketDetails socketDetails) {
+		return submit(tracerouteExecutor, tracerouteTimeoutMs, socketDetails, socketDecorator::decorateTraceroute);
+	}
+
+	private CompletableFuture<SocketDetails> submit(ThreadPoolExecutor executor, long timeoutMs,
+			SocketDetails socketDetails, Decoration decoration) {
+		CompletableFuture<SocketDetails> result = new CompletableFuture<SocketDetails>();
+
+		Future<?> task;
+		try {
+			task = executor.submit(() -> {
+				try {
+					decoration.decorate(socketDetails);
+					result.complete(socketDetails);
+				} catch (Throwable e) {
+					result.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			result.completeExceptionally(e);
+			return result;
+		}
+
+		if (timeoutMs > 0) {
+			Future<?> timeout = timeoutExecutor.schedule(() -> {
+				if (result.completeExceptionally(new TimeoutException(
+						"Decoration of " + socketDetails.getIpAddress() + " took more than " + timeoutMs + "ms"))) {
+					task.cancel(true);
+				}
+			}, timeoutMs, TimeUnit.MILLISECONDS);
+			result.whenComplete((s, e) -> timeout.cancel(false));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Stops all the threads. Decorations still running are interrupted.
+	 */
+	@Override
+	public void close() {
+		hostnameExecutor.shutdownNow();
+		geoInfoExecutor.shutdownNow();
+		tracerouteExecutor.shutdownNow();
+		timeoutExecutor.shutdownNow();
+	}
+
+	private static ThreadPoolExecutor createExecutor(String name, int threads, int queueSize) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), threadFactory("decorator-" + name));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	private static ThreadFactory threadFactory(String name) {
+		AtomicInteger count = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	@FunctionalInterface
+	private interface Decoration {
+		void decorate(SocketDetails socketDetails) throws Exception;
+	}
+}
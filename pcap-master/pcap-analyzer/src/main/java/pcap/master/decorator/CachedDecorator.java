@@ -1,33 +1,57 @@
 package pcap.master.decorator;
 
-import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
 
 import pcap.master.core.ISocketDecorator;
 import pcap.master.core.ISocketDecoratorStrategy;
 import pcap.master.core.SocketDetails;
 
-// ToDo Evaluate memory usage on large processing. alternative massive amounts of duplicate processing.
+/**
+ * Decorates sockets, caching the result of each strategy per IP address. See
+ * {@link DecorationCache}.
+ */
 public class CachedDecorator implements ISocketDecorator {
-	private final HashMap<String, SocketDetails> hostnameDecorationMap;
-	private final HashMap<String, SocketDetails> geoInfoDecorationMap;
-	private final HashMap<String, SocketDetails> tracerouteDecorationMap;
+	public static final int DEFAULT_MAX_SIZE = 10000;
+	public static final long DEFAULT_HOSTNAME_TTL_MINUTES = 60;
+	public static final long DEFAULT_GEO_INFO_TTL_MINUTES = 24 * 60;
+	public static final long DEFAULT_TRACEROUTE_TTL_MINUTES = 10;
 
-	private final ISocketDecoratorStrategy hostnameDecorator;
-	private final ISocketDecoratorStrategy geoInfoDecorator;
-	private final ISocketDecoratorStrategy traceRouteDecorator;
+	private final DecorationCache hostnameCache;
+	private final DecorationCache geoInfoCache;
+	private final DecorationCache tracerouteCache;
 
 	public CachedDecorator(
 			ISocketDecoratorStrategy hostnameDecorator, 
 			ISocketDecoratorStrategy geoInfoDecorator,
 			ISocketDecoratorStrategy traceRouteDecorator) {
-		super();
-		this.hostnameDecorator = hostnameDecorator;
-		this.geoInfoDecorator = geoInfoDecorator;
-		this.traceRouteDecorator = traceRouteDecorator;
+		this(hostnameDecorator, DEFAULT_HOSTNAME_TTL_MINUTES, 
+				geoInfoDecorator, DEFAULT_GEO_INFO_TTL_MINUTES,
+				traceRouteDecorator, DEFAULT_TRACEROUTE_TTL_MINUTES, 
+				TimeUnit.MINUTES, DEFAULT_MAX_SIZE);
+	}
 
-		this.hostnameDecorationMap = new HashMap<String, SocketDetails>();
-		this.geoInfoDecorationMap = new HashMap<String, SocketDetails>();
-		this.tracerouteDecorationMap = new HashMap<String, SocketDetails>();
+	/**
+	 * @param hostnameDecorator
+	 * @param hostnameTtl how long a resolved hostname is kept
+	 * @param geoInfoDecorator
+	 * @param geoInfoTtl how long geo information is kept
+	 * @param traceRouteDecorator
+	 * @param tracerouteTtl how long a traceroute is kept. Routes change more often than the rest.
+	 * @param unit the unit of the ttls
+	 * @param maxSize max number of IP addresses kept per strategy
+	 */
+	public CachedDecorator(
+			ISocketDecoratorStrategy hostnameDecorator, long hostnameTtl,
+			ISocketDecoratorStrategy geoInfoDecorator, long geoInfoTtl,
+			ISocketDecoratorStrategy traceRouteDecorator, long tracerouteTtl,
+			TimeUnit unit, int maxSize) {
+		super();
+		this.hostnameCache = new DecorationCache("hostname", hostnameDecorator,
+				(from, to) -> to.setHostName(from.getHostName()), hostnameTtl, unit, maxSize);
+		this.geoInfoCache = new DecorationCache("geoInfo", geoInfoDecorator,
+				(from, to) -> to.setGeoData(from.getGeoData()), geoInfoTtl, unit, maxSize);
+		this.tracerouteCache = new DecorationCache("traceroute", traceRouteDecorator,
+				(from, to) -> to.setTraceRoute(from.getTraceRoute()), tracerouteTtl, unit, maxSize);
 	}
 
 	/* (non-Javadoc)
@@ -35,18 +59,7 @@ public class CachedDecorator implements ISocketDecorator {
 	 */
 	@Override
 	public void decorateHostname(SocketDetails socketDetails) throws Exception {
-		String ipAddress = socketDetails.getIpAddress();
-		// Synchronise to deal with parallel thread decoration
-		synchronized (hostnameDecorationMap) {
-			if (hostnameDecorationMap.containsKey(ipAddress)) {
-				// Already decorated => no need to perform a reverse lookup
-				return;
-			}
-
-			hostnameDecorator.decorate(socketDetails);
-
-			hostnameDecorationMap.put(socketDetails.getIpAddress(), socketDetails);
-		}
+		hostnameCache.decorate(socketDetails);
 	}
 	
 	/* (non-Javadoc)
@@ -54,18 +67,7 @@ public class CachedDecorator implements ISocketDecorator {
 	 */
 	@Override
 	public void decorateGeoInfo(SocketDetails socketDetails) throws Exception {
-		String ipAddress = socketDetails.getIpAddress();
-		// Synchronise to deal with parallel thread decoration
-		synchronized (geoInfoDecorationMap) {
-			if (geoInfoDecorationMap.containsKey(ipAddress)) {
-				// Already decorated => no need to perform a reverse lookup
-				return;
-			}
-
-			geoInfoDecorator.decorate(socketDetails);
-
-			geoInfoDecorationMap.put(socketDetails.getIpAddress(), socketDetails);
-		}
+		geoInfoCache.decorate(socketDetails);
 	}
 	
 	/* (non-Javadoc)
@@ -73,18 +75,23 @@ public class CachedDecorator implements ISocketDecorator {
 	 */
 	@Override
 	public void decorateTraceroute(SocketDetails socketDetails) throws Exception {
-		String ipAddress = socketDetails.getIpAddress();
-		// Synchronise to deal with parallel thread decoration
-		synchronized (tracerouteDecorationMap) {
-			if (tracerouteDecorationMap.containsKey(ipAddress)) {
-				// Already decorated => no need to perform a reverse lookup
-				return;
-			}
+		tracerouteCache.decorate(socketDetails);
+	}
 
-			traceRouteDecorator.decorate(socketDetails);
+	public DecorationCache getHostnameCache() {
+		return hostnameCache;
+	}
 
-			tracerouteDecorationMap.put(socketDetails.getIpAddress(), socketDetails);
-		}
+	public DecorationCache getGeoInfoCache() {
+		return geoInfoCache;
 	}
 
+	public DecorationCache getTracerouteCache() {
+		return tracerouteCache;
+	}
+
+	@Override
+	public String toString() {
+		return hostnameCache + "\n" + geoInfoCache + "\n" + tracerouteCache;
+	}
 }
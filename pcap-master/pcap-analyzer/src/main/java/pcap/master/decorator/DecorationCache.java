@@ -0,0 +1,271 @@
+package pcap.master.decorator;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+import pcap.master.core.ISocketDecoratorStrategy;
+import pcap.master.core.SocketDetails;
+
+/**
+ * Caches the result of one decoration strategy per IP address.
+ *
+ * <ul>
+ * <li>Lookups never lock. Only the thread that misses runs the (slow)
+ * strategy, any other thread asking for the same IP address in the meantime
+ * waits for that result instead of doing the same lookup again.</li>
+ * <li>Entries expire after the configured time to live.</li>
+ * <li>The cache holds at most the configured number of entries. Least recently
+ * used entries are evicted using the CLOCK (second chance) approximation so
+ * that no lock is needed to maintain the access order.</li>
+ * <li>Hits, misses, evictions and expirations are counted.</li>
+ * </ul>
+ *
+ * @author egerpaul
+ *
+ */
+public class DecorationCache {
+
+	private final String name;
+	private final ISocketDecoratorStrategy strategy;
+
+	/**
+	 * Copies the decorated information from a cached socket onto another one
+	 * with the same IP address.
+	 */
+	private final BiConsumer<SocketDetails, SocketDetails> copier;
+
+	private final long ttlNanos;
+	private final int maxSize;
+
+	private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * The "clock" for the eviction. Entries are added at the tail as they are
+	 * created and inspected at the head when we need to evict. Entries that
+	 * expired and got replaced stay in here until a sweep drops them.
+	 */
+	private final Queue<Entry> clock = new ConcurrentLinkedQueue<Entry>();
+
+	/**
+	 * The number of entries in the clock, stale ones included. Kept separately
+	 * since asking the queue for its size means walking all of it.
+	 */
+	private final AtomicInteger clockSize = new AtomicInteger();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder expirations = new LongAdder();
+
+	public DecorationCache(String name, ISocketDecoratorStrategy strategy,
+			BiConsumer<SocketDetails, SocketDetails> copier, long ttl, TimeUnit unit, int maxSize) {
+		super();
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("The max size must be greater than zero");
+		}
+		this.name = name;
+		this.strategy = strategy;
+		this.copier = copier;
+		this.ttlNanos = unit.toNanos(ttl);
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Decorate the socket details, either from the cache or by running the
+	 * strategy.
+	 *
+	 * @param socketDetails
+	 * @throws Exception whatever the strategy throws. Failures are not cached.
+	 */
+	public void decorate(SocketDetails socketDetails) throws Exception {
+		String ipAddress = socketDetails.getIpAddress();
+		while (true) {
+			Entry entry = entries.get(ipAddress);
+			if (entry != null) {
+				if (!entry.isExpired(System.nanoTime())) {
+					hits.increment();
+					entry.referenced = true;
+					SocketDetails decorated = entry.await();
+					if (decorated != socketDetails) {
+						copier.accept(decorated, socketDetails);
+					}
+					return;
+				}
+
+				if (entries.remove(ipAddress, entry)) {
+					expirations.increment();
+				}
+			}
+
+			Entry created = new Entry(ipAddress);
+			if (entries.putIfAbsent(ipAddress, created) != null) {
+				// someone beat us to it, go and wait for their result
+				continue;
+			}
+
+			misses.increment();
+			try {
+				strategy.decorate(socketDetails);
+			} catch (Exception e) {
+				entries.remove(ipAddress, created);
+				created.future.completeExceptionally(e);
+				throw e;
+			}
+
+			created.expiresAt = System.nanoTime() + ttlNanos;
+			created.future.complete(socketDetails);
+			offer(created);
+			evictIfNeeded();
+			return;
+		}
+	}
+
+	/**
+	 * Sweep the clock until we are within our bounds again. Recently used
+	 * entries get a second chance and are moved to the back, expired ones are
+	 * dropped right away.
+	 */
+	private void evictIfNeeded() {
+		if (clockSize.get() > 2L * maxSize) {
+			sweepStale();
+		}
+
+		int budget = clockSize.get() * 2;
+		while (entries.size() > maxSize && budget-- > 0) {
+			Entry entry = poll();
+			if (entry == null) {
+				return;
+			}
+
+			if (entries.get(entry.ipAddress) != entry) {
+				// already expired or replaced
+				continue;
+			}
+
+			if (entry.referenced && !entry.isExpired(System.nanoTime())) {
+				entry.referenced = false;
+				offer(entry);
+				continue;
+			}
+
+			if (entries.remove(entry.ipAddress, entry)) {
+				evictions.increment();
+			}
+		}
+	}
+
+	/**
+	 * Go around the clock once and drop the entries that expired and got
+	 * replaced in the meantime. Those are never evicted since the map stays
+	 * within its bounds, so without this the clock would keep growing with
+	 * every refresh. Only runs once the clock is twice the max size, which
+	 * leaves at least max size offers between two sweeps.
+	 */
+	private void sweepStale() {
+		int budget = clockSize.get();
+		while (budget-- > 0) {
+			Entry entry = poll();
+			if (entry == null) {
+				return;
+			}
+
+			if (entries.get(entry.ipAddress) == entry) {
+				offer(entry);
+			}
+		}
+	}
+
+	private void offer(Entry entry) {
+		clock.offer(entry);
+		clockSize.incrementAndGet();
+	}
+
+	private Entry poll() {
+		Entry entry = clock.poll();
+		if (entry != null) {
+			clockSize.decrementAndGet();
+		}
+		return entry;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of entries in the eviction clock, including the ones
+	 *         that expired and were not swept yet.
+	 */
+	public int getClockSize() {
+		return clockSize.get();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public long getExpirations() {
+		return expirations.sum();
+	}
+
+	@Override
+	public String toString() {
+		return name + " cache size: " + size() + " hits: " + getHits() + " misses: " + getMisses() + " evictions: "
+				+ getEvictions() + " expirations: " + getExpirations();
+	}
+
+	private static final class Entry {
+		private final String ipAddress;
+		private final CompletableFuture<SocketDetails> future = new CompletableFuture<SocketDetails>();
+
+		/**
+		 * Stays at max until the decoration is done so that an in-flight
+		 * entry never expires.
+		 */
+		private volatile long expiresAt = Long.MAX_VALUE;
+
+		/**
+		 * Set on every hit, cleared by the eviction clock.
+		 */
+		private volatile boolean referenced;
+
+		private Entry(String ipAddress) {
+			this.ipAddress = ipAddress;
+		}
+
+		private boolean isExpired(long now) {
+			long expires = expiresAt;
+			return expires != Long.MAX_VALUE && expires - now < 0;
+		}
+
+		private SocketDetails await() throws Exception {
+			try {
+				return future.get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof Exception) {
+					throw (Exception) e.getCause();
+				}
+				throw e;
+			}
+		}
+	}
+}
@@ -1,32 +1,60 @@
 package pcap.master.decorator;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import pcap.master.core.ISocketDecoratorStrategy;
 import pcap.master.core.SocketDetails;
 
 public class TracerouteDecoratorStrategy implements ISocketDecoratorStrategy {
+	public static final long DEFAULT_TIMEOUT_MS = 30000;
+
+	/**
+	 * The traceroute process is killed if it runs longer than this.
+	 */
+	private final long timeoutMs;
+
+	public TracerouteDecoratorStrategy() {
+		this(DEFAULT_TIMEOUT_MS);
+	}
+
+	public TracerouteDecoratorStrategy(long timeoutMs) {
+		super();
+		this.timeoutMs = timeoutMs;
+	}
 
 	@Override
 	public void decorate(SocketDetails socketDetails) throws Exception {
+		// the output goes to a file so that waiting for the process is the only
+		// blocking call, and that one can be timed out and interrupted
+		Path output = Files.createTempFile("traceroute", ".txt");
+
 		ProcessBuilder pb = new ProcessBuilder();
-		pb.command("traceroute " + socketDetails.getIpAddress());
+		pb.command("traceroute", socketDetails.getIpAddress());
+		pb.redirectErrorStream(true);
+		pb.redirectOutput(output.toFile());
 		
 		Process process = pb.start();
-		process.wait();
-		
-		String traceRouteOutput = getProcessOutput(process);
-		
-		socketDetails.setTraceRoute(traceRouteOutput);
+		try {
+			if (!process.waitFor(timeoutMs, TimeUnit.MILLISECONDS)) {
+				throw new TimeoutException("Traceroute to " + socketDetails.getIpAddress() + " took more than " + timeoutMs + "ms");
+			}
+
+			socketDetails.setTraceRoute(getProcessOutput(output));
+		} finally {
+			// also kills it when we are interrupted, e.g. by the AsyncDecorator timing out
+			process.destroyForcibly();
+			Files.deleteIfExists(output);
+		}
 	}
 
-	private String getProcessOutput(Process process) throws IOException {
-		BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+	private String getProcessOutput(Path output) throws IOException {
 		StringBuilder outputBuilder = new StringBuilder();
-		String line = null;
-		while((line = reader.readLine()) != null) {
+		for (String line : Files.readAllLines(output, StandardCharsets.UTF_8)) {
 			outputBuilder.append(line);
 			outputBuilder.append("\n");
 		}
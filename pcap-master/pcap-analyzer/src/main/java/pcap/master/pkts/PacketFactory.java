@@ -1,13 +1,18 @@
 package pcap.master.pkts;
 
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 import io.pkts.PacketHandler;
 import io.pkts.Pcap;
 import pcap.master.core.IPacketFactory;
 import pcap.master.core.Packet;
+import pcap.master.core.PacketSummary;
 
 public class PacketFactory implements IPacketFactory {
 
@@ -50,4 +55,44 @@ public class PacketFactory implements IPacketFactory {
 		packetFactory.resetSequenceCounter();
 	}
 
-}
\ No newline at end of file
+
+	/* (non-Javadoc)
+	 * @see pcap.master.core.IPacketFactory#streamPackets(java.lang.String)
+	 */
+	@Override
+	public Iterator<Packet> streamPackets(String path) throws FileNotFoundException, IOException {
+		InputStream in = new FileInputStream(path);
+		try {
+			return new PacketStream(Pcap.openStream(in), packetFactory, PacketStream.DEFAULT_READ_AHEAD, in);
+		} catch (IOException | RuntimeException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see pcap.master.core.IPacketFactory#summarizePackets(java.lang.String, java.util.function.Consumer)
+	 */
+	@Override
+	public void summarizePackets(String path, Consumer<PacketSummary> consumer) throws FileNotFoundException, IOException {
+		Pcap pcapStream = Pcap.openStream(path);
+		try {
+			PacketSummaryExtractor extractor = new PacketSummaryExtractor(pcapStream.getPcapHeader().getDataLinkType());
+			PacketSummary summary = new PacketSummary();
+
+			pcapStream.loop(new PacketHandler() {
+
+				@Override
+				public boolean nextPacket(io.pkts.packet.Packet packet) throws IOException {
+					extractor.extract(packet, summary);
+					consumer.accept(summary);
+					return true;
+				}
+
+			});
+		} finally {
+			pcapStream.close();
+		}
+	}
+
+}
@@ -0,0 +1,155 @@
+package pcap.master.pkts;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.pkts.Pcap;
+import pcap.master.core.Packet;
+
+/**
+ * Iterates over the packets of a pcap file while the file is being read by
+ * {@link Pcap#loop(io.pkts.PacketHandler)} on a background thread. The reader
+ * only gets a bounded number of packets ahead of the consumer, after which it
+ * waits for the consumer to catch up. If reading the pcap, or turning a packet
+ * into a {@link Packet}, fails then the consumer gets the packets read so far
+ * after which {@link #hasNext()} throws.
+ * 
+ * @author egerpaul
+ *
+ */
+public class PacketStream implements Iterator<Packet>, Closeable {
+
+	/**
+	 * How many packets the background reader may read ahead.
+	 */
+	public static final int DEFAULT_READ_AHEAD = 1024;
+
+	private static final Logger logger = LoggerFactory.getLogger(PacketStream.class);
+
+	/**
+	 * Marks the end of the stream in the queue.
+	 */
+	private static final Packet END = new Packet();
+
+	private final BlockingQueue<Packet> queue;
+	private final Thread reader;
+
+	private volatile boolean closed;
+	private volatile Exception failure;
+
+	private Packet next;
+	private boolean done;
+
+	public PacketStream(Pcap pcap, IPktsPacketFactory packetFactory) {
+		this(pcap, packetFactory, DEFAULT_READ_AHEAD);
+	}
+
+	public PacketStream(Pcap pcap, IPktsPacketFactory packetFactory, int readAhead) {
+		this(pcap, packetFactory, readAhead, null);
+	}
+
+	/**
+	 * @param pcap
+	 * @param packetFactory
+	 * @param readAhead
+	 * @param source what the pcap is read from, which is closed once the
+	 *               reader is done or the stream has been closed. Closing the
+	 *               {@link Pcap} itself doesn't close the stream it reads.
+	 */
+	public PacketStream(Pcap pcap, IPktsPacketFactory packetFactory, int readAhead, Closeable source) {
+		queue = new ArrayBlockingQueue<Packet>(readAhead);
+		reader = new Thread(() -> read(pcap, packetFactory, source), "pcap-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	private void read(Pcap pcap, IPktsPacketFactory packetFactory, Closeable source) {
+		try {
+			pcap.loop(packet -> {
+				if (closed) {
+					return false;
+				}
+				try {
+					queue.put(packetFactory.createPacket(packet));
+				} catch (InterruptedException e) {
+					// closed while waiting for the consumer
+					return false;
+				}
+				return !closed;
+			});
+		} catch (Exception e) {
+			logger.error("Failed reading pcap: " + e.getMessage());
+			failure = e;
+		} finally {
+			pcap.close();
+			if (source != null) {
+				try {
+					source.close();
+				} catch (IOException e) {
+					logger.warn("Failed closing pcap: " + e.getMessage());
+				}
+			}
+			packetFactory.resetSequenceCounter();
+			if (!closed) {
+				try {
+					queue.put(END);
+				} catch (InterruptedException e) {
+					// closed while waiting for the consumer
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next != null) {
+			return true;
+		}
+		if (done || closed) {
+			return false;
+		}
+
+		try {
+			Packet packet = queue.take();
+			if (packet == END) {
+				done = true;
+				if (failure != null) {
+					throw new IllegalStateException("Failed reading pcap", failure);
+				}
+				return false;
+			}
+			next = packet;
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	@Override
+	public Packet next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Packet packet = next;
+		next = null;
+		return packet;
+	}
+
+	/**
+	 * Stops the background reader. Any packets not yet consumed are dropped.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		reader.interrupt();
+		queue.clear();
+	}
+}
@@ -0,0 +1,175 @@
+package pcap.master.pkts;
+
+import java.io.IOException;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.packet.Packet;
+import pcap.master.core.PacketSummary;
+
+/**
+ * Fills a {@link PacketSummary} straight from the bytes of the captured frame.
+ *
+ * The headers are read at their fixed offsets instead of letting pkts frame
+ * every layer, so no IP, TCP or UDP packet objects (nor any Strings) are
+ * created. Supports Ethernet (including VLAN tags), Linux cooked (SLL) and raw
+ * IP captures.
+ *
+ * @author egerpaul
+ *
+ */
+public class PacketSummaryExtractor {
+	public static final int LINK_TYPE_ETHERNET = 1;
+	public static final int LINK_TYPE_RAW = 101;
+	public static final int LINK_TYPE_SLL = 113;
+
+	private static final int ETHER_TYPE_IPV4 = 0x0800;
+	private static final int ETHER_TYPE_IPV6 = 0x86DD;
+	private static final int ETHER_TYPE_VLAN = 0x8100;
+	private static final int ETHER_TYPE_QINQ = 0x88A8;
+
+	private final int linkType;
+
+	public PacketSummaryExtractor() {
+		this(LINK_TYPE_ETHERNET);
+	}
+
+	/**
+	 * @param linkType the data link type of the capture, see
+	 *                 {@link io.pkts.frame.PcapGlobalHeader#getDataLinkType()}
+	 */
+	public PacketSummaryExtractor(int linkType) {
+		super();
+		this.linkType = linkType;
+	}
+
+	/**
+	 * @param packet  the packet as handed out by pkts, i.e. the pcap packet
+	 * @param summary is reset and then filled in
+	 * @return false if this isn't an IP packet. The summary then only has the
+	 *         arrival time.
+	 * @throws IOException
+	 */
+	public boolean extract(Packet packet, PacketSummary summary) throws IOException {
+		summary.reset();
+		summary.setArrivalTime(packet.getArrivalTime());
+
+		Buffer frame = packet.getPayload();
+		if (frame == null) {
+			return false;
+		}
+
+		int length = frame.getReadableBytes();
+		int offset;
+		int etherType;
+		switch (linkType) {
+		case LINK_TYPE_RAW:
+			if (length < 1) {
+				return false;
+			}
+			offset = 0;
+			etherType = (frame.getUnsignedByte(0) >> 4) == 6 ? ETHER_TYPE_IPV6 : ETHER_TYPE_IPV4;
+			break;
+		case LINK_TYPE_SLL:
+			if (length < 16) {
+				return false;
+			}
+			offset = 16;
+			etherType = frame.getUnsignedShort(14);
+			break;
+		default:
+			if (length < 14) {
+				return false;
+			}
+			offset = 14;
+			etherType = frame.getUnsignedShort(12);
+			while ((etherType == ETHER_TYPE_VLAN || etherType == ETHER_TYPE_QINQ) && offset + 4 <= length) {
+				etherType = frame.getUnsignedShort(offset + 2);
+				offset += 4;
+			}
+			break;
+		}
+
+		if (etherType == ETHER_TYPE_IPV4) {
+			return extractIPv4(frame, offset, length, summary);
+		}
+		if (etherType == ETHER_TYPE_IPV6) {
+			return extractIPv6(frame, offset, length, summary);
+		}
+		return false;
+	}
+
+	private static boolean extractIPv4(Buffer frame, int offset, int length, PacketSummary summary) {
+		if (offset + 20 > length) {
+			return false;
+		}
+
+		int headerLength = (frame.getUnsignedByte(offset) & 0x0F) * 4;
+		int protocol = frame.getUnsignedByte(offset + 9);
+		summary.setIPv4(frame.getInt(offset + 12), frame.getInt(offset + 16));
+		summary.setProtocol(protocol);
+
+		// only the first fragment has the ports
+		int fragmentOffset = frame.getUnsignedShort(offset + 6) & 0x1FFF;
+		if (fragmentOffset == 0) {
+			extractPorts(frame, offset + headerLength, length, protocol, summary);
+		}
+		return true;
+	}
+
+	private static boolean extractIPv6(Buffer frame, int offset, int length, PacketSummary summary) {
+		if (offset + 40 > length) {
+			return false;
+		}
+
+		summary.setIPv6(getLong(frame, offset + 8), getLong(frame, offset + 16), getLong(frame, offset + 24),
+				getLong(frame, offset + 32));
+
+		int nextHeader = frame.getUnsignedByte(offset + 6);
+		int position = offset + 40;
+
+		// skip the extension headers to find the transport
+		while (position + 8 <= length) {
+			if (nextHeader == 0 || nextHeader == 43 || nextHeader == 60) {
+				// hop-by-hop, routing and destination options
+				int headerLength = (frame.getUnsignedByte(position + 1) + 1) * 8;
+				nextHeader = frame.getUnsignedByte(position);
+				position += headerLength;
+			} else if (nextHeader == 44) {
+				// fragment, only the first one has the ports
+				int fragmentOffset = frame.getUnsignedShort(position + 2) >> 3;
+				nextHeader = frame.getUnsignedByte(position);
+				position += 8;
+				if (fragmentOffset != 0) {
+					summary.setProtocol(nextHeader);
+					return true;
+				}
+			} else if (nextHeader == 51) {
+				// authentication header
+				int headerLength = (frame.getUnsignedByte(position + 1) + 2) * 4;
+				nextHeader = frame.getUnsignedByte(position);
+				position += headerLength;
+			} else {
+				break;
+			}
+		}
+
+		summary.setProtocol(nextHeader);
+		extractPorts(frame, position, length, nextHeader, summary);
+		return true;
+	}
+
+	private static void extractPorts(Buffer frame, int offset, int length, int protocol, PacketSummary summary) {
+		if (protocol != PacketSummary.PROTOCOL_TCP && protocol != PacketSummary.PROTOCOL_UDP
+				&& protocol != PacketSummary.PROTOCOL_SCTP) {
+			return;
+		}
+		if (offset + 4 > length) {
+			return;
+		}
+		summary.setPorts(frame.getUnsignedShort(offset), frame.getUnsignedShort(offset + 2));
+	}
+
+	private static long getLong(Buffer frame, int index) {
+		return ((long) frame.getInt(index) << 32) | (frame.getInt(index + 4) & 0xFFFFFFFFL);
+	}
+}
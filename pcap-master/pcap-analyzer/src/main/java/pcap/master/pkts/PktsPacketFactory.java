@@ -45,9 +45,9 @@ public class PktsPacketFactory implements IPktsPacketFactory {
 	public pcap.master.core.Packet createPacket(Packet packet) throws IOException {
 		try {
 			packetSequence++;
-			// ToDo Until logging confirmed
-			System.out.println("Sequence: " + packetSequence);
-			logger.debug("Sequence: " + packetSequence);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Sequence: " + packetSequence);
+			}
 
 			return getPacketData(packet);
 		} catch (SipParseException ex) {
@@ -2,7 +2,9 @@ package pcap.master.core;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface IPacketFactory {
 
@@ -16,4 +18,33 @@ public interface IPacketFactory {
 	 */
 	void createPackets(List<Packet> packets, String path) throws FileNotFoundException, IOException;
 
-}
\ No newline at end of file
+	/**
+	 * Creates packets by parsing the file as they are being asked for. The file
+	 * is read on a background thread which only reads ahead a bounded number
+	 * of packets, so the memory used doesn't depend on the size of the file.
+	 * 
+	 * The returned iterator is also {@link java.io.Closeable}. Close it if you
+	 * stop iterating before the end to stop the background reader.
+	 * 
+	 * @param path the pcap file path
+	 * @return the packets in the order they appear in the file
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 */
+	Iterator<Packet> streamPackets(String path) throws FileNotFoundException, IOException;
+
+	/**
+	 * Goes through the file and hands a {@link PacketSummary} of each packet
+	 * to the consumer. This is the cheap alternative to
+	 * {@link #streamPackets(String)}: the same summary instance is reused for
+	 * every packet and nothing is formatted unless the consumer asks for it, so
+	 * the consumer must copy whatever it wants to keep.
+	 * 
+	 * @param path the pcap file path
+	 * @param consumer called for every packet, on the calling thread
+	 * @throws FileNotFoundException
+	 * @throws IOException
+	 */
+	void summarizePackets(String path, Consumer<PacketSummary> consumer) throws FileNotFoundException, IOException;
+
+}
@@ -0,0 +1,63 @@
+package pcap.master.decorator.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import pcap.master.core.ISocketDecorator;
+import pcap.master.core.SocketDetails;
+import pcap.master.decorator.AsyncDecorator;
+
+public class AsyncDecoratorTest {
+
+	private static class SlowDecorator implements ISocketDecorator {
+		@Override
+		public void decorateHostname(SocketDetails socketDetails) throws Exception {
+			Thread.sleep(200);
+			socketDetails.setHostName("host");
+		}
+
+		@Override
+		public void decorateGeoInfo(SocketDetails socketDetails) throws Exception {
+			Thread.sleep(200);
+		}
+
+		@Override
+		public void decorateTraceroute(SocketDetails socketDetails) throws Exception {
+			Thread.sleep(10000);
+		}
+	}
+
+	@Test
+	public void DecorationsRunConcurrently() throws Exception {
+		try (AsyncDecorator decorator = new AsyncDecorator(new SlowDecorator())) {
+			SocketDetails source = new SocketDetails();
+			SocketDetails destination = new SocketDetails();
+
+			long start = System.currentTimeMillis();
+			CompletableFuture.allOf(
+					decorator.decorateHostname(source), decorator.decorateHostname(destination),
+					decorator.decorateGeoInfo(source), decorator.decorateGeoInfo(destination)).get();
+
+			assertTrue(System.currentTimeMillis() - start < 700);
+			assertEquals("host", source.getHostName());
+			assertEquals("host", destination.getHostName());
+		}
+	}
+
+	@Test
+	public void SlowDecorationTimesOut() throws Exception {
+		try (AsyncDecorator decorator = new AsyncDecorator(new SlowDecorator(), 1, 1000, 1, 1000, 1, 100, 10)) {
+			decorator.decorateTraceroute(new SocketDetails()).get();
+			fail("Expected the traceroute to time out");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package pcap.master.decorator.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import pcap.master.core.SocketDetails;
+import pcap.master.decorator.DecorationCache;
+
+public class DecorationCacheTest {
+
+	private static SocketDetails socket(String ipAddress) {
+		SocketDetails socketDetails = new SocketDetails();
+		socketDetails.setIpAddress(ipAddress);
+		return socketDetails;
+	}
+
+	@Test
+	public void HitCopiesDecoration() throws Exception {
+		AtomicInteger lookups = new AtomicInteger();
+		DecorationCache cache = new DecorationCache("hostname", s -> {
+			lookups.incrementAndGet();
+			s.setHostName("host-" + s.getIpAddress());
+		}, (from, to) -> to.setHostName(from.getHostName()), 1, TimeUnit.HOURS, 10);
+
+		cache.decorate(socket("10.0.0.1"));
+		SocketDetails second = socket("10.0.0.1");
+		cache.decorate(second);
+
+		assertEquals("host-10.0.0.1", second.getHostName());
+		assertEquals(1, lookups.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void EvictsWhenFull() throws Exception {
+		DecorationCache cache = new DecorationCache("hostname", s -> s.setHostName("x"),
+				(from, to) -> to.setHostName(from.getHostName()), 1, TimeUnit.HOURS, 2);
+
+		for (int i = 0; i < 10; ++i) {
+			cache.decorate(socket("10.0.0." + i));
+		}
+
+		assertEquals(2, cache.size());
+		assertEquals(8, cache.getEvictions());
+	}
+
+	@Test
+	public void ExpiredEntriesAreLookedUpAgain() throws Exception {
+		AtomicInteger lookups = new AtomicInteger();
+		DecorationCache cache = new DecorationCache("hostname", s -> lookups.incrementAndGet(),
+				(from, to) -> to.setHostName(from.getHostName()), 0, TimeUnit.MILLISECONDS, 10);
+
+		cache.decorate(socket("10.0.0.1"));
+		Thread.sleep(1);
+		cache.decorate(socket("10.0.0.1"));
+
+		assertEquals(2, lookups.get());
+		assertEquals(1, cache.getExpirations());
+	}
+
+	@Test
+	public void RefreshesKeepTheClockBounded() throws Exception {
+		DecorationCache cache = new DecorationCache("hostname", s -> s.setHostName("x"),
+				(from, to) -> to.setHostName(from.getHostName()), 0, TimeUnit.NANOSECONDS, 10);
+
+		for (int i = 0; i < 10000; ++i) {
+			cache.decorate(socket("10.0.0." + i % 3));
+			assertTrue("clock size " + cache.getClockSize(), cache.getClockSize() <= 20);
+		}
+
+		assertTrue(cache.getExpirations() > 1000);
+		assertEquals(3, cache.size());
+	}
+}
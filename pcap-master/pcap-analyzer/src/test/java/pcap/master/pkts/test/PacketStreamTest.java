@@ -0,0 +1,196 @@
+package pcap.master.pkts.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.pkts.Pcap;
+import io.pkts.framer.FramingException;
+import pcap.master.core.Packet;
+import pcap.master.pkts.IPktsPacketFactory;
+import pcap.master.pkts.PacketStream;
+
+public class PacketStreamTest {
+
+	private static final byte[] FRAME = bytes(
+			// ethernet
+			"000000000002 000000000001 0800",
+			// ipv4, udp, 10.0.0.1 -> 192.168.1.2
+			"4500002c 00000000 4011 0000 0a000001 c0a80102",
+			// udp 5060 -> 5080
+			"13c4 13d8 0018 0000",
+			"0000000000000000 0000000000000000");
+
+	private static final int RECORD_LENGTH = 16 + FRAME.length;
+
+	/**
+	 * Remembers the second the packet arrived as its protocol, and can be told
+	 * to fail on a given packet.
+	 */
+	private static class TestPacketFactory implements IPktsPacketFactory {
+		private final int failOn;
+		private final AtomicInteger created = new AtomicInteger();
+		private final CountDownLatch reset = new CountDownLatch(1);
+
+		private TestPacketFactory(int failOn) {
+			this.failOn = failOn;
+		}
+
+		@Override
+		public Packet createPacket(io.pkts.packet.Packet packet) throws IOException {
+			if (created.incrementAndGet() == failOn) {
+				throw new IOException("Unable to create packet " + failOn);
+			}
+			Packet created = new Packet();
+			created.setProtocol(String.valueOf(packet.getArrivalTime() / 1000000));
+			return created;
+		}
+
+		@Override
+		public void resetSequenceCounter() {
+			reset.countDown();
+		}
+	}
+
+	/**
+	 * Knows whether it has been closed.
+	 */
+	private static class TestInputStream extends ByteArrayInputStream {
+		private final CountDownLatch closed = new CountDownLatch(1);
+
+		private TestInputStream(byte[] pcap) {
+			super(pcap);
+		}
+
+		@Override
+		public void close() {
+			closed.countDown();
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void PacketsInOrder() throws Exception {
+		TestPacketFactory packetFactory = new TestPacketFactory(-1);
+		TestInputStream in = new TestInputStream(pcap(100));
+		PacketStream stream = new PacketStream(Pcap.openStream(in), packetFactory, 4, in);
+
+		for (int i = 0; i < 100; ++i) {
+			assertTrue(stream.hasNext());
+			assertEquals(String.valueOf(i), stream.next().getProtocol());
+		}
+		assertFalse(stream.hasNext());
+
+		assertTrue(in.closed.await(5, TimeUnit.SECONDS));
+		assertTrue(packetFactory.reset.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test(timeout = 10000)
+	public void CloseStopsReader() throws Exception {
+		TestPacketFactory packetFactory = new TestPacketFactory(-1);
+		TestInputStream in = new TestInputStream(pcap(1000));
+		PacketStream stream = new PacketStream(Pcap.openStream(in), packetFactory, 2, in);
+
+		assertEquals("0", stream.next().getProtocol());
+		stream.close();
+		assertFalse(stream.hasNext());
+
+		assertTrue(in.closed.await(5, TimeUnit.SECONDS));
+		assertTrue(packetFactory.reset.await(5, TimeUnit.SECONDS));
+		assertTrue(packetFactory.created.get() < 1000);
+	}
+
+	@Test(timeout = 10000)
+	public void PacketFailureIsHandedOver() throws Exception {
+		TestPacketFactory packetFactory = new TestPacketFactory(3);
+		TestInputStream in = new TestInputStream(pcap(10));
+		PacketStream stream = new PacketStream(Pcap.openStream(in), packetFactory, 4, in);
+
+		assertEquals("0", stream.next().getProtocol());
+		assertEquals("1", stream.next().getProtocol());
+		try {
+			stream.hasNext();
+			fail("Expected the failure to be handed over");
+		} catch (IllegalStateException e) {
+			assertEquals("Unable to create packet 3", e.getCause().getMessage());
+		}
+		assertTrue(in.closed.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test(timeout = 10000)
+	public void CorruptRecordIsHandedOver() throws Exception {
+		byte[] pcap = pcap(10);
+		// captured length of the third record
+		pcap[24 + 2 * RECORD_LENGTH + 11] = (byte) 0x80;
+		assertFailureIsHandedOver(pcap, FramingException.class);
+	}
+
+	@Test(timeout = 10000)
+	public void TruncatedPcapIsHandedOver() throws Exception {
+		byte[] pcap = pcap(10);
+		// half way through the third record
+		pcap = Arrays.copyOf(pcap, 24 + 2 * RECORD_LENGTH + RECORD_LENGTH / 2);
+		assertFailureIsHandedOver(pcap, IndexOutOfBoundsException.class);
+	}
+
+	private static void assertFailureIsHandedOver(byte[] pcap, Class<? extends Exception> failure) throws Exception {
+		TestPacketFactory packetFactory = new TestPacketFactory(-1);
+		TestInputStream in = new TestInputStream(pcap);
+		PacketStream stream = new PacketStream(Pcap.openStream(in), packetFactory, 4, in);
+
+		assertEquals("0", stream.next().getProtocol());
+		assertEquals("1", stream.next().getProtocol());
+		try {
+			stream.hasNext();
+			fail("Expected the failure to be handed over");
+		} catch (IllegalStateException e) {
+			assertSame(failure, e.getCause().getClass());
+		}
+		assertTrue(in.closed.await(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * A pcap with the given number of UDP packets, one per second.
+	 */
+	private static byte[] pcap(int packets) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// little endian global header, ethernet
+		out.write(new byte[] { (byte) 0xd4, (byte) 0xc3, (byte) 0xb2, (byte) 0xa1, 2, 0, 4, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+				(byte) 0xff, (byte) 0xff, 0, 0, 1, 0, 0, 0 }, 0, 24);
+		for (int i = 0; i < packets; ++i) {
+			writeIntLE(out, i);
+			writeIntLE(out, 0);
+			writeIntLE(out, FRAME.length);
+			writeIntLE(out, FRAME.length);
+			out.write(FRAME, 0, FRAME.length);
+		}
+		return out.toByteArray();
+	}
+
+	private static void writeIntLE(ByteArrayOutputStream out, int value) {
+		out.write(value);
+		out.write(value >>> 8);
+		out.write(value >>> 16);
+		out.write(value >>> 24);
+	}
+
+	private static byte[] bytes(String... hex) {
+		String all = String.join("", hex).replace(" ", "");
+		byte[] bytes = new byte[all.length() / 2];
+		for (int i = 0; i < bytes.length; ++i) {
+			bytes[i] = (byte) Integer.parseInt(all.substring(i * 2, i * 2 + 2), 16);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,164 @@
+package pcap.master.pkts.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.pkts.PacketHandler;
+import io.pkts.Pcap;
+import pcap.master.core.PacketSummary;
+import pcap.master.pkts.PacketFactory;
+import pcap.master.pkts.PacketSummaryExtractor;
+import pcap.master.pkts.PktsPacketFactory;
+
+public class PacketSummaryTest {
+	private static final int PACKETS = 20000;
+
+	private File pcapFile;
+
+	@Before
+	public void setUp() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		// little endian global header, ethernet
+		out.write(new byte[] { (byte) 0xd4, (byte) 0xc3, (byte) 0xb2, (byte) 0xa1, 2, 0, 4, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+				(byte) 0xff, (byte) 0xff, 0, 0, 1, 0, 0, 0 });
+		for (int i = 0; i < PACKETS; ++i) {
+			writeRecord(out, i % 2 == 0 ? udpOverIPv4() : tcpOverIPv6(), i);
+		}
+
+		pcapFile = File.createTempFile("summary", ".pcap");
+		Files.write(pcapFile.toPath(), out.toByteArray());
+	}
+
+	@After
+	public void tearDown() {
+		pcapFile.delete();
+	}
+
+	@Test
+	public void SummariesFromRawHeaders() throws IOException {
+		List<String> seen = new ArrayList<String>();
+		new PacketFactory(new PktsPacketFactory()).summarizePackets(pcapFile.getAbsolutePath(), summary -> {
+			if (seen.size() < 2) {
+				seen.add(summary.getIpVersion() + " " + summary.getProtocolName() + " " + summary.getSourceAddress() + ":"
+						+ summary.getSourcePort() + " " + summary.getDestinationAddress() + ":"
+						+ summary.getDestinationPort());
+			}
+		});
+
+		assertEquals("4 UDP 10.0.0.1:5060 192.168.1.2:5080", seen.get(0));
+		assertEquals("6 TCP 2001:db8:0:0:0:0:0:1:443 2001:db8:0:0:0:0:0:2:51000", seen.get(1));
+	}
+
+	/**
+	 * Not a real benchmark, but checks that we allocate less per packet than
+	 * creating a {@link pcap.master.core.Packet} does. Both include
+	 * what pkts itself allocates to read the pcap records.
+	 */
+	@Test
+	public void AllocationsPerPacket() throws Exception {
+		PktsPacketFactory packetFactory = new PktsPacketFactory();
+		PacketSummaryExtractor extractor = new PacketSummaryExtractor();
+		PacketSummary summary = new PacketSummary();
+
+		// warm up
+		loop(packet -> packetFactory.createPacket(packet));
+		loop(packet -> extractor.extract(packet, summary));
+
+		long packetBytes = allocatedBytes(() -> loop(packet -> packetFactory.createPacket(packet))) / PACKETS;
+		long summaryBytes = allocatedBytes(() -> loop(packet -> extractor.extract(packet, summary))) / PACKETS;
+
+		assertTrue("Bytes allocated per packet, Packet: " + packetBytes + " PacketSummary: " + summaryBytes,
+				summaryBytes < packetBytes);
+	}
+
+	private interface PacketAction {
+		void accept(io.pkts.packet.Packet packet) throws IOException;
+	}
+
+	private interface Action {
+		void run() throws Exception;
+	}
+
+	private void loop(PacketAction action) throws IOException {
+		AtomicInteger count = new AtomicInteger();
+		Pcap pcap = Pcap.openStream(pcapFile);
+		pcap.loop(new PacketHandler() {
+			@Override
+			public boolean nextPacket(io.pkts.packet.Packet packet) throws IOException {
+				action.accept(packet);
+				count.incrementAndGet();
+				return true;
+			}
+		});
+		pcap.close();
+		assertEquals(PACKETS, count.get());
+	}
+
+	private static long allocatedBytes(Action action) throws Exception {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(threadId);
+		action.run();
+		return threads.getThreadAllocatedBytes(threadId) - before;
+	}
+
+	private static void writeRecord(ByteArrayOutputStream out, byte[] frame, int second) {
+		writeIntLE(out, second);
+		writeIntLE(out, 0);
+		writeIntLE(out, frame.length);
+		writeIntLE(out, frame.length);
+		out.write(frame, 0, frame.length);
+	}
+
+	private static void writeIntLE(ByteArrayOutputStream out, int value) {
+		out.write(value);
+		out.write(value >>> 8);
+		out.write(value >>> 16);
+		out.write(value >>> 24);
+	}
+
+	private static byte[] udpOverIPv4() {
+		return bytes(
+				// ethernet
+				"000000000002 000000000001 0800",
+				// ipv4, udp, 10.0.0.1 -> 192.168.1.2
+				"4500002c 00000000 4011 0000 0a000001 c0a80102",
+				// udp 5060 -> 5080
+				"13c4 13d8 0018 0000",
+				"0000000000000000 0000000000000000");
+	}
+
+	private static byte[] tcpOverIPv6() {
+		return bytes(
+				// ethernet
+				"000000000002 000000000001 86dd",
+				// ipv6, tcp, 2001:db8::1 -> 2001:db8::2
+				"60000000 0014 06 40",
+				"20010db8000000000000000000000001",
+				"20010db8000000000000000000000002",
+				// tcp 443 -> 51000
+				"01bb c738 00000000 00000000 5000 ffff 0000 0000");
+	}
+
+	private static byte[] bytes(String... hex) {
+		String all = String.join("", hex).replace(" ", "");
+		byte[] bytes = new byte[all.length() / 2];
+		for (int i = 0; i < bytes.length; ++i) {
+			bytes[i] = (byte) Integer.parseInt(all.substring(i * 2, i * 2 + 2), 16);
+		}
+		return bytes;
+	}
+}
@@ -207,4 +207,51 @@ public abstract class AbstractBuffer extends BaseBuffer {
     @Override
     public abstract int hashCode();
 
+    /**
+     * Compare the readable bytes of two buffers of (possibly) different types
+     * one byte at a time. Case is ignored, if asked to, in the same way as
+     * {@link ByteBuffer#equalsIgnoreCase(Object)} does, i.e. only for 7-bit
+     * ASCII letters.
+     *
+     * This is slower than what each implementation can do on its own
+     * underlying storage but it allows e.g. a {@link ByteBuffer} and a
+     * {@link NioBuffer} containing the same bytes to be equal.
+     */
+    protected static boolean bytesEquals(final boolean ignoreCase, final Buffer a, final Object other) {
+        if (a == other) {
+            return true;
+        }
+
+        if (!(other instanceof Buffer)) {
+            return false;
+        }
+
+        final Buffer b = (Buffer) other;
+        final int length = a.getReadableBytes();
+        if (length != b.getReadableBytes()) {
+            return false;
+        }
+
+        try {
+            final int aOffset = a.getReaderIndex();
+            final int bOffset = b.getReaderIndex();
+            for (int i = 0; i < length; ++i) {
+                final byte a1 = a.getByte(aOffset + i);
+                final byte b1 = b.getByte(bOffset + i);
+                if (a1 != b1) {
+                    if (ignoreCase &&
+                        ((a1 >= 'A' && a1 <= 'Z') || (a1 >= 'a' && a1 <= 'z')) &&
+                        ((b1 >= 'A' && b1 <= 'Z') || (b1 >= 'a' && b1 <= 'z')) &&
+                        (a1 & 0x1f) == (b1 & 0x1f)) {
+                        continue;
+                    }
+                    return false;
+                }
+            }
+            return true;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
 }
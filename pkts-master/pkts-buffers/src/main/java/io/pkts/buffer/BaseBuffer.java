@@ -54,6 +54,25 @@ public abstract class BaseBuffer implements Buffer {
         return getReadableBytes() >= length;
     }
 
+    /**
+     * Buffers that are backed by a plain byte-array can return it here, which
+     * allows the various search methods to scan the array directly (see
+     * {@link ByteScanner}) instead of reading one byte at a time.
+     *
+     * @return the backing array or null if there isn't one.
+     */
+    protected byte[] scannableArray() {
+        return null;
+    }
+
+    /**
+     * @return the index within the {@link #scannableArray()} of index zero of
+     *         this buffer.
+     */
+    protected int scannableOffset() {
+        return 0;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -108,6 +127,15 @@ public abstract class BaseBuffer implements Buffer {
             throw new IllegalArgumentException("No bytes specified. Not sure what you want me to look for");
         }
 
+        final byte[] array = scannableArray();
+        if (array != null && maxBytes > 0) {
+            final int offset = scannableOffset();
+            final int from = offset + getReaderIndex();
+            final int to = from + Math.min(maxBytes, getReadableBytes());
+            final int index = ByteScanner.indexOf(array, from, to, bytes);
+            return index == -1 ? -1 : index - offset;
+        }
+
         final int start = getReaderIndex();
         int index = -1;
 
@@ -139,6 +167,11 @@ public abstract class BaseBuffer implements Buffer {
      */
     @Override
     public final Buffer readLine() throws IOException {
+        final byte[] array = scannableArray();
+        if (array != null) {
+            return readLine(array, scannableOffset());
+        }
+
         final int start = getReaderIndex();
         boolean foundCR = false;
         while (hasReadableBytes()) {
@@ -171,6 +204,11 @@ public abstract class BaseBuffer implements Buffer {
      */
     @Override
     public final Buffer readUntilSingleCRLF() throws IOException {
+        final byte[] array = scannableArray();
+        if (array != null) {
+            return readUntilCRLF(array, scannableOffset(), false);
+        }
+
         final int start = getReaderIndex();
         int found = 0;
         while (found < 2 && hasReadableBytes()) {
@@ -193,6 +231,11 @@ public abstract class BaseBuffer implements Buffer {
 
     @Override
     public final Buffer readUntilDoubleCRLF() throws IOException {
+        final byte[] array = scannableArray();
+        if (array != null) {
+            return readUntilCRLF(array, scannableOffset(), true);
+        }
+
         final int start = getReaderIndex();
         int found = 0;
         while (found < 4 && hasReadableBytes()) {
@@ -213,6 +256,81 @@ public abstract class BaseBuffer implements Buffer {
         }
     }
 
+    /**
+     * Same as {@link #readLine()} but scanning the backing array directly.
+     * Note that we behave exactly like the byte-by-byte version, which e.g.
+     * means that a CR that is the very last byte is part of the line and that
+     * any CRs directly before the LF, but the last one, are too.
+     */
+    private Buffer readLine(final byte[] array, final int offset) throws IOException {
+        final int start = getReaderIndex();
+        final int end = offset + start + getReadableBytes();
+        final int i = ByteScanner.indexOf(array, offset + start, end, CR, LF);
+
+        if (i == -1) {
+            if (start == end - offset) {
+                return null;
+            }
+            setReaderIndex(end - offset);
+            return slice(start, end - offset);
+        }
+
+        if (array[i] == LF) {
+            setReaderIndex(i + 1 - offset);
+            return slice(start, i - offset);
+        }
+
+        int j = i + 1;
+        while (j < end && array[j] == CR) {
+            ++j;
+        }
+
+        if (j == end) {
+            setReaderIndex(end - offset);
+            return slice(start, end - offset);
+        }
+
+        setReaderIndex(array[j] == LF ? j + 1 - offset : j - offset);
+        return slice(start, j - 1 - offset);
+    }
+
+    /**
+     * Same as {@link #readUntilSingleCRLF()} and {@link #readUntilDoubleCRLF()}
+     * but scanning the backing array directly for the CR and then checking
+     * the bytes following it. Just like the byte-by-byte versions, a byte that
+     * breaks the sequence is never the start of a new one.
+     */
+    private Buffer readUntilCRLF(final byte[] array, final int offset, final boolean isDouble) throws IOException {
+        final int start = getReaderIndex();
+        final int end = offset + start + getReadableBytes();
+        final int length = isDouble ? 4 : 2;
+
+        int from = offset + start;
+        while (true) {
+            final int i = ByteScanner.indexOf(array, from, end, CR);
+            if (i == -1) {
+                return null;
+            }
+
+            int matched = 1;
+            while (matched < length && i + matched < end
+                    && array[i + matched] == ((matched & 1) == 0 ? CR : LF)) {
+                ++matched;
+            }
+
+            if (matched == length) {
+                setReaderIndex(i + length - offset);
+                return slice(start, i - offset);
+            }
+
+            if (i + matched >= end) {
+                return null;
+            }
+
+            from = i + matched + 1;
+        }
+    }
+
     @Override
     public final int parseToInt() throws NumberFormatException, IOException {
         return parseToInt(10);
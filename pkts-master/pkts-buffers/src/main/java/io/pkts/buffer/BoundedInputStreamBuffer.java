@@ -34,6 +34,12 @@ public class BoundedInputStreamBuffer extends BaseBuffer {
 
     final int localCapacity;
 
+    /**
+     * Where the memory for the copies handed out by {@link #readBytes(int)}
+     * comes from.
+     */
+    private final BufferAllocator allocator;
+
     public BoundedInputStreamBuffer(final InputStream is) {
         this(DEFAULT_CAPACITY, is);
     }
@@ -47,8 +53,19 @@ public class BoundedInputStreamBuffer extends BaseBuffer {
      * @param is
      */
     public BoundedInputStreamBuffer(final int bufferCapacity, final InputStream is) {
+        this(bufferCapacity, is, BufferAllocator.HEAP);
+    }
+
+    /**
+     * @param bufferCapacity see {@link #BoundedInputStreamBuffer(int, InputStream)}
+     * @param is
+     * @param allocator the allocator for the buffers returned by {@link #readBytes(int)}.
+     */
+    public BoundedInputStreamBuffer(final int bufferCapacity, final InputStream is, final BufferAllocator allocator) {
         assert is != null;
+        assert allocator != null;
         this.is = is;
+        this.allocator = allocator;
         this.localCapacity = bufferCapacity;
         buffer = new byte[bufferCapacity];
     }
@@ -142,7 +159,8 @@ public class BoundedInputStreamBuffer extends BaseBuffer {
         // perhaps we should create a composite buffer instead of this
         // copying???
         int index = 0;
-        final byte[] buf = new byte[length];
+        final Buffer result = this.allocator.allocate(length);
+        final byte[] buf = result.getRawArray();
         while (index < length) {
             final int spaceLeft = getAvailableLocalReadingSpace();
             final int readAtMost = Math.min(length - index, spaceLeft);
@@ -152,7 +170,7 @@ public class BoundedInputStreamBuffer extends BaseBuffer {
             this.readerIndex += readAtMost;
             index += readAtMost;
         }
-        return Buffers.wrap(buf);
+        return result;
 
     }
 
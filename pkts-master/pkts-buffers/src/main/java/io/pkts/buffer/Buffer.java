@@ -147,6 +147,23 @@ public interface Buffer extends Cloneable {
         return getArray();
     }
 
+    /**
+     * The readable bytes of this buffer as one or more
+     * {@link java.nio.ByteBuffer}s, which are views straight into the memory
+     * of this buffer whenever possible. Use these when writing the buffer to a
+     * {@link java.nio.channels.GatheringByteChannel} (or an
+     * {@link java.io.OutputStream}) to avoid copying the bytes first.
+     * 
+     * The views are independent of this buffer, i.e., the reader index of
+     * this buffer is left untouched and moving the position of a view doesn't
+     * affect this buffer. Changing the content of a view is not allowed.
+     * 
+     * @return
+     */
+    default java.nio.ByteBuffer[] toByteBuffers() {
+        return new java.nio.ByteBuffer[] { java.nio.ByteBuffer.wrap(getArray()) };
+    }
+
     /**
      * Same as {@link #readUntil(4096, 'b')}
      *
@@ -460,6 +477,34 @@ public interface Buffer extends Cloneable {
      */
     Buffer clone();
 
+    /**
+     * Increase the reference count of this buffer, see {@link #release()}.
+     * Only buffers handed out by a pooling {@link BufferAllocator} are
+     * reference counted, for all others this is a no-op.
+     *
+     * @return this buffer
+     */
+    default Buffer retain() {
+        return this;
+    }
+
+    /**
+     * Decrease the reference count of this buffer and if it reaches zero, hand
+     * the memory back to the {@link BufferAllocator} it came from. Every
+     * buffer sliced out of this buffer shares the same memory and reference
+     * count, so none of them may be used after that.
+     *
+     * Only buffers handed out by a pooling {@link BufferAllocator} are
+     * reference counted, for all others this is a no-op.
+     *
+     * @return true if the memory was handed back to the allocator
+     * @throws IllegalStateException
+     *             in case the buffer already has been released
+     */
+    default boolean release() {
+        return false;
+    }
+
     /**
      * Set the byte at given index to a new value
      * 
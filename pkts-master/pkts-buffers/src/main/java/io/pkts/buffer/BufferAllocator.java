@@ -0,0 +1,35 @@
+package io.pkts.buffer;
+
+/**
+ * Whenever a buffer reading off of a stream (such as the
+ * {@link InputStreamBuffer}) has to hand out a copy of the bytes, e.g. through
+ * {@link Buffer#readBytes(int)}, the memory for that copy is obtained from a
+ * {@link BufferAllocator}.
+ *
+ * By default every copy is simply a new byte-array ({@link #HEAP}) but for
+ * applications that process a lot of packets without holding on to them, the
+ * {@link PooledBufferAllocator} can be used instead, in which case the buffers
+ * must be {@link Buffer#release() released} when no longer needed.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public interface BufferAllocator {
+
+    /**
+     * Allocates a new byte-array for every buffer. Buffers allocated this way
+     * do not need to be released.
+     */
+    BufferAllocator HEAP = length -> Buffers.wrap(new byte[length]);
+
+    /**
+     * Allocate a new buffer with exactly <code>length</code> readable bytes.
+     * The content of those bytes is undefined and it is up to the caller to
+     * fill them in, which is done straight into the backing array. The
+     * readable bytes of the returned buffer start at index zero of
+     * {@link Buffer#getRawArray()}.
+     *
+     * @param length
+     * @return
+     */
+    Buffer allocate(int length);
+}
@@ -5,6 +5,8 @@ package io.pkts.buffer;
 
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author jonas@jonasborjesson.com
@@ -88,6 +90,25 @@ public final class Buffers {
         return new BoundedInputStreamBuffer(is);
     }
 
+    /**
+     * Wrap the input stream in a buffer that only hangs on to the bytes that
+     * haven't been read yet. Unlike {@link #wrap(InputStream)}, which has a
+     * fixed capacity, there is no upper limit to how much can be read at a
+     * time and still the memory held stays constant no matter how much is
+     * read off of the stream. See
+     * {@link InputStreamBuffer#InputStreamBuffer(int, InputStream, boolean)}.
+     * 
+     * @param is
+     * @return
+     */
+    public static Buffer wrapStreaming(final InputStream is) {
+        if (is == null) {
+            throw new IllegalArgumentException("the input stream cannot be null or empty");
+        }
+
+        return new InputStreamBuffer(4096, is, true);
+    }
+
     /**
      * Create a new Buffer
      * 
@@ -157,6 +178,45 @@ public final class Buffers {
         return composite;
     }
 
+    /**
+     * Combine a number of buffers into one without copying any of them, see
+     * {@link CompositeBuffer}. Unlike {@link #wrap(Buffer, Buffer)}, which
+     * copies the bytes, this is meant for when the result is going to be
+     * written somewhere rather than read, e.g. when putting the headers of a
+     * packet in front of its payload before writing it to a pcap.
+     * 
+     * Only the readable bytes of each buffer are used and the buffers must
+     * not be changed while the result is in use.
+     * 
+     * @param buffers
+     *            the buffers, any of which may be null or empty.
+     * @return
+     */
+    public static Buffer gather(final Buffer... buffers) {
+        final List<Buffer> parts = new ArrayList<>(buffers.length + 2);
+        for (final Buffer buffer : buffers) {
+            if (buffer == null || !buffer.hasReadableBytes()) {
+                continue;
+            }
+
+            if (buffer instanceof CompositeBuffer && ((CompositeBuffer) buffer).isIntact()) {
+                // keep it flat
+                for (final Buffer part : ((CompositeBuffer) buffer).getParts()) {
+                    parts.add(part);
+                }
+            } else {
+                parts.add(buffer.slice());
+            }
+        }
+
+        if (parts.isEmpty()) {
+            return Buffers.EMPTY_BUFFER;
+        } else if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        return new CompositeBuffer(parts.toArray(new Buffer[parts.size()]));
+    }
+
     /**
      * Wrap the supplied byte array specifying the allowed range of visible
      * bytes.
@@ -21,6 +21,13 @@ public final class ByteBuffer extends AbstractBuffer {
      */
     protected final byte[] buffer;
 
+    /**
+     * Only set if the array came from a {@link PooledBufferAllocator}, in
+     * which case this buffer, and every buffer sliced out of it, is reference
+     * counted.
+     */
+    private final PooledArray pooled;
+
     /**
      * 
      */
@@ -34,9 +41,15 @@ public final class ByteBuffer extends AbstractBuffer {
 
     protected ByteBuffer(final int readerIndex, final int lowerBoundary, final int upperBoundary,
             final int writerIndex, final byte[] buffer) {
+        this(readerIndex, lowerBoundary, upperBoundary, writerIndex, buffer, null);
+    }
+
+    ByteBuffer(final int readerIndex, final int lowerBoundary, final int upperBoundary,
+            final int writerIndex, final byte[] buffer, final PooledArray pooled) {
         super(readerIndex, lowerBoundary, upperBoundary, writerIndex);
         assert buffer != null;
         this.buffer = buffer;
+        this.pooled = pooled;
     }
 
     /**
@@ -51,7 +64,7 @@ public final class ByteBuffer extends AbstractBuffer {
         checkIndex(this.lowerBoundary + stop - 1);
         final int upperBoundary = this.lowerBoundary + stop;
         final int writerIndex = upperBoundary;
-        return new ByteBuffer(0, this.lowerBoundary + start, upperBoundary, writerIndex, this.buffer);
+        return new ByteBuffer(0, this.lowerBoundary + start, upperBoundary, writerIndex, this.buffer, this.pooled);
     }
 
     /**
@@ -68,7 +81,7 @@ public final class ByteBuffer extends AbstractBuffer {
         this.readerIndex += length;
         final int upperBoundary = this.readerIndex + this.lowerBoundary;
         final int writerIndex = upperBoundary;
-        return new ByteBuffer(0, lowerBoundary, upperBoundary, writerIndex, this.buffer);
+        return new ByteBuffer(0, lowerBoundary, upperBoundary, writerIndex, this.buffer, this.pooled);
     }
 
     /**
@@ -129,6 +142,45 @@ public final class ByteBuffer extends AbstractBuffer {
         return this.buffer;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public java.nio.ByteBuffer[] toByteBuffers() {
+        final java.nio.ByteBuffer view = java.nio.ByteBuffer.wrap(this.buffer, this.lowerBoundary + this.readerIndex,
+                getReadableBytes());
+        return new java.nio.ByteBuffer[] { view.slice() };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer retain() {
+        if (this.pooled != null) {
+            this.pooled.retain();
+        }
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean release() {
+        return this.pooled != null && this.pooled.release();
+    }
+
+    @Override
+    protected byte[] scannableArray() {
+        return this.buffer;
+    }
+
+    @Override
+    protected int scannableOffset() {
+        return this.lowerBoundary;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -287,6 +339,9 @@ public final class ByteBuffer extends AbstractBuffer {
             if (this == other) {
                 return true;
             }
+            if (other instanceof NioBuffer) {
+                return bytesEquals(ignoreCase, this, other);
+            }
             final ByteBuffer b = (ByteBuffer) other;
             if (getReadableBytes() != b.getReadableBytes()) {
                 return false;
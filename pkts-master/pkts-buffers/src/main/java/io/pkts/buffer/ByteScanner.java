@@ -0,0 +1,121 @@
+package io.pkts.buffer;
+
+/**
+ * Helper methods for searching a byte-array for a particular byte (or one of
+ * two bytes) eight bytes at a time ("SIMD within a register").
+ *
+ * Eight bytes are assembled into a long, XOR:ed with the byte we are looking
+ * for repeated eight times, which turns every matching byte into a zero byte.
+ * The zero bytes are then found with the classic
+ * <code>(x - 0x01..01) &amp; ~x &amp; 0x80..80</code> trick, which is exact for
+ * the first (lowest) zero byte, and that is all we care about.
+ *
+ * All indices are indices into the array and the <code>to</code> index is
+ * exclusive.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+final class ByteScanner {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private ByteScanner() {
+        // left empty intentionally
+    }
+
+    /**
+     * @return the index of the first occurrence of the byte or -1 if not found.
+     */
+    static int indexOf(final byte[] array, final int from, final int to, final byte b) {
+        final long pattern = broadcast(b);
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            final long match = zeroBytes(readLong(array, i) ^ pattern);
+            if (match != 0) {
+                return i + (Long.numberOfTrailingZeros(match) >>> 3);
+            }
+        }
+
+        for (; i < to; ++i) {
+            if (array[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first occurrence of any of the two bytes or -1
+     *         if neither one is found.
+     */
+    static int indexOf(final byte[] array, final int from, final int to, final byte a, final byte b) {
+        final long patternA = broadcast(a);
+        final long patternB = broadcast(b);
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            final long word = readLong(array, i);
+            final long match = zeroBytes(word ^ patternA) | zeroBytes(word ^ patternB);
+            if (match != 0) {
+                return i + (Long.numberOfTrailingZeros(match) >>> 3);
+            }
+        }
+
+        for (; i < to; ++i) {
+            if (array[i] == a || array[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first occurrence of any of the bytes or -1 if
+     *         none of them is found.
+     */
+    static int indexOf(final byte[] array, final int from, final int to, final byte[] bytes) {
+        if (bytes.length == 1) {
+            return indexOf(array, from, to, bytes[0]);
+        }
+
+        if (bytes.length == 2) {
+            return indexOf(array, from, to, bytes[0], bytes[1]);
+        }
+
+        for (int i = from; i < to; ++i) {
+            if (BaseBuffer.isByteInArray(array[i], bytes)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long broadcast(final byte b) {
+        return (b & 0xFFL) * ONES;
+    }
+
+    /**
+     * @return a long with the high bit set in the lowest zero byte of the
+     *         given word (and possibly in some of the bytes above it, which is
+     *         why only the lowest one can be trusted), or zero if there is no
+     *         zero byte at all.
+     */
+    private static long zeroBytes(final long word) {
+        return (word - ONES) & ~word & HIGHS;
+    }
+
+    /**
+     * Little endian so that the first byte in the array ends up being the
+     * lowest byte of the long.
+     */
+    private static long readLong(final byte[] array, final int i) {
+        return (array[i] & 0xFFL)
+                | (array[i + 1] & 0xFFL) << 8
+                | (array[i + 2] & 0xFFL) << 16
+                | (array[i + 3] & 0xFFL) << 24
+                | (array[i + 4] & 0xFFL) << 32
+                | (array[i + 5] & 0xFFL) << 40
+                | (array[i + 6] & 0xFFL) << 48
+                | (array[i + 7] & 0xFFL) << 56;
+    }
+}
@@ -0,0 +1,455 @@
+/**
+ *
+ */
+package io.pkts.buffer;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A read-only {@link Buffer} made up of a number of other buffers, in order,
+ * without copying any of them. This is what the packets use when they are
+ * written out, where every layer puts its headers in front of the payload
+ * handed to it by the layer above and then passes the whole thing on to the
+ * layer below. In the end, the {@link #toByteBuffers()} of the buffer are
+ * written straight to the stream, or channel, without the bytes ever having
+ * been copied into a single array.
+ *
+ * Anything else you ask of the buffer (reading from it, looking at individual
+ * bytes etc) will cause all the parts to be copied into one
+ * {@link ByteBuffer}, once, which is then used for the rest of its life.
+ *
+ * The parts must not be changed, nor released, while the
+ * {@link CompositeBuffer} is in use.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class CompositeBuffer implements Buffer {
+
+    private final Buffer[] parts;
+
+    private final int size;
+
+    /**
+     * The parts copied into one buffer, only if someone asks for something
+     * other than the size of, or the views into, this buffer.
+     */
+    private Buffer flat;
+
+    /**
+     *
+     * @param parts
+     *            the readable bytes of each part, which all must have some.
+     */
+    CompositeBuffer(final Buffer[] parts) {
+        int size = 0;
+        for (final Buffer part : parts) {
+            size += part.getReadableBytes();
+        }
+        this.parts = parts;
+        this.size = size;
+    }
+
+    /**
+     * The buffers making up this buffer.
+     */
+    Buffer[] getParts() {
+        return this.parts;
+    }
+
+    /**
+     * Whether this buffer still is just its parts, i.e., no one has read
+     * anything from it.
+     */
+    boolean isIntact() {
+        return this.flat == null;
+    }
+
+    private Buffer flat() {
+        if (this.flat == null) {
+            this.flat = new ByteBuffer(copy());
+        }
+        return this.flat;
+    }
+
+    private byte[] copy() {
+        final byte[] array = new byte[this.size];
+        int index = 0;
+        for (final Buffer part : this.parts) {
+            for (final java.nio.ByteBuffer view : part.toByteBuffers()) {
+                final int length = view.remaining();
+                view.get(array, index, length);
+                index += length;
+            }
+        }
+        return array;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public java.nio.ByteBuffer[] toByteBuffers() {
+        if (this.flat != null) {
+            return this.flat.toByteBuffers();
+        }
+
+        int count = 0;
+        final java.nio.ByteBuffer[][] views = new java.nio.ByteBuffer[this.parts.length][];
+        for (int i = 0; i < this.parts.length; ++i) {
+            views[i] = this.parts[i].toByteBuffers();
+            count += views[i].length;
+        }
+
+        final java.nio.ByteBuffer[] all = new java.nio.ByteBuffer[count];
+        int index = 0;
+        for (final java.nio.ByteBuffer[] view : views) {
+            System.arraycopy(view, 0, all, index, view.length);
+            index += view.length;
+        }
+        return all;
+    }
+
+    @Override
+    public int getReadableBytes() {
+        return this.flat == null ? this.size : this.flat.getReadableBytes();
+    }
+
+    @Override
+    public boolean hasReadableBytes() {
+        return getReadableBytes() > 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return getReadableBytes() == 0;
+    }
+
+    @Override
+    public byte[] getArray() {
+        return this.flat == null ? copy() : this.flat.getArray();
+    }
+
+    @Override
+    public Buffer retain() {
+        for (final Buffer part : this.parts) {
+            part.retain();
+        }
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        boolean released = false;
+        for (final Buffer part : this.parts) {
+            released |= part.release();
+        }
+        return released;
+    }
+
+    @Override
+    public void getBytes(final Buffer dst) {
+        flat().getBytes(dst);
+    }
+
+    @Override
+    public void getBytes(final int index, final Buffer dst) throws IndexOutOfBoundsException {
+        flat().getBytes(index, dst);
+    }
+
+    @Override
+    public void getBytes(final byte[] dst) throws IndexOutOfBoundsException {
+        flat().getBytes(dst);
+    }
+
+    @Override
+    public Buffer readBytes(final int length) throws IndexOutOfBoundsException, IOException {
+        return flat().readBytes(length);
+    }
+
+    @Override
+    public Buffer readLine() throws IOException {
+        return flat().readLine();
+    }
+
+    @Override
+    public Buffer readUntilSingleCRLF() throws IOException {
+        return flat().readUntilSingleCRLF();
+    }
+
+    @Override
+    public Buffer readUntilDoubleCRLF() throws IOException {
+        return flat().readUntilDoubleCRLF();
+    }
+
+    @Override
+    public Buffer readUntil(final byte b) throws IOException, ByteNotFoundException {
+        return flat().readUntil(b);
+    }
+
+    @Override
+    public Buffer readUntil(final int maxBytes, final byte... bytes) throws IOException, ByteNotFoundException,
+            IllegalArgumentException {
+        return flat().readUntil(maxBytes, bytes);
+    }
+
+    @Override
+    public Buffer readUntilSafe(final int maxBytes, final byte... bytes) throws IOException,
+            IllegalArgumentException {
+        return flat().readUntilSafe(maxBytes, bytes);
+    }
+
+    @Override
+    public int indexOf(final int maxBytes, final byte... bytes) throws IOException, ByteNotFoundException,
+            IllegalArgumentException {
+        return flat().indexOf(maxBytes, bytes);
+    }
+
+    @Override
+    public int indexOf(final byte b) throws IOException, ByteNotFoundException, IllegalArgumentException {
+        return flat().indexOf(b);
+    }
+
+    @Override
+    public Buffer slice(final int start, final int stop) {
+        return flat().slice(start, stop);
+    }
+
+    @Override
+    public Buffer slice(final int stop) {
+        return flat().slice(stop);
+    }
+
+    @Override
+    public Buffer slice() {
+        return flat().slice();
+    }
+
+    @Override
+    public int getLowerBoundary() {
+        return flat().getLowerBoundary();
+    }
+
+    @Override
+    public int getUpperBoundary() {
+        return flat().getUpperBoundary();
+    }
+
+    @Override
+    public int getReaderIndex() {
+        return this.flat == null ? 0 : this.flat.getReaderIndex();
+    }
+
+    @Override
+    public void setReaderIndex(final int index) {
+        flat().setReaderIndex(index);
+    }
+
+    @Override
+    public void markReaderIndex() {
+        flat().markReaderIndex();
+    }
+
+    @Override
+    public void resetReaderIndex() {
+        flat().resetReaderIndex();
+    }
+
+    @Override
+    public int capacity() {
+        return this.flat == null ? this.size : this.flat.capacity();
+    }
+
+    @Override
+    public byte getByte(final int index) throws IndexOutOfBoundsException, IOException {
+        return flat().getByte(index);
+    }
+
+    @Override
+    public byte readByte() throws IndexOutOfBoundsException, IOException {
+        return flat().readByte();
+    }
+
+    @Override
+    public byte peekByte() throws IndexOutOfBoundsException, IOException {
+        return flat().peekByte();
+    }
+
+    @Override
+    public long readUnsignedInt() throws IndexOutOfBoundsException {
+        return flat().readUnsignedInt();
+    }
+
+    @Override
+    public int readInt() throws IndexOutOfBoundsException {
+        return flat().readInt();
+    }
+
+    @Override
+    public int getInt(final int index) throws IndexOutOfBoundsException {
+        return flat().getInt(index);
+    }
+
+    @Override
+    public short getShort(final int index) throws IndexOutOfBoundsException {
+        return flat().getShort(index);
+    }
+
+    @Override
+    public int readUnsignedShort() throws IndexOutOfBoundsException {
+        return flat().readUnsignedShort();
+    }
+
+    @Override
+    public int getUnsignedShort(final int index) throws IndexOutOfBoundsException {
+        return flat().getUnsignedShort(index);
+    }
+
+    @Override
+    public short readShort() throws IndexOutOfBoundsException {
+        return flat().readShort();
+    }
+
+    @Override
+    public short readUnsignedByte() throws IndexOutOfBoundsException, IOException {
+        return flat().readUnsignedByte();
+    }
+
+    @Override
+    public short getUnsignedByte(final int index) throws IndexOutOfBoundsException {
+        return flat().getUnsignedByte(index);
+    }
+
+    @Override
+    public int parseToInt() throws NumberFormatException, IOException {
+        return flat().parseToInt();
+    }
+
+    @Override
+    public int parseToInt(final int radix) throws NumberFormatException, IOException {
+        return flat().parseToInt(radix);
+    }
+
+    @Override
+    public String dumpAsHex() {
+        return flat().dumpAsHex();
+    }
+
+    @Override
+    public Buffer clone() {
+        return new ByteBuffer(getArray());
+    }
+
+    @Override
+    public int getWriterIndex() {
+        return this.flat == null ? this.size : this.flat.getWriterIndex();
+    }
+
+    @Override
+    public int getWritableBytes() {
+        return 0;
+    }
+
+    @Override
+    public boolean hasWritableBytes() {
+        return false;
+    }
+
+    @Override
+    public boolean hasWriteSupport() {
+        return false;
+    }
+
+    @Override
+    public void setWriterIndex(final int index) {
+        throw new WriteNotSupportedException("A composite buffer is read-only");
+    }
+
+    @Override
+    public void setByte(final int index, final byte value) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException("A composite buffer is read-only");
+    }
+
+    @Override
+    public void setInt(final int index, final int value) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException("A composite buffer is read-only");
+    }
+
+    @Override
+    public void setUnsignedInt(final int index, final long value) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException("A composite buffer is read-only");
+    }
+
+    @Override
+    public void setUnsignedShort(final int index, final int value) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException("A composite buffer is read-only");
+    }
+
+    @Override
+    public void setUnsignedByte(final int index, final short value) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException("A composite buffer is read-only");
+    }
+
+    @Override
+    public void write(final byte b) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException("A composite buffer is read-only");
+    }
+
+    @Override
+    public void write(final byte[] bytes) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException("A composite buffer is read-only");
+    }
+
+    @Override
+    public void write(final int value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException("A composite buffer is read-only");
+    }
+
+    @Override
+    public void write(final long value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException("A composite buffer is read-only");
+    }
+
+    @Override
+    public void write(final String s) throws IndexOutOfBoundsException, WriteNotSupportedException,
+            UnsupportedEncodingException {
+        throw new WriteNotSupportedException("A composite buffer is read-only");
+    }
+
+    @Override
+    public void writeAsString(final int value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException("A composite buffer is read-only");
+    }
+
+    @Override
+    public void writeAsString(final long value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException("A composite buffer is read-only");
+    }
+
+    @Override
+    public void write(final String s, final String charset) throws IndexOutOfBoundsException,
+            WriteNotSupportedException, UnsupportedEncodingException {
+        throw new WriteNotSupportedException("A composite buffer is read-only");
+    }
+
+    @Override
+    public boolean equals(final Object b) {
+        return flat().equals(b);
+    }
+
+    @Override
+    public boolean equalsIgnoreCase(final Object b) {
+        return flat().equalsIgnoreCase(b);
+    }
+
+    @Override
+    public int hashCode() {
+        return flat().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return flat().toString();
+    }
+
+}
@@ -32,6 +32,26 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     private final int localCapacity;
 
+    /**
+     * If true, rows that the reader index (and the marked reader index) have
+     * passed are released as we go. See {@link #releaseConsumedRows()}.
+     */
+    private final boolean streaming;
+
+    /**
+     * Whether or not anyone has marked the reader index, in which case we
+     * must hang on to the bytes from the mark and onwards. Going back to the
+     * mark through {@link #resetReaderIndex()} lets go of it again, or we
+     * would never release another row.
+     */
+    private boolean marked;
+
+    /**
+     * Where the memory for the copies handed out by {@link #readBytes(int)}
+     * comes from.
+     */
+    private final BufferAllocator allocator;
+
     /**
      * 
      */
@@ -46,14 +66,117 @@ public final class InputStreamBuffer extends AbstractBuffer {
      * @param is
      */
     public InputStreamBuffer(final int initialCapacity, final InputStream is) {
+        this(initialCapacity, is, false);
+    }
+
+    /**
+     * 
+     * @param initialCapacity
+     *            the initial size of the internal byte array
+     * @param is
+     * @param streaming
+     *            if true, the buffer will only hang on to the bytes that
+     *            haven't been read yet (or that has been marked) as opposed to
+     *            every single byte ever read off of the stream. This keeps the
+     *            memory footprint constant no matter how much we read, which
+     *            is what you want for e.g. a live capture being piped to you.
+     *            Rows are only released by {@link #readBytes(int)}, never in
+     *            the middle of e.g. an {@link #indexOf(byte)}, and when they
+     *            are the reader index will jump backwards since it is
+     *            relative to the bytes currently being held. Use
+     *            {@link #markReaderIndex()} rather than
+     *            {@link #getReaderIndex()} if you need to go back to a
+     *            position across a call to {@link #readBytes(int)}.
+     */
+    public InputStreamBuffer(final int initialCapacity, final InputStream is, final boolean streaming) {
+        this(initialCapacity, is, streaming, BufferAllocator.HEAP);
+    }
+
+    /**
+     * 
+     * @param initialCapacity
+     *            the initial size of the internal byte array
+     * @param is
+     * @param streaming
+     *            see {@link #InputStreamBuffer(int, InputStream, boolean)}
+     * @param allocator
+     *            the allocator for the buffers returned by
+     *            {@link #readBytes(int)}.
+     */
+    public InputStreamBuffer(final int initialCapacity, final InputStream is, final boolean streaming,
+            final BufferAllocator allocator) {
         super(0, 0, 0, 0);
         assert is != null;
+        assert allocator != null;
         this.is = is;
+        this.allocator = allocator;
         this.localCapacity = initialCapacity;
+        this.streaming = streaming;
         this.storage = new ArrayList<java.nio.ByteBuffer>();
         this.storage.add(java.nio.ByteBuffer.allocate(this.localCapacity));
     }
 
+    /**
+     * Release all the rows that we have read past, unless they are needed for
+     * a {@link #resetReaderIndex()}, and shift all the indexes down
+     * accordingly. Since {@link #readBytes(int)} always hands out a copy of
+     * the bytes, nothing else can be referring to a row that we let go of so
+     * the garbage collector will reclaim it.
+     *
+     * This must only be called when no one can be holding on to an index,
+     * which is why it is done by {@link #readBytes(int)} only. The scans of
+     * the {@link BaseBuffer}, such as {@link #indexOf(byte)} and
+     * {@link #readLine()}, remember where they started and go back there
+     * when done, all while reading one byte at a time.
+     *
+     * This is a no-op unless we are in streaming mode.
+     */
+    private void releaseConsumedRows() {
+        if (!this.streaming) {
+            return;
+        }
+
+        final int keepFrom = this.marked ? Math.min(this.readerIndex, this.markedReaderIndex) : this.readerIndex;
+        final int consumed = keepFrom / this.localCapacity;
+        final int release = Math.min(consumed, this.storage.size() - 1);
+        if (release <= 0) {
+            return;
+        }
+
+        this.storage.subList(0, release).clear();
+        final int shift = release * this.localCapacity;
+        this.readerIndex -= shift;
+        // unless marked, a reset takes us back to the first byte we still hold
+        this.markedReaderIndex = Math.max(0, this.markedReaderIndex - shift);
+        this.writerIndex -= shift;
+        this.upperBoundary -= shift;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void markReaderIndex() {
+        super.markReaderIndex();
+        this.marked = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resetReaderIndex() {
+        super.resetReaderIndex();
+        this.marked = false;
+    }
+
+    /**
+     * The number of rows we are currently holding on to.
+     */
+    int getNoOfRows() {
+        return this.storage.size();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -121,7 +244,8 @@ public final class InputStreamBuffer extends AbstractBuffer {
         // perhaps we should create a composite buffer instead of this
         // copying???
         int index = 0;
-        final byte[] buf = new byte[length];
+        final Buffer result = this.allocator.allocate(length);
+        final byte[] buf = result.getRawArray();
         while (index < length) {
             final int spaceLeft = getAvailableLocalReadingSpace();
             final int readAtMost = Math.min(length - index, spaceLeft);
@@ -132,7 +256,8 @@ public final class InputStreamBuffer extends AbstractBuffer {
             this.readerIndex += readAtMost;
             index += readAtMost;
         }
-        return Buffers.wrap(buf);
+        releaseConsumedRows();
+        return result;
 
     }
 
@@ -309,10 +434,10 @@ public final class InputStreamBuffer extends AbstractBuffer {
      */
     @Override
     public byte getByte(final int index) throws IndexOutOfBoundsException, IOException {
-        checkIndex(this.lowerBoundary + index);
-        final java.nio.ByteBuffer bb = getWritingRow();
-        // this has to be localized as well
-        return bb.get(this.lowerBoundary + index);
+        final int i = this.lowerBoundary + index;
+        checkIndex(i);
+        final java.nio.ByteBuffer bb = this.storage.get(i / this.localCapacity);
+        return bb.get(i % this.localCapacity);
     }
 
     /**
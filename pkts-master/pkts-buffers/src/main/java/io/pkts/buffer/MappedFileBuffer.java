@@ -0,0 +1,496 @@
+package io.pkts.buffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * A read-only buffer over a file that memory maps the file instead of reading
+ * it through an {@link java.io.InputStream}. Since a single
+ * {@link MappedByteBuffer} cannot be larger than 2GB we map the file a "window"
+ * (chunk) at a time and move that window forward as we read through the file,
+ * which means that there is no limit to how large the file can be.
+ *
+ * All the buffers returned by {@link #readBytes(int)} and
+ * {@link #slice(int, int)} are {@link NioBuffer}s pointing straight into the
+ * mapped region so, unlike the {@link BoundedInputStreamBuffer}, no bytes are
+ * copied. Those buffers will keep their window mapped for as long as they are
+ * referenced, even after we have moved on to the next window.
+ *
+ * The file is mapped read-only so writing to the returned buffers, which e.g.
+ * happens when a packet is written out and its checksums are re-calculated,
+ * will never change the file on disk. Instead, the buffer being written to
+ * will copy its bytes onto the heap (see {@link NioBuffer}). Note that this
+ * also means that the file only has to be readable.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public class MappedFileBuffer extends BaseBuffer implements Closeable {
+
+    private static final String CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER = "Cannot write to a MappedFileBuffer";
+    private static final String NOT_IMPLEMENTED_JUST_YET = "Not implemented just yet";
+
+    /**
+     * The default size of each mapped window. Every record we read must fit
+     * within a single window, which this comfortably does, and any record
+     * that doesn't will simply get a larger window of its own.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024 * 1024;
+
+    private final FileChannel channel;
+
+    /**
+     * The total size of the file.
+     */
+    private final long size;
+
+    private final int chunkSize;
+
+    /**
+     * The currently mapped window into the file.
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * The position within the file where the current window starts.
+     */
+    private long windowStart;
+
+    /**
+     * From where we will continue reading
+     */
+    private long readerIndex;
+
+    private long markedReaderIndex;
+
+    public MappedFileBuffer(final FileChannel channel) throws IOException {
+        this(DEFAULT_CHUNK_SIZE, channel);
+    }
+
+    /**
+     *
+     * @param chunkSize
+     *            the size of each window we map. Larger windows means fewer
+     *            mappings but more address space being used.
+     * @param channel
+     *            the channel to the file we wish to map.
+     * @throws IOException
+     */
+    public MappedFileBuffer(final int chunkSize, final FileChannel channel) throws IOException {
+        assert channel != null;
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be greater than zero");
+        }
+        this.channel = channel;
+        this.chunkSize = chunkSize;
+        this.size = channel.size();
+    }
+
+    /**
+     * Make sure that the bytes between <code>position</code> and
+     * <code>position + length</code> are within the current window and if
+     * not, map a new window starting at <code>position</code>.
+     *
+     * @return the index into the current window that corresponds to the
+     *         position in the file.
+     */
+    private int map(final long position, final int length) {
+        if (this.window == null || position < this.windowStart
+                || position + length > this.windowStart + this.window.capacity()) {
+            final long mapSize = Math.min(Math.max(this.chunkSize, length), this.size - position);
+            try {
+                this.window = this.channel.map(MapMode.READ_ONLY, position, mapSize);
+                this.windowStart = position;
+            } catch (final IOException e) {
+                throw new BufferException("Unable to map the file at position " + position, e);
+            }
+        }
+
+        return (int) (position - this.windowStart);
+    }
+
+    private void checkReadable(final long position, final int length) throws IndexOutOfBoundsException {
+        if (position < 0 || length < 0 || position + length > this.size) {
+            throw new IndexOutOfBoundsException("Not enough bytes left in the file. Wanted " + length
+                    + " but only " + (this.size - position) + " left");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer readBytes(final int length) throws IndexOutOfBoundsException {
+        if (length == 0) {
+            return Buffers.EMPTY_BUFFER;
+        }
+        final Buffer buffer = slice(this.readerIndex, length);
+        this.readerIndex += length;
+        return buffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer slice(final int start, final int stop) {
+        if (start == stop) {
+            return Buffers.EMPTY_BUFFER;
+        }
+        return slice(start, stop - start);
+    }
+
+    private Buffer slice(final long position, final int length) {
+        checkReadable(position, length);
+        final int start = map(position, length);
+        return new NioBuffer(0, start, start + length, start + length, this.window);
+    }
+
+    @Override
+    public Buffer slice(final int stop) {
+        return slice(getReaderIndex(), stop);
+    }
+
+    @Override
+    public Buffer slice() {
+        if (!hasReadableBytes()) {
+            return Buffers.EMPTY_BUFFER;
+        }
+        return slice(this.readerIndex, getReadableBytes());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte readByte() throws IndexOutOfBoundsException {
+        return getByte(this.readerIndex++);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte peekByte() throws IndexOutOfBoundsException {
+        return getByte(this.readerIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getByte(final int index) throws IndexOutOfBoundsException {
+        return getByte((long) index);
+    }
+
+    public byte getByte(final long index) throws IndexOutOfBoundsException {
+        checkReadable(index, 1);
+        return this.window.get(map(index, 1));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short getUnsignedByte(final int index) throws IndexOutOfBoundsException {
+        return (short) (getByte(index) & 0xFF);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final short readUnsignedByte() throws IndexOutOfBoundsException {
+        return (short) (readByte() & 0xFF);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getReadableBytes() {
+        return (int) Math.min(Integer.MAX_VALUE, this.size - this.readerIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasReadableBytes() {
+        return this.readerIndex < this.size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return !hasReadableBytes();
+    }
+
+    @Override
+    public int getReaderIndex() {
+        if (this.readerIndex > Integer.MAX_VALUE) {
+            throw new IllegalStateException("The reader index is beyond 2gb and cannot be expressed as an int. Value="
+                    + this.readerIndex);
+        }
+        return (int) this.readerIndex;
+    }
+
+    @Override
+    public void setReaderIndex(final int index) {
+        this.readerIndex = index;
+    }
+
+    @Override
+    public void markReaderIndex() {
+        this.markedReaderIndex = this.readerIndex;
+    }
+
+    @Override
+    public void resetReaderIndex() {
+        this.readerIndex = this.markedReaderIndex;
+    }
+
+    @Override
+    public int capacity() {
+        return (int) Math.min(Integer.MAX_VALUE, this.size);
+    }
+
+    /**
+     * Closes the underlying {@link FileChannel}. Note that any buffer already
+     * handed out is still readable since the mapping stays valid until the
+     * buffer is garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] getArray() {
+        throw new RuntimeException(NOT_IMPLEMENTED_JUST_YET);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long readUnsignedInt() throws IndexOutOfBoundsException {
+        return readInt() & 0xFFFFFFFFL;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int readInt() throws IndexOutOfBoundsException {
+        return readBytes(4).getInt(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInt(final int index) throws IndexOutOfBoundsException {
+        return slice((long) index, 4).getInt(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short getShort(final int index) throws IndexOutOfBoundsException {
+        return slice((long) index, 2).getShort(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int readUnsignedShort() throws IndexOutOfBoundsException {
+        return readShort() & 0xFFFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getUnsignedShort(final int index) throws IndexOutOfBoundsException {
+        return getShort(index) & 0xFFFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short readShort() throws IndexOutOfBoundsException {
+        return readBytes(2).getShort(0);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String dumpAsHex() {
+        throw new RuntimeException(NOT_IMPLEMENTED_JUST_YET);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setByte(final int index, final byte value) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void setUnsignedByte(final int index, final short value) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void setUnsignedShort(final int index, final int value) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void setInt(final int index, final int value) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void setUnsignedInt(final int index, final long value) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public Buffer clone() {
+        throw new RuntimeException(NOT_IMPLEMENTED_JUST_YET);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object other) {
+        return this == other;
+    }
+
+    @Override
+    public boolean equalsIgnoreCase(final Object other) {
+        return this == other;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    @Override
+    public String toString() {
+        return "MappedFileBuffer[size=" + this.size + ", readerIndex=" + this.readerIndex + "]";
+    }
+
+    @Override
+    public int getWritableBytes() {
+        return 0;
+    }
+
+    @Override
+    public boolean hasWritableBytes() {
+        return false;
+    }
+
+    @Override
+    public boolean hasWriteSupport() {
+        return false;
+    }
+
+    @Override
+    public void getBytes(final Buffer dst) {
+        throw new RuntimeException(NOT_IMPLEMENTED_JUST_YET);
+    }
+
+    @Override
+    public void getBytes(final byte[] dst) throws IndexOutOfBoundsException {
+        throw new RuntimeException(NOT_IMPLEMENTED_JUST_YET);
+    }
+
+    @Override
+    public void getBytes(final int index, final Buffer dst) throws IndexOutOfBoundsException {
+        throw new RuntimeException(NOT_IMPLEMENTED_JUST_YET);
+    }
+
+    @Override
+    public void write(final byte[] bytes) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void write(final int value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void write(final long value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void writeAsString(final int value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void writeAsString(final long value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void write(final byte b) throws IndexOutOfBoundsException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void write(final String s) throws IndexOutOfBoundsException, WriteNotSupportedException,
+    UnsupportedEncodingException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void write(final String s, final String charset) throws IndexOutOfBoundsException,
+    WriteNotSupportedException, UnsupportedEncodingException {
+        throw new WriteNotSupportedException(CANNOT_WRITE_TO_A_MAPPED_FILE_BUFFER);
+    }
+
+    @Override
+    public void setWriterIndex(final int index) {
+        throw new RuntimeException(NOT_IMPLEMENTED_JUST_YET);
+    }
+
+    @Override
+    public int getWriterIndex() {
+        return capacity();
+    }
+
+    @Override
+    public int getLowerBoundary() {
+        return 0;
+    }
+
+    @Override
+    public int getUpperBoundary() {
+        return capacity();
+    }
+
+}
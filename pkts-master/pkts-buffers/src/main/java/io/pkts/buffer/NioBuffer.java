@@ -0,0 +1,463 @@
+/**
+ *
+ */
+package io.pkts.buffer;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A buffer backed by a {@link java.nio.ByteBuffer}, which typically is a
+ * region of a memory mapped file (see {@link MappedFileBuffer}). All slices
+ * will share the same underlying {@link java.nio.ByteBuffer} so no bytes are
+ * ever copied unless you explicitly ask for them through e.g.
+ * {@link #getArray()} or {@link #clone()}.
+ *
+ * Indexes work exactly the same as for the {@link ByteBuffer}, the only
+ * difference being where the bytes are stored. Note that we only ever use the
+ * absolute get/put methods of the {@link java.nio.ByteBuffer} so its position
+ * and limit are left untouched and the same {@link java.nio.ByteBuffer} can
+ * safely be shared between slices.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class NioBuffer extends AbstractBuffer {
+
+    /**
+     * The actual buffer
+     */
+    private java.nio.ByteBuffer buffer;
+
+    /**
+     * Wrap the entire {@link java.nio.ByteBuffer}, irrespective of its current
+     * position and limit.
+     */
+    public NioBuffer(final java.nio.ByteBuffer buffer) {
+        this(0, 0, buffer.capacity(), buffer.capacity(), buffer);
+    }
+
+    protected NioBuffer(final int readerIndex, final int lowerBoundary, final int upperBoundary,
+            final int writerIndex, final java.nio.ByteBuffer buffer) {
+        super(readerIndex, lowerBoundary, upperBoundary, writerIndex);
+        assert buffer != null;
+        this.buffer = buffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer slice(final int start, final int stop) {
+        if (start == stop) {
+            return Buffers.EMPTY_BUFFER;
+        }
+        checkIndex(this.lowerBoundary + start);
+        checkIndex(this.lowerBoundary + stop - 1);
+        final int upperBoundary = this.lowerBoundary + stop;
+        final int writerIndex = upperBoundary;
+        return new NioBuffer(0, this.lowerBoundary + start, upperBoundary, writerIndex, this.buffer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer readBytes(final int length) throws IndexOutOfBoundsException {
+        if (length == 0) {
+            return Buffers.EMPTY_BUFFER;
+        }
+        checkReadableBytes(length);
+        final int lowerBoundary = this.readerIndex + this.lowerBoundary;
+        this.readerIndex += length;
+        final int upperBoundary = this.readerIndex + this.lowerBoundary;
+        final int writerIndex = upperBoundary;
+        return new NioBuffer(0, lowerBoundary, upperBoundary, writerIndex, this.buffer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasReadableBytes() {
+        return getReadableBytes() > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return getReadableBytes() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte getByte(final int index) throws IndexOutOfBoundsException {
+        checkIndex(this.lowerBoundary + index);
+        return this.buffer.get(this.lowerBoundary + index);
+    }
+
+    @Override
+    public void write(final byte b) throws IndexOutOfBoundsException {
+        ensureWritable();
+        checkWriterIndex(this.writerIndex);
+        this.buffer.put(this.lowerBoundary + this.writerIndex, b);
+        ++this.writerIndex;
+    }
+
+    @Override
+    public void write(final byte[] bytes) throws IndexOutOfBoundsException {
+        ensureWritable();
+        if (!checkWritableBytesSafe(bytes.length)) {
+            throw new IndexOutOfBoundsException("Unable to write the entire String to this buffer. Nothing was written");
+        }
+
+        for (int i = 0; i < bytes.length; ++i) {
+            this.buffer.put(this.writerIndex + i, bytes[i]);
+        }
+        this.writerIndex += bytes.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] getArray() {
+        final int length = getReadableBytes();
+        final byte[] array = new byte[length];
+        final int start = this.lowerBoundary + this.readerIndex;
+        for (int i = 0; i < length; ++i) {
+            array[i] = this.buffer.get(start + i);
+        }
+        return array;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public java.nio.ByteBuffer[] toByteBuffers() {
+        final java.nio.ByteBuffer view = this.buffer.duplicate();
+        final int start = this.lowerBoundary + this.readerIndex;
+        view.limit(start + getReadableBytes());
+        view.position(start);
+        return new java.nio.ByteBuffer[] { view.slice() };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte readByte() throws IndexOutOfBoundsException {
+        return getByte(this.readerIndex++);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte peekByte() throws IndexOutOfBoundsException, IOException {
+        return getByte(this.readerIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long readUnsignedInt() throws IndexOutOfBoundsException {
+        return readInt() & 0xFFFFFFFFL;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int readInt() throws IndexOutOfBoundsException {
+        final int value = getInt(this.readerIndex);
+        this.readerIndex += 4;
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short readShort() throws IndexOutOfBoundsException {
+        final short value = getShort(this.readerIndex);
+        this.readerIndex += 2;
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int readUnsignedShort() {
+        return readShort() & 0xFFFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getInt(final int index) {
+        final int i = this.lowerBoundary + index;
+        checkIndex(i);
+        checkIndex(i + 3);
+        return (this.buffer.get(i) & 0xff) << 24 | (this.buffer.get(i + 1) & 0xff) << 16
+                | (this.buffer.get(i + 2) & 0xff) << 8 | (this.buffer.get(i + 3) & 0xff) << 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short getShort(final int index) {
+        final int i = this.lowerBoundary + index;
+        checkIndex(i);
+        checkIndex(i + 1);
+
+        // big endian
+        return (short) (this.buffer.get(i) << 8 | this.buffer.get(i + 1) & 0xFF);
+    }
+
+    @Override
+    public void setUnsignedShort(final int index, final int value) {
+        ensureWritable();
+        final int i = this.lowerBoundary + index;
+        checkIndex(i);
+        checkIndex(i + 1);
+        this.buffer.put(i, (byte) (value >> 8));
+        this.buffer.put(i + 1, (byte) value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getUnsignedShort(final int index) throws IndexOutOfBoundsException {
+        return getShort(index) & 0xFFFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public short getUnsignedByte(final int index) throws IndexOutOfBoundsException {
+        return (short) (getByte(index) & 0xFF);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String dumpAsHex() {
+        return "dumpAsHex isn't implemented just yet";
+    }
+
+    /**
+     * Note, the clone will be backed by a regular byte-array and as such, it
+     * is a {@link ByteBuffer} and not a {@link NioBuffer}.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Buffer clone() {
+        final int size = capacity();
+        final byte[] copy = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            copy[i] = this.buffer.get(this.lowerBoundary + i);
+        }
+        return new ByteBuffer(copy);
+    }
+
+    /**
+     * Same as {@link ByteBuffer#hashCode()} so that the two are
+     * interchangeable as e.g. keys in a map.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        int result = 1;
+        for (int i = this.lowerBoundary + this.readerIndex; i < this.upperBoundary; ++i) {
+            result = 31 * result + this.buffer.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object other) {
+        return bytesEquals(false, this, other);
+    }
+
+    @Override
+    public boolean equalsIgnoreCase(final Object other) {
+        return bytesEquals(true, this, other);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void setByte(final int index, final byte value) throws IndexOutOfBoundsException {
+        ensureWritable();
+        final int i = this.lowerBoundary + index;
+        checkIndex(i);
+        this.buffer.put(i, value);
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void setUnsignedByte(final int index, final short value) throws IndexOutOfBoundsException {
+        ensureWritable();
+        final int i = this.lowerBoundary + index;
+        checkIndex(i);
+        this.buffer.put(i, (byte) value);
+    }
+
+    @Override
+    public String toString() {
+        return new String(getArray(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void getBytes(final Buffer dst) {
+        getBytes(getReaderIndex(), dst);
+    }
+
+    @Override
+    public void getBytes(final int index, final Buffer dst) {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Index less than zero");
+        }
+        final int max = dst.getWritableBytes();
+        final int stop = Math.min(this.lowerBoundary + index + max, this.writerIndex);
+        for (int i = this.lowerBoundary + index; i < stop; ++i) {
+            dst.write(this.buffer.get(i));
+        }
+    }
+
+    @Override
+    public void getBytes(final byte[] dst) throws IndexOutOfBoundsException {
+        final int length = Math.min(dst.length, getReadableBytes());
+        final int start = this.lowerBoundary + this.readerIndex;
+        for (int i = 0; i < length; ++i) {
+            dst[i] = this.buffer.get(start + i);
+        }
+    }
+
+    @Override
+    public boolean hasWriteSupport() {
+        return true;
+    }
+
+    /**
+     * If the underlying {@link java.nio.ByteBuffer} is read-only, which it
+     * e.g. is for a file that has been mapped read-only, then we will copy our
+     * part of it onto the heap the first time someone writes to us and from
+     * then on work on that copy.
+     *
+     * Note that this means that the change will only be visible through this
+     * particular buffer and not through any other slice of the same bytes,
+     * which is fine for how we use it. E.g. when a packet is written out, the
+     * headers (a slice of their own) are updated and then written.
+     */
+    private void ensureWritable() {
+        if (!this.buffer.isReadOnly()) {
+            return;
+        }
+
+        final java.nio.ByteBuffer region = this.buffer.duplicate();
+        region.limit(this.upperBoundary);
+        region.position(this.lowerBoundary);
+        final java.nio.ByteBuffer copy = java.nio.ByteBuffer.allocate(capacity());
+        copy.put(region);
+
+        this.writerIndex -= this.lowerBoundary;
+        this.upperBoundary -= this.lowerBoundary;
+        this.lowerBoundary = 0;
+        this.buffer = copy;
+    }
+
+    @Override
+    public void write(final String s) throws IndexOutOfBoundsException, WriteNotSupportedException,
+    UnsupportedEncodingException {
+        write(s, "UTF-8");
+    }
+
+    @Override
+    public void write(final String s, final String charset) throws IndexOutOfBoundsException,
+    WriteNotSupportedException, UnsupportedEncodingException {
+        write(s.getBytes(charset));
+    }
+
+    @Override
+    public void setInt(final int index, final int value) throws IndexOutOfBoundsException {
+        ensureWritable();
+        checkIndex(index);
+        checkIndex(index + 3);
+        this.buffer.put(this.lowerBoundary + index + 0, (byte) (value >>> 24));
+        this.buffer.put(this.lowerBoundary + index + 1, (byte) (value >>> 16));
+        this.buffer.put(this.lowerBoundary + index + 2, (byte) (value >>> 8));
+        this.buffer.put(this.lowerBoundary + index + 3, (byte) value);
+    }
+
+    @Override
+    public void setUnsignedInt(final int index, final long value) throws IndexOutOfBoundsException {
+        ensureWritable();
+        checkIndex(index);
+        checkIndex(index + 3);
+        this.buffer.put(this.lowerBoundary + index + 0, (byte) value);
+        this.buffer.put(this.lowerBoundary + index + 1, (byte) (value >>> 8));
+        this.buffer.put(this.lowerBoundary + index + 2, (byte) (value >>> 16));
+        this.buffer.put(this.lowerBoundary + index + 3, (byte) (value >>> 24));
+    }
+
+    @Override
+    public void write(final int value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        ensureWritable();
+        if (!checkWritableBytesSafe(4)) {
+            throw new IndexOutOfBoundsException("Unable to write the entire String to this buffer. Nothing was written");
+        }
+        final int index = this.lowerBoundary + this.writerIndex;
+        this.buffer.put(index + 0, (byte) (value >>> 24));
+        this.buffer.put(index + 1, (byte) (value >>> 16));
+        this.buffer.put(index + 2, (byte) (value >>> 8));
+        this.buffer.put(index + 3, (byte) value);
+        this.writerIndex += 4;
+    }
+
+    @Override
+    public void write(final long value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        ensureWritable();
+        if (!checkWritableBytesSafe(8)) {
+            throw new IndexOutOfBoundsException("Unable to write the entire String to this buffer. Nothing was written");
+        }
+        final int index = this.lowerBoundary + this.writerIndex;
+        for (int i = 0; i < 8; ++i) {
+            this.buffer.put(index + i, (byte) (value >>> (56 - i * 8)));
+        }
+        this.writerIndex += 8;
+    }
+
+    @Override
+    public void writeAsString(final int value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        write(Buffers.wrap(value).getArray());
+    }
+
+    @Override
+    public void writeAsString(final long value) throws IndexOutOfBoundsException, WriteNotSupportedException {
+        write(Buffers.wrap(value).getArray());
+    }
+}
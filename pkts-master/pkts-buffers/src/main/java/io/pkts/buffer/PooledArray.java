@@ -0,0 +1,66 @@
+package io.pkts.buffer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A byte-array handed out by the {@link PooledBufferAllocator} along with its
+ * reference count. All the {@link ByteBuffer}s sliced out of the same pooled
+ * buffer share the same {@link PooledArray} and as such, the same reference
+ * count.
+ *
+ * The {@link PooledArray} itself is recycled along with the array so that
+ * allocating a pooled buffer doesn't create any more garbage than the
+ * {@link ByteBuffer} wrapping it.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+final class PooledArray {
+
+    final byte[] array;
+
+    final int sizeClass;
+
+    private final PooledBufferAllocator allocator;
+
+    private final AtomicInteger refCnt = new AtomicInteger();
+
+    /**
+     * Where this array was allocated, only kept track of if the allocator is
+     * looking for leaks.
+     */
+    Throwable allocatedAt;
+
+    PooledArray(final PooledBufferAllocator allocator, final int sizeClass, final int size) {
+        this.allocator = allocator;
+        this.sizeClass = sizeClass;
+        this.array = new byte[size];
+    }
+
+    void reset() {
+        this.refCnt.set(1);
+    }
+
+    void retain() {
+        int count;
+        do {
+            count = this.refCnt.get();
+            if (count <= 0) {
+                throw new IllegalStateException("The buffer has already been released");
+            }
+        } while (!this.refCnt.compareAndSet(count, count + 1));
+    }
+
+    boolean release() {
+        final int count = this.refCnt.decrementAndGet();
+        if (count == 0) {
+            this.allocator.recycle(this);
+            return true;
+        }
+
+        if (count < 0) {
+            this.refCnt.incrementAndGet();
+            throw new IllegalStateException("The buffer has already been released");
+        }
+        return false;
+    }
+}
@@ -0,0 +1,220 @@
+package io.pkts.buffer;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link BufferAllocator} that recycles the byte-arrays once the buffers
+ * using them have been {@link Buffer#release() released}.
+ *
+ * The arrays are kept in size classes, each one twice the size of the
+ * previous, starting at {@value #MIN_SIZE} bytes and going up to
+ * {@link #MAX_SIZE} bytes. Anything larger than that is simply allocated on
+ * the heap and never pooled. Every thread has a small cache of its own per
+ * size class so that the common case, where the same thread allocates and
+ * releases a buffer (e.g. a {@link java.io.InputStream} being read packet by
+ * packet), doesn't require any synchronization. When the thread local cache
+ * is full, arrays overflow into a shared, bounded, pool and when that is full
+ * as well, the array is left for the garbage collector.
+ *
+ * Note that a released buffer, or anything sliced out of it, must not be used
+ * again since its bytes will be handed out to someone else. To help track
+ * down buffers that are never released, the allocator can keep track of
+ * where every outstanding buffer was allocated, see
+ * {@link #PooledBufferAllocator(boolean)} and {@link #checkForLeaks()}. This
+ * is expensive and really only meant for unit tests.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PooledBufferAllocator implements BufferAllocator {
+
+    public static final int MIN_SIZE = 16;
+
+    /**
+     * Large enough to hold any frame captured with tcpdump's default snap
+     * length.
+     */
+    public static final int MAX_SIZE = 262144;
+
+    private static final int NO_OF_SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE / MIN_SIZE) + 1;
+
+    /**
+     * The maximum number of bytes (per size class) kept in each thread local
+     * cache and in the shared pool respectively, but never more than the
+     * given number of arrays.
+     */
+    private static final int THREAD_CACHE_BYTES = 256 * 1024;
+    private static final int THREAD_CACHE_ARRAYS = 64;
+    private static final int SHARED_POOL_BYTES = 4 * 1024 * 1024;
+    private static final int SHARED_POOL_ARRAYS = 1024;
+
+    private final ArrayBlockingQueue<PooledArray>[] shared;
+
+    private final ThreadLocal<ThreadCache> caches = ThreadLocal.withInitial(ThreadCache::new);
+
+    private final LongAdder outstanding = new LongAdder();
+
+    private final boolean trackAllocations;
+
+    private final Set<PooledArray> live;
+
+    public PooledBufferAllocator() {
+        this(false);
+    }
+
+    /**
+     * @param trackAllocations
+     *            if true, the stack trace of where every buffer was allocated
+     *            is kept until it is released, see {@link #checkForLeaks()}.
+     */
+    @SuppressWarnings("unchecked")
+    public PooledBufferAllocator(final boolean trackAllocations) {
+        this.trackAllocations = trackAllocations;
+        this.live = trackAllocations ? ConcurrentHashMap.newKeySet() : null;
+        this.shared = new ArrayBlockingQueue[NO_OF_SIZE_CLASSES];
+        for (int i = 0; i < NO_OF_SIZE_CLASSES; ++i) {
+            this.shared[i] = new ArrayBlockingQueue<>(capacity(SHARED_POOL_BYTES, SHARED_POOL_ARRAYS, i));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The buffer has a reference count of one and must be
+     * {@link Buffer#release() released} once done with it.
+     */
+    @Override
+    public Buffer allocate(final int length) {
+        if (length == 0) {
+            return Buffers.EMPTY_BUFFER;
+        }
+
+        if (length > MAX_SIZE) {
+            return HEAP.allocate(length);
+        }
+
+        final int sizeClass = sizeClassOf(length);
+        PooledArray pooled = this.caches.get().poll(sizeClass);
+        if (pooled == null) {
+            pooled = this.shared[sizeClass].poll();
+        }
+        if (pooled == null) {
+            pooled = new PooledArray(this, sizeClass, sizeOf(sizeClass));
+        }
+
+        pooled.reset();
+        this.outstanding.increment();
+        if (this.trackAllocations) {
+            pooled.allocatedAt = new Throwable("Buffer of " + length + " bytes allocated here");
+            this.live.add(pooled);
+        }
+
+        return new ByteBuffer(0, 0, length, length, pooled.array, pooled);
+    }
+
+    /**
+     * Called when the reference count of a pooled array reaches zero.
+     */
+    void recycle(final PooledArray pooled) {
+        this.outstanding.decrement();
+        if (this.trackAllocations) {
+            this.live.remove(pooled);
+            pooled.allocatedAt = null;
+        }
+
+        if (!this.caches.get().offer(pooled)) {
+            this.shared[pooled.sizeClass].offer(pooled);
+        }
+    }
+
+    /**
+     * @return the number of buffers that have been allocated but not yet
+     *         released.
+     */
+    public long getOutstanding() {
+        return this.outstanding.sum();
+    }
+
+    /**
+     * Make sure that every buffer allocated so far has been released.
+     *
+     * @throws IllegalStateException
+     *             if there are buffers that haven't been released. If we are
+     *             tracking allocations, the cause of the exception will point
+     *             to where one of them was allocated.
+     */
+    public void checkForLeaks() throws IllegalStateException {
+        final long count = getOutstanding();
+        if (count == 0) {
+            return;
+        }
+
+        final String msg = count + " buffer(s) have not been released";
+        if (this.trackAllocations) {
+            for (final PooledArray pooled : this.live) {
+                final Throwable allocatedAt = pooled.allocatedAt;
+                if (allocatedAt != null) {
+                    throw new IllegalStateException(msg, allocatedAt);
+                }
+            }
+        }
+        throw new IllegalStateException(msg);
+    }
+
+    static int sizeClassOf(final int length) {
+        if (length <= MIN_SIZE) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(length - 1) - Integer.numberOfTrailingZeros(MIN_SIZE);
+    }
+
+    static int sizeOf(final int sizeClass) {
+        return MIN_SIZE << sizeClass;
+    }
+
+    private static int capacity(final int bytes, final int maxArrays, final int sizeClass) {
+        return Math.max(2, Math.min(maxArrays, bytes / sizeOf(sizeClass)));
+    }
+
+    /**
+     * A plain array based stack per size class. Only ever touched by the
+     * thread owning it.
+     */
+    private static final class ThreadCache {
+
+        private final PooledArray[][] stacks = new PooledArray[NO_OF_SIZE_CLASSES][];
+        private final int[] sizes = new int[NO_OF_SIZE_CLASSES];
+
+        private ThreadCache() {
+            for (int i = 0; i < NO_OF_SIZE_CLASSES; ++i) {
+                this.stacks[i] = new PooledArray[capacity(THREAD_CACHE_BYTES, THREAD_CACHE_ARRAYS, i)];
+            }
+        }
+
+        private PooledArray poll(final int sizeClass) {
+            final int size = this.sizes[sizeClass];
+            if (size == 0) {
+                return null;
+            }
+
+            final PooledArray pooled = this.stacks[sizeClass][size - 1];
+            this.stacks[sizeClass][size - 1] = null;
+            this.sizes[sizeClass] = size - 1;
+            return pooled;
+        }
+
+        private boolean offer(final PooledArray pooled) {
+            final int size = this.sizes[pooled.sizeClass];
+            final PooledArray[] stack = this.stacks[pooled.sizeClass];
+            if (size == stack.length) {
+                return false;
+            }
+
+            stack[size] = pooled;
+            this.sizes[pooled.sizeClass] = size + 1;
+            return true;
+        }
+    }
+}
@@ -148,6 +148,50 @@ public abstract class AbstractBufferTest {
 
     }
 
+    /**
+     * Sequences of CR and LF that aren't quite CRLF or CRLFCRLF must be
+     * treated the same way no matter what kind of buffer we have.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBrokenCRLFSequences() throws Exception {
+        Buffer buffer = createBuffer("a\r\r\nb\rc\r".getBytes());
+        assertThat(buffer.readLine().toString(), is("a\r"));
+        assertThat(buffer.readLine().toString(), is("b"));
+        assertThat(buffer.readLine().toString(), is("c\r"));
+        assertThat(buffer.readLine(), is((Buffer) null));
+
+        buffer = createBuffer("a\r\r\nb\r\nc".getBytes());
+        assertThat(buffer.readUntilSingleCRLF().toString(), is("a\r\r\nb"));
+        assertThat(buffer.readUntilSingleCRLF(), is((Buffer) null));
+        assertThat(buffer.toString(), is("c"));
+
+        buffer = createBuffer("a\r\n\r\r\n\r\nb".getBytes());
+        assertThat(buffer.readUntilDoubleCRLF(), is((Buffer) null));
+        assertThat(buffer.toString(), is("a\r\n\r\r\n\r\nb"));
+
+        buffer = createBuffer("hello world, this is a longer line\r\n\r\nbody".getBytes());
+        buffer.readBytes(6);
+        assertThat(buffer.readUntilDoubleCRLF().toString(), is("world, this is a longer line"));
+        assertThat(buffer.toString(), is("body"));
+    }
+
+    @Test
+    public void testIndexOfLongerBuffers() throws Exception {
+        final Buffer buffer = createBuffer("0123456789abcdefghijklmnopqrstuvwxyz:;".getBytes());
+        assertThat(buffer.indexOf(100, (byte) 'z'), is(35));
+        assertThat(buffer.indexOf(100, (byte) ':', (byte) ';'), is(36));
+        assertThat(buffer.indexOf(100, (byte) ';', (byte) '8'), is(8));
+        assertThat(buffer.indexOf(100, (byte) '!'), is(-1));
+        assertThat(buffer.indexOf(20, (byte) 'z'), is(-1));
+        assertThat(buffer.indexOf(36, (byte) 'z'), is(35));
+
+        buffer.readBytes(9);
+        assertThat(buffer.indexOf(100, (byte) '8', (byte) 'w'), is(32));
+        assertThat(buffer.indexOf(100, (byte) '8', (byte) '9'), is(9));
+    }
+
     @Test
     public void testIndexOf() throws Exception {
         final Buffer buffer = createBuffer("hello world ena goa grejor".getBytes());
@@ -0,0 +1,52 @@
+package io.pkts.buffer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The SWAR search must find exactly what a plain loop would find, no matter
+ * where in the eight byte words the bytes are.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public class ByteScannerTest {
+
+    private static final byte[] ALPHABET = { 'a', 'b', '\r', '\n', (byte) 0x80, (byte) 0xFF, 0x00, 0x01 };
+
+    @Test
+    public void testSameAsPlainLoop() throws Exception {
+        final Random random = new Random(1234);
+        for (int run = 0; run < 200; ++run) {
+            final byte[] array = new byte[random.nextInt(40)];
+            for (int i = 0; i < array.length; ++i) {
+                array[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+            }
+
+            for (int from = 0; from <= array.length; ++from) {
+                for (int to = from; to <= array.length; ++to) {
+                    for (final byte a : ALPHABET) {
+                        assertThat(ByteScanner.indexOf(array, from, to, a), is(indexOf(array, from, to, a)));
+                        final byte b = ALPHABET[random.nextInt(ALPHABET.length)];
+                        assertThat(ByteScanner.indexOf(array, from, to, a, b),
+                                is(indexOf(array, from, to, a, b)));
+                        assertThat(ByteScanner.indexOf(array, from, to, new byte[] { a, b, 'a' }),
+                                is(indexOf(array, from, to, a, b, (byte) 'a')));
+                    }
+                }
+            }
+        }
+    }
+
+    private static int indexOf(final byte[] array, final int from, final int to, final byte... bytes) {
+        for (int i = from; i < to; ++i) {
+            if (BaseBuffer.isByteInArray(array[i], bytes)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -60,4 +60,72 @@ public class CompositeBufferTest {
         assertThat(buffer.isEmpty(), is(true));
     }
 
+    /**
+     * Gathering buffers doesn't copy them, which is evident if we change one
+     * of them afterwards.
+     */
+    @Test
+    public void testGather() throws Exception {
+        final Buffer hello = Buffers.wrap("hello ");
+        final Buffer world = Buffers.wrap("xxworld");
+        world.readBytes(2);
+
+        final Buffer buffer = Buffers.gather(hello, null, Buffers.EMPTY_BUFFER, world);
+        assertThat(buffer.getReadableBytes(), is(11));
+        hello.setByte(0, (byte) 'j');
+
+        final java.nio.ByteBuffer[] views = buffer.toByteBuffers();
+        assertThat(views.length, is(2));
+        assertThat(views[0].remaining(), is(6));
+        assertThat(views[1].remaining(), is(5));
+        assertThat(views[0].array() == hello.getRawArray(), is(true));
+        assertThat(new String(buffer.getArray()), is("jello world"));
+
+        // reading it is fine too but then we do copy it
+        assertThat(buffer.readBytes(6).toString(), is("jello "));
+        assertThat(buffer.getReadableBytes(), is(5));
+        assertThat(buffer.toString(), is("world"));
+        hello.setByte(0, (byte) 'h');
+        assertThat(buffer.toByteBuffers().length, is(1));
+
+        // and the original buffers are left as they were
+        assertThat(hello.getReadableBytes(), is(6));
+        assertThat(world.toString(), is("world"));
+    }
+
+    /**
+     * Gathering a gathered buffer keeps the parts in one flat list, which is
+     * what happens when every layer of a packet puts its headers in front of
+     * the payload.
+     */
+    @Test
+    public void testGatherNested() throws Exception {
+        Buffer buffer = Buffers.wrap("payload");
+        buffer = Buffers.gather(Buffers.wrap("udp "), buffer);
+        buffer = Buffers.gather(Buffers.wrap("ip "), buffer);
+        buffer = Buffers.gather(Buffers.wrap("eth "), buffer);
+
+        assertThat(buffer.toByteBuffers().length, is(4));
+        assertThat(buffer.getReadableBytes(), is(18));
+        assertThat(buffer.toString(), is("eth ip udp payload"));
+    }
+
+    @Test
+    public void testGatherNothing() throws Exception {
+        assertThat(Buffers.gather(null, Buffers.EMPTY_BUFFER).isEmpty(), is(true));
+        assertThat(Buffers.gather(Buffers.wrap("hello"), null).toString(), is("hello"));
+    }
+
+    @Test
+    public void testToByteBuffersNio() throws Exception {
+        final Buffer buffer = new NioBuffer(java.nio.ByteBuffer.wrap("hello world".getBytes()));
+        buffer.readBytes(6);
+        final java.nio.ByteBuffer[] views = buffer.toByteBuffers();
+        assertThat(views.length, is(1));
+        final byte[] bytes = new byte[views[0].remaining()];
+        views[0].get(bytes);
+        assertThat(new String(bytes), is("world"));
+        assertThat(buffer.getReadableBytes(), is(5));
+    }
+
 }
@@ -11,6 +11,7 @@ import io.pkts.buffer.Buffer;
 import io.pkts.buffer.InputStreamBuffer;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -72,6 +73,154 @@ public class InputStreamBufferTest extends AbstractBufferTest {
         verifyDynamicallyIncreaseBuffer(506);
     }
 
+    /**
+     * In streaming mode we should be able to read the very same content, no
+     * matter the size of the rows, as when we keep everything around.
+     */
+    @Test
+    public void testStreaming() throws Exception {
+        final byte[] content = RawData.sipBuffer.getArray();
+        for (int i = 1; i < 200; ++i) {
+            final Buffer buffer = new InputStreamBuffer(i, new ByteArrayInputStream(content), true);
+            assertContent(buffer.readBytes(50), content, 0);
+            assertThat(buffer.readByte(), is(content[50]));
+            assertContent(buffer.readBytes(300), content, 51);
+            assertContent(buffer.readBytes(154), content, 351);
+            assertThat(buffer.hasReadableBytes(), is(false));
+        }
+    }
+
+    /**
+     * If the reader index has been marked we must be able to go back to it
+     * even though the reader index has moved past a bunch of rows.
+     */
+    @Test
+    public void testStreamingKeepsMarkedRows() throws Exception {
+        final byte[] content = RawData.sipBuffer.getArray();
+        final InputStreamBuffer buffer = new InputStreamBuffer(10, new ByteArrayInputStream(content), true);
+        buffer.readBytes(25);
+        buffer.markReaderIndex();
+        buffer.readBytes(100);
+        buffer.resetReaderIndex();
+        assertContent(buffer.readBytes(100), content, 25);
+
+        // we went back to the mark so it no longer holds on to the rows
+        // that we have read past
+        assertThat(buffer.getNoOfRows() <= 3, is(true));
+
+        buffer.markReaderIndex();
+        buffer.readBytes(20);
+        assertThat(buffer.getNoOfRows() <= 3, is(true));
+    }
+
+    /**
+     * Once we have gone back to the mark we must go back to releasing rows,
+     * no matter how much we read afterwards.
+     */
+    @Test
+    public void testStreamingReleasesRowsAfterReset() throws Exception {
+        final int chunk = 65536;
+        final InputStreamBuffer buffer = new InputStreamBuffer(4096, new PatternInputStream(), true);
+        buffer.markReaderIndex();
+        buffer.readBytes(16);
+        buffer.resetReaderIndex();
+
+        long read = 0;
+        int maxRows = 0;
+        while (read < 64L * 1024 * 1024) {
+            final Buffer b = buffer.readBytes(chunk);
+            assertThat(b.getByte(0), is(PatternInputStream.byteAt(read)));
+            maxRows = Math.max(maxRows, buffer.getNoOfRows());
+            read += chunk;
+        }
+        assertThat(maxRows <= chunk / 4096 + 1, is(true));
+
+        // and a reset without a new mark stays within what we hold
+        final int readerIndex = buffer.getReaderIndex();
+        buffer.resetReaderIndex();
+        final int back = readerIndex - buffer.getReaderIndex();
+        assertThat(back >= 0 && back <= readerIndex, is(true));
+        assertThat(buffer.readByte(), is(PatternInputStream.byteAt(read - back)));
+    }
+
+    /**
+     * Scanning for a byte that is a few rows ahead goes back to where it
+     * started once done, which must not be pulled out from under it.
+     */
+    @Test
+    public void testStreamingIndexOf() throws Exception {
+        final InputStreamBuffer buffer = new InputStreamBuffer(4096, new PatternInputStream(), true);
+        buffer.readBytes(4090);
+        final byte b = PatternInputStream.byteAt(4100);
+        assertThat(buffer.indexOf(b), is(buffer.getReaderIndex() + 10));
+        assertThat(buffer.readByte(), is(PatternInputStream.byteAt(4090)));
+
+        final Buffer until = buffer.readUntil(b);
+        assertThat(until.getReadableBytes(), is(9));
+        assertThat(until.getByte(0), is(PatternInputStream.byteAt(4091)));
+        assertThat(buffer.readByte(), is(PatternInputStream.byteAt(4101)));
+
+        // the same goes for a scan that spans many rows. The pattern never
+        // contains 0xFF so this one goes through all 20000 bytes
+        buffer.readBytes(8000);
+        assertThat(buffer.indexOf(20000, (byte) 0xFF), is(-1));
+        final Buffer b2 = buffer.readBytes(100);
+        assertThat(b2.getByte(0), is(PatternInputStream.byteAt(12102)));
+        assertThat(b2.getByte(99), is(PatternInputStream.byteAt(12201)));
+    }
+
+    /**
+     * Soak test. Read way more than 2GB (so that our int based indexes would
+     * have wrapped had we not been shifting them down) off of an endless
+     * stream and make sure that we never hang on to more than a handful of
+     * rows. The tests of this module run with a heap of 128MB, see the pom,
+     * so had we hung on to the rows this would blow up.
+     */
+    @Test(timeout = 120000)
+    public void testStreamingSoak() throws Exception {
+        final long total = 3L * 1024 * 1024 * 1024;
+        final int chunk = 65536;
+        final InputStreamBuffer buffer = new InputStreamBuffer(4096, new PatternInputStream(), true);
+        long read = 0;
+        int maxRows = 0;
+        while (read < total) {
+            final Buffer b = buffer.readBytes(chunk);
+            assertThat(b.getByte(0), is(PatternInputStream.byteAt(read)));
+            assertThat(b.getByte(chunk - 1), is(PatternInputStream.byteAt(read + chunk - 1)));
+            maxRows = Math.max(maxRows, buffer.getNoOfRows());
+            read += chunk;
+        }
+
+        // we read 64k at a time with 4k rows so we should never need
+        // more than what is required to hold a single read.
+        assertThat(maxRows <= chunk / 4096 + 1, is(true));
+    }
+
+    /**
+     * An endless stream where each byte is derived from its position in the
+     * stream so that we can verify what we read.
+     */
+    private static class PatternInputStream extends InputStream {
+        private long position;
+
+        static byte byteAt(final long position) {
+            return (byte) (position % 251);
+        }
+
+        @Override
+        public int read() {
+            return byteAt(this.position++) & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            for (int i = 0; i < len; ++i) {
+                b[off + i] = byteAt(this.position++);
+            }
+            return len;
+        }
+    }
+
     /**
      * Check that we can read in the stream no matter what the initial capacity
      * of the underlying buffer is
@@ -0,0 +1,85 @@
+/**
+ * 
+ */
+package io.pkts.buffer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class NioBufferTest extends AbstractBufferTest {
+
+    /**
+     * @throws java.lang.Exception
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    /**
+     * A {@link NioBuffer} and a {@link ByteBuffer} with the same content must
+     * be interchangeable, e.g. when used as keys in a map, which is what the
+     * framers are doing when looking up headers.
+     */
+    @Test
+    public void testEqualsByteBuffer() throws Exception {
+        final Buffer nio = createBuffer("Call-ID");
+        final Buffer heap = Buffers.wrap("Call-ID");
+        assertThat(nio.equals(heap), is(true));
+        assertThat(heap.equals(nio), is(true));
+        assertThat(nio.hashCode(), is(heap.hashCode()));
+        assertThat(heap.equalsIgnoreCase(createBuffer("call-id")), is(true));
+        assertThat(heap.equals(createBuffer("call-id")), is(false));
+
+        final Map<Buffer, String> map = new HashMap<Buffer, String>();
+        map.put(heap, "hello");
+        assertThat(map.get(nio), is("hello"));
+    }
+
+    /**
+     * Slicing and reading must never copy the bytes so writing to a slice
+     * will show up in the original buffer.
+     */
+    @Test
+    public void testSliceSharesBytes() throws Exception {
+        final Buffer buffer = createBuffer("hello world");
+        buffer.readBytes(6);
+        final Buffer world = buffer.readBytes(5);
+        world.setByte(0, (byte) 'W');
+        assertThat(buffer.toString(), is(""));
+        assertThat(buffer.slice(0, 11).toString(), is("hello World"));
+        assertThat(world.toString(), is("World"));
+    }
+
+    /**
+     * A read-only backing buffer (such as a file mapped read-only) will copy
+     * the bytes of the slice being written to and leave the original alone.
+     */
+    @Test
+    public void testWriteToReadOnly() throws Exception {
+        final byte[] array = "hello world".getBytes("UTF-8");
+        final Buffer buffer = new NioBuffer(java.nio.ByteBuffer.wrap(array).asReadOnlyBuffer());
+        final Buffer world = buffer.slice(6, 11);
+        world.setByte(0, (byte) 'W');
+        world.setUnsignedShort(3, 0x4c44);
+        assertThat(world.toString(), is("WorLD"));
+        assertThat(buffer.toString(), is("hello world"));
+        assertThat(new String(array, "UTF-8"), is("hello world"));
+    }
+
+    @Override
+    public Buffer createBuffer(final byte[] array) {
+        return new NioBuffer(java.nio.ByteBuffer.wrap(array));
+    }
+
+}
@@ -0,0 +1,131 @@
+package io.pkts.buffer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class PooledBufferAllocatorTest {
+
+    @Test
+    public void testSizeClasses() throws Exception {
+        assertThat(PooledBufferAllocator.sizeClassOf(1), is(0));
+        assertThat(PooledBufferAllocator.sizeClassOf(16), is(0));
+        assertThat(PooledBufferAllocator.sizeClassOf(17), is(1));
+        assertThat(PooledBufferAllocator.sizeClassOf(32), is(1));
+        assertThat(PooledBufferAllocator.sizeClassOf(1500), is(7));
+        assertThat(PooledBufferAllocator.sizeOf(PooledBufferAllocator.sizeClassOf(1500)), is(2048));
+        assertThat(PooledBufferAllocator.sizeOf(PooledBufferAllocator.sizeClassOf(PooledBufferAllocator.MAX_SIZE)),
+                is(PooledBufferAllocator.MAX_SIZE));
+    }
+
+    @Test
+    public void testRecycle() throws Exception {
+        final PooledBufferAllocator allocator = new PooledBufferAllocator();
+        final Buffer a = allocator.allocate(100);
+        assertThat(a.getReadableBytes(), is(100));
+        assertThat(allocator.getOutstanding(), is(1L));
+
+        final byte[] array = a.getRawArray();
+        assertThat(a.release(), is(true));
+        assertThat(allocator.getOutstanding(), is(0L));
+
+        // same size class so we should get the same array back
+        final Buffer b = allocator.allocate(120);
+        assertThat(b.getRawArray(), sameInstance(array));
+        assertThat(b.getReadableBytes(), is(120));
+
+        // but not for another size class
+        final Buffer c = allocator.allocate(1000);
+        assertThat(c.getRawArray(), not(sameInstance(array)));
+
+        b.release();
+        c.release();
+        allocator.checkForLeaks();
+    }
+
+    @Test
+    public void testSlicesShareReferenceCount() throws Exception {
+        final PooledBufferAllocator allocator = new PooledBufferAllocator();
+        final Buffer buffer = allocator.allocate(100);
+        final Buffer slice = buffer.slice(10, 20);
+        final Buffer read = buffer.readBytes(50);
+
+        slice.retain();
+        assertThat(buffer.release(), is(false));
+        assertThat(allocator.getOutstanding(), is(1L));
+        assertThat(read.release(), is(true));
+        assertThat(allocator.getOutstanding(), is(0L));
+
+        try {
+            slice.release();
+            fail("Expected an IllegalStateException");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+
+        try {
+            slice.retain();
+            fail("Expected an IllegalStateException");
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testNotPooled() throws Exception {
+        final PooledBufferAllocator allocator = new PooledBufferAllocator();
+        assertThat(allocator.allocate(0).isEmpty(), is(true));
+
+        final Buffer large = allocator.allocate(PooledBufferAllocator.MAX_SIZE + 1);
+        assertThat(large.getReadableBytes(), is(PooledBufferAllocator.MAX_SIZE + 1));
+        assertThat(large.release(), is(false));
+        assertThat(allocator.getOutstanding(), is(0L));
+
+        // and a regular buffer doesn't care
+        assertThat(Buffers.wrap("hello").release(), is(false));
+    }
+
+    @Test
+    public void testCheckForLeaks() throws Exception {
+        final PooledBufferAllocator allocator = new PooledBufferAllocator(true);
+        final Buffer buffer = allocator.allocate(10);
+        try {
+            allocator.checkForLeaks();
+            fail("Expected an IllegalStateException");
+        } catch (final IllegalStateException e) {
+            assertThat(e.getCause().getStackTrace()[0].getMethodName(), is("allocate"));
+        }
+
+        buffer.release();
+        allocator.checkForLeaks();
+    }
+
+    @Test
+    public void testInputStreamBuffers() throws Exception {
+        final byte[] data = "hello world this is a stream".getBytes();
+        final PooledBufferAllocator allocator = new PooledBufferAllocator(true);
+
+        final Buffer bounded = new BoundedInputStreamBuffer(1024, new ByteArrayInputStream(data), allocator);
+        final Buffer hello = bounded.readBytes(5);
+        assertThat(hello.toString(), is("hello"));
+        assertThat(allocator.getOutstanding(), is(1L));
+        hello.release();
+
+        final Buffer stream = new InputStreamBuffer(8, new ByteArrayInputStream(data), true, allocator);
+        stream.readBytes(6).release();
+        final Buffer world = stream.readBytes(5);
+        assertThat(world.toString(), is("world"));
+        world.release();
+
+        allocator.checkForLeaks();
+    }
+}
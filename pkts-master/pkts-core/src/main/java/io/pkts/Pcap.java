@@ -2,24 +2,39 @@ package io.pkts;
 
 import io.pkts.buffer.BoundedInputStreamBuffer;
 import io.pkts.buffer.Buffer;
+import io.pkts.buffer.BufferAllocator;
 import io.pkts.buffer.Buffers;
+import io.pkts.buffer.MappedFileBuffer;
 import io.pkts.filters.Filter;
 import io.pkts.filters.FilterException;
 import io.pkts.filters.FilterFactory;
 import io.pkts.filters.FilterParseException;
 import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.framer.Framer;
 import io.pkts.framer.FramerManager;
 import io.pkts.framer.FramingException;
 import io.pkts.framer.PcapFramer;
+import io.pkts.framer.PcapngFramer;
+import io.pkts.packet.PCapPacket;
 import io.pkts.packet.Packet;
+import io.pkts.packet.impl.AbstractPacket;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * 
@@ -28,10 +43,28 @@ import java.nio.ByteOrder;
  */
 public class Pcap {
 
+    /**
+     * When looping in parallel, this is how many records we read off of the
+     * stream before handing them over to the worker threads.
+     */
+    private static final int PARALLEL_BATCH_SIZE = 1024;
+
+    /**
+     * When looping in parallel, a batch is split up into tasks of at most this
+     * many records each.
+     */
+    private static final int PARALLEL_TASK_SIZE = 64;
+
     private final PcapGlobalHeader header;
     private final Buffer buffer;
     private final FramerManager framerManager;
 
+    /**
+     * Slices the records out of the stream, which is a {@link PcapFramer} for
+     * a classic pcap and a {@link PcapngFramer} for a pcapng file.
+     */
+    private final Framer<Packet, PCapPacket> framer;
+
     /**
      * If the filter is set then only frames that are accepted by the filter
      * will be further processed.
@@ -40,12 +73,40 @@ public class Pcap {
 
     private final FilterFactory filterFactory = FilterFactory.getInstance();
 
-    private Pcap(final PcapGlobalHeader header, final Buffer buffer) {
+    /**
+     * True if the packets are read into buffers from a pooling
+     * {@link BufferAllocator}, in which case we have to release every packet
+     * once the {@link PacketHandler} is done with it.
+     */
+    private final boolean pooled;
+
+    private Pcap(final PcapGlobalHeader header, final Buffer buffer, final boolean pooled,
+            final Framer<Packet, PCapPacket> framer) {
         assert header != null;
         assert buffer != null;
         this.header = header;
         this.buffer = buffer;
+        this.pooled = pooled;
         this.framerManager = FramerManager.getInstance();
+        this.framer = framer != null ? framer : new PcapFramer(header, this.framerManager);
+    }
+
+    /**
+     * Figure out whether the stream is a classic pcap or a pcapng file and
+     * read the header(s) off of it.
+     */
+    private static Pcap open(final Buffer stream, final boolean pooled) throws IOException {
+        final Buffer h = stream.readBytes(4);
+        final byte[] magic = h.getArray();
+        h.release();
+
+        if (PcapGlobalHeader.isPcapng(magic)) {
+            final PcapngFramer framer = new PcapngFramer();
+            final PcapGlobalHeader header = framer.readSectionHeader(stream);
+            return new Pcap(header, stream, pooled, framer);
+        }
+
+        return new Pcap(PcapGlobalHeader.parse(magic, stream), stream, pooled, null);
     }
 
     /**
@@ -70,13 +131,9 @@ public class Pcap {
     }
 
     public void loop(final PacketHandler callback) throws IOException, FramingException {
-        final ByteOrder byteOrder = this.header.getByteOrder();
-        final PcapFramer framer = new PcapFramer(this.header, this.framerManager);
-        int count = 1;
-
         Packet packet = null;
         boolean processNext = true;
-        while ((packet = framer.frame(null, this.buffer)) != null && processNext) {
+        while (processNext && (packet = this.framer.frame(null, this.buffer)) != null) {
             try {
                 // System.out.println(" - " + (count++));
                 final long time = packet.getArrivalTime();
@@ -91,6 +148,199 @@ public class Pcap {
                 // exceptions
                 System.err.println("WARN: the filter complained about the last frame. Msg (if any) - " +
                         e.getMessage());
+            } finally {
+                ((PCapPacket) packet).release();
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #loop(PacketHandler, ForkJoinPool, boolean)} with the
+     * packets being delivered in the order they appear in the pcap.
+     */
+    public void loop(final PacketHandler callback, final ForkJoinPool pool) throws IOException, FramingException {
+        loop(callback, pool, true);
+    }
+
+    /**
+     * Loop over the pcap but do the heavy lifting on the supplied
+     * {@link ForkJoinPool}.
+     * 
+     * The calling thread scans the pcap stream and slices out the records
+     * (which is cheap) in batches of {@link #PARALLEL_BATCH_SIZE}. Each batch
+     * is then fanned out to the pool where every packet gets its entire
+     * protocol stack framed (Ethernet, IP, UDP/TCP, SIP etc) and the filter,
+     * if any, applied. Framed packets remember their layers so whatever the
+     * {@link PacketHandler} then asks for is already there.
+     * 
+     * The {@link PacketHandler} is always called from the calling thread, one
+     * packet at a time, so it does not have to be thread safe. If ordered is
+     * true, the packets are delivered in the exact same order as they appear
+     * in the pcap. If false, whichever batch is done first is delivered first,
+     * which means that one slow batch doesn't hold up the rest (note that the
+     * clock driven by the {@link FramerManager} may then jump back and forth).
+     * 
+     * @param callback
+     * @param pool
+     *            the pool to use for framing the packets.
+     * @param ordered
+     *            whether or not the packets must be delivered in the order
+     *            they were captured.
+     * @throws IOException
+     * @throws FramingException
+     */
+    public void loop(final PacketHandler callback, final ForkJoinPool pool, final boolean ordered)
+            throws IOException, FramingException {
+        assert pool != null;
+
+        // keep a couple of batches per worker in flight so that the
+        // pool doesn't run dry while we are delivering packets.
+        final int maxInFlight = Math.max(2, pool.getParallelism() * 2);
+        final Deque<DecodeTask> inFlight = new ArrayDeque<>();
+
+        boolean processNext = true;
+        boolean moreRecords = true;
+        try {
+            while (processNext && (moreRecords || !inFlight.isEmpty())) {
+                if (moreRecords && inFlight.size() < maxInFlight) {
+                    final Packet[] batch = readBatch();
+                    moreRecords = batch.length == PARALLEL_BATCH_SIZE;
+                    if (batch.length > 0) {
+                        final DecodeTask task = new DecodeTask(batch, this.filter, 0, batch.length);
+                        pool.execute(task);
+                        inFlight.add(task);
+                    }
+                    continue;
+                }
+
+                processNext = deliver(nextCompleted(inFlight, ordered), callback);
+            }
+        } finally {
+            for (final DecodeTask task : inFlight) {
+                // cancelling a task that is already running doesn't stop it,
+                // even though cancel says it did, so always wait for it
+                // before handing the bytes back.
+                task.cancel(false);
+                task.quietlyJoin();
+                release(task.packets, 0);
+            }
+        }
+    }
+
+    /**
+     * Read at most {@link #PARALLEL_BATCH_SIZE} records off of the stream.
+     * Only the record headers are looked at, everything else is left for
+     * the worker threads.
+     */
+    private Packet[] readBatch() throws IOException {
+        final Packet[] batch = new Packet[PARALLEL_BATCH_SIZE];
+        int count = 0;
+        Packet packet = null;
+        while (count < PARALLEL_BATCH_SIZE && (packet = this.framer.frame(null, this.buffer)) != null) {
+            batch[count++] = packet;
+        }
+
+        if (count == PARALLEL_BATCH_SIZE) {
+            return batch;
+        }
+
+        final Packet[] tmp = new Packet[count];
+        System.arraycopy(batch, 0, tmp, 0, count);
+        return tmp;
+    }
+
+    private static DecodeTask nextCompleted(final Deque<DecodeTask> inFlight, final boolean ordered) {
+        if (!ordered) {
+            final Iterator<DecodeTask> it = inFlight.iterator();
+            while (it.hasNext()) {
+                final DecodeTask task = it.next();
+                if (task.isDone()) {
+                    it.remove();
+                    return task;
+                }
+            }
+        }
+        return inFlight.poll();
+    }
+
+    private boolean deliver(final DecodeTask task, final PacketHandler callback) throws IOException {
+        try {
+            task.join();
+            for (int i = 0; i < task.packets.length; ++i) {
+                if (task.accepted[i]) {
+                    final Packet packet = task.packets[i];
+                    this.framerManager.tick(packet.getArrivalTime());
+                    if (!callback.nextPacket(packet)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        } finally {
+            release(task.packets, 0);
+        }
+    }
+
+    private static void release(final Packet[] packets, final int from) {
+        for (int i = from; i < packets.length; ++i) {
+            ((PCapPacket) packets[i]).release();
+        }
+    }
+
+    /**
+     * Frames the protocol stack of a range of packets and checks them against
+     * the filter, splitting itself up until the range is small enough.
+     */
+    private static final class DecodeTask extends RecursiveAction {
+
+        private final Packet[] packets;
+        private final boolean[] accepted;
+        private final Filter filter;
+        private final int start;
+        private final int stop;
+
+        private DecodeTask(final Packet[] packets, final Filter filter, final int start, final int stop) {
+            this(packets, new boolean[packets.length], filter, start, stop);
+        }
+
+        private DecodeTask(final Packet[] packets, final boolean[] accepted, final Filter filter, final int start,
+                final int stop) {
+            this.packets = packets;
+            this.accepted = accepted;
+            this.filter = filter;
+            this.start = start;
+            this.stop = stop;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.stop - this.start > PARALLEL_TASK_SIZE) {
+                final int middle = (this.start + this.stop) >>> 1;
+                ForkJoinTask.invokeAll(new DecodeTask(this.packets, this.accepted, this.filter, this.start, middle),
+                        new DecodeTask(this.packets, this.accepted, this.filter, middle, this.stop));
+                return;
+            }
+
+            for (int i = this.start; i < this.stop; ++i) {
+                final Packet packet = this.packets[i];
+                if (packet instanceof AbstractPacket) {
+                    ((AbstractPacket) packet).frameProtocolStack();
+                }
+                this.accepted[i] = accept(packet);
+            }
+        }
+
+        private boolean accept(final Packet packet) {
+            if (this.filter == null) {
+                return true;
+            }
+
+            try {
+                return this.filter.accept(packet);
+            } catch (final FilterException e) {
+                System.err.println("WARN: the filter complained about the last frame. Msg (if any) - " +
+                        e.getMessage());
+                return false;
             }
         }
     }
@@ -103,6 +353,9 @@ public class Pcap {
      * {@link PcapOutputStream}. Good for those applications that needs to
      * filter a {@link Pcap} and write out new files.
      * 
+     * For a pcapng file, the {@link PcapGlobalHeader} is the one describing
+     * the first interface, see {@link #getPcapHeader()}.
+     * 
      * @param out
      * @return
      * @throws IllegalArgumentException
@@ -112,16 +365,16 @@ public class Pcap {
     }
 
     /**
-     * Capture packets from the input stream
+     * Capture packets from the input stream, which may be either a classic
+     * pcap or a pcapng file. The same goes for all the other ways of opening
+     * a {@link Pcap}.
      * 
      * @param is
      * @return
      * @throws IOException
      */
     public static Pcap openStream(final InputStream is) throws IOException {
-        final Buffer stream = Buffers.wrap(is);
-        final PcapGlobalHeader header = PcapGlobalHeader.parse(stream);
-        return new Pcap(header, stream);
+        return open(Buffers.wrap(is), false);
     }
 
     /**
@@ -133,9 +386,57 @@ public class Pcap {
      * @throws IOException
      */
     public static Pcap openStream(final InputStream is, final int bufferCapacity) throws IOException {
-        final Buffer stream = new BoundedInputStreamBuffer(bufferCapacity, is);
-        final PcapGlobalHeader header = PcapGlobalHeader.parse(stream);
-        return new Pcap(header, stream);
+        return open(new BoundedInputStreamBuffer(bufferCapacity, is), false);
+    }
+
+    /**
+     * Capture packets from the input stream, which may be never ending, such
+     * as a live capture being piped to us. The bytes that have been read are
+     * let go of as we go so the memory held stays the same no matter how
+     * much is read, and there is no limit to the size of the frames. See
+     * {@link Buffers#wrapStreaming(InputStream)}.
+     *
+     * @param is
+     * @return
+     * @throws IOException
+     */
+    public static Pcap openStreaming(final InputStream is) throws IOException {
+        return open(Buffers.wrapStreaming(is), false);
+    }
+
+    /**
+     * Capture packets from the input stream where the bytes of every packet
+     * are read into buffers obtained from the given {@link BufferAllocator}.
+     *
+     * With a pooling allocator, such as the
+     * {@link io.pkts.buffer.PooledBufferAllocator}, the bytes of a packet
+     * are handed back to the allocator as soon as the {@link PacketHandler}
+     * returns, which means that a {@link PacketHandler} that doesn't hang on
+     * to the packets creates next to no garbage. A {@link PacketHandler} that
+     * does hang on to a packet must {@link PCapPacket#retain()} it (and later
+     * on {@link PCapPacket#release()} it).
+     *
+     * @param is
+     * @param allocator
+     * @return
+     * @throws IOException
+     */
+    public static Pcap openStream(final InputStream is, final BufferAllocator allocator) throws IOException {
+        return openStream(is, BoundedInputStreamBuffer.DEFAULT_CAPACITY, allocator);
+    }
+
+    /**
+     * Same as {@link #openStream(InputStream, BufferAllocator)}.
+     *
+     * @param is
+     * @param bufferCapacity see {@link #openStream(InputStream, int)}
+     * @param allocator
+     * @return
+     * @throws IOException
+     */
+    public static Pcap openStream(final InputStream is, final int bufferCapacity, final BufferAllocator allocator)
+            throws IOException {
+        return open(new BoundedInputStreamBuffer(bufferCapacity, is, allocator), allocator != BufferAllocator.HEAP);
     }
 
     /**
@@ -163,12 +464,64 @@ public class Pcap {
         return openStream(new File(file));
     }
 
-    public void close() {
-        // TODO
+    /**
+     * Open the pcap by memory mapping the file instead of reading it through
+     * an {@link InputStream}. Every packet will then point straight into the
+     * mapped file so no bytes are copied when framing the packets, which is
+     * considerably cheaper for large captures. Files larger than 2GB are
+     * mapped in chunks.
+     *
+     * Remember to {@link #close()} the {@link Pcap} when done.
+     *
+     * @param file
+     *            the pcap file
+     * @return a new {@link Pcap}
+     * @throws IOException
+     *             in case the file cannot be opened or mapped.
+     */
+    public static Pcap openMapped(final Path file) throws IOException {
+        return openMapped(file, MappedFileBuffer.DEFAULT_CHUNK_SIZE);
     }
 
     /**
+     * Same as {@link #openMapped(Path)} but lets you control how much of the
+     * file is mapped at any given time.
      *
+     * @param file
+     *            the pcap file
+     * @param chunkSize
+     *            the size of each mapped region of the file.
+     * @return a new {@link Pcap}
+     * @throws IOException
+     */
+    public static Pcap openMapped(final Path file, final int chunkSize) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return open(new MappedFileBuffer(chunkSize, channel), false);
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Close the underlying file or stream, if there is anything to close.
+     */
+    public void close() {
+        if (this.buffer instanceof Closeable) {
+            try {
+                ((Closeable) this.buffer).close();
+            } catch (final IOException e) {
+                // nothing we can do about it
+            }
+        }
+    }
+
+    /**
+     * The global header of a classic pcap. A pcapng file doesn't have one
+     * but every interface in it is described by a {@link PcapGlobalHeader}
+     * (which is what {@link PCapPacket}s captured on that interface refer
+     * to) and this is the one of the first interface.
      */
     public PcapGlobalHeader getPcapHeader() {
         return this.header;
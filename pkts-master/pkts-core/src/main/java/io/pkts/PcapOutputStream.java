@@ -3,15 +3,34 @@
  */
 package io.pkts;
 
+import io.pkts.buffer.Buffer;
 import io.pkts.frame.Frame;
 import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.frame.PcapRecordHeader;
 import io.pkts.packet.Packet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
 
 
 /**
+ * Writes packets to a pcap.
+ * 
+ * Every record is written as a number of views into the buffers of the
+ * packet, one for the record header and (at least) one for each layer of the
+ * packet, so no bytes are copied along the way. If the
+ * {@link PcapOutputStream} is writing to a {@link GatheringByteChannel}, which
+ * it does if it is given a {@link FileOutputStream}, a record is written with
+ * a single gathering write. Note that this also means that the writes aren't
+ * buffered so when writing lots of small packets to an ordinary
+ * {@link OutputStream}, you may want to wrap it in a
+ * {@link java.io.BufferedOutputStream}.
+ * 
  * @author jonas@jonasborjesson.com
  */
 public class PcapOutputStream extends OutputStream {
@@ -28,6 +47,11 @@ public class PcapOutputStream extends OutputStream {
      */
     private final PcapGlobalHeader pcapHeader;
 
+    /**
+     * The channel we use for writing the records, if we have one.
+     */
+    private final GatheringByteChannel channel;
+
     public static PcapOutputStream create(final PcapGlobalHeader pcapHeader, final OutputStream out) {
         if (out == null) {
             throw new IllegalArgumentException("The OutputStream cannot be null");
@@ -43,16 +67,108 @@ public class PcapOutputStream extends OutputStream {
             throw new IllegalArgumentException("Could not write the pcapheader to the stream due to IOException.", e);
         }
 
-        return new PcapOutputStream(pcapHeader, out);
+        final GatheringByteChannel channel = out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel()
+                : null;
+        return new PcapOutputStream(pcapHeader, out, channel);
     }
 
+    /**
+     * Create a {@link PcapOutputStream} that writes every record to the
+     * channel with a single gathering write, such as a
+     * {@link java.nio.channels.FileChannel}.
+     * 
+     * @param pcapHeader
+     * @param channel
+     * @return
+     * @throws IOException
+     *             in case the header couldn't be written to the channel.
+     */
+    public static PcapOutputStream create(final PcapGlobalHeader pcapHeader, final GatheringByteChannel channel)
+            throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException("The channel cannot be null");
+        }
+
+        if (pcapHeader == null) {
+            throw new IllegalArgumentException("The pcap header cannot be null");
+        }
+
+        final ByteArrayOutputStream header = new ByteArrayOutputStream(PcapGlobalHeader.SIZE);
+        pcapHeader.write(header);
+        write(channel, new ByteBuffer[] { ByteBuffer.wrap(header.toByteArray()) });
+        return new PcapOutputStream(pcapHeader, Channels.newOutputStream(channel), channel);
+    }
+
+    /**
+     * For sub-classes that take care of where the records end up themselves,
+     * such as the {@link RotatingPcapOutputStream}, and therefore must
+     * override {@link #write(PcapRecordHeader, Buffer)}, {@link #write(int)},
+     * {@link #flush()} and {@link #close()}.
+     */
+    protected PcapOutputStream(final PcapGlobalHeader pcapHeader) {
+        this(pcapHeader, null, null);
+    }
 
     /**
      * 
      */
-    private PcapOutputStream(final PcapGlobalHeader pcapHeader, final OutputStream out) {
+    private PcapOutputStream(final PcapGlobalHeader pcapHeader, final OutputStream out,
+            final GatheringByteChannel channel) {
         this.out = out;
         this.pcapHeader = pcapHeader;
+        this.channel = channel;
+    }
+
+    /**
+     * Write a record, i.e., the record header followed by the payload. This
+     * is what the {@link io.pkts.packet.PCapPacket} ends up calling once all
+     * the layers of the packet have added their headers to the payload.
+     * 
+     * @param header
+     * @param payload
+     *            the payload, typically a composite of the headers of every
+     *            layer and the payload of the top-most one, see
+     *            {@link io.pkts.buffer.Buffers#gather(Buffer...)}. May be null.
+     * @throws IOException
+     */
+    public void write(final PcapRecordHeader header, final Buffer payload) throws IOException {
+        final ByteBuffer[] views = payload != null ? payload.toByteBuffers() : new ByteBuffer[0];
+        final ByteBuffer[] record = new ByteBuffer[views.length + 1];
+        record[0] = header.toByteBuffer();
+        System.arraycopy(views, 0, record, 1, views.length);
+
+        if (this.channel != null) {
+            write(this.channel, record);
+        } else {
+            write(this.out, record);
+        }
+    }
+
+    private static void write(final GatheringByteChannel channel, final ByteBuffer[] views) throws IOException {
+        long remaining = 0;
+        for (final ByteBuffer view : views) {
+            remaining += view.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(views);
+        }
+    }
+
+    /**
+     * Write the views to a plain {@link OutputStream}, which means one write
+     * per view, but still without copying the bytes unless the view isn't
+     * backed by an array.
+     */
+    private static void write(final OutputStream out, final ByteBuffer[] views) throws IOException {
+        for (final ByteBuffer view : views) {
+            if (view.hasArray()) {
+                out.write(view.array(), view.arrayOffset() + view.position(), view.remaining());
+            } else {
+                final byte[] bytes = new byte[view.remaining()];
+                view.duplicate().get(bytes);
+                out.write(bytes);
+            }
+        }
     }
 
     /**
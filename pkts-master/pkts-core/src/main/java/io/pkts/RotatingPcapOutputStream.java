@@ -0,0 +1,389 @@
+/**
+ *
+ */
+package io.pkts;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.frame.PcapRecordHeader;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A {@link PcapOutputStream} that spreads the records over a number of pcap
+ * files, for captures running for days on end. A new file is started once the
+ * current one has reached its max size, or once it covers more than the
+ * rotate interval. The interval is measured on the packet clock, i.e., the
+ * timestamps of the records, not the wall clock, so a capture that is read
+ * back and written out again is rotated the exact same way.
+ *
+ * The name of every file is given by a template where <code>{seq}</code> is
+ * replaced by the sequence number of the file (starting at zero) and
+ * <code>{time}</code> by the timestamp of the first record in the file, as
+ * yyyyMMdd-HHmmss in UTC. E.g. "/var/capture/sip-{time}-{seq}.pcap". Should
+ * the name already be taken, either by a file already on disk or by an
+ * earlier file of this stream (e.g. when rotating more than once a second
+ * with only {time} in the template), "-1", "-2" and so on is added to the
+ * name, before the extension, until it isn't.
+ *
+ * Closing a full file, compressing it and removing the files that no longer
+ * should be kept is all done on a background thread so the thread writing
+ * the records is never held up by anything more than opening the next file.
+ * Only the files written by this stream are considered for removal, i.e.,
+ * files left behind from an earlier capture are never touched.
+ *
+ * Configure the stream before writing anything to it. Like the
+ * {@link PcapOutputStream}, this class is not thread safe.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public class RotatingPcapOutputStream extends PcapOutputStream {
+
+    /**
+     * What to do with a file once we are done writing to it.
+     */
+    public enum Compression {
+        NONE(""), GZIP(".gz");
+
+        private final String extension;
+
+        Compression(final String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return this.extension;
+        }
+    }
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss").withZone(
+            ZoneOffset.UTC);
+
+    private final PcapGlobalHeader pcapHeader;
+
+    private final String template;
+
+    private long maxFileSize;
+
+    private long rotateInterval;
+
+    private int maxFiles;
+
+    private Compression compression = Compression.NONE;
+
+    /**
+     * Closes, compresses and removes old files. A single thread so that the
+     * files are dealt with in the order they were written.
+     */
+    private final ExecutorService background;
+
+    /**
+     * The files we are done with and that are still around, oldest first.
+     * Only ever touched by the background thread.
+     */
+    private final Deque<Path> closedFiles = new ArrayDeque<>();
+
+    /**
+     * Every file this stream has opened, so that we never open the same one
+     * twice even though it may have been compressed or removed since.
+     */
+    private final Set<Path> usedFiles = new HashSet<>();
+
+    /**
+     * The first thing that went wrong on the background thread, which is
+     * handed to whoever writes to, or closes, this stream next.
+     */
+    private volatile IOException failure;
+
+    private PcapOutputStream current;
+
+    private Path currentFile;
+
+    private long currentSize;
+
+    private long currentStart;
+
+    private int sequence;
+
+    /**
+     *
+     * @param pcapHeader
+     *            the header every file will start with.
+     * @param template
+     *            the name of the files, which must contain {seq} and/or
+     *            {time}.
+     * @return
+     */
+    public static RotatingPcapOutputStream create(final PcapGlobalHeader pcapHeader, final String template) {
+        if (pcapHeader == null) {
+            throw new IllegalArgumentException("The pcap header cannot be null");
+        }
+
+        if (template == null || !template.contains("{seq}") && !template.contains("{time}")) {
+            throw new IllegalArgumentException("The file name template must contain {seq} and/or {time}");
+        }
+
+        return new RotatingPcapOutputStream(pcapHeader, template);
+    }
+
+    private RotatingPcapOutputStream(final PcapGlobalHeader pcapHeader, final String template) {
+        super(pcapHeader);
+        this.pcapHeader = pcapHeader;
+        this.template = template;
+        this.background = Executors.newSingleThreadExecutor(r -> {
+            final Thread thread = new Thread(r, "pcap-rotation");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start a new file rather than letting the current one grow beyond this
+     * many bytes. A file always gets at least one record, no matter its size.
+     *
+     * @param bytes
+     *            the max size of a file or 0, the default, for no limit.
+     */
+    public void setMaxFileSize(final long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("The max file size cannot be negative");
+        }
+        this.maxFileSize = bytes;
+    }
+
+    /**
+     * Start a new file once a record is this many seconds younger than the
+     * first record of the current file.
+     *
+     * @param seconds
+     *            the interval or 0, the default, for never rotating on time.
+     */
+    public void setRotateInterval(final long seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("The rotate interval cannot be negative");
+        }
+        this.rotateInterval = seconds;
+    }
+
+    /**
+     * The number of files, including the one currently written to, to keep.
+     * Once there are more than this, the oldest one is removed.
+     *
+     * @param maxFiles
+     *            the number of files or 0, the default, for keeping them all.
+     */
+    public void setMaxFiles(final int maxFiles) {
+        if (maxFiles < 0) {
+            throw new IllegalArgumentException("The max number of files cannot be negative");
+        }
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * Compress every file once we are done with it. The compressed file gets
+     * the extension of the {@link Compression} added to its name and the
+     * original is removed.
+     *
+     * @param compression
+     */
+    public void setCompression(final Compression compression) {
+        if (compression == null) {
+            throw new IllegalArgumentException("The compression cannot be null, use Compression.NONE");
+        }
+        this.compression = compression;
+    }
+
+    /**
+     * The file we currently are writing to, or null if nothing has been
+     * written yet.
+     */
+    public Path getCurrentFile() {
+        return this.currentFile;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final PcapRecordHeader header, final Buffer payload) throws IOException {
+        checkFailure();
+
+        final long seconds = header.getTimeStampSeconds();
+        final long size = PcapRecordHeader.SIZE + (payload != null ? payload.getReadableBytes() : 0);
+        if (this.current == null || shouldRotate(seconds, size)) {
+            rotate(seconds);
+        }
+
+        this.current.write(header, payload);
+        this.currentSize += size;
+    }
+
+    private boolean shouldRotate(final long seconds, final long size) {
+        if (this.currentSize == PcapGlobalHeader.SIZE) {
+            return false;
+        }
+
+        return this.maxFileSize > 0 && this.currentSize + size > this.maxFileSize
+                || this.rotateInterval > 0 && seconds - this.currentStart >= this.rotateInterval;
+    }
+
+    /**
+     * Open the next file and hand the current one over to the background
+     * thread.
+     *
+     * @param seconds
+     *            the timestamp of the first record of the new file
+     */
+    private void rotate(final long seconds) throws IOException {
+        final PcapOutputStream previous = this.current;
+        final Path previousFile = this.currentFile;
+
+        this.currentFile = nextFile(seconds);
+        this.current = PcapOutputStream.create(this.pcapHeader, new FileOutputStream(this.currentFile.toFile()));
+        this.currentSize = PcapGlobalHeader.SIZE;
+        this.currentStart = seconds;
+
+        if (previous != null) {
+            this.background.execute(() -> retire(previous, previousFile, this.maxFiles - 1));
+        }
+    }
+
+    /**
+     * The name of the next file, which must be neither one we have used
+     * before nor one that is already on disk, compressed or not.
+     */
+    private Path nextFile(final long seconds) {
+        final Path file = Paths.get(fileName(seconds, this.sequence++));
+        Path candidate = file;
+        for (int i = 1; isTaken(candidate); ++i) {
+            final String name = file.getFileName().toString();
+            final int dot = name.lastIndexOf('.');
+            final int at = dot > 0 ? dot : name.length();
+            candidate = file.resolveSibling(name.substring(0, at) + "-" + i + name.substring(at));
+        }
+        this.usedFiles.add(candidate);
+        return candidate;
+    }
+
+    private boolean isTaken(final Path file) {
+        return this.usedFiles.contains(file) || Files.exists(file)
+                || Files.exists(Paths.get(file.toString() + this.compression.getExtension()));
+    }
+
+    private String fileName(final long seconds, final int sequence) {
+        return this.template.replace("{seq}", Integer.toString(sequence)).replace("{time}",
+                TIME_FORMAT.format(Instant.ofEpochSecond(seconds)));
+    }
+
+    /**
+     * Close and compress the file and then remove whatever files we no longer
+     * should keep. Runs on the background thread.
+     *
+     * @param keep
+     *            the number of closed files to keep, which is one less than
+     *            the max number of files as long as there is a file being
+     *            written to.
+     */
+    private void retire(final PcapOutputStream out, final Path file, final int keep) {
+        try {
+            out.close();
+            final Path done = compress(file);
+            this.closedFiles.add(done);
+            while (this.maxFiles > 0 && this.closedFiles.size() > keep) {
+                Files.deleteIfExists(this.closedFiles.poll());
+            }
+        } catch (final IOException e) {
+            if (this.failure == null) {
+                this.failure = e;
+            }
+        }
+    }
+
+    private Path compress(final Path file) throws IOException {
+        if (this.compression == Compression.NONE) {
+            return file;
+        }
+
+        final Path compressed = Paths.get(file.toString() + this.compression.getExtension());
+        try (InputStream in = Files.newInputStream(file);
+                OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed), 64 * 1024)) {
+            final byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        Files.delete(file);
+        return compressed;
+    }
+
+    private void checkFailure() throws IOException {
+        final IOException e = this.failure;
+        if (e != null) {
+            throw new IOException("Failed to close, compress or remove an earlier pcap file", e);
+        }
+    }
+
+    /**
+     * Write a single byte to the current file. Only here since this is an
+     * {@link OutputStream}.
+     */
+    @Override
+    public void write(final int b) throws IOException {
+        if (this.current == null) {
+            throw new IOException("No file has been opened yet");
+        }
+        this.current.write(b);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flush() throws IOException {
+        if (this.current != null) {
+            this.current.flush();
+        }
+    }
+
+    /**
+     * Close the current file and then wait for the background thread to be
+     * done with it, and all files before it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.current != null) {
+            final PcapOutputStream last = this.current;
+            final Path lastFile = this.currentFile;
+            this.current = null;
+            this.background.execute(() -> retire(last, lastFile, this.maxFiles));
+        }
+
+        this.background.shutdown();
+        try {
+            this.background.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the pcap files to be closed", e);
+        }
+        checkFailure();
+    }
+
+}
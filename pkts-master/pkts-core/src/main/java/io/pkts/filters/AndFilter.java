@@ -0,0 +1,43 @@
+/**
+ * 
+ */
+package io.pkts.filters;
+
+import io.pkts.packet.Packet;
+
+/**
+ * Accepts a packet if all of its filters accept it. The filters are evaluated in
+ * order and the evaluation stops as soon as one of them decides the outcome,
+ * so put the cheap ones first.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public final class AndFilter implements Filter {
+
+    private final Filter[] filters;
+
+    public AndFilter(final Filter... filters) {
+        if (filters.length == 0) {
+            throw new IllegalArgumentException("Expected at least one filter");
+        }
+        this.filters = filters.clone();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean accept(final Packet packet) throws FilterException {
+        for (final Filter filter : this.filters) {
+            if (!filter.accept(packet)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Filter[] getFilters() {
+        return this.filters.clone();
+    }
+
+}
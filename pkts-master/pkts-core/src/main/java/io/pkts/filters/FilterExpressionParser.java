@@ -0,0 +1,423 @@
+/**
+ * 
+ */
+package io.pkts.filters;
+
+import io.pkts.protocol.Protocol;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Parses a filter expression, as described in
+ * {@link FilterFactory#createFilter(String)}, into a tree of {@link Filter}s.
+ * 
+ * While doing so, the operands of every "and" and "or" are ordered so that the
+ * filters that only have to look at the lower layers of a packet are
+ * evaluated first. Since the evaluation stops as soon as the outcome is known,
+ * a filter such as "sip.method == INVITE and udp.port == 5060" will never
+ * frame the SIP message of a packet that isn't sent to or from port 5060.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+final class FilterExpressionParser {
+
+    private static final Comparator<Filter> BY_COST = Comparator.comparingInt(Filters::cost);
+
+    private final String expression;
+
+    private final List<Token> tokens;
+
+    private int index;
+
+    FilterExpressionParser(final String expression) throws FilterParseException {
+        this.expression = expression;
+        this.tokens = tokenize(expression);
+    }
+
+    Filter parse() throws FilterParseException {
+        if (this.tokens.isEmpty()) {
+            throw new FilterParseException(0, "Empty filter expression");
+        }
+        final Filter filter = parseOr();
+        if (this.index < this.tokens.size()) {
+            final Token token = this.tokens.get(this.index);
+            throw new FilterParseException(token.offset, "Unexpected \"" + token.text + "\"");
+        }
+        return filter;
+    }
+
+    private Filter parseOr() throws FilterParseException {
+        final List<Filter> filters = new ArrayList<>();
+        filters.add(parseAnd());
+        while (accept("or", "||")) {
+            filters.add(parseAnd());
+        }
+        if (filters.size() == 1) {
+            return filters.get(0);
+        }
+        return new OrFilter(sort(filters));
+    }
+
+    private Filter parseAnd() throws FilterParseException {
+        final List<Filter> filters = new ArrayList<>();
+        filters.add(parseNot());
+        while (accept("and", "&&")) {
+            filters.add(parseNot());
+        }
+        if (filters.size() == 1) {
+            return filters.get(0);
+        }
+        return new AndFilter(sort(filters));
+    }
+
+    private Filter parseNot() throws FilterParseException {
+        if (accept("not", "!")) {
+            return new NotFilter(parseNot());
+        }
+        return parsePrimary();
+    }
+
+    private Filter parsePrimary() throws FilterParseException {
+        final Token token = next("Expected a field, a protocol or \"(\"");
+        if (token.is("(")) {
+            final Filter filter = parseOr();
+            expect(")");
+            return filter;
+        }
+
+        if (token.quoted || token.isOperator()) {
+            throw new FilterParseException(token.offset, "Expected a field, a protocol or \"(\"");
+        }
+
+        final boolean equals;
+        if (accept("==")) {
+            equals = true;
+        } else if (accept("!=")) {
+            equals = false;
+        } else if (token.text.indexOf('.') != -1 || token.text.equalsIgnoreCase("proto")) {
+            throw new FilterParseException(offset(), "Expected \"==\" or \"!=\"");
+        } else {
+            return new ProtocolFilter(protocol(token));
+        }
+
+        final Token value = next("Expected a value");
+        if (value.isOperator() && !value.quoted) {
+            throw new FilterParseException(value.offset, "Expected a value");
+        }
+        final Filter filter = comparison(token, value);
+        return equals ? filter : new NotFilter(filter);
+    }
+
+    private Filter comparison(final Token field, final Token value) throws FilterParseException {
+        final String name = field.text.toLowerCase();
+        switch (name) {
+        case "proto":
+            return new ProtocolFilter(protocol(value));
+        case "ip.src":
+            return address(IpAddressFilter.Direction.SOURCE, value);
+        case "ip.dst":
+            return address(IpAddressFilter.Direction.DESTINATION, value);
+        case "ip.addr":
+            return address(IpAddressFilter.Direction.ANY, value);
+        case "port":
+            return port(null, PortFilter.Direction.ANY, value);
+        case "udp.port":
+            return port(Protocol.UDP, PortFilter.Direction.ANY, value);
+        case "udp.srcport":
+            return port(Protocol.UDP, PortFilter.Direction.SOURCE, value);
+        case "udp.dstport":
+            return port(Protocol.UDP, PortFilter.Direction.DESTINATION, value);
+        case "tcp.port":
+            return port(Protocol.TCP, PortFilter.Direction.ANY, value);
+        case "tcp.srcport":
+            return port(Protocol.TCP, PortFilter.Direction.SOURCE, value);
+        case "tcp.dstport":
+            return port(Protocol.TCP, PortFilter.Direction.DESTINATION, value);
+        case "sip.method":
+            return new SipMethodFilter(value.text);
+        case "sip.status":
+            final int[] range = range(value, 100, 699);
+            return new SipStatusFilter(range[0], range[1]);
+        case "sip.call-id":
+            return new SipCallIdFilter(value.text);
+        default:
+            if (name.startsWith("sip.") && name.length() > 4 && name.indexOf('.', 4) == -1) {
+                return new SipHeaderFilter(field.text.substring(4), value.text);
+            }
+            throw new FilterParseException(field.offset, "Unknown field \"" + field.text + "\"");
+        }
+    }
+
+    private static Protocol protocol(final Token token) throws FilterParseException {
+        switch (token.text.toLowerCase()) {
+        case "ip":
+        case "ipv4":
+            return Protocol.IPv4;
+        case "ipv6":
+            return Protocol.IPv6;
+        case "udp":
+            return Protocol.UDP;
+        case "tcp":
+            return Protocol.TCP;
+        case "sctp":
+            return Protocol.SCTP;
+        case "icmp":
+            return Protocol.ICMP;
+        case "sip":
+            return Protocol.SIP;
+        case "sdp":
+            return Protocol.SDP;
+        case "rtp":
+            return Protocol.RTP;
+        case "rtcp":
+            return Protocol.RTCP;
+        case "eth":
+            return Protocol.ETHERNET_II;
+        case "sll":
+            return Protocol.SLL;
+        case "arp":
+            return Protocol.ARP;
+        default:
+            throw new FilterParseException(token.offset, "Unknown protocol \"" + token.text + "\"");
+        }
+    }
+
+    private static Filter address(final IpAddressFilter.Direction direction, final Token value)
+            throws FilterParseException {
+        final String text = value.text;
+        final int slash = text.indexOf('/');
+        final String address = slash == -1 ? text : text.substring(0, slash);
+        final byte[] raw = text.indexOf(':') == -1 ? parseIPv4(address, value.offset) : parseIPv6(address,
+                value.offset);
+
+        int prefixLength = raw.length * 8;
+        if (slash != -1) {
+            prefixLength = number(text.substring(slash + 1), value.offset + slash + 1);
+            if (prefixLength > raw.length * 8) {
+                throw new FilterParseException(value.offset + slash + 1, "Invalid prefix length");
+            }
+        }
+        return new IpAddressFilter(direction, raw, prefixLength);
+    }
+
+    private static byte[] parseIPv4(final String address, final int offset) throws FilterParseException {
+        final String[] parts = address.split("\\.", -1);
+        if (parts.length != 4) {
+            throw new FilterParseException(offset, "Not a valid IPv4 address \"" + address + "\"");
+        }
+        final byte[] raw = new byte[4];
+        for (int i = 0; i < 4; ++i) {
+            final int b = number(parts[i], offset);
+            if (b > 255) {
+                throw new FilterParseException(offset, "Not a valid IPv4 address \"" + address + "\"");
+            }
+            raw[i] = (byte) b;
+        }
+        return raw;
+    }
+
+    /**
+     * Since the address contains a ':' it is a literal and will never be
+     * looked up through DNS.
+     */
+    private static byte[] parseIPv6(final String address, final int offset) throws FilterParseException {
+        try {
+            final byte[] raw = InetAddress.getByName(address).getAddress();
+            if (raw.length != 16) {
+                throw new FilterParseException(offset, "Not a valid IPv6 address \"" + address + "\"");
+            }
+            return raw;
+        } catch (final UnknownHostException e) {
+            throw new FilterParseException(offset, "Not a valid IPv6 address \"" + address + "\"", e);
+        }
+    }
+
+    private static Filter port(final Protocol protocol, final PortFilter.Direction direction, final Token value)
+            throws FilterParseException {
+        final int[] range = range(value, 0, 0xFFFF);
+        return new PortFilter(protocol, direction, range[0], range[1]);
+    }
+
+    /**
+     * Parse either a single number or a range of numbers, such as 5060-5070.
+     */
+    private static int[] range(final Token value, final int min, final int max) throws FilterParseException {
+        final int dash = value.text.indexOf('-');
+        final int low;
+        final int high;
+        if (dash == -1) {
+            low = number(value.text, value.offset);
+            high = low;
+        } else {
+            low = number(value.text.substring(0, dash), value.offset);
+            high = number(value.text.substring(dash + 1), value.offset + dash + 1);
+        }
+        if (low < min || high > max || low > high) {
+            throw new FilterParseException(value.offset, "Expected a value, or range of values, between " + min
+                    + " and " + max);
+        }
+        return new int[] { low, high };
+    }
+
+    private static int number(final String text, final int offset) throws FilterParseException {
+        if (text.isEmpty() || text.length() > 9) {
+            throw new FilterParseException(offset, "Expected a number");
+        }
+        for (int i = 0; i < text.length(); ++i) {
+            if (!Character.isDigit(text.charAt(i))) {
+                throw new FilterParseException(offset + i, "Expected a number");
+            }
+        }
+        return Integer.parseInt(text);
+    }
+
+    private static Filter[] sort(final List<Filter> filters) {
+        final Filter[] sorted = filters.toArray(new Filter[filters.size()]);
+        // stable, so filters of the same cost keep their order
+        Arrays.sort(sorted, BY_COST);
+        return sorted;
+    }
+
+    private boolean accept(final String... alternatives) {
+        if (this.index < this.tokens.size()) {
+            final Token token = this.tokens.get(this.index);
+            for (final String alternative : alternatives) {
+                if (token.is(alternative)) {
+                    ++this.index;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void expect(final String text) throws FilterParseException {
+        if (!accept(text)) {
+            throw new FilterParseException(offset(), "Expected \"" + text + "\"");
+        }
+    }
+
+    private Token next(final String message) throws FilterParseException {
+        if (this.index == this.tokens.size()) {
+            throw new FilterParseException(this.expression.length(), message);
+        }
+        return this.tokens.get(this.index++);
+    }
+
+    private int offset() {
+        return this.index < this.tokens.size() ? this.tokens.get(this.index).offset : this.expression.length();
+    }
+
+    private static List<Token> tokenize(final String expression) throws FilterParseException {
+        final List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        int depth = 0;
+        final int length = expression.length();
+        while (i < length) {
+            final char c = expression.charAt(i);
+            final int valueEnd = c != '"' && isValueNext(tokens) ? valueEnd(expression, i, depth) : i;
+            if (Character.isWhitespace(c)) {
+                ++i;
+            } else if (valueEnd > i) {
+                tokens.add(new Token(expression.substring(i, valueEnd), i, false));
+                i = valueEnd;
+            } else if (c == '(' || c == ')') {
+                depth = Math.max(0, depth + (c == '(' ? 1 : -1));
+                tokens.add(new Token(String.valueOf(c), i, false));
+                ++i;
+            } else if (expression.startsWith("==", i) || expression.startsWith("!=", i)
+                    || expression.startsWith("&&", i) || expression.startsWith("||", i)) {
+                tokens.add(new Token(expression.substring(i, i + 2), i, false));
+                i += 2;
+            } else if (c == '!') {
+                tokens.add(new Token("!", i, false));
+                ++i;
+            } else if (c == '"') {
+                final int end = expression.indexOf('"', i + 1);
+                if (end == -1) {
+                    throw new FilterParseException(i, "Missing closing quote");
+                }
+                tokens.add(new Token(expression.substring(i + 1, end), i, true));
+                i = end + 1;
+            } else {
+                final int start = i;
+                while (i < length && !isDelimiter(expression, i)) {
+                    ++i;
+                }
+                tokens.add(new Token(expression.substring(start, i), start, false));
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isValueNext(final List<Token> tokens) {
+        if (tokens.isEmpty()) {
+            return false;
+        }
+        final Token last = tokens.get(tokens.size() - 1);
+        return last.is("==") || last.is("!=");
+    }
+
+    /**
+     * Values, such as a Call-ID, may contain characters that elsewhere are
+     * operators so an unquoted value runs until the next white space, "&&" or
+     * "||". A ")" that doesn't match a "(" within the value also ends it, if
+     * it closes the group we are in.
+     *
+     * @param depth
+     *            the number of groups we are in.
+     * @return the index right after the value
+     */
+    private static int valueEnd(final String expression, final int start, final int depth) {
+        int open = 0;
+        int i = start;
+        while (i < expression.length() && !Character.isWhitespace(expression.charAt(i))
+                && !expression.startsWith("&&", i) && !expression.startsWith("||", i)) {
+            final char c = expression.charAt(i);
+            if (c == '(') {
+                ++open;
+            } else if (c == ')') {
+                if (open == 0 && depth > 0) {
+                    break;
+                }
+                open = Math.max(0, open - 1);
+            }
+            ++i;
+        }
+        return i;
+    }
+
+    private static boolean isDelimiter(final String expression, final int i) {
+        final char c = expression.charAt(i);
+        return Character.isWhitespace(c) || c == '(' || c == ')' || c == '"' || c == '!'
+                || expression.startsWith("==", i) || expression.startsWith("&&", i)
+                || expression.startsWith("||", i);
+    }
+
+    private static final class Token {
+        private final String text;
+        private final int offset;
+        private final boolean quoted;
+
+        private Token(final String text, final int offset, final boolean quoted) {
+            this.text = text;
+            this.offset = offset;
+            this.quoted = quoted;
+        }
+
+        private boolean is(final String other) {
+            return !this.quoted && this.text.equalsIgnoreCase(other);
+        }
+
+        private boolean isOperator() {
+            return is("(") || is(")") || is("==") || is("!=") || is("!") || is("&&") || is("||") || is("and")
+                    || is("or") || is("not");
+        }
+    }
+
+}
@@ -22,39 +22,44 @@ public final class FilterFactory {
     }
 
     /**
-     * Create a new {@link Filter}.
+     * Create a new {@link Filter} from an expression such as:
+     * 
+     * <pre>
+     * sip.Call-ID == 1234
+     * ip.src == 10.36.10.0/24 and udp.dstport == 5060-5070
+     * (sip.method == INVITE or sip.status == 400-699) and not tcp
+     * </pre>
+     * 
+     * The following fields can be compared, using either "==" or "!=", where
+     * the latter is the same as negating the former. A field that doesn't
+     * exist in a packet never equals anything.
+     * 
+     * <ul>
+     * <li>ip.src, ip.dst and ip.addr (either of them) - an IPv4 or IPv6
+     * address, optionally with a prefix length, i.e. CIDR notation.</li>
+     * <li>udp.port, udp.srcport, udp.dstport, the same for tcp and port (either
+     * transport) - a port or a range of ports, e.g. 5060-5070.</li>
+     * <li>proto - the name of a protocol, see below.</li>
+     * <li>sip.method - the method of a SIP request.</li>
+     * <li>sip.status - the status of a SIP response or a range of them.</li>
+     * <li>sip.&lt;header name&gt; - the value of a SIP header, e.g. sip.Call-ID.</li>
+     * </ul>
+     * 
+     * A protocol name on its own, such as "udp", "ip", "ipv6", "tcp", "sip" or
+     * "rtp", accepts every packet containing that protocol. Expressions can be
+     * combined with "and" ("&amp;&amp;"), "or" ("||") and "not" ("!") as well
+     * as grouped with parentheses. A value runs until the next white space,
+     * "&amp;&amp;" or "||", so it may contain "!", "(" and ")", e.g. a
+     * Call-ID such as "a!b(1)". The exception is a ")" closing the group the
+     * comparison is in. Any other value must be quoted.
      * 
      * @param expression
      * @return
+     * @throws FilterParseException
+     *             in case the expression isn't valid, the offset of which
+     *             points to where the problem was found.
      */
     public Filter createFilter(final String expression) throws FilterParseException {
-        final String expr = expression.toLowerCase();
-        if (!expr.startsWith("sip.")) {
-            throw new FilterParseException(0, "Not a valid sip expression");
-        }
-
-        final int index = expression.indexOf("==");
-        if (index == -1) {
-            throw new FilterParseException(expression.length(), "Expected a value. Missing '=='");
-        }
-
-        final String token = expression.substring(0, index).trim();
-        final String value = expression.substring(index + 2, expression.length()).trim();
-        if (token.equalsIgnoreCase("sip.call-id")) {
-            return new SipCallIdFilter(value);
-        }
-
-        // assume everything else is a generic header filter.
-        final String[] parts = token.split("\\.");
-        if (parts.length == 1) {
-            throw new FilterParseException(0, "Expected \"sip.\"<value> but didn't find a dot");
-        } else if (parts.length > 2) {
-            throw new FilterParseException(0,
-                    "Expected \"sip.\"<value> but found multiple dots so now I'm not sure what to do");
-        }
-
-        final String headername = parts[1];
-        return new SipHeaderFilter(headername, value);
-
+        return new FilterExpressionParser(expression).parse();
     }
 }
@@ -0,0 +1,311 @@
+/**
+ * 
+ */
+package io.pkts.filters;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.packet.IPPacket;
+import io.pkts.packet.IPv4Packet;
+import io.pkts.packet.IPv6Packet;
+import io.pkts.packet.PCapPacket;
+import io.pkts.packet.Packet;
+import io.pkts.packet.PacketParseException;
+import io.pkts.packet.TransportPacket;
+import io.pkts.protocol.Protocol;
+
+import java.io.IOException;
+
+/**
+ * Helpers shared by the {@link Filter}s that look at the lower layers of a
+ * packet. When handed the {@link PCapPacket} itself, which is what
+ * {@link io.pkts.Pcap} does, the link, IP and transport headers are read
+ * straight out of its raw bytes and nothing is framed at all. Only packets
+ * that have been framed already, or the odd IPv6 packet with extension
+ * headers, are looked at through their framed layers. Those helpers only walk
+ * down the protocol stack as far as they have to, i.e., asking for the
+ * {@link IPPacket} never frames the transport layer and asking for the
+ * {@link TransportPacket} never frames whatever is carried within it (such as
+ * SIP).
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+final class Filters {
+
+    /**
+     * The relative cost of evaluating a {@link Filter}. Filters that only
+     * look at the IP header are the cheapest, then comes the transport layer
+     * and the most expensive ones are those that need the application layer
+     * (such as SIP) to be framed.
+     */
+    static final int COST_IP = 1;
+    static final int COST_TRANSPORT = 2;
+    static final int COST_APPLICATION = 3;
+
+    /**
+     * Returned by the raw lookups when there is no such header.
+     */
+    static final int NONE = -1;
+
+    /**
+     * Returned by {@link #transportHeader(Buffer, int, Protocol)} when the
+     * header cannot be found without framing the packet.
+     */
+    static final int FRAME = -2;
+
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+    private static final int ETHERTYPE_IPV6 = 0x86DD;
+    private static final int ETHERTYPE_DOT1Q = 0x8100;
+
+    private static final int IPV6_HEADER_LENGTH = 40;
+
+    private static final int LINKTYPE_LINUX_SLL = 113;
+    private static final int LINKTYPE_RAW = 101;
+
+    private static final int PROTOCOL_TCP = 6;
+    private static final int PROTOCOL_UDP = 17;
+
+    private Filters() {
+        // left empty intentionally
+    }
+
+    static int cost(final Filter filter) {
+        if (filter instanceof IpAddressFilter) {
+            return COST_IP;
+        } else if (filter instanceof PortFilter) {
+            return COST_TRANSPORT;
+        } else if (filter instanceof ProtocolFilter) {
+            return ((ProtocolFilter) filter).cost();
+        } else if (filter instanceof NotFilter) {
+            return cost(((NotFilter) filter).getFilter());
+        } else if (filter instanceof AndFilter) {
+            return cost(((AndFilter) filter).getFilters());
+        } else if (filter instanceof OrFilter) {
+            return cost(((OrFilter) filter).getFilters());
+        }
+        return COST_APPLICATION;
+    }
+
+    private static int cost(final Filter[] filters) {
+        int cost = 0;
+        for (final Filter filter : filters) {
+            cost = Math.max(cost, cost(filter));
+        }
+        return cost;
+    }
+
+    /**
+     * Find the IP header in the raw bytes of a pcap record.
+     * 
+     * @param record
+     *            the pcap record.
+     * @param raw
+     *            the payload of the record.
+     * @return the offset of the IP header or {@link #NONE} if there is no
+     *         IP layer, or not enough of it has been captured.
+     */
+    static int ipHeader(final PCapPacket record, final Buffer raw) {
+        if (raw == null) {
+            return NONE;
+        }
+
+        final int offset;
+        final int etherType;
+        switch (record.getDataLinkType()) {
+        case LINKTYPE_RAW:
+            offset = 0;
+            etherType = raw.getReadableBytes() > 0 && raw.getUnsignedByte(0) >> 4 == 6 ? ETHERTYPE_IPV6
+                    : ETHERTYPE_IPV4;
+            break;
+        case LINKTYPE_LINUX_SLL:
+            if (raw.getReadableBytes() < 16) {
+                return NONE;
+            }
+            offset = 16;
+            etherType = raw.getUnsignedShort(14);
+            break;
+        default:
+            // same as when framing, anything else is assumed to be Ethernet
+            if (raw.getReadableBytes() < 14) {
+                return NONE;
+            }
+            if (raw.getUnsignedShort(12) == ETHERTYPE_DOT1Q) {
+                if (raw.getReadableBytes() < 18) {
+                    return NONE;
+                }
+                offset = 18;
+                etherType = raw.getUnsignedShort(16);
+            } else {
+                offset = 14;
+                etherType = raw.getUnsignedShort(12);
+            }
+        }
+
+        final int version;
+        final int length;
+        if (etherType == ETHERTYPE_IPV4) {
+            version = 4;
+            length = 20;
+        } else if (etherType == ETHERTYPE_IPV6) {
+            version = 6;
+            length = IPV6_HEADER_LENGTH;
+        } else {
+            return NONE;
+        }
+
+        if (raw.getReadableBytes() < offset + length || raw.getUnsignedByte(offset) >> 4 != version) {
+            return NONE;
+        }
+        return offset;
+    }
+
+    /**
+     * @param raw
+     * @param ip
+     *            the offset of the IP header, see
+     *            {@link #ipHeader(PCapPacket, Buffer)}.
+     * @return 4 or 6.
+     */
+    static int ipVersion(final Buffer raw, final int ip) {
+        return raw.getUnsignedByte(ip) >> 4;
+    }
+
+    /**
+     * Find the transport header in the raw bytes of a pcap record.
+     * 
+     * @param raw
+     *            the payload of the record.
+     * @param ip
+     *            the offset of the IP header, see
+     *            {@link #ipHeader(PCapPacket, Buffer)}.
+     * @param protocol
+     *            {@link Protocol#UDP} or {@link Protocol#TCP} if only one of
+     *            them will do, null for any.
+     * @return the offset of the transport header, {@link #NONE} if there is
+     *         none (of the requested kind) or {@link #FRAME} if the IPv6
+     *         extension headers have to be framed to find out.
+     */
+    static int transportHeader(final Buffer raw, final int ip, final Protocol protocol) {
+        final int number;
+        final int offset;
+        if (ipVersion(raw, ip) == 4) {
+            if ((raw.getUnsignedShort(ip + 6) & 0x1FFF) != 0) {
+                // only the first fragment carries the transport header
+                return NONE;
+            }
+            final int headerLength = raw.getUnsignedByte(ip) & 0x0F;
+            if (headerLength < 5) {
+                return NONE;
+            }
+            number = raw.getUnsignedByte(ip + 9);
+            offset = ip + headerLength * 4;
+        } else {
+            number = raw.getUnsignedByte(ip + 6);
+            offset = ip + IPV6_HEADER_LENGTH;
+            if (number != PROTOCOL_UDP && number != PROTOCOL_TCP && isExtensionHeader(number)) {
+                return FRAME;
+            }
+        }
+
+        final int length;
+        if (number == PROTOCOL_UDP && protocol != Protocol.TCP) {
+            length = 8;
+        } else if (number == PROTOCOL_TCP && protocol != Protocol.UDP) {
+            length = 20;
+        } else {
+            return NONE;
+        }
+
+        return raw.getReadableBytes() < offset + length ? NONE : offset;
+    }
+
+    private static boolean isExtensionHeader(final int number) {
+        return number == IPv6Packet.EXTENSION_HOP_BY_HOP
+                || number == IPv6Packet.EXTENSION_DESTINATION_OPTIONS
+                || number == IPv6Packet.EXTENSION_ROUTING
+                || number == IPv6Packet.EXTENSION_FRAGMENT
+                || number == IPv6Packet.EXTENSION_AH
+                || number == IPv6Packet.EXTENSION_ESP
+                || number == IPv6Packet.EXTENSION_MOBILITY;
+    }
+
+    /**
+     * Find the IP layer of the packet.
+     * 
+     * @param packet
+     *            any layer of the packet.
+     * @return the IP packet or null if there is no IP layer.
+     */
+    static IPPacket ip(final Packet packet) throws FilterException {
+        try {
+            Packet p = packet;
+            while (p.getParentPacket() != null) {
+                if (p instanceof IPPacket) {
+                    return (IPPacket) p;
+                }
+                p = p.getParentPacket();
+            }
+
+            while (p != null) {
+                if (p instanceof IPPacket) {
+                    return (IPPacket) p;
+                }
+                final Protocol.Layer layer = p.getProtocol().getProtocolLayer();
+                if (layer != Protocol.Layer.LAYER_1 && layer != Protocol.Layer.LAYER_2) {
+                    return null;
+                }
+                p = p.getFramedNextPacket();
+            }
+            return null;
+        } catch (final IOException e) {
+            throw new FilterException("Unable to process the frame due to IOException", e);
+        } catch (final PacketParseException e) {
+            throw new FilterException("Unable to frame the IP layer", e);
+        }
+    }
+
+    /**
+     * Find the transport layer of the packet.
+     * 
+     * @param packet
+     *            any layer of the packet.
+     * @param protocol
+     *            {@link Protocol#UDP} or {@link Protocol#TCP} if only one of
+     *            them will do, null for any.
+     * @return the transport packet or null if there is none (of the requested
+     *         kind).
+     */
+    static TransportPacket transport(final Packet packet, final Protocol protocol) throws FilterException {
+        final IPPacket ip = ip(packet);
+        if (ip == null) {
+            return null;
+        }
+
+        if (ip instanceof IPv4Packet) {
+            // check the header before framing anything
+            final IPv4Packet ipv4 = (IPv4Packet) ip;
+            final int number = ipv4.getProtocolNumber();
+            if (protocol == Protocol.UDP && number != 17 || protocol == Protocol.TCP && number != 6) {
+                return null;
+            }
+            if (ipv4.getFragmentOffset() != 0) {
+                return null;
+            }
+        }
+
+        try {
+            final Packet next = ip.getFramedNextPacket();
+            if (!(next instanceof TransportPacket)) {
+                return null;
+            }
+            if (protocol != null && next.getProtocol() != protocol) {
+                return null;
+            }
+            return (TransportPacket) next;
+        } catch (final IOException e) {
+            throw new FilterException("Unable to process the frame due to IOException", e);
+        } catch (final PacketParseException e) {
+            throw new FilterException("Unable to frame the transport layer", e);
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+/**
+ * 
+ */
+package io.pkts.filters;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.packet.IPPacket;
+import io.pkts.packet.IPv4Packet;
+import io.pkts.packet.PCapPacket;
+import io.pkts.packet.Packet;
+
+/**
+ * Matches the source and/or destination address of the IP header against an
+ * address or, if a prefix length is given, a network (CIDR). Works for both
+ * IPv4 and IPv6 but an IPv4 address will never match an IPv6 packet or vice
+ * versa.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public final class IpAddressFilter implements Filter {
+
+    public enum Direction {
+        SOURCE, DESTINATION, ANY;
+    }
+
+    private final Direction direction;
+
+    private final byte[] address;
+
+    private final int prefixLength;
+
+    /**
+     * Only used for IPv4, where we compare the addresses as ints.
+     */
+    private final int address4;
+    private final int mask4;
+
+    /**
+     * 
+     * @param direction
+     * @param address
+     *            the raw address, 4 bytes for IPv4 and 16 for IPv6.
+     * @param prefixLength
+     *            the number of bits of the address to compare.
+     */
+    public IpAddressFilter(final Direction direction, final byte[] address, final int prefixLength) {
+        if (address.length != 4 && address.length != 16) {
+            throw new IllegalArgumentException("The address must be either 4 or 16 bytes long");
+        }
+        if (prefixLength < 0 || prefixLength > address.length * 8) {
+            throw new IllegalArgumentException("Invalid prefix length " + prefixLength);
+        }
+        this.direction = direction;
+        this.address = address.clone();
+        this.prefixLength = prefixLength;
+        if (address.length == 4) {
+            this.mask4 = prefixLength == 0 ? 0 : -1 << 32 - prefixLength;
+            this.address4 = toInt(address) & this.mask4;
+        } else {
+            this.mask4 = 0;
+            this.address4 = 0;
+        }
+    }
+
+    private static int toInt(final byte[] a) {
+        return (a[0] & 0xFF) << 24 | (a[1] & 0xFF) << 16 | (a[2] & 0xFF) << 8 | a[3] & 0xFF;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean accept(final Packet packet) throws FilterException {
+        if (packet instanceof PCapPacket) {
+            final Buffer raw = packet.getPayload();
+            final int ip = Filters.ipHeader((PCapPacket) packet, raw);
+            if (ip == Filters.NONE || Filters.ipVersion(raw, ip) != (this.address.length == 4 ? 4 : 6)) {
+                return false;
+            }
+
+            if (this.address.length == 4) {
+                return this.direction != Direction.DESTINATION
+                        && (raw.getInt(ip + 12) & this.mask4) == this.address4
+                        || this.direction != Direction.SOURCE
+                        && (raw.getInt(ip + 16) & this.mask4) == this.address4;
+            }
+            return this.direction != Direction.DESTINATION && matches(raw, ip + 8)
+                    || this.direction != Direction.SOURCE && matches(raw, ip + 24);
+        }
+
+        final IPPacket ip = Filters.ip(packet);
+        if (ip == null) {
+            return false;
+        }
+
+        if (this.address.length == 4) {
+            if (!(ip instanceof IPv4Packet)) {
+                return false;
+            }
+            final IPv4Packet ipv4 = (IPv4Packet) ip;
+            return this.direction != Direction.DESTINATION
+                    && (ipv4.getRawSourceIpInt() & this.mask4) == this.address4
+                    || this.direction != Direction.SOURCE
+                    && (ipv4.getRawDestinationIpInt() & this.mask4) == this.address4;
+        }
+
+        if (ip instanceof IPv4Packet) {
+            return false;
+        }
+        return this.direction != Direction.DESTINATION && matches(ip.getRawSourceIP())
+                || this.direction != Direction.SOURCE && matches(ip.getRawDestinationIP());
+    }
+
+    private boolean matches(final byte[] other) {
+        if (other == null || other.length != this.address.length) {
+            return false;
+        }
+        final int bytes = this.prefixLength / 8;
+        for (int i = 0; i < bytes; ++i) {
+            if (this.address[i] != other[i]) {
+                return false;
+            }
+        }
+        final int bits = this.prefixLength % 8;
+        if (bits == 0) {
+            return true;
+        }
+        final int mask = 0xFF << 8 - bits & 0xFF;
+        return (this.address[bytes] & mask) == (other[bytes] & mask);
+    }
+
+    private boolean matches(final Buffer raw, final int offset) {
+        final int bytes = this.prefixLength / 8;
+        for (int i = 0; i < bytes; ++i) {
+            if (this.address[i] != (byte) raw.getUnsignedByte(offset + i)) {
+                return false;
+            }
+        }
+        final int bits = this.prefixLength % 8;
+        if (bits == 0) {
+            return true;
+        }
+        final int mask = 0xFF << 8 - bits & 0xFF;
+        return (this.address[bytes] & mask) == (raw.getUnsignedByte(offset + bytes) & mask);
+    }
+
+    public Direction getDirection() {
+        return this.direction;
+    }
+
+    public int getPrefixLength() {
+        return this.prefixLength;
+    }
+
+}
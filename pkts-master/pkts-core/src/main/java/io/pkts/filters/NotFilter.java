@@ -0,0 +1,33 @@
+/**
+ * 
+ */
+package io.pkts.filters;
+
+import io.pkts.packet.Packet;
+
+/**
+ * Accepts everything the wrapped filter rejects and vice versa.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public final class NotFilter implements Filter {
+
+    private final Filter filter;
+
+    public NotFilter(final Filter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean accept(final Packet packet) throws FilterException {
+        return !this.filter.accept(packet);
+    }
+
+    public Filter getFilter() {
+        return this.filter;
+    }
+
+}
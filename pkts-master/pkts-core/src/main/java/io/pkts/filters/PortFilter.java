@@ -0,0 +1,106 @@
+/**
+ * 
+ */
+package io.pkts.filters;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.packet.PCapPacket;
+import io.pkts.packet.Packet;
+import io.pkts.packet.TransportPacket;
+import io.pkts.protocol.Protocol;
+
+/**
+ * Matches the source and/or destination port of the transport layer against
+ * a range of ports. Only the IP and transport headers are looked at, whatever
+ * is carried within the transport layer is never framed.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public final class PortFilter implements Filter {
+
+    public enum Direction {
+        SOURCE, DESTINATION, ANY;
+    }
+
+    private final Protocol protocol;
+
+    private final Direction direction;
+
+    private final int low;
+
+    private final int high;
+
+    /**
+     * 
+     * @param protocol
+     *            {@link Protocol#UDP}, {@link Protocol#TCP} or null for any
+     *            transport.
+     * @param direction
+     * @param low
+     *            the lowest port accepted.
+     * @param high
+     *            the highest port accepted.
+     */
+    public PortFilter(final Protocol protocol, final Direction direction, final int low, final int high) {
+        if (protocol != null && protocol != Protocol.UDP && protocol != Protocol.TCP) {
+            throw new IllegalArgumentException("Only UDP and TCP are supported");
+        }
+        if (low < 0 || high > 0xFFFF || low > high) {
+            throw new IllegalArgumentException("Invalid port range " + low + "-" + high);
+        }
+        this.protocol = protocol;
+        this.direction = direction;
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean accept(final Packet packet) throws FilterException {
+        if (packet instanceof PCapPacket) {
+            final Buffer raw = packet.getPayload();
+            final int ip = Filters.ipHeader((PCapPacket) packet, raw);
+            if (ip == Filters.NONE) {
+                return false;
+            }
+            final int offset = Filters.transportHeader(raw, ip, this.protocol);
+            if (offset == Filters.NONE) {
+                return false;
+            } else if (offset != Filters.FRAME) {
+                return this.direction != Direction.DESTINATION && inRange(raw.getUnsignedShort(offset))
+                        || this.direction != Direction.SOURCE && inRange(raw.getUnsignedShort(offset + 2));
+            }
+        }
+
+        final TransportPacket transport = Filters.transport(packet, this.protocol);
+        if (transport == null) {
+            return false;
+        }
+
+        return this.direction != Direction.DESTINATION && inRange(transport.getSourcePort())
+                || this.direction != Direction.SOURCE && inRange(transport.getDestinationPort());
+    }
+
+    private boolean inRange(final int port) {
+        return port >= this.low && port <= this.high;
+    }
+
+    public Protocol getProtocol() {
+        return this.protocol;
+    }
+
+    public Direction getDirection() {
+        return this.direction;
+    }
+
+    public int getLow() {
+        return this.low;
+    }
+
+    public int getHigh() {
+        return this.high;
+    }
+
+}
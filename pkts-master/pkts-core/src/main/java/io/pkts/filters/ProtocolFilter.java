@@ -0,0 +1,90 @@
+/**
+ * 
+ */
+package io.pkts.filters;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.packet.IPPacket;
+import io.pkts.packet.IPv4Packet;
+import io.pkts.packet.PCapPacket;
+import io.pkts.packet.Packet;
+import io.pkts.protocol.Protocol;
+
+import java.io.IOException;
+
+/**
+ * Accepts packets containing a particular {@link Protocol}. IP, UDP and TCP are
+ * checked by looking at the headers of the lower layers, straight out of the
+ * raw bytes if possible. Anything else, such as SIP, means that the packet has
+ * to be framed all the way up to the application layer.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public final class ProtocolFilter implements Filter {
+
+    private final Protocol protocol;
+
+    public ProtocolFilter(final Protocol protocol) {
+        this.protocol = protocol;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean accept(final Packet packet) throws FilterException {
+        if (packet instanceof PCapPacket && cost() != Filters.COST_APPLICATION) {
+            final Buffer raw = packet.getPayload();
+            final int ip = Filters.ipHeader((PCapPacket) packet, raw);
+            if (ip == Filters.NONE) {
+                return false;
+            }
+            switch (this.protocol) {
+            case IPv4:
+                return Filters.ipVersion(raw, ip) == 4;
+            case IPv6:
+                return Filters.ipVersion(raw, ip) == 6;
+            default:
+                final int offset = Filters.transportHeader(raw, ip, this.protocol);
+                if (offset != Filters.FRAME) {
+                    return offset != Filters.NONE;
+                }
+            }
+        }
+
+        switch (this.protocol) {
+        case IPv4:
+            return Filters.ip(packet) instanceof IPv4Packet;
+        case IPv6:
+            final IPPacket ip = Filters.ip(packet);
+            return ip != null && !(ip instanceof IPv4Packet);
+        case UDP:
+        case TCP:
+            return Filters.transport(packet, this.protocol) != null;
+        default:
+            try {
+                return packet.hasProtocol(this.protocol);
+            } catch (final IOException e) {
+                throw new FilterException("Unable to process the frame due to IOException", e);
+            }
+        }
+    }
+
+    int cost() {
+        switch (this.protocol) {
+        case IPv4:
+        case IPv6:
+            return Filters.COST_IP;
+        case UDP:
+        case TCP:
+            return Filters.COST_TRANSPORT;
+        default:
+            return Filters.COST_APPLICATION;
+        }
+    }
+
+    public Protocol getProtocol() {
+        return this.protocol;
+    }
+
+}
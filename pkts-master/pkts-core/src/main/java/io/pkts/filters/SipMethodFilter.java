@@ -0,0 +1,51 @@
+/**
+ * 
+ */
+package io.pkts.filters;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
+import io.pkts.packet.Packet;
+import io.pkts.packet.PacketParseException;
+import io.pkts.packet.sip.SipPacket;
+import io.pkts.protocol.Protocol;
+
+import java.io.IOException;
+
+/**
+ * Accepts SIP requests with a particular method. Only the initial line of the
+ * request is looked at.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public final class SipMethodFilter extends SipFilter {
+
+    private final Buffer method;
+
+    public SipMethodFilter(final String method) {
+        this.method = Buffers.wrap(method);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean accept(final Packet packet) throws FilterException {
+        try {
+            if (super.accept(packet)) {
+                final SipPacket msg = (SipPacket) packet.getPacket(Protocol.SIP);
+                return msg.isRequest() && msg.getMethod().equalsIgnoreCase(this.method);
+            }
+        } catch (final IOException e) {
+            throw new FilterException("Unable to process the frame due to IOException", e);
+        } catch (final PacketParseException e) {
+            throw new FilterException("Unable to process the frame due to parse issue of the SIP Message", e);
+        }
+        return false;
+    }
+
+    public String getMethod() {
+        return this.method.toString();
+    }
+
+}
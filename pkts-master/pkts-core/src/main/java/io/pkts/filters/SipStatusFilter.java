@@ -0,0 +1,63 @@
+/**
+ * 
+ */
+package io.pkts.filters;
+
+import io.pkts.packet.Packet;
+import io.pkts.packet.PacketParseException;
+import io.pkts.packet.sip.SipPacket;
+import io.pkts.protocol.Protocol;
+
+import java.io.IOException;
+
+/**
+ * Accepts SIP responses with a status code within a given range. Only the
+ * initial line of the response is looked at.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public final class SipStatusFilter extends SipFilter {
+
+    private final int low;
+
+    private final int high;
+
+    public SipStatusFilter(final int low, final int high) {
+        if (low < 100 || high > 699 || low > high) {
+            throw new IllegalArgumentException("Invalid status range " + low + "-" + high);
+        }
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean accept(final Packet packet) throws FilterException {
+        try {
+            if (super.accept(packet)) {
+                final SipPacket msg = (SipPacket) packet.getPacket(Protocol.SIP);
+                if (!msg.isResponse()) {
+                    return false;
+                }
+                final int status = msg.toResponse().getStatus();
+                return status >= this.low && status <= this.high;
+            }
+        } catch (final IOException e) {
+            throw new FilterException("Unable to process the frame due to IOException", e);
+        } catch (final PacketParseException e) {
+            throw new FilterException("Unable to process the frame due to parse issue of the SIP Message", e);
+        }
+        return false;
+    }
+
+    public int getLow() {
+        return this.low;
+    }
+
+    public int getHigh() {
+        return this.high;
+    }
+
+}
@@ -72,6 +72,36 @@ public final class PcapGlobalHeader {
     }
 
     public static PcapGlobalHeader createDefaultHeader(Protocol protocol) {
+        // data link type - default is ethernet
+        // See http://www.tcpdump.org/linktypes.html for a complete list
+        if (protocol == null) {
+            protocol = Protocol.ETHERNET_II;
+        }
+
+        Long linkType = protocol.getLinkType();
+        if (linkType == null) {
+            throw new IllegalArgumentException("Unknown protocol \"" + protocol
+                    + "\". Not sure how to construct the global header. You probably need to add some code yourself");
+        }
+
+        return createHeader(linkType.intValue(), 65535, false);
+    }
+
+    /**
+     * Create a header for the given data link type. Used when the packets
+     * don't come out of a classic pcap, such as a pcapng file where every
+     * interface has its own link type and time stamp resolution.
+     * 
+     * @param linkType
+     *            the data link type, see http://www.tcpdump.org/linktypes.html
+     * @param snapLength
+     * @param nsTimestamps
+     *            whether the time stamps are in nanoseconds (as opposed to
+     *            microseconds).
+     * @return
+     */
+    public static PcapGlobalHeader createHeader(final int linkType, final long snapLength,
+            final boolean nsTimestamps) {
         Buffer body = Buffers.createBuffer(20);
 
         // major version number
@@ -83,23 +113,11 @@ public final class PcapGlobalHeader {
         // accuracy of timestamp - always zero.
         body.setUnsignedInt(8, 0);
         // snaplength - typically 65535
-        body.setUnsignedInt(12, 65535);
-
-        // data link type - default is ethernet
-        // See http://www.tcpdump.org/linktypes.html for a complete list
-        if (protocol == null) {
-            protocol = Protocol.ETHERNET_II;
-        }
-
-        Long linkType = protocol.getLinkType();
-        if (linkType != null) {
-            body.setUnsignedInt(16, linkType);
-        } else {
-            throw new IllegalArgumentException("Unknown protocol \"" + protocol
-                    + "\". Not sure how to construct the global header. You probably need to add some code yourself");
-        }
+        body.setUnsignedInt(12, snapLength);
+        // data link type
+        body.setUnsignedInt(16, linkType & 0xFFFFFFFFL);
 
-        return new PcapGlobalHeader(ByteOrder.LITTLE_ENDIAN, body.getRawArray());
+        return new PcapGlobalHeader(ByteOrder.LITTLE_ENDIAN, body.getRawArray(), nsTimestamps);
     }
 
     public PcapGlobalHeader(final ByteOrder byteOrder, final byte[] body) {
@@ -201,10 +219,39 @@ public final class PcapGlobalHeader {
 
     }
 
+    /**
+     * Check whether the magic number is the one of a pcapng file, in which
+     * case the stream cannot be parsed by {@link #parse(Buffer)} but has to
+     * be read block by block using the {@link io.pkts.framer.PcapngFramer}.
+     * 
+     * @param header
+     *            the first four bytes of the file.
+     * @return
+     */
+    public static boolean isPcapng(final byte[] header) {
+        return header.length >= 4 && header[0] == MAGIC_NGPCAP[0] && header[1] == MAGIC_NGPCAP[1]
+                && header[2] == MAGIC_NGPCAP[2] && header[3] == MAGIC_NGPCAP[3];
+    }
+
     public static final PcapGlobalHeader parse(final Buffer in) throws IOException {
         final Buffer h = in.readBytes(4);
         final byte[] header = h.getArray();
+        h.release();
+        return parse(header, in);
+    }
 
+    /**
+     * Same as {@link #parse(Buffer)} but for when the magic number already
+     * has been read off of the stream.
+     * 
+     * @param header
+     *            the magic number, i.e., the first four bytes of the file.
+     * @param in
+     *            the stream, positioned right after the magic number.
+     * @return
+     * @throws IOException
+     */
+    public static final PcapGlobalHeader parse(final byte[] header, final Buffer in) throws IOException {
         ByteOrder byteOrder = null;
         boolean nsTimestamps = false;
         if (header[0] == MAGIC_BIG_ENDIAN[0] && header[1] == MAGIC_BIG_ENDIAN[1]
@@ -221,11 +268,15 @@ public final class PcapGlobalHeader {
                 && header[2] == MAGIC_NSEC_SWAPPED[2] && header[3] == MAGIC_NSEC_SWAPPED[3]) {
             byteOrder = ByteOrder.LITTLE_ENDIAN;
             nsTimestamps = true;
+        } else if (isPcapng(header)) {
+            throw new IllegalArgumentException("The stream is a pcapng stream and has no global header");
         } else {
             throw new IllegalArgumentException("Unknown header type");
         }
 
-        final byte[] body = in.readBytes(20).getArray();
+        final Buffer b = in.readBytes(20);
+        final byte[] body = b.getArray();
+        b.release();
 
         return new PcapGlobalHeader(byteOrder, body, nsTimestamps);
     }
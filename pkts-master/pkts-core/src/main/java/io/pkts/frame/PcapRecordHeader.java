@@ -8,6 +8,7 @@ import io.pkts.buffer.Buffers;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
 /**
@@ -89,16 +90,16 @@ public final class PcapRecordHeader {
     // private static void setUnsignedInt(int index, )
 
     public long getTimeStampSeconds() {
-        return PcapGlobalHeader.getUnsignedInt(0, this.body.getArray(), this.byteOrder);
+        return getUnsignedInt(0);
     }
 
     @Deprecated
     public long getTimeStampMicroSeconds() {
-        return PcapGlobalHeader.getUnsignedInt(4, this.body.getArray(), this.byteOrder);
+        return getUnsignedInt(4);
     }
 
     public long getTimeStampMicroOrNanoSeconds() {
-        return PcapGlobalHeader.getUnsignedInt(4, this.body.getArray(), this.byteOrder);
+        return getUnsignedInt(4);
     }
 
     /**
@@ -109,7 +110,7 @@ public final class PcapRecordHeader {
      * @return
      */
     public long getTotalLength() {
-        return PcapGlobalHeader.getUnsignedInt(12, this.body.getArray(), this.byteOrder);
+        return getUnsignedInt(12);
     }
 
     public void setTotalLength(final long length) {
@@ -122,7 +123,7 @@ public final class PcapRecordHeader {
      * @return the length in bytes
      */
     public long getCapturedLength() {
-        return PcapGlobalHeader.getUnsignedInt(8, this.body.getArray(), this.byteOrder);
+        return getUnsignedInt(8);
     }
 
     public void setCapturedLength(final long length) {
@@ -133,6 +134,38 @@ public final class PcapRecordHeader {
         out.write(this.body.getArray());
     }
 
+    /**
+     * A view of the header, for when writing it to a
+     * {@link java.nio.channels.GatheringByteChannel}.
+     */
+    public ByteBuffer toByteBuffer() {
+        final ByteBuffer[] views = this.body.toByteBuffers();
+        return views.length == 1 ? views[0] : ByteBuffer.wrap(this.body.getArray());
+    }
+
+    /**
+     * Same as {@link PcapGlobalHeader#getUnsignedInt(int, byte[], ByteOrder)}
+     * but without copying out the bytes of the body first.
+     */
+    private long getUnsignedInt(final int offset) {
+        final int value = this.body.getInt(offset);
+        return (this.byteOrder == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value)) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * See {@link Buffer#retain()}
+     */
+    public void retain() {
+        this.body.retain();
+    }
+
+    /**
+     * See {@link Buffer#release()}
+     */
+    public void release() {
+        this.body.release();
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder();
@@ -43,6 +43,17 @@ public final class FramerManager {
         this.clock.tick(time);
     }
 
+    /**
+     * The {@link Clock} driven by the timestamps of the packets, i.e. its
+     * time is that of the last packet read and as such, it is in the same
+     * unit as {@link io.pkts.packet.Packet#getArrivalTime()}.
+     *
+     * @return
+     */
+    public Clock getClock() {
+        return this.clock;
+    }
+
     private static class PcapClock implements Clock {
 
         private final AtomicLong currentTime = new AtomicLong();
@@ -0,0 +1,512 @@
+/**
+ *
+ */
+package io.pkts.framer;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
+import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.frame.PcapRecordHeader;
+import io.pkts.packet.PCapPacket;
+import io.pkts.packet.Packet;
+import io.pkts.packet.impl.PCapPacketImpl;
+import io.pkts.protocol.Protocol;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Frames the packets of a pcapng file, see
+ * https://github.com/pcapng/pcapng for the format.
+ *
+ * A pcapng file is a sequence of blocks. The blocks are read off of the stream
+ * one at a time so nothing but the current block is ever kept in memory. Every
+ * Enhanced Packet Block (and Simple Packet Block and the obsolete Packet
+ * Block) is turned into a {@link PCapPacket} that looks exactly like one
+ * coming out of a classic pcap, i.e., it has a {@link PcapRecordHeader} and a
+ * {@link PcapGlobalHeader}, where the latter describes the interface the
+ * packet was captured on (its link type, snap length and whether the time
+ * stamps are in micro or nanoseconds). Hence, the rest of the framers don't
+ * know nor care about where the packet came from.
+ *
+ * Both byte orders are supported, as are multiple sections and multiple
+ * interfaces with different link types and time stamp resolutions. The Name
+ * Resolution Block, the Interface Statistics Block and any block we don't
+ * know about are skipped.
+ *
+ * Note that the {@link PcapngFramer} has state (the interfaces of the current
+ * section) so the blocks must be framed in order, by one thread.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PcapngFramer implements Framer<Packet, PCapPacket> {
+
+    public static final int SECTION_HEADER_BLOCK = 0x0A0D0D0A;
+    public static final int INTERFACE_DESCRIPTION_BLOCK = 0x00000001;
+    public static final int PACKET_BLOCK = 0x00000002;
+    public static final int SIMPLE_PACKET_BLOCK = 0x00000003;
+    public static final int NAME_RESOLUTION_BLOCK = 0x00000004;
+    public static final int INTERFACE_STATISTICS_BLOCK = 0x00000005;
+    public static final int ENHANCED_PACKET_BLOCK = 0x00000006;
+
+    private static final int BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+
+    private static final int OPTION_END = 0;
+    private static final int OPTION_IF_TSRESOL = 9;
+    private static final int OPTION_IF_TSOFFSET = 14;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * The type of the block last read.
+     */
+    private int blockType;
+
+    /**
+     * The byte order of the current section.
+     */
+    private ByteOrder byteOrder;
+
+    /**
+     * The interfaces of the current section, in the order they were
+     * described, which is how the packet blocks refer to them.
+     */
+    private final List<Interface> interfaces = new ArrayList<>();
+
+    /**
+     * The time stamp of the last packet, which is what we give the Simple
+     * Packet Blocks since they don't have one of their own.
+     */
+    private long lastSeconds;
+    private long lastNanos;
+
+    @Override
+    public Protocol getProtocol() {
+        return Protocol.PCAP;
+    }
+
+    /**
+     * Read the remainder of the first Section Header Block, whose block type
+     * (which also is the magic number of the file) has already been read off
+     * of the stream, and then all blocks up until, and including, the first
+     * Interface Description Block.
+     *
+     * @param buffer
+     * @return a {@link PcapGlobalHeader} describing the first interface, or a
+     *         default one if there are no interfaces in the file.
+     * @throws IOException
+     * @throws FramingException
+     *             in case this isn't a pcapng stream.
+     */
+    public PcapGlobalHeader readSectionHeader(final Buffer buffer) throws IOException, FramingException {
+        final Buffer shb = readSectionHeaderBlock(buffer);
+        if (shb == null) {
+            throw new FramingException("Not a pcapng stream", Protocol.PCAP);
+        }
+        shb.release();
+
+        while (this.interfaces.isEmpty()) {
+            final Buffer block = readBlock(buffer);
+            if (block == null) {
+                return PcapGlobalHeader.createDefaultHeader();
+            }
+            try {
+                if (this.blockType == INTERFACE_DESCRIPTION_BLOCK) {
+                    this.interfaces.add(parseInterface(block));
+                } else if (isPacketBlock(this.blockType)) {
+                    throw new FramingException("Packet block before any Interface Description Block",
+                            Protocol.PCAP);
+                }
+            } finally {
+                block.release();
+            }
+        }
+
+        return this.interfaces.get(0).header;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Blocks are read off of the stream until a block containing a packet is
+     * found.
+     *
+     * @return the next packet or null if there are no more packets.
+     */
+    @Override
+    public PCapPacket frame(final Packet parent, final Buffer buffer) throws IOException, FramingException {
+        if (this.byteOrder == null) {
+            throw new IllegalStateException("The section header has not been read");
+        }
+
+        while (true) {
+            final Buffer block = readBlock(buffer);
+            if (block == null) {
+                return null;
+            }
+
+            switch (this.blockType) {
+            case ENHANCED_PACKET_BLOCK:
+                return frameEnhancedPacketBlock(block);
+            case SIMPLE_PACKET_BLOCK:
+                return frameSimplePacketBlock(block);
+            case PACKET_BLOCK:
+                return framePacketBlock(block);
+            case INTERFACE_DESCRIPTION_BLOCK:
+                try {
+                    this.interfaces.add(parseInterface(block));
+                } finally {
+                    block.release();
+                }
+                break;
+            default:
+                // section headers have already been dealt with and name
+                // resolution, interface statistics and whatever else there
+                // may be is of no interest to us.
+                block.release();
+                break;
+            }
+        }
+    }
+
+    /**
+     * interface id (4), timestamp high (4), timestamp low (4), captured
+     * length (4), original length (4), packet data, options
+     */
+    private PCapPacket frameEnhancedPacketBlock(final Buffer block) throws FramingException {
+        try {
+            final Interface iface = getInterface(getInt(block, 0));
+            final long timestamp = (getInt(block, 4) & 0xFFFFFFFFL) << 32 | getInt(block, 8) & 0xFFFFFFFFL;
+            return createPacket(block, iface, timestamp, 20, getInt(block, 12) & 0xFFFFFFFFL,
+                    getInt(block, 16) & 0xFFFFFFFFL);
+        } catch (final RuntimeException e) {
+            block.release();
+            throw e;
+        }
+    }
+
+    /**
+     * interface id (2), drops count (2), timestamp high (4), timestamp low
+     * (4), captured length (4), original length (4), packet data, options
+     */
+    private PCapPacket framePacketBlock(final Buffer block) throws FramingException {
+        try {
+            final Interface iface = getInterface(getShort(block, 0));
+            final long timestamp = (getInt(block, 4) & 0xFFFFFFFFL) << 32 | getInt(block, 8) & 0xFFFFFFFFL;
+            return createPacket(block, iface, timestamp, 20, getInt(block, 12) & 0xFFFFFFFFL,
+                    getInt(block, 16) & 0xFFFFFFFFL);
+        } catch (final RuntimeException e) {
+            block.release();
+            throw e;
+        }
+    }
+
+    /**
+     * original length (4), packet data. The packet always belongs to the
+     * first interface and the captured length is whatever is left of the
+     * block, up to the snap length of the interface.
+     */
+    private PCapPacket frameSimplePacketBlock(final Buffer block) throws FramingException {
+        try {
+            final Interface iface = getInterface(0);
+            final long length = getInt(block, 0) & 0xFFFFFFFFL;
+            long captured = Math.min(length, block.capacity() - 4);
+            if (iface.snapLength > 0) {
+                captured = Math.min(captured, iface.snapLength);
+            }
+            return createPacket(block, iface, -1, 4, captured, length);
+        } catch (final RuntimeException e) {
+            block.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @param timestamp
+     *            the time stamp in the units of the interface or -1 to use the
+     *            time stamp of the previous packet.
+     */
+    private PCapPacket createPacket(final Buffer block, final Interface iface, final long timestamp,
+            final int offset, final long captured, final long length) throws FramingException {
+        if (captured > block.capacity() - offset) {
+            throw new FramingException(String.format("Invalid pcapng captured length of %d", captured),
+                    Protocol.PCAP);
+        }
+
+        final Buffer record = Buffers.wrap(new byte[PcapRecordHeader.SIZE]);
+        if (timestamp != -1) {
+            setTimestamp(iface, timestamp);
+        }
+        record.setUnsignedInt(0, this.lastSeconds);
+        record.setUnsignedInt(4, iface.nsTimestamps ? this.lastNanos : this.lastNanos / 1000);
+        record.setUnsignedInt(8, captured);
+        record.setUnsignedInt(12, length);
+
+        final PcapRecordHeader header = new PcapRecordHeader(ByteOrder.LITTLE_ENDIAN, record, iface.nsTimestamps);
+        final Buffer payload = block.slice(offset, offset + (int) captured);
+        return new PCapPacketImpl(iface.header, header, payload);
+    }
+
+    /**
+     * Split the time stamp up in seconds and nanoseconds.
+     */
+    private void setTimestamp(final Interface iface, final long timestamp) {
+        final int exponent = iface.exponent;
+        long seconds;
+        long nanos;
+        if (iface.decimal) {
+            final long units = POWERS_OF_TEN[exponent];
+            final long fraction;
+            if (timestamp >= 0) {
+                seconds = timestamp / units;
+                fraction = timestamp % units;
+            } else {
+                seconds = Long.divideUnsigned(timestamp, units);
+                fraction = Long.remainderUnsigned(timestamp, units);
+            }
+            nanos = exponent <= 9 ? fraction * POWERS_OF_TEN[9 - exponent] : fraction / POWERS_OF_TEN[exponent - 9];
+        } else if (exponent == 0) {
+            seconds = timestamp;
+            nanos = 0;
+        } else {
+            seconds = timestamp >>> exponent;
+            final long fraction = timestamp & (1L << exponent) - 1;
+            // keep clear of overflowing when multiplying with 10^9 (< 2^30)
+            nanos = exponent <= 30 ? fraction * 1000000000L >>> exponent
+                    : (fraction >>> exponent - 30) * 1000000000L >>> 30;
+        }
+
+        this.lastSeconds = seconds + iface.offset;
+        this.lastNanos = nanos;
+    }
+
+    private Interface getInterface(final int id) throws FramingException {
+        if (id < 0 || id >= this.interfaces.size()) {
+            throw new FramingException("Packet block refers to unknown interface " + id, Protocol.PCAP);
+        }
+        return this.interfaces.get(id);
+    }
+
+    /**
+     * link type (2), reserved (2), snap length (4), options
+     */
+    private Interface parseInterface(final Buffer block) throws FramingException {
+        final int linkType = getShort(block, 0);
+        final long snapLength = getInt(block, 4) & 0xFFFFFFFFL;
+
+        // microseconds unless told otherwise
+        boolean decimal = true;
+        int exponent = 6;
+        long offset = 0;
+
+        int index = 8;
+        while (index + 4 <= block.capacity()) {
+            final int code = getShort(block, index);
+            final int length = getShort(block, index + 2);
+            if (code == OPTION_END) {
+                break;
+            }
+
+            final int value = index + 4;
+            if (value + length > block.capacity()) {
+                throw new FramingException("Invalid option length in Interface Description Block", Protocol.PCAP);
+            }
+            if (code == OPTION_IF_TSRESOL && length == 1) {
+                final int resolution = block.getUnsignedByte(value);
+                decimal = (resolution & 0x80) == 0;
+                exponent = resolution & 0x7F;
+            } else if (code == OPTION_IF_TSOFFSET && length == 8) {
+                final long first = getInt(block, value) & 0xFFFFFFFFL;
+                final long second = getInt(block, value + 4) & 0xFFFFFFFFL;
+                offset = this.byteOrder == ByteOrder.BIG_ENDIAN ? first << 32 | second : second << 32 | first;
+            }
+
+            // the values are padded to 32 bits
+            index = value + (length + 3 & ~3);
+        }
+
+        if (decimal && exponent >= POWERS_OF_TEN.length || !decimal && exponent > 63) {
+            throw new FramingException("Unsupported time stamp resolution", Protocol.PCAP);
+        }
+
+        // anything finer than microseconds and we go with nanoseconds
+        final boolean nsTimestamps = decimal ? exponent > 6 : exponent > 20;
+        final PcapGlobalHeader header = PcapGlobalHeader.createHeader(linkType, snapLength, nsTimestamps);
+        return new Interface(header, snapLength, decimal, exponent, offset);
+    }
+
+    /**
+     * Read the block type and the block total length and then the rest of the
+     * block. The type of the block is left in {@link #blockType}. If it is a
+     * section header, it has already been dealt with.
+     *
+     * @return the body of the block, i.e., without the trailing block total
+     *         length, or null if we hit the end of the stream.
+     */
+    private Buffer readBlock(final Buffer buffer) throws IOException, FramingException {
+        final Buffer head = readBytes(buffer, 8);
+        if (head == null) {
+            return null;
+        }
+
+        final int type = head.getInt(0);
+        if (type == SECTION_HEADER_BLOCK) {
+            // the same in both byte orders, and we don't know the byte
+            // order of the new section until we have read the next bit
+            final int length = head.getInt(4);
+            head.release();
+            this.blockType = SECTION_HEADER_BLOCK;
+            return readSectionHeaderBlock(buffer, length);
+        }
+
+        final int length;
+        try {
+            // note that the type is an unsigned int but all the types we
+            // care about are small numbers
+            this.blockType = this.byteOrder == ByteOrder.BIG_ENDIAN ? type : Integer.reverseBytes(type);
+            length = getInt(head, 4);
+        } finally {
+            head.release();
+        }
+        return readBody(buffer, length, 8);
+    }
+
+    /**
+     * Read the block total length of a section header block, whose type has
+     * already been read, and then the rest of it.
+     */
+    private Buffer readSectionHeaderBlock(final Buffer buffer) throws IOException, FramingException {
+        final Buffer head = readBytes(buffer, 4);
+        if (head == null) {
+            return null;
+        }
+        final int length = head.getInt(0);
+        head.release();
+        return readSectionHeaderBlock(buffer, length);
+    }
+
+    /**
+     * Read the byte-order magic and then the rest of the section header
+     * block.
+     *
+     * @param length
+     *            the block total length, as a big endian int, since we don't
+     *            know the byte order yet.
+     * @return the body of the section header block (after the byte-order
+     *         magic) or null if we hit the end of the stream.
+     */
+    private Buffer readSectionHeaderBlock(final Buffer buffer, final int length)
+            throws IOException, FramingException {
+        final Buffer magic = readBytes(buffer, 4);
+        if (magic == null) {
+            return null;
+        }
+
+        try {
+            final int value = magic.getInt(0);
+            if (value == BYTE_ORDER_MAGIC) {
+                this.byteOrder = ByteOrder.BIG_ENDIAN;
+            } else if (value == Integer.reverseBytes(BYTE_ORDER_MAGIC)) {
+                this.byteOrder = ByteOrder.LITTLE_ENDIAN;
+            } else {
+                throw new FramingException("Invalid byte-order magic in Section Header Block", Protocol.PCAP);
+            }
+        } finally {
+            magic.release();
+        }
+
+        // a new section, new interfaces
+        this.interfaces.clear();
+        final int total = this.byteOrder == ByteOrder.BIG_ENDIAN ? length : Integer.reverseBytes(length);
+        return readBody(buffer, total, 12);
+    }
+
+    /**
+     * @param length
+     *            the block total length.
+     * @param read
+     *            how much of the block we already have read.
+     */
+    private Buffer readBody(final Buffer buffer, final int length, final int read)
+            throws IOException, FramingException {
+        if (length < read + 4 || (length & 3) != 0) {
+            throw new FramingException(String.format("Invalid pcapng block length of %d", length), Protocol.PCAP);
+        }
+
+        final Buffer rest = readBytes(buffer, length - read);
+        if (rest == null) {
+            return null;
+        }
+        return rest.slice(0, length - read - 4);
+    }
+
+    /**
+     * Same as {@link Buffer#readBytes(int)} but returns null at the end of
+     * the stream no matter what kind of {@link Buffer} it is.
+     */
+    private static Buffer readBytes(final Buffer buffer, final int length) throws IOException {
+        try {
+            return buffer.readBytes(length);
+        } catch (final IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private int getInt(final Buffer buffer, final int index) {
+        final int value = buffer.getInt(index);
+        return this.byteOrder == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value);
+    }
+
+    private int getShort(final Buffer buffer, final int index) {
+        final int value = buffer.getUnsignedShort(index);
+        return this.byteOrder == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value) >>> 16;
+    }
+
+    private static boolean isPacketBlock(final int type) {
+        return type == ENHANCED_PACKET_BLOCK || type == SIMPLE_PACKET_BLOCK || type == PACKET_BLOCK;
+    }
+
+    @Override
+    public boolean accept(final Buffer data) throws IOException {
+        return false;
+    }
+
+    private static final class Interface {
+        private final PcapGlobalHeader header;
+        private final long snapLength;
+
+        /**
+         * The time stamps are in units of 10^-exponent seconds if decimal,
+         * otherwise 2^-exponent seconds.
+         */
+        private final boolean decimal;
+        private final int exponent;
+
+        /**
+         * Seconds to add to every time stamp.
+         */
+        private final long offset;
+
+        private final boolean nsTimestamps;
+
+        private Interface(final PcapGlobalHeader header, final long snapLength, final boolean decimal,
+                final int exponent, final long offset) {
+            this.header = header;
+            this.snapLength = snapLength;
+            this.decimal = decimal;
+            this.exponent = exponent;
+            this.offset = offset;
+            this.nsTimestamps = header.timestampsInNs();
+        }
+    }
+
+}
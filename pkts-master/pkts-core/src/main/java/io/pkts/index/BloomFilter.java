@@ -0,0 +1,78 @@
+/**
+ *
+ */
+package io.pkts.index;
+
+/**
+ * A plain bloom filter over the keys of a block in the index, which tells us
+ * whether we need to decompress the block at all when looking for a single
+ * key. About 10 bits per key and 7 hashes, which gives roughly 1% false
+ * positives.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+final class BloomFilter {
+
+    private static final int BITS_PER_KEY = 10;
+
+    private static final int HASHES = 7;
+
+    private final long[] bits;
+
+    BloomFilter(final long[] bits) {
+        this.bits = bits;
+    }
+
+    static BloomFilter create(final int keys) {
+        final long size = Math.max(64L, (long) keys * BITS_PER_KEY);
+        return new BloomFilter(new long[(int) ((size + 63) / 64)]);
+    }
+
+    long[] getBits() {
+        return this.bits;
+    }
+
+    void add(final byte[] key) {
+        final long hash = hash(key);
+        final long size = this.bits.length * 64L;
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASHES; ++i) {
+            final long bit = ((h1 + i * h2) & 0xFFFFFFFFL) % size;
+            this.bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(final byte[] key) {
+        final long hash = hash(key);
+        final long size = this.bits.length * 64L;
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASHES; ++i) {
+            final long bit = ((h1 + i * h2) & 0xFFFFFFFFL) % size;
+            if ((this.bits[(int) (bit >>> 6)] & 1L << bit) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a followed by the finalizer of MurmurHash3 so that the upper and
+     * lower half are both usable as hashes of their own.
+     */
+    static long hash(final byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (final byte b : key) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
@@ -0,0 +1,169 @@
+/**
+ *
+ */
+package io.pkts.index;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The layout of an index file, all of it big endian:
+ *
+ * <pre>
+ * magic     "PKTSIDX" and a version byte
+ * blocks    deflated blocks of entries, sorted by key
+ * directory record count, block count and, per block, its position,
+ *           compressed and uncompressed length, first and last key and
+ *           the bits of its bloom filter
+ * footer    position of the directory and the magic once more
+ * </pre>
+ *
+ * Every entry in a block is the length of the key, the key, the number of
+ * record offsets and the offsets, with every offset but the first stored as
+ * the distance from the one before, all as variable length integers.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+final class IndexFormat {
+
+    static final byte[] MAGIC = { 'P', 'K', 'T', 'S', 'I', 'D', 'X', 1 };
+
+    /**
+     * Position of the directory and the magic.
+     */
+    static final int FOOTER_SIZE = 8 + MAGIC.length;
+
+    static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private IndexFormat() {
+        // left empty intentionally
+    }
+
+    /**
+     * A block as described by the directory.
+     */
+    static final class Block {
+        final long position;
+        final int compressedLength;
+        final int length;
+        final byte[] firstKey;
+        final byte[] lastKey;
+        final BloomFilter bloom;
+
+        Block(final long position, final int compressedLength, final int length, final byte[] firstKey,
+                final byte[] lastKey, final BloomFilter bloom) {
+            this.position = position;
+            this.compressedLength = compressedLength;
+            this.length = length;
+            this.firstKey = firstKey;
+            this.lastKey = lastKey;
+            this.bloom = bloom;
+        }
+
+        void write(final DataOutput out) throws IOException {
+            out.writeLong(this.position);
+            out.writeInt(this.compressedLength);
+            out.writeInt(this.length);
+            writeBytes(out, this.firstKey);
+            writeBytes(out, this.lastKey);
+            final long[] bits = this.bloom.getBits();
+            out.writeInt(bits.length);
+            for (final long l : bits) {
+                out.writeLong(l);
+            }
+        }
+
+        static Block read(final DataInput in) throws IOException {
+            final long position = in.readLong();
+            final int compressedLength = in.readInt();
+            final int length = in.readInt();
+            final byte[] firstKey = readBytes(in);
+            final byte[] lastKey = readBytes(in);
+            final long[] bits = new long[in.readInt()];
+            for (int i = 0; i < bits.length; ++i) {
+                bits[i] = in.readLong();
+            }
+            return new Block(position, compressedLength, length, firstKey, lastKey, new BloomFilter(bits));
+        }
+    }
+
+    static boolean isMagic(final byte[] bytes) {
+        return Arrays.equals(MAGIC, bytes);
+    }
+
+    private static void writeBytes(final DataOutput out, final byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(final DataInput in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Write the value, which must not be negative, seven bits at a time.
+     *
+     * @return the index following the value.
+     */
+    static int putVarLong(final byte[] bytes, int index, long value) {
+        while ((value & ~0x7FL) != 0) {
+            bytes[index++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        bytes[index++] = (byte) value;
+        return index;
+    }
+
+    /**
+     * Reads variable length integers off of a decompressed block.
+     */
+    static final class Reader {
+        private final byte[] bytes;
+        private final int length;
+        private int index;
+
+        Reader(final byte[] bytes, final int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+
+        boolean hasMore() {
+            return this.index < this.length;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (this.index >= this.length) {
+                    throw new IOException("Truncated block in the index");
+                }
+                final byte b = this.bytes[this.index++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt variable length integer in the index");
+        }
+
+        byte[] readBytes(final int count) throws IOException {
+            if (count < 0 || this.index + count > this.length) {
+                throw new IOException("Truncated block in the index");
+            }
+            final byte[] result = Arrays.copyOfRange(this.bytes, this.index, this.index + count);
+            this.index += count;
+            return result;
+        }
+
+        void skipOffsets(final long count) throws IOException {
+            for (long i = 0; i < count; ++i) {
+                readVarLong();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/**
+ *
+ */
+package io.pkts.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A key in the index, which is a type byte followed by the value. Keys are
+ * ordered as unsigned bytes, which for the time keys is the same as ordering
+ * them by time since the seconds are stored big endian.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+final class IndexKey implements Comparable<IndexKey> {
+
+    static final byte CALL_ID = 1;
+
+    static final byte FLOW = 2;
+
+    static final byte TIME = 3;
+
+    private final byte[] bytes;
+
+    private final int hash;
+
+    IndexKey(final byte[] bytes) {
+        this.bytes = bytes;
+        this.hash = Arrays.hashCode(bytes);
+    }
+
+    static IndexKey callId(final String callId) {
+        return callId(callId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static IndexKey callId(final byte[] callId) {
+        final byte[] bytes = new byte[1 + callId.length];
+        bytes[0] = CALL_ID;
+        System.arraycopy(callId, 0, bytes, 1, callId.length);
+        return new IndexKey(bytes);
+    }
+
+    /**
+     * The key of a flow, which is the same for both directions, i.e., the
+     * end point that sorts first always goes first.
+     *
+     * @param protocol
+     *            the IP protocol number, e.g. 17 for UDP.
+     */
+    static IndexKey flow(final int protocol, final byte[] ipA, final int portA, final byte[] ipB, final int portB) {
+        if (ipA.length != ipB.length) {
+            throw new IllegalArgumentException("Both addresses must be either IPv4 or IPv6");
+        }
+
+        final boolean swap = compareEndPoint(ipA, portA, ipB, portB) > 0;
+        final byte[] bytes = new byte[3 + 2 * (ipA.length + 2)];
+        bytes[0] = FLOW;
+        bytes[1] = (byte) protocol;
+        bytes[2] = (byte) ipA.length;
+        int index = putEndPoint(bytes, 3, swap ? ipB : ipA, swap ? portB : portA);
+        putEndPoint(bytes, index, swap ? ipA : ipB, swap ? portA : portB);
+        return new IndexKey(bytes);
+    }
+
+    private static int compareEndPoint(final byte[] ipA, final int portA, final byte[] ipB, final int portB) {
+        final int result = compare(ipA, ipB);
+        return result != 0 ? result : Integer.compare(portA, portB);
+    }
+
+    private static int putEndPoint(final byte[] bytes, final int index, final byte[] ip, final int port) {
+        System.arraycopy(ip, 0, bytes, index, ip.length);
+        bytes[index + ip.length] = (byte) (port >> 8);
+        bytes[index + ip.length + 1] = (byte) port;
+        return index + ip.length + 2;
+    }
+
+    static IndexKey time(final long seconds) {
+        final byte[] bytes = new byte[9];
+        bytes[0] = TIME;
+        for (int i = 0; i < 8; ++i) {
+            bytes[1 + i] = (byte) (seconds >>> 56 - 8 * i);
+        }
+        return new IndexKey(bytes);
+    }
+
+    byte[] getBytes() {
+        return this.bytes;
+    }
+
+    byte getType() {
+        return this.bytes[0];
+    }
+
+    /**
+     * Compare the two as unsigned bytes, the shorter one first if one is the
+     * beginning of the other.
+     */
+    static int compare(final byte[] a, final byte[] b) {
+        final int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; ++i) {
+            final int result = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    @Override
+    public int compareTo(final IndexKey other) {
+        return compare(this.bytes, other.bytes);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof IndexKey)) {
+            return false;
+        }
+        final IndexKey key = (IndexKey) other;
+        return this.hash == key.hash && Arrays.equals(this.bytes, key.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+}
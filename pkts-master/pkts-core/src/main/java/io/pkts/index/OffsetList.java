@@ -0,0 +1,55 @@
+/**
+ *
+ */
+package io.pkts.index;
+
+import java.util.Arrays;
+
+/**
+ * The record offsets of a key while indexing, kept the way they end up in
+ * the index file, i.e., as the distance from the previous offset in as few
+ * bytes as possible. Most keys (flows and seconds) have an offset for a great
+ * many records so this saves quite a bit of memory over a long[].
+ *
+ * @author jonas@jonasborjesson.com
+ */
+final class OffsetList {
+
+    private byte[] bytes = new byte[8];
+
+    private int length;
+
+    private int count;
+
+    private long last;
+
+    /**
+     * Add an offset, which must not be smaller than the previous one. The
+     * same offset twice in a row is only added once.
+     */
+    void add(final long offset) {
+        if (this.count > 0 && offset == this.last) {
+            return;
+        }
+
+        if (this.length + 10 > this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes, this.bytes.length * 2);
+        }
+        this.length = IndexFormat.putVarLong(this.bytes, this.length, offset - this.last);
+        this.last = offset;
+        ++this.count;
+    }
+
+    int getCount() {
+        return this.count;
+    }
+
+    byte[] getBytes() {
+        return this.bytes;
+    }
+
+    int getLength() {
+        return this.length;
+    }
+
+}
@@ -0,0 +1,310 @@
+/**
+ *
+ */
+package io.pkts.index;
+
+import io.pkts.PacketHandler;
+import io.pkts.Pcap;
+import io.pkts.protocol.Protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A sidecar index of a pcap, which maps Call-IDs, flows and the second a
+ * record was captured in to the byte offsets of the records in the pcap. Use
+ * the offsets to {@link #loop(Path, long[], PacketHandler)} over only those
+ * records instead of going through the entire pcap. E.g. to get hold of a
+ * single call:
+ *
+ * <pre>
+ * try (PcapIndex index = PcapIndex.open(PcapIndex.sidecar(pcap))) {
+ *     PcapIndex.loop(pcap, index.findCallId(callId), handler);
+ * }
+ * </pre>
+ *
+ * The index is written by the {@link PcapIndexer}. The entries are sorted by
+ * key and stored in blocks, which are compressed. Only the directory of the
+ * blocks, with the first and last key and a bloom filter of every block, is
+ * kept in memory, so finding a key means reading (at most) a single block.
+ *
+ * An open index may be used by many threads at once.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PcapIndex implements Closeable {
+
+    private static final long[] NONE = new long[0];
+
+    private final FileChannel channel;
+
+    private final IndexFormat.Block[] blocks;
+
+    private final long records;
+
+    private PcapIndex(final FileChannel channel, final IndexFormat.Block[] blocks, final long records) {
+        this.channel = channel;
+        this.blocks = blocks;
+        this.records = records;
+    }
+
+    /**
+     * The name we give the index of a pcap, which is the name of the pcap
+     * with ".idx" added to it.
+     */
+    public static Path sidecar(final Path pcapFile) {
+        return pcapFile.resolveSibling(pcapFile.getFileName() + ".idx");
+    }
+
+    public static PcapIndex open(final Path indexFile) throws IOException {
+        final FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ);
+        try {
+            final long size = channel.size();
+            if (size < IndexFormat.MAGIC.length + IndexFormat.FOOTER_SIZE) {
+                throw new IOException("Not a pcap index, too short");
+            }
+
+            final DataInputStream footer = new DataInputStream(new ByteArrayInputStream(read(channel, size
+                    - IndexFormat.FOOTER_SIZE, IndexFormat.FOOTER_SIZE)));
+            final long directory = footer.readLong();
+            final byte[] magic = new byte[IndexFormat.MAGIC.length];
+            footer.readFully(magic);
+            if (!IndexFormat.isMagic(magic) || !IndexFormat.isMagic(read(channel, 0, magic.length))) {
+                throw new IOException("Not a pcap index, or not one of this version");
+            }
+
+            final long length = size - IndexFormat.FOOTER_SIZE - directory;
+            if (directory < IndexFormat.MAGIC.length || length > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt pcap index");
+            }
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(read(channel, directory,
+                    (int) length)));
+            final long records = in.readLong();
+            final IndexFormat.Block[] blocks = new IndexFormat.Block[in.readInt()];
+            for (int i = 0; i < blocks.length; ++i) {
+                blocks[i] = IndexFormat.Block.read(in);
+            }
+            return new PcapIndex(channel, blocks, records);
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The number of records in the pcap.
+     */
+    public long getRecordCount() {
+        return this.records;
+    }
+
+    public int getBlockCount() {
+        return this.blocks.length;
+    }
+
+    /**
+     * @return the offsets of all SIP messages with this Call-ID, in order.
+     */
+    public long[] findCallId(final String callId) throws IOException {
+        return find(IndexKey.callId(callId).getBytes());
+    }
+
+    /**
+     * Find the records going either way between the two end points.
+     *
+     * @param protocol
+     *            {@link Protocol#UDP} or {@link Protocol#TCP}.
+     * @param ipA
+     *            an IPv4 or IPv6 address, which must be the address itself
+     *            and not a host name.
+     * @param portA
+     * @param ipB
+     *            an address of the same kind as ipA.
+     * @param portB
+     * @return the offsets of the records, in order.
+     */
+    public long[] findFlow(final Protocol protocol, final String ipA, final int portA, final String ipB,
+            final int portB) throws IOException {
+        if (protocol != Protocol.UDP && protocol != Protocol.TCP) {
+            throw new IllegalArgumentException("Only UDP and TCP flows are indexed");
+        }
+
+        final byte[] a = InetAddress.getByName(ipA).getAddress();
+        final byte[] b = InetAddress.getByName(ipB).getAddress();
+        if (a.length != b.length) {
+            return NONE;
+        }
+        return find(IndexKey.flow(protocol == Protocol.UDP ? 17 : 6, a, portA, b, portB).getBytes());
+    }
+
+    /**
+     * @param fromSeconds
+     *            the first second, since epoch, of records to find.
+     * @param toSeconds
+     *            the last second, inclusive.
+     * @return the offsets of all records captured within those seconds, in
+     *         order.
+     */
+    public long[] findTime(final long fromSeconds, final long toSeconds) throws IOException {
+        if (fromSeconds > toSeconds) {
+            return NONE;
+        }
+
+        final byte[] from = IndexKey.time(fromSeconds).getBytes();
+        final byte[] to = IndexKey.time(toSeconds).getBytes();
+        long[] offsets = NONE;
+        int count = 0;
+        for (int i = firstBlock(from); i < this.blocks.length; ++i) {
+            final IndexFormat.Block block = this.blocks[i];
+            if (IndexKey.compare(block.firstKey, to) > 0) {
+                break;
+            }
+
+            final IndexFormat.Reader reader = readBlock(block);
+            while (reader.hasMore()) {
+                final byte[] key = reader.readBytes((int) reader.readVarLong());
+                final long n = reader.readVarLong();
+                if (IndexKey.compare(key, from) < 0 || IndexKey.compare(key, to) > 0) {
+                    reader.skipOffsets(n);
+                    continue;
+                }
+                if (count + n > offsets.length) {
+                    offsets = Arrays.copyOf(offsets, (int) Math.max(count + n, offsets.length * 2L));
+                }
+                count = readOffsets(reader, n, offsets, count);
+            }
+        }
+
+        // the records may not have been captured in order
+        final long[] result = Arrays.copyOf(offsets, count);
+        Arrays.sort(result);
+        return result;
+    }
+
+    private long[] find(final byte[] key) throws IOException {
+        final int i = firstBlock(key);
+        if (i == this.blocks.length) {
+            return NONE;
+        }
+
+        final IndexFormat.Block block = this.blocks[i];
+        if (IndexKey.compare(block.firstKey, key) > 0 || !block.bloom.mightContain(key)) {
+            return NONE;
+        }
+
+        final IndexFormat.Reader reader = readBlock(block);
+        while (reader.hasMore()) {
+            final byte[] candidate = reader.readBytes((int) reader.readVarLong());
+            final long n = reader.readVarLong();
+            final int result = IndexKey.compare(candidate, key);
+            if (result == 0) {
+                final long[] offsets = new long[(int) n];
+                readOffsets(reader, n, offsets, 0);
+                return offsets;
+            } else if (result > 0) {
+                break;
+            }
+            reader.skipOffsets(n);
+        }
+        return NONE;
+    }
+
+    private static int readOffsets(final IndexFormat.Reader reader, final long n, final long[] offsets, int count)
+            throws IOException {
+        long offset = 0;
+        for (long j = 0; j < n; ++j) {
+            offset += reader.readVarLong();
+            offsets[count++] = offset;
+        }
+        return count;
+    }
+
+    /**
+     * The first block whose last key isn't smaller than the key, which is
+     * the only block that can contain the key.
+     */
+    private int firstBlock(final byte[] key) {
+        int low = 0;
+        int high = this.blocks.length;
+        while (low < high) {
+            final int mid = low + high >>> 1;
+            if (IndexKey.compare(this.blocks[mid].lastKey, key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private IndexFormat.Reader readBlock(final IndexFormat.Block block) throws IOException {
+        final byte[] compressed = read(this.channel, block.position, block.compressedLength);
+        final byte[] bytes = new byte[block.length];
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int length = 0;
+            while (length < bytes.length && !inflater.finished()) {
+                final int n = inflater.inflate(bytes, length, bytes.length - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != bytes.length) {
+                throw new IOException("Corrupt block in the pcap index");
+            }
+        } catch (final DataFormatException e) {
+            throw new IOException("Corrupt block in the pcap index", e);
+        } finally {
+            inflater.end();
+        }
+        return new IndexFormat.Reader(bytes, bytes.length);
+    }
+
+    static byte[] read(final FileChannel channel, final long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of file at " + (position + buffer.position()));
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Loop over the records of the pcap at the given offsets, in the order
+     * given, as if they were the only records in the pcap.
+     *
+     * @param pcapFile
+     *            the pcap the offsets were found in, by the index of that
+     *            pcap.
+     * @param offsets
+     * @param handler
+     */
+    public static void loop(final Path pcapFile, final long[] offsets, final PacketHandler handler)
+            throws IOException {
+        try (RecordInputStream in = new RecordInputStream(pcapFile, offsets)) {
+            final Pcap pcap = Pcap.openStream(in);
+            pcap.loop(handler);
+            pcap.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+}
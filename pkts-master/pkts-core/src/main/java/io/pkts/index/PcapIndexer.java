@@ -0,0 +1,300 @@
+/**
+ *
+ */
+package io.pkts.index;
+
+import io.pkts.PacketHandler;
+import io.pkts.Pcap;
+import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.frame.PcapRecordHeader;
+import io.pkts.packet.IPPacket;
+import io.pkts.packet.IPv4Packet;
+import io.pkts.packet.PCapPacket;
+import io.pkts.packet.Packet;
+import io.pkts.packet.PacketParseException;
+import io.pkts.packet.TransportPacket;
+import io.pkts.packet.sip.SipPacket;
+import io.pkts.protocol.Protocol;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Builds the index of a pcap, see {@link PcapIndex}, in a single pass over
+ * it. Every record is indexed by the second it was captured in and, if it
+ * carries UDP or TCP, by its flow (protocol and the IP address and port of
+ * both ends, no matter the direction) and, if it is a SIP message, by its
+ * Call-ID.
+ *
+ * The offset of a record is worked out from the sizes of the records before
+ * it so the indexer must be handed every single record of the pcap, in
+ * order, starting with the first. Either hand it to {@link Pcap#loop} (with
+ * no filter) or use {@link #index(Path, Path)}. The same goes for a pcap
+ * that is being written: hand the indexer every packet written to a new
+ * {@link io.pkts.PcapOutputStream} and the index will match the new file.
+ *
+ * Only classic pcaps can be indexed. IP fragments other than the first one
+ * are only indexed by time.
+ *
+ * The index is kept in memory until written, where every key costs a few
+ * bytes per record it points to.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class PcapIndexer implements PacketHandler {
+
+    private final boolean nsTimestamps;
+
+    private final Map<IndexKey, OffsetList> keys = new HashMap<>();
+
+    private int blockSize = IndexFormat.DEFAULT_BLOCK_SIZE;
+
+    /**
+     * The offset of the next record.
+     */
+    private long position = PcapGlobalHeader.SIZE;
+
+    private long records;
+
+    /**
+     * @param pcapHeader
+     *            the header of the pcap being indexed.
+     */
+    public PcapIndexer(final PcapGlobalHeader pcapHeader) {
+        this.nsTimestamps = pcapHeader.timestampsInNs();
+    }
+
+    /**
+     * Index the pcap and write the index to the given file, typically
+     * {@link PcapIndex#sidecar(Path)}.
+     *
+     * @return the number of records indexed.
+     * @throws IllegalArgumentException
+     *             in case the file is a pcapng file.
+     */
+    public static long index(final Path pcapFile, final Path indexFile) throws IOException {
+        final byte[] magic = new byte[4];
+        try (InputStream in = Files.newInputStream(pcapFile)) {
+            if (in.read(magic) == 4 && PcapGlobalHeader.isPcapng(magic)) {
+                throw new IllegalArgumentException("Only classic pcap files can be indexed");
+            }
+        }
+
+        try (InputStream in = Files.newInputStream(pcapFile)) {
+            final Pcap pcap = Pcap.openStream(in);
+            final PcapIndexer indexer = new PcapIndexer(pcap.getPcapHeader());
+            pcap.loop(indexer);
+            pcap.close();
+            indexer.write(indexFile);
+            return indexer.getRecordCount();
+        }
+    }
+
+    /**
+     * The uncompressed size of the blocks in the index file.
+     */
+    void setBlockSize(final int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public long getRecordCount() {
+        return this.records;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean nextPacket(final Packet packet) throws IOException {
+        if (!(packet instanceof PCapPacket)) {
+            throw new IllegalArgumentException("Expected the packet as read off of the pcap");
+        }
+
+        final PCapPacket pcap = (PCapPacket) packet;
+        final long offset = this.position;
+        this.position += PcapRecordHeader.SIZE + pcap.getCapturedLength();
+        ++this.records;
+
+        final long divisor = this.nsTimestamps ? 1000000000L : 1000000L;
+        add(IndexKey.time(pcap.getArrivalTime() / divisor), offset);
+
+        try {
+            indexFlow(pcap, offset);
+        } catch (final PacketParseException e) {
+            // not much to index then, it is still indexed by time
+        }
+        return true;
+    }
+
+    private void indexFlow(final Packet packet, final long offset) throws IOException {
+        final IPPacket ip = ip(packet);
+        if (ip == null || ip instanceof IPv4Packet && ((IPv4Packet) ip).getFragmentOffset() != 0) {
+            return;
+        }
+
+        final Packet next = ip.getFramedNextPacket();
+        if (!(next instanceof TransportPacket)) {
+            return;
+        }
+
+        final TransportPacket transport = (TransportPacket) next;
+        final int protocol = transport.isUDP() ? 17 : 6;
+        add(IndexKey.flow(protocol, ip.getRawSourceIP(), transport.getSourcePort(), ip.getRawDestinationIP(),
+                transport.getDestinationPort()), offset);
+
+        final Packet application = transport.getFramedNextPacket();
+        if (application instanceof SipPacket) {
+            final SipPacket sip = (SipPacket) application;
+            if (sip.getCallIDHeader() != null) {
+                add(IndexKey.callId(sip.getCallIDHeader().getValue().getArray()), offset);
+            }
+        }
+    }
+
+    /**
+     * Walk up the stack until we find the IP layer, without going past it.
+     */
+    private static IPPacket ip(final Packet packet) throws IOException {
+        Packet p = packet;
+        while (p != null) {
+            if (p instanceof IPPacket) {
+                return (IPPacket) p;
+            }
+            final Protocol.Layer layer = p.getProtocol().getProtocolLayer();
+            if (layer != Protocol.Layer.LAYER_1 && layer != Protocol.Layer.LAYER_2) {
+                return null;
+            }
+            p = p.getFramedNextPacket();
+        }
+        return null;
+    }
+
+    private void add(final IndexKey key, final long offset) {
+        OffsetList offsets = this.keys.get(key);
+        if (offsets == null) {
+            offsets = new OffsetList();
+            this.keys.put(key, offsets);
+        }
+        offsets.add(offset);
+    }
+
+    /**
+     * Write the index to the file, replacing whatever was there.
+     */
+    public void write(final Path indexFile) throws IOException {
+        final List<Map.Entry<IndexKey, OffsetList>> entries = new ArrayList<>(this.keys.entrySet());
+        entries.sort(Map.Entry.comparingByKey());
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile),
+                64 * 1024))) {
+            out.write(IndexFormat.MAGIC);
+            final BlockWriter blocks = new BlockWriter(out, this.blockSize);
+            for (final Map.Entry<IndexKey, OffsetList> entry : entries) {
+                blocks.add(entry.getKey().getBytes(), entry.getValue());
+            }
+            blocks.finish();
+
+            final long directory = blocks.position;
+            out.writeLong(this.records);
+            out.writeInt(blocks.directory.size());
+            for (final IndexFormat.Block block : blocks.directory) {
+                block.write(out);
+            }
+            out.writeLong(directory);
+            out.write(IndexFormat.MAGIC);
+        }
+    }
+
+    /**
+     * Gathers the sorted entries into blocks, which are deflated and written
+     * out once they reach the block size.
+     */
+    private static final class BlockWriter {
+        private final DataOutputStream out;
+        private final int blockSize;
+        private final Deflater deflater = new Deflater();
+        private final List<IndexFormat.Block> directory = new ArrayList<>();
+        private final List<byte[]> blockKeys = new ArrayList<>();
+        private byte[] block;
+        private int length;
+        private byte[] compressed;
+
+        /**
+         * Where in the file the next block goes, we are past the magic.
+         */
+        private long position = IndexFormat.MAGIC.length;
+
+        private BlockWriter(final DataOutputStream out, final int blockSize) {
+            this.out = out;
+            this.blockSize = blockSize;
+            this.block = new byte[blockSize + 1024];
+            this.compressed = new byte[blockSize + 1024];
+        }
+
+        private void add(final byte[] key, final OffsetList offsets) throws IOException {
+            final int needed = this.length + 20 + key.length + offsets.getLength();
+            if (needed > this.block.length) {
+                this.block = Arrays.copyOf(this.block, needed);
+            }
+
+            this.length = IndexFormat.putVarLong(this.block, this.length, key.length);
+            System.arraycopy(key, 0, this.block, this.length, key.length);
+            this.length += key.length;
+            this.length = IndexFormat.putVarLong(this.block, this.length, offsets.getCount());
+            System.arraycopy(offsets.getBytes(), 0, this.block, this.length, offsets.getLength());
+            this.length += offsets.getLength();
+            this.blockKeys.add(key);
+
+            if (this.length >= this.blockSize) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            if (this.blockKeys.isEmpty()) {
+                return;
+            }
+
+            this.deflater.reset();
+            this.deflater.setInput(this.block, 0, this.length);
+            this.deflater.finish();
+            int compressedLength = 0;
+            while (!this.deflater.finished()) {
+                if (compressedLength == this.compressed.length) {
+                    this.compressed = Arrays.copyOf(this.compressed, this.compressed.length * 2);
+                }
+                compressedLength += this.deflater.deflate(this.compressed, compressedLength, this.compressed.length
+                        - compressedLength);
+            }
+
+            final BloomFilter bloom = BloomFilter.create(this.blockKeys.size());
+            for (final byte[] key : this.blockKeys) {
+                bloom.add(key);
+            }
+
+            this.out.write(this.compressed, 0, compressedLength);
+            this.directory.add(new IndexFormat.Block(this.position, compressedLength, this.length, this.blockKeys.get(0),
+                    this.blockKeys.get(this.blockKeys.size() - 1), bloom));
+
+            this.position += compressedLength;
+            this.length = 0;
+            this.blockKeys.clear();
+        }
+
+        private void finish() throws IOException {
+            flush();
+            this.deflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package io.pkts.index;
+
+import io.pkts.buffer.Buffers;
+import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.frame.PcapRecordHeader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The global header of a pcap followed by the records at the given offsets
+ * only, i.e., what looks like a pcap containing nothing but those records.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+final class RecordInputStream extends InputStream {
+
+    private final FileChannel channel;
+
+    private final long[] offsets;
+
+    private final ByteOrder byteOrder;
+
+    private int next;
+
+    private ByteBuffer current;
+
+    RecordInputStream(final Path pcapFile, final long[] offsets) throws IOException {
+        this.channel = FileChannel.open(pcapFile, StandardOpenOption.READ);
+        this.offsets = offsets;
+        try {
+            final byte[] header = PcapIndex.read(this.channel, 0, PcapGlobalHeader.SIZE);
+            if (PcapGlobalHeader.isPcapng(header)) {
+                throw new IllegalArgumentException("Only classic pcap files can be indexed");
+            }
+            this.byteOrder = PcapGlobalHeader.parse(Buffers.wrap(header)).getByteOrder();
+            this.current = ByteBuffer.wrap(header);
+        } catch (final IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Make sure there is something left in the current buffer, reading the
+     * next record if need be.
+     *
+     * @return false if there are no more records.
+     */
+    private boolean fill() throws IOException {
+        while (!this.current.hasRemaining()) {
+            if (this.next == this.offsets.length) {
+                return false;
+            }
+
+            final long offset = this.offsets[this.next++];
+            final ByteBuffer header = ByteBuffer.wrap(PcapIndex.read(this.channel, offset, PcapRecordHeader.SIZE))
+                    .order(this.byteOrder);
+            final int captured = header.getInt(8);
+            if (captured < 0) {
+                throw new IOException("Bad record at offset " + offset + ", is the index for this pcap?");
+            }
+            this.current = ByteBuffer.wrap(PcapIndex.read(this.channel, offset, PcapRecordHeader.SIZE + captured));
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return fill() ? this.current.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+
+        final int n = Math.min(len, this.current.remaining());
+        this.current.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+}
@@ -78,6 +78,53 @@ public interface IPv4Packet extends IPPacket {
      */
     void setDestinationIP(String destinationIP);
 
+    /**
+     * Get the raw source ip as a 32-bit integer.
+     *
+     * Note, these are the raw bits and should be treated as such. If you really
+     * want to print it, then you should treat it as unsigned
+     *
+     * @return
+     */
+    int getRawSourceIpInt();
+
+    /**
+     * Get the raw destination ip as a 32-bit integer.
+     *
+     * Note, these are the raw bits and should be treated as such. If you really
+     * want to print it, then you should treat it as unsigned
+     *
+     * @return
+     */
+    int getRawDestinationIpInt();
+
+    /**
+     * The protocol field (byte 10) of the IP header, i.e. the protocol
+     * number of the payload as assigned by IANA, e.g. 17 for UDP and 6 for
+     * TCP. Unlike {@link #getProtocol()}, which always is
+     * {@link io.pkts.protocol.Protocol#IPv4}, this is the raw number straight
+     * off of the wire and as such, it is available even if pkts.io doesn't
+     * know anything about the protocol in question.
+     *
+     * @return the protocol number as an unsigned byte
+     */
+    int getProtocolNumber();
+
+    /**
+     * The time to live (byte 9) of the IP header.
+     *
+     * @return the time to live as an unsigned byte
+     */
+    int getTimeToLive();
+
+    /**
+     * The type of service (byte 2) of the IP header, which these days is the
+     * DSCP and ECN bits.
+     *
+     * @return the type of service as an unsigned byte
+     */
+    int getTypeOfService();
+
     /**
      * The checksum of the IP-packet. The checksum in an IP-packet is a 16 bit
      * checksum of the header bytes (which the checksum set to zero) and is
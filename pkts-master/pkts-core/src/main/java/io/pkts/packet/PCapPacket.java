@@ -26,7 +26,40 @@ public interface PCapPacket extends Packet {
      */
     long getCapturedLength();
 
+    /**
+     * The link type of the pcap this packet was read from, which tells what
+     * the payload of this packet starts with, e.g. 1 for Ethernet.
+     *
+     * @return the link type as found in the global header of the pcap.
+     */
+    int getDataLinkType();
+
     @Override
     PCapPacket clone();
 
+    /**
+     * If the {@link io.pkts.Pcap} was opened with a pooling
+     * {@link io.pkts.buffer.BufferAllocator}, the bytes of this packet are
+     * handed back to the allocator as soon as the
+     * {@link io.pkts.PacketHandler} returns. If you need to hang on to the
+     * packet (or anything framed from it) after that, you must retain it and
+     * then {@link #release()} it once done.
+     *
+     * For any other {@link io.pkts.Pcap} this is a no-op.
+     *
+     * @return this packet
+     */
+    default PCapPacket retain() {
+        return this;
+    }
+
+    /**
+     * Hand the bytes of this packet back to the
+     * {@link io.pkts.buffer.BufferAllocator} they came from, see
+     * {@link #retain()}.
+     */
+    default void release() {
+        // nothing to release by default
+    }
+
 }
@@ -145,6 +145,22 @@ public interface Packet extends Cloneable {
      */
     Packet getNextPacket() throws IOException, PacketParseException;
 
+    /**
+     * Same as {@link #getNextPacket()} but the next frame is only framed the
+     * first time we are asked, after which the very same instance is
+     * returned. This is how {@link #getPacket(Protocol)} walks the protocol
+     * stack so use this one when walking it by hand, or the layers will be
+     * framed all over again when someone asks for them.
+     * 
+     * @return
+     * @throws IOException
+     * @throws PacketParseException if the next packet can't be parsed by the
+     *                              framer
+     */
+    default Packet getFramedNextPacket() throws IOException, PacketParseException {
+        return getNextPacket();
+    }
+
     /**
      * Almost all packets have a parent, which is the encapsulating protocol.
      * E.g., the parent of a {@link SipPacket} is typically a
@@ -51,7 +51,7 @@ public abstract class AbstractApplicationPacket extends AbstractPacket implement
      */
     @Override
     public void write(final OutputStream out, final Buffer payload) throws IOException {
-        final Buffer buffer = this.payload != null ? Buffers.wrap(this.payload, payload) : payload;
+        final Buffer buffer = this.payload != null ? Buffers.gather(this.payload, payload) : payload;
         this.parent.write(out, buffer);
     }
 
@@ -40,10 +40,19 @@ public abstract class AbstractPacket implements Packet {
     private final Packet parent;
 
     /**
-     * The next packet.
+     * The next packet. Framing the payload can be expensive (think SIP) and
+     * when walking the protocol stack through {@link #getPacket(Protocol)} or
+     * {@link #hasProtocol(Protocol)} we would otherwise frame the very same
+     * payload over and over again so once framed, we hang on to it.
      */
     private Packet nextPacket;
 
+    /**
+     * Whether or not we have framed the next packet. Note that the next
+     * packet may legitimately be null so we cannot use that as the marker.
+     */
+    private boolean nextPacketFramed;
+
     /**
      * 
      * @param p
@@ -76,20 +85,18 @@ public abstract class AbstractPacket implements Packet {
     }
 
     /**
-     * The write strategy is fairly simple. If we have a "nextPacket" it means
-     * that we have been asked to frame our payload which also means that that
-     * payload may have changed and therefore ask the nextPacket to write itself
-     * back out to the stream. If there is no nextPacket we can just take the
-     * raw payload and write it out as is since it cannot have changed since we
-     * framed this packet.
+     * The write strategy is fairly simple. We take the raw payload and write
+     * it out as is. Note that even if we have framed the "nextPacket" we do
+     * not ask it to write itself since all the framers slice their headers
+     * and payload out of our payload, which means that any change made to the
+     * next packet is already reflected in the raw payload. Also, we may have
+     * framed the next packet only because someone asked if we contained a
+     * particular protocol and not every packet (SDP, RTP etc) knows how to
+     * write itself.
      */
     @Override
     public final void write(final OutputStream out) throws IOException {
-        if (this.nextPacket != null) {
-            this.nextPacket.write(out);
-        } else {
-            this.write(out, this.payload);
-        }
+        this.write(out, this.payload);
     }
 
     @Override
@@ -140,7 +147,7 @@ public abstract class AbstractPacket implements Packet {
             return this;
         }
 
-        final Packet child = getNextPacket();
+        final Packet child = getFramedNextPacket();
         if (child != null && child.getProtocol() == p) {
             return child;
         }
@@ -152,6 +159,51 @@ public abstract class AbstractPacket implements Packet {
         return child.getPacket(p);
     }
 
+    /**
+     * Get the next packet, framing it only the first time we are asked.
+     * Subsequent calls will return the very same instance so walking the
+     * protocol stack multiple times (which e.g. is what happens when you ask
+     * {@link #hasProtocol(Protocol)} for a bunch of protocols before
+     * grabbing the one you want through {@link #getPacket(Protocol)}) only
+     * frames each layer once.
+     *
+     * If the framing fails, nothing is remembered and the next call will try
+     * again.
+     *
+     * @return the next packet or null if there is none.
+     * @throws IOException
+     * @throws PacketParseException
+     */
+    @Override
+    public final Packet getFramedNextPacket() throws IOException, PacketParseException {
+        if (!this.nextPacketFramed) {
+            this.nextPacket = getNextPacket();
+            this.nextPacketFramed = true;
+        }
+        return this.nextPacket;
+    }
+
+    /**
+     * Frame the entire protocol stack below this packet in one go. Since the
+     * framed packets are remembered, any subsequent {@link #getPacket(Protocol)}
+     * or {@link #hasProtocol(Protocol)} will be a matter of just walking the
+     * already framed packets. This is what e.g. allows {@link io.pkts.Pcap} to
+     * do the framing on other threads than the one delivering the packets.
+     *
+     * Framing stops at the first layer that cannot be framed and the error is
+     * swallowed, it will surface again if someone asks for that layer.
+     */
+    public void frameProtocolStack() {
+        try {
+            final Packet next = getFramedNextPacket();
+            if (next instanceof AbstractPacket) {
+                ((AbstractPacket) next).frameProtocolStack();
+            }
+        } catch (final IOException | RuntimeException e) {
+            // ignore, see javadoc
+        }
+    }
+
     public Packet checkParent(final Protocol p) {
         Packet current = this.parent;
         while (current != null && current.getProtocol() != p) {
@@ -70,9 +70,8 @@ public final class IPv4PacketImpl extends AbstractPacket implements IPv4Packet {
 
     @Override
     public byte[] getRawSourceIP() {
-        Buffer tmp = Buffers.createBuffer(4);
-        this.headers.getBytes(12, tmp);
-        return tmp.getArray();
+        final int ip = this.headers.getInt(12);
+        return new byte[] { (byte) (ip >>> 24), (byte) (ip >>> 16), (byte) (ip >>> 8), (byte) ip };
     }
 
     /**
@@ -83,6 +82,7 @@ public final class IPv4PacketImpl extends AbstractPacket implements IPv4Packet {
      *
      * @return
      */
+    @Override
     public int getRawSourceIpInt() {
         return this.headers.getInt(12);
     }
@@ -102,9 +102,8 @@ public final class IPv4PacketImpl extends AbstractPacket implements IPv4Packet {
 
     @Override
     public byte[] getRawDestinationIP() {
-        Buffer tmp = Buffers.createBuffer(4);
-        this.headers.getBytes(16, tmp);
-        return tmp.getArray();
+        final int ip = this.headers.getInt(16);
+        return new byte[] { (byte) (ip >>> 24), (byte) (ip >>> 16), (byte) (ip >>> 8), (byte) ip };
     }
 
     /**
@@ -115,6 +114,7 @@ public final class IPv4PacketImpl extends AbstractPacket implements IPv4Packet {
      *
      * @return
      */
+    @Override
     public int getRawDestinationIpInt() {
         return this.headers.getInt(16);
     }
@@ -147,12 +147,10 @@ public final class IPv4PacketImpl extends AbstractPacket implements IPv4Packet {
 
     @Override
     public void write(final OutputStream out, final Buffer payload) throws IOException {
-        // Note, you need to set the total length before you merge the packets since
-        // Buffers.wrap will copy the bytes.
         final int size = this.headers.getReadableBytes() + (payload != null ? payload.getReadableBytes() : 0);
         this.setTotalLength(size);
         reCalculateChecksum();
-        final Buffer pkt = Buffers.wrap(this.headers, payload);
+        final Buffer pkt = Buffers.gather(this.headers, payload);
         this.parent.write(out, pkt);
     }
 
@@ -363,6 +361,21 @@ public final class IPv4PacketImpl extends AbstractPacket implements IPv4Packet {
         return this.headers.getUnsignedShort(4);
     }
 
+    @Override
+    public int getProtocolNumber() {
+        return this.headers.getUnsignedByte(9);
+    }
+
+    @Override
+    public int getTimeToLive() {
+        return this.headers.getUnsignedByte(8);
+    }
+
+    @Override
+    public int getTypeOfService() {
+        return this.headers.getUnsignedByte(1);
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("IPv4 ");
@@ -50,9 +50,7 @@ public final class IPv6PacketImpl extends AbstractPacket implements IPv6Packet {
      */
     @Override
     public byte[] getRawSourceIP() {
-        final Buffer tmp = Buffers.createBuffer(128 / 8);
-        this.headers.getBytes(8, tmp);
-        return tmp.getArray();
+        return getRawIP(8);
     }
 
     @Override
@@ -84,9 +82,7 @@ public final class IPv6PacketImpl extends AbstractPacket implements IPv6Packet {
      */
     @Override
     public byte[] getRawDestinationIP() {
-        final Buffer tmp = Buffers.createBuffer(128 / 8);
-        this.headers.getBytes(24, tmp);
-        return tmp.getArray();
+        return getRawIP(24);
     }
 
     @Override
@@ -123,7 +119,7 @@ public final class IPv6PacketImpl extends AbstractPacket implements IPv6Packet {
 
     @Override
     public void write(final OutputStream out, final Buffer payload) throws IOException {
-        final Buffer pkt = Buffers.wrap(this.headers, payload);
+        final Buffer pkt = Buffers.gather(this.headers, payload);
         getParentPacket().write(out, pkt);
     }
 
@@ -262,4 +258,20 @@ public final class IPv6PacketImpl extends AbstractPacket implements IPv6Packet {
         }
         return null;
     }
+
+    /**
+     * Copy out the 128 bits of an address without going through an
+     * intermediate buffer.
+     */
+    private byte[] getRawIP(final int offset) {
+        final byte[] ip = new byte[16];
+        for (int i = 0; i < ip.length; i += 4) {
+            final int bits = this.headers.getInt(offset + i);
+            ip[i] = (byte) (bits >>> 24);
+            ip[i + 1] = (byte) (bits >>> 16);
+            ip[i + 2] = (byte) (bits >>> 8);
+            ip[i + 3] = (byte) bits;
+        }
+        return ip;
+    }
 }
@@ -137,7 +137,7 @@ public final class MACPacketImpl extends AbstractPacket implements MACPacket {
 
     @Override
     public void write(final OutputStream out, final Buffer payload) throws IOException {
-        this.parent.write(out, Buffers.wrap(this.headers, payload));
+        this.parent.write(out, Buffers.gather(this.headers, payload));
     }
 
     /**
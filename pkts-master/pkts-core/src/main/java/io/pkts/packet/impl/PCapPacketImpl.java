@@ -3,6 +3,7 @@
  */
 package io.pkts.packet.impl;
 
+import io.pkts.PcapOutputStream;
 import io.pkts.buffer.Buffer;
 import io.pkts.frame.PcapGlobalHeader;
 import io.pkts.frame.PcapRecordHeader;
@@ -17,6 +18,7 @@ import io.pkts.protocol.Protocol;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -35,6 +37,11 @@ public final class PCapPacketImpl extends AbstractPacket implements PCapPacket {
     private static final IPv4Framer ipFramer = new IPv4Framer();
     private final PcapGlobalHeader pcapGlobalHeader;
 
+    /**
+     * The entire payload, kept around for {@link #retain()} and {@link #release()}.
+     */
+    private final Buffer rawPayload;
+
     /**
      * Constructor which assumes an Ethernet link layer.
      */
@@ -42,6 +49,7 @@ public final class PCapPacketImpl extends AbstractPacket implements PCapPacket {
         super(Protocol.PCAP, null, payload);
         this.pcapGlobalHeader = PcapGlobalHeader.createDefaultHeader();
         this.pcapHeader = header;
+        this.rawPayload = payload;
     }
 
     /**
@@ -51,6 +59,7 @@ public final class PCapPacketImpl extends AbstractPacket implements PCapPacket {
         super(Protocol.PCAP, null, payload);
         this.pcapGlobalHeader = pcapGlobalHeader;
         this.pcapHeader = header;
+        this.rawPayload = payload;
     }
 
     /**
@@ -63,6 +72,11 @@ public final class PCapPacketImpl extends AbstractPacket implements PCapPacket {
         return this.pcapHeader.getTimeStampSeconds() * multiplier + this.pcapHeader.getTimeStampMicroOrNanoSeconds();
     }
 
+    @Override
+    public int getDataLinkType() {
+        return this.pcapGlobalHeader.getDataLinkType();
+    }
+
     @Override
     public long getTotalLength() {
         return this.pcapHeader.getTotalLength();
@@ -96,13 +110,48 @@ public final class PCapPacketImpl extends AbstractPacket implements PCapPacket {
         return sb.toString();
     }
 
+    /**
+     * The payload is typically a composite of the headers of every layer
+     * above us and the payload of the top-most one, which is written as is,
+     * without copying it into one array first.
+     */
     @Override
     public void write(final OutputStream out, final Buffer payload) throws IOException {
         final int size = payload.getReadableBytes();
         this.pcapHeader.setCapturedLength(size);
         this.pcapHeader.setTotalLength(size);
+        if (out instanceof PcapOutputStream) {
+            ((PcapOutputStream) out).write(this.pcapHeader, payload);
+            return;
+        }
+
         this.pcapHeader.write(out);
-        out.write(payload.getArray());
+        for (final ByteBuffer view : payload.toByteBuffers()) {
+            if (view.hasArray()) {
+                out.write(view.array(), view.arrayOffset() + view.position(), view.remaining());
+            } else {
+                final byte[] bytes = new byte[view.remaining()];
+                view.get(bytes);
+                out.write(bytes);
+            }
+        }
+    }
+
+    @Override
+    public PCapPacket retain() {
+        this.pcapHeader.retain();
+        if (this.rawPayload != null) {
+            this.rawPayload.retain();
+        }
+        return this;
+    }
+
+    @Override
+    public void release() {
+        this.pcapHeader.release();
+        if (this.rawPayload != null) {
+            this.rawPayload.release();
+        }
     }
 
     @Override
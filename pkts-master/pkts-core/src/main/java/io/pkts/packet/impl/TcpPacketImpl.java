@@ -159,6 +159,6 @@ public final class TcpPacketImpl extends TransportPacketImpl implements TCPPacke
     @Override
     public final void write(final OutputStream out, final Buffer payload) throws IOException {
         // TODO: options must be written out as well
-        getParentPacket().write(out, Buffers.wrap(this.headers, payload));
+        getParentPacket().write(out, Buffers.gather(this.headers, payload));
     }
 }
@@ -64,15 +64,13 @@ public final class UdpPacketImpl extends TransportPacketImpl implements UDPPacke
 
     @Override
     public final void write(final OutputStream out, final Buffer payload) throws IOException {
-        // Note: because the Buffers.wrap will copy the bytes we cannot change the length
-        // in this.headers after we have wrapped them. Simply wont work...
         final int size = this.headers.getReadableBytes() + (payload != null ? payload.getReadableBytes() : 0);
         this.setLength(size);
         final IPPacket parent = getParentPacket();
         if (parent instanceof IPv4Packet) {
             ((IPv4Packet) parent).reCalculateChecksum();
         }
-        final Buffer pkt = Buffers.wrap(this.headers, payload);
+        final Buffer pkt = Buffers.gather(this.headers, payload);
         getParentPacket().write(out, pkt);
     }
 }
@@ -4,6 +4,7 @@
 package io.pkts.packet.rtp.impl;
 
 import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
 import io.pkts.packet.IPPacket;
 import io.pkts.packet.Packet;
 import io.pkts.packet.TransportPacket;
@@ -89,8 +90,7 @@ public final class RtpPacketImpl extends AbstractPacket implements RtpPacket {
      */
     @Override
     public int getSeqNumber() throws IOException {
-        // TODO: this is not quite right...
-        return this.headers.getShort(2);
+        return this.headers.getUnsignedShort(2);
     }
 
     /**
@@ -166,7 +166,7 @@ public final class RtpPacketImpl extends AbstractPacket implements RtpPacket {
 
     @Override
     public void write(final OutputStream out, final Buffer payload) throws IOException {
-        throw new RuntimeException("Sorry, not implemented just yet.");
+        this.parent.write(out, Buffers.gather(this.headers, payload));
     }
 
     @Override
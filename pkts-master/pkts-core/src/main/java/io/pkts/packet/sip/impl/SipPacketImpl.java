@@ -82,7 +82,7 @@ public abstract class SipPacketImpl extends AbstractPacket implements SipPacket
      */
     @Override
     public void write(final OutputStream out, final Buffer payload) throws IOException {
-        this.getParentPacket().write(out, Buffers.wrap(this.msg.toBuffer(), payload));
+        this.getParentPacket().write(out, Buffers.gather(this.msg.toBuffer(), payload));
     }
 
     /*
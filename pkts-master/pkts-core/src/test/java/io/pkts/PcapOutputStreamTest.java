@@ -5,10 +5,17 @@ package io.pkts;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import io.pkts.protocol.Protocol;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 import org.junit.Test;
 
@@ -62,4 +69,62 @@ public class PcapOutputStreamTest extends PktsTestBase {
         assertThat(calculator.cancel, is(0)); // i guess un-necessary check...
     }
 
+    /**
+     * Every layer of a packet puts its headers in front of the payload of the
+     * layer above without copying anything so writing out the SIP messages
+     * of a pcap, through a channel, should give us back the exact same pcap.
+     */
+    @Test
+    public void testWriteToChannel() throws Exception {
+        final byte[] original = readAll("sipp.pcap");
+        final Path file = Files.createTempFile("pkts", ".pcap");
+        try {
+            final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(original));
+            final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+            final PcapOutputStream out = PcapOutputStream.create(pcap.getPcapHeader(), channel);
+            pcap.loop(packet -> {
+                out.write(packet.getPacket(Protocol.SIP));
+                return true;
+            });
+            pcap.close();
+            out.close();
+            assertThat(channel.isOpen(), is(false));
+
+            assertThat(Files.readAllBytes(file), is(original));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Same as above but through a plain old {@link java.io.OutputStream}.
+     */
+    @Test
+    public void testWriteToStream() throws Exception {
+        final byte[] original = readAll("sipp.pcap");
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(original));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final PcapOutputStream out = pcap.createOutputStream(bytes);
+        pcap.loop(packet -> {
+            out.write(packet.getPacket(Protocol.SIP));
+            return true;
+        });
+        pcap.close();
+        out.flush();
+
+        assertThat(bytes.toByteArray(), is(original));
+    }
+
+    private static byte[] readAll(final String resource) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final InputStream in = PktsTestBase.class.getResourceAsStream(resource)) {
+            final byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
 }
@@ -4,12 +4,22 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import io.pkts.buffer.PooledBufferAllocator;
+import io.pkts.packet.PCapPacket;
 import io.pkts.packet.Packet;
 import io.pkts.packet.sip.SipPacket;
 import io.pkts.protocol.Protocol;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.After;
 import org.junit.Before;
@@ -40,6 +50,28 @@ public class PcapTest extends PktsTestBase {
         assertThat(handler.count, is(30));
     }
 
+    /**
+     * A streaming {@link Pcap} must give us the very same packets as one
+     * that is reading into a fixed size buffer.
+     */
+    @Test
+    public void testLoopStreaming() throws Exception {
+        final List<Long> expected = new ArrayList<>();
+        for (final Packet packet : loadStream("sipp.pcap")) {
+            expected.add(packet.getArrivalTime());
+        }
+
+        final Pcap pcap = Pcap.openStreaming(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+        final List<Long> actual = new ArrayList<>();
+        pcap.loop(packet -> {
+            actual.add(packet.getArrivalTime());
+            assertThat(packet.getPacket(Protocol.SIP) != null, is(true));
+            return true;
+        });
+        pcap.close();
+        assertThat(actual, is(expected));
+    }
+
     @Test
     public void testWritesPackets() throws Exception {
         final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
@@ -65,6 +97,224 @@ public class PcapTest extends PktsTestBase {
         assertArrayEquals(expectedStream.toByteArray(), outputStream.toByteArray());
     }
 
+    @Test
+    public void testLoopParallel() throws Exception {
+        final List<Long> expected = new ArrayList<>();
+        for (final Packet packet : loadStream("sipp.pcap")) {
+            expected.add(packet.getArrivalTime());
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final List<Long> ordered = new ArrayList<>();
+            final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+            final FrameHandlerImpl handler = new FrameHandlerImpl();
+            pcap.loop(packet -> {
+                ordered.add(packet.getArrivalTime());
+                return handler.nextPacket(packet);
+            }, pool);
+            pcap.close();
+            assertThat(handler.count, is(30));
+            assertThat(ordered, is(expected));
+
+            final List<Long> unordered = new ArrayList<>();
+            final Pcap pcap2 = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+            pcap2.loop(packet -> unordered.add(packet.getArrivalTime()), pool, false);
+            pcap2.close();
+            assertThat(new HashSet<>(unordered), is(new HashSet<>(expected)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoopParallelWithFilter() throws Exception {
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+            pcap.setFilter("sip.Call-ID == 1-16732@127.0.1.1");
+            final FrameHandlerImpl handler = new FrameHandlerImpl();
+            pcap.loop(handler, pool);
+            pcap.close();
+            assertThat(handler.count, is(6));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoopParallelStops() throws Exception {
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+            final List<Packet> packets = new ArrayList<>();
+            pcap.loop(packet -> {
+                packets.add(packet);
+                return packets.size() < 5;
+            }, pool);
+            pcap.close();
+            assertThat(packets.size(), is(5));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Every packet must be handed back to the allocator once the handler is
+     * done with it, and the packets must of course look the same as ever.
+     */
+    @Test
+    public void testLoopPooled() throws Exception {
+        final PooledBufferAllocator allocator = new PooledBufferAllocator(true);
+        final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"), allocator);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final PcapOutputStream pcapOutputStream = pcap.createOutputStream(outputStream);
+        final FrameHandlerImpl handler = new FrameHandlerImpl();
+        pcap.loop(packet -> {
+            assertThat(allocator.getOutstanding() > 0, is(true));
+            pcapOutputStream.write(packet.getPacket(Protocol.IPv4));
+            return handler.nextPacket(packet);
+        });
+        pcap.close();
+
+        assertThat(handler.count, is(30));
+        allocator.checkForLeaks();
+
+        final Path file = Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI());
+        assertArrayEquals(Files.readAllBytes(file), outputStream.toByteArray());
+    }
+
+    @Test
+    public void testLoopPooledRetain() throws Exception {
+        final PooledBufferAllocator allocator = new PooledBufferAllocator(true);
+        final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"), allocator);
+        final List<PCapPacket> retained = new ArrayList<>();
+        final List<Long> arrivalTimes = new ArrayList<>();
+        pcap.loop(packet -> {
+            if (retained.isEmpty()) {
+                retained.add(((PCapPacket) packet).retain());
+                arrivalTimes.add(packet.getArrivalTime());
+            }
+            return true;
+        });
+        pcap.close();
+
+        // the record header and the payload
+        assertThat(allocator.getOutstanding(), is(2L));
+        assertThat(retained.get(0).getArrivalTime(), is(arrivalTimes.get(0)));
+
+        retained.get(0).release();
+        allocator.checkForLeaks();
+    }
+
+    /**
+     * The record after the one the handler stopped at must not be read, or
+     * it would never be handed back to the allocator.
+     */
+    @Test
+    public void testLoopPooledStops() throws Exception {
+        final PooledBufferAllocator allocator = new PooledBufferAllocator(true);
+        final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"), allocator);
+        final int[] count = new int[1];
+        pcap.loop(packet -> ++count[0] < 5);
+        pcap.close();
+        assertThat(count[0], is(5));
+        allocator.checkForLeaks();
+    }
+
+    /**
+     * A handler that blows up must not leave the packets of the batches in
+     * flight, which may still be being framed, behind.
+     */
+    @Test
+    public void testLoopParallelPooledThrows() throws Exception {
+        final ByteArrayOutputStream big = new ByteArrayOutputStream();
+        final Pcap sipp = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+        final PcapOutputStream out = sipp.createOutputStream(big);
+        final List<Packet> packets = new ArrayList<>();
+        sipp.loop(packet -> packets.add(packet));
+        sipp.close();
+        for (int i = 0; i < 200; ++i) {
+            for (final Packet packet : packets) {
+                out.write(packet);
+            }
+        }
+        out.flush();
+
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            final PooledBufferAllocator allocator = new PooledBufferAllocator(true);
+            final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(big.toByteArray()), allocator);
+            final int[] count = new int[1];
+            try {
+                pcap.loop(packet -> {
+                    if (++count[0] == 10) {
+                        throw new IllegalStateException("boom");
+                    }
+                    return true;
+                }, pool);
+                fail("Expected the exception of the handler");
+            } catch (final IllegalStateException e) {
+                assertThat(e.getMessage(), is("boom"));
+            }
+            pcap.close();
+            allocator.checkForLeaks();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testLoopParallelPooledStops() throws Exception {
+        final ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            final PooledBufferAllocator allocator = new PooledBufferAllocator(true);
+            final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"), allocator);
+            final List<Long> arrivalTimes = new ArrayList<>();
+            pcap.loop(packet -> {
+                arrivalTimes.add(packet.getArrivalTime());
+                return arrivalTimes.size() < 5;
+            }, pool);
+            pcap.close();
+            assertThat(arrivalTimes.size(), is(5));
+            allocator.checkForLeaks();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testOpenMapped() throws Exception {
+        final Path file = Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI());
+        final Pcap pcap = Pcap.openMapped(file);
+        final FrameHandlerImpl handler = new FrameHandlerImpl();
+        pcap.loop(handler);
+        pcap.close();
+        assertThat(handler.count, is(30));
+    }
+
+    /**
+     * Map the file a little bit at a time so that we have to move the mapped
+     * window many times, with records straddling the windows, and make sure
+     * that we still write out the exact same file.
+     */
+    @Test
+    public void testOpenMappedSmallChunksWritesPackets() throws Exception {
+        final Path file = Paths.get(PktsTestBase.class.getResource("sipp.pcap").toURI());
+        final Pcap pcap = Pcap.openMapped(file, 1000);
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final PcapOutputStream pcapOutputStream = pcap.createOutputStream(outputStream);
+        pcap.loop(packet -> {
+            pcapOutputStream.write(packet.getPacket(Protocol.IPv4));
+            return true;
+        });
+        pcap.close();
+
+        assertArrayEquals(Files.readAllBytes(file), outputStream.toByteArray());
+    }
+
     private static class FrameHandlerImpl implements PacketHandler {
         public int count;
 
@@ -0,0 +1,205 @@
+/**
+ *
+ */
+package io.pkts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import io.pkts.RotatingPcapOutputStream.Compression;
+import io.pkts.buffer.Buffers;
+import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.frame.PcapRecordHeader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class RotatingPcapOutputStreamTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        this.dir = Files.createTempDirectory("pkts");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (final Path file : list()) {
+            Files.delete(file);
+        }
+        Files.delete(this.dir);
+    }
+
+    /**
+     * Write all of sipp.pcap to files of at most 2k and make sure we get all
+     * the packets back, in order.
+     */
+    @Test
+    public void testRotateOnSize() throws Exception {
+        final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+        final RotatingPcapOutputStream out = RotatingPcapOutputStream.create(pcap.getPcapHeader(), this.dir
+                + "/sipp-{seq}.pcap");
+        out.setMaxFileSize(2048);
+        final List<Long> written = new ArrayList<>();
+        pcap.loop(packet -> {
+            written.add(packet.getArrivalTime());
+            out.write(packet);
+            return true;
+        });
+        pcap.close();
+        out.close();
+
+        final List<Path> files = list();
+        assertTrue(files.size() > 5);
+
+        final List<Long> read = new ArrayList<>();
+        for (int i = 0; i < files.size(); ++i) {
+            final Path file = this.dir.resolve("sipp-" + i + ".pcap");
+            assertTrue(Files.size(file) <= 2048);
+            read.addAll(readArrivalTimes(Files.newInputStream(file)));
+        }
+        assertThat(read, is(written));
+    }
+
+    /**
+     * The interval is on the packet clock, i.e., the timestamps of the records.
+     */
+    @Test
+    public void testRotateOnTime() throws Exception {
+        final RotatingPcapOutputStream out = RotatingPcapOutputStream.create(
+                PcapGlobalHeader.createDefaultHeader(), this.dir + "/capture-{time}.pcap");
+        out.setRotateInterval(60);
+
+        // 10 minutes worth of packets, one every 10 seconds
+        final long start = 1500000000000L;
+        for (int i = 0; i < 60; ++i) {
+            write(out, start + i * 10000L);
+        }
+        out.close();
+
+        final List<Path> files = list();
+        assertThat(files.size(), is(10));
+        assertThat(files.get(0).getFileName().toString(), is("capture-20170714-024000.pcap"));
+        assertThat(files.get(1).getFileName().toString(), is("capture-20170714-024100.pcap"));
+        for (final Path file : files) {
+            assertThat(readArrivalTimes(Files.newInputStream(file)).size(), is(6));
+        }
+    }
+
+    /**
+     * Only keep the last three files, compressed, other than the one currently
+     * written to.
+     */
+    @Test
+    public void testRetentionAndCompression() throws Exception {
+        final RotatingPcapOutputStream out = RotatingPcapOutputStream.create(
+                PcapGlobalHeader.createDefaultHeader(), this.dir + "/capture-{seq}.pcap");
+        out.setRotateInterval(1);
+        out.setMaxFiles(3);
+        out.setCompression(Compression.GZIP);
+
+        final long start = 1500000000000L;
+        for (int i = 0; i < 20; ++i) {
+            write(out, start + i * 1000L);
+            write(out, start + i * 1000L + 500L);
+            assertThat(out.getCurrentFile().getFileName().toString(), is("capture-" + i + ".pcap"));
+        }
+        out.close();
+
+        final List<Path> files = list();
+        assertThat(files.size(), is(3));
+        for (int i = 0; i < 3; ++i) {
+            assertThat(files.get(i).getFileName().toString(), is("capture-" + (17 + i) + ".pcap.gz"));
+            final List<Long> times = readArrivalTimes(new GZIPInputStream(Files.newInputStream(files.get(i))));
+            assertThat(times.size(), is(2));
+            assertThat(times.get(0), is((start + (17 + i) * 1000L) * 1000L));
+        }
+    }
+
+    /**
+     * Rotating on size more than once a second with only {time} in the
+     * template must neither overwrite our own files nor one that was there
+     * before we started.
+     */
+    @Test
+    public void testNameTaken() throws Exception {
+        final Path existing = this.dir.resolve("capture-20170714-024000.pcap");
+        Files.write(existing, "hello".getBytes());
+
+        final RotatingPcapOutputStream out = RotatingPcapOutputStream.create(
+                PcapGlobalHeader.createDefaultHeader(), this.dir + "/capture-{time}.pcap");
+        // room for two records of 100 bytes per file
+        out.setMaxFileSize(300);
+        final long start = 1500000000000L;
+        for (int i = 0; i < 10; ++i) {
+            write(out, start + i);
+        }
+        out.close();
+
+        assertThat(new String(Files.readAllBytes(existing)), is("hello"));
+        assertThat(list().size(), is(6));
+        for (int i = 1; i <= 5; ++i) {
+            final Path file = this.dir.resolve("capture-20170714-024000-" + i + ".pcap");
+            final List<Long> times = readArrivalTimes(Files.newInputStream(file));
+            assertThat(times.size(), is(2));
+            assertThat(times.get(0), is((start + (i - 1) * 2) * 1000L));
+        }
+    }
+
+    @Test
+    public void testTemplate() throws Exception {
+        try {
+            RotatingPcapOutputStream.create(PcapGlobalHeader.createDefaultHeader(), this.dir + "/capture.pcap");
+            fail("Expected to fail since every file would get the same name");
+        } catch (final IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static void write(final PcapOutputStream out, final long millis) throws IOException {
+        final byte[] payload = new byte[100];
+        final PcapRecordHeader header = PcapRecordHeader.createDefaultHeader(millis);
+        header.setCapturedLength(payload.length);
+        header.setTotalLength(payload.length);
+        out.write(header, Buffers.wrap(payload));
+    }
+
+    private static List<Long> readArrivalTimes(final InputStream in) throws IOException {
+        final List<Long> times = new ArrayList<>();
+        final Pcap pcap = Pcap.openStream(in);
+        pcap.loop(packet -> {
+            times.add(packet.getArrivalTime());
+            return true;
+        });
+        pcap.close();
+        return times;
+    }
+
+    /**
+     * The files in our directory, sorted by name.
+     */
+    private List<Path> list() throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.dir)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+}
@@ -5,8 +5,8 @@ package io.pkts.filters;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
-import io.pkts.filters.FilterFactory;
-import io.pkts.filters.SipCallIdFilter;
+import static org.junit.Assert.fail;
+import io.pkts.protocol.Protocol;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -32,6 +32,118 @@ public class FilterFactoryTest {
         assertThat(((SipCallIdFilter) this.factory.createFilter("sip.Call-ID == 1234")).getCallId(), is("1234"));
         assertThat(((SipCallIdFilter) this.factory.createFilter("sip.Call-ID ==1234")).getCallId(), is("1234"));
         assertThat(((SipCallIdFilter) this.factory.createFilter("sip.Call-ID == hello   ")).getCallId(), is("hello"));
+        assertThat(((SipCallIdFilter) this.factory.createFilter("sip.Call-ID == \"a b\"")).getCallId(), is("a b"));
+    }
+
+    /**
+     * "!", "(" and ")" are all allowed in a Call-ID.
+     */
+    @Test
+    public void testCreateSipCallIdFilterWithOperators() {
+        assertThat(callId(this.factory.createFilter("sip.Call-ID == a!b(1)")), is("a!b(1)"));
+        assertThat(callId(this.factory.createFilter("sip.Call-ID == !abc")), is("!abc"));
+        assertThat(callId(this.factory.createFilter("sip.Call-ID == (abc")), is("(abc"));
+        assertThat(callId(this.factory.createFilter("sip.Call-ID == abc)")), is("abc)"));
+        assertThat(callId(this.factory.createFilter("(sip.Call-ID == abc) and udp")), is("abc"));
+        assertThat(callId(this.factory.createFilter("(sip.Call-ID == f(x)) and udp")), is("f(x)"));
+        assertThat(callId(this.factory.createFilter("udp&&sip.Call-ID == abc&&sip")), is("abc"));
+        assertThat(callId(this.factory.createFilter("not sip.Call-ID != a!=b")), is("a!=b"));
+    }
+
+    /**
+     * Dig out the Call-ID of the one {@link SipCallIdFilter} in the filter.
+     */
+    private static String callId(final Filter filter) {
+        if (filter instanceof SipCallIdFilter) {
+            return ((SipCallIdFilter) filter).getCallId();
+        } else if (filter instanceof NotFilter) {
+            return callId(((NotFilter) filter).getFilter());
+        } else if (!(filter instanceof AndFilter) && !(filter instanceof OrFilter)) {
+            return null;
+        }
+
+        final Filter[] filters = filter instanceof AndFilter ? ((AndFilter) filter).getFilters()
+                : ((OrFilter) filter).getFilters();
+        for (final Filter f : filters) {
+            final String callId = callId(f);
+            if (callId != null) {
+                return callId;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testCreateRangeFilters() {
+        final PortFilter port = (PortFilter) this.factory.createFilter("udp.dstport == 5060-5070");
+        assertThat(port.getProtocol(), is(Protocol.UDP));
+        assertThat(port.getDirection(), is(PortFilter.Direction.DESTINATION));
+        assertThat(port.getLow(), is(5060));
+        assertThat(port.getHigh(), is(5070));
+
+        final SipStatusFilter status = (SipStatusFilter) this.factory.createFilter("sip.status == 400-499");
+        assertThat(status.getLow(), is(400));
+        assertThat(status.getHigh(), is(499));
+
+        final IpAddressFilter address = (IpAddressFilter) this.factory.createFilter("ip.src == 192.168.0.0/16");
+        assertThat(address.getDirection(), is(IpAddressFilter.Direction.SOURCE));
+        assertThat(address.getPrefixLength(), is(16));
+    }
+
+    /**
+     * The operands of "and" and "or" are ordered so that the ones only looking
+     * at the lower layers are evaluated first.
+     */
+    @Test
+    public void testCheapFiltersFirst() {
+        final AndFilter and = (AndFilter) this.factory
+                .createFilter("sip.method == INVITE and udp.port == 5060 and ip.src == 10.0.0.0/8");
+        final Filter[] filters = and.getFilters();
+        assertThat(filters[0] instanceof IpAddressFilter, is(true));
+        assertThat(filters[1] instanceof PortFilter, is(true));
+        assertThat(filters[2] instanceof SipMethodFilter, is(true));
+
+        final OrFilter or = (OrFilter) this.factory.createFilter("sip or tcp || ipv6");
+        assertThat(((ProtocolFilter) or.getFilters()[0]).getProtocol(), is(Protocol.IPv6));
+        assertThat(((ProtocolFilter) or.getFilters()[1]).getProtocol(), is(Protocol.TCP));
+        assertThat(((ProtocolFilter) or.getFilters()[2]).getProtocol(), is(Protocol.SIP));
+    }
+
+    @Test
+    public void testPrecedence() {
+        // "and" binds harder than "or" and "not" harder than both
+        final OrFilter or = (OrFilter) this.factory.createFilter("udp or not tcp and sip");
+        assertThat(or.getFilters()[1] instanceof AndFilter, is(true));
+        final AndFilter and = (AndFilter) or.getFilters()[1];
+        assertThat(and.getFilters()[0] instanceof NotFilter, is(true));
+
+        assertThat(this.factory.createFilter("(udp or tcp) and sip") instanceof AndFilter, is(true));
+        assertThat(this.factory.createFilter("udp.port != 5060") instanceof NotFilter, is(true));
+    }
+
+    @Test
+    public void testParseErrors() {
+        assertParseError("", 0);
+        assertParseError("sip.Call-ID ==", 14);
+        assertParseError("sip.Call-ID 1234", 12);
+        assertParseError("foo.bar == 1", 0);
+        assertParseError("udp.port == 70000", 12);
+        assertParseError("udp.port == 5070-5060", 12);
+        assertParseError("sip.status == 99", 14);
+        assertParseError("ip.src == 10.0.0.256", 10);
+        assertParseError("ip.src == 10.0.0.0/33", 19);
+        assertParseError("(udp or tcp", 11);
+        assertParseError("udp and", 7);
+        assertParseError("sip.Call-ID == \"1234", 15);
+    }
+
+    private void assertParseError(final String expression, final int offset) {
+        try {
+            this.factory.createFilter(expression);
+            fail("Expected a FilterParseException for \"" + expression + "\"");
+        } catch (final FilterParseException e) {
+            assertThat(e.getErrorOffset(), is(offset));
+        }
     }
 
 }
@@ -0,0 +1,163 @@
+package io.pkts.filters;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import io.pkts.Pcap;
+import io.pkts.PktsTestBase;
+import io.pkts.buffer.Buffers;
+import io.pkts.packet.PCapPacket;
+import io.pkts.protocol.Protocol;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Runs filter expressions over some of the test pcaps and checks how many
+ * packets they accept.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public class FilterTest {
+
+    private static int count(final String resource, final String expression) throws Exception {
+        final Filter filter = FilterFactory.getInstance().createFilter(expression);
+        final int[] count = new int[1];
+        final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream(resource));
+        pcap.loop(packet -> {
+            if (filter.accept(packet)) {
+                ++count[0];
+            }
+            return true;
+        });
+        pcap.close();
+        return count[0];
+    }
+
+    /**
+     * The sipp.pcap contains 5 calls (INVITE, 180, 200, ACK, BYE, 200) sent
+     * over UDP between 127.0.0.1:5060 (UAC) and 127.0.0.1:5090 (UAS).
+     */
+    @Test
+    public void testProtocols() throws Exception {
+        assertThat(count("sipp.pcap", "udp"), is(30));
+        assertThat(count("sipp.pcap", "proto == udp"), is(30));
+        assertThat(count("sipp.pcap", "ip"), is(30));
+        assertThat(count("sipp.pcap", "sip"), is(30));
+        assertThat(count("sipp.pcap", "tcp"), is(0));
+        assertThat(count("sipp.pcap", "ipv6"), is(0));
+        assertThat(count("sipp.pcap", "udp and not sip"), is(0));
+    }
+
+    @Test
+    public void testPorts() throws Exception {
+        assertThat(count("sipp.pcap", "udp.dstport == 5060"), is(15));
+        assertThat(count("sipp.pcap", "udp.srcport == 5060"), is(15));
+        assertThat(count("sipp.pcap", "udp.port == 5060"), is(30));
+        assertThat(count("sipp.pcap", "udp.port != 5060"), is(0));
+        assertThat(count("sipp.pcap", "tcp.port == 5060"), is(0));
+        assertThat(count("sipp.pcap", "port == 5000-5070"), is(30));
+        assertThat(count("sipp.pcap", "udp.dstport == 5061-5100"), is(15));
+        assertThat(count("fragmented_tcp_sip.pcap", "tcp.dstport == 5060"), is(11));
+        assertThat(count("fragmented_tcp_sip.pcap", "udp.dstport == 5060"), is(0));
+    }
+
+    @Test
+    public void testAddresses() throws Exception {
+        assertThat(count("sipp.pcap", "ip.src == 127.0.0.0/8"), is(30));
+        assertThat(count("sipp.pcap", "ip.addr == 127.0.0.1"), is(30));
+        assertThat(count("sipp.pcap", "ip.src == 10.0.0.0/8"), is(0));
+        assertThat(count("fragmented_tcp_sip.pcap", "ip.src == 10.192.243.0/24 && tcp"), is(11));
+        assertThat(count("fragmented_tcp_sip.pcap", "ip.dst == 10.192.243.79"), is(8));
+        assertThat(count("fragmented_tcp_sip.pcap", "ip.addr == 10.192.0.0/10"), is(19));
+
+        assertThat(count("ipv6_http.pcap", "ipv6"), is(10));
+        assertThat(count("ipv6_http.pcap", "ip"), is(0));
+        assertThat(count("ipv6_http.pcap", "ip.dst == 2607:f8b0:400a:800::200e"), is(6));
+        assertThat(count("ipv6_http.pcap", "ip.addr == 2002:17fc::/16"), is(10));
+        assertThat(count("ipv6_http.pcap", "ip.src == 2607:f8b0::/32 and tcp.srcport == 80"), is(4));
+        assertThat(count("ipv6_http.pcap", "ip.src == 127.0.0.1"), is(0));
+    }
+
+    @Test
+    public void testSip() throws Exception {
+        assertThat(count("sipp.pcap", "sip.method == INVITE"), is(5));
+        assertThat(count("sipp.pcap", "sip.method == invite"), is(5));
+        assertThat(count("sipp.pcap", "sip.method == INVITE or sip.method == BYE"), is(10));
+        assertThat(count("sipp.pcap", "sip.status == 200"), is(10));
+        assertThat(count("sipp.pcap", "sip.status == 100-199"), is(5));
+        assertThat(count("sipp.pcap", "sip.Call-ID == 1-16732@127.0.1.1"), is(6));
+        assertThat(count("sipp.pcap", "sip.Call-ID == 1-16732@127.0.1.1 and sip.status == 200"), is(2));
+        assertThat(count("sipp.pcap", "sip.Max-Forwards == 70"), is(15));
+        assertThat(count("fragmented_tcp_sip.pcap", "sip"), is(6));
+    }
+
+    @Test
+    public void testNot() throws Exception {
+        assertThat(count("sipp.pcap", "not sip.method == ACK"), is(25));
+        assertThat(count("sipp.pcap", "sip.method != ACK"), is(25));
+        assertThat(count("sipp.pcap", "!(sip.method == ACK)"), is(25));
+        assertThat(count("sipp.pcap", "!!(sip.method == ACK)"), is(5));
+        assertThat(count("sipp.pcap", "udp.dstport == 5090 and not (sip.method == ACK or sip.method == BYE)"), is(5));
+    }
+
+    /**
+     * The layers the filters walk through must be the very same ones the
+     * handler gets when asking for them, i.e., nothing is framed twice.
+     */
+    @Test
+    public void testLayersAreFramedOnce() throws Exception {
+        final Filter filter = FilterFactory.getInstance().createFilter("udp.port == 5060 and ip.src == 127.0.0.1");
+        final int[] count = new int[1];
+        final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream("sipp.pcap"));
+        pcap.loop(packet -> {
+            assertThat(filter.accept(packet), is(true));
+            assertThat(Filters.ip(packet) == packet.getPacket(Protocol.IPv4), is(true));
+            assertThat(Filters.transport(packet, Protocol.UDP) == packet.getPacket(Protocol.UDP), is(true));
+            ++count[0];
+            return true;
+        });
+        pcap.close();
+        assertThat(count[0], is(30));
+    }
+
+    /**
+     * The lower layers are read straight out of the raw bytes of the pcap
+     * record so nothing should be framed.
+     */
+    @Test
+    public void testRawHeadersAreNotFramed() throws Exception {
+        final ByteBuffer frame = ByteBuffer.allocate(18 + 20 + 8 + 4);
+        frame.put(new byte[] { 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 6 });
+        frame.putShort((short) 0x8100).putShort((short) 7).putShort((short) 0x0800);
+        frame.put((byte) 0x45).put((byte) 0).putShort((short) (20 + 8 + 4)).putInt(0);
+        frame.put((byte) 64).put((byte) 17).putShort((short) 0).putInt(0x0A010001).putInt(0x0A020001);
+        frame.putShort((short) 5060).putShort((short) 5090).putShort((short) 12).putShort((short) 0);
+        frame.putInt(0);
+
+        final PCapPacket packet = mock(PCapPacket.class);
+        when(packet.getDataLinkType()).thenReturn(1);
+        when(packet.getPayload()).thenAnswer(invocation -> Buffers.wrap(frame.array()));
+
+        assertThat(accept(packet, "ip and udp"), is(true));
+        assertThat(accept(packet, "ip.src == 10.1.0.0/16 and udp.srcport == 5060 and udp.dstport == 5090"), is(true));
+        assertThat(accept(packet, "ip.dst == 10.1.0.0/16"), is(false));
+        assertThat(accept(packet, "tcp or ipv6 or tcp.port == 5060"), is(false));
+        assertThat(accept(packet, "ip.addr == 2002:17fc::/16"), is(false));
+
+        verify(packet, never()).getNextPacket();
+        verify(packet, never()).getFramedNextPacket();
+        verify(packet, never()).getPacket(any(Protocol.class));
+        verify(packet, never()).hasProtocol(any(Protocol.class));
+    }
+
+    private static boolean accept(final PCapPacket packet, final String expression) throws Exception {
+        return FilterFactory.getInstance().createFilter(expression).accept(packet);
+    }
+
+}
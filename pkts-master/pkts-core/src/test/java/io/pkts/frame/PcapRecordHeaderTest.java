@@ -5,6 +5,9 @@ package io.pkts.frame;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
+import io.pkts.buffer.Buffers;
+
+import java.nio.ByteOrder;
 
 import org.junit.Test;
 
@@ -34,4 +37,27 @@ public class PcapRecordHeaderTest {
         assertThat(header.getCapturedLength(), is(123456L));
     }
 
+    /**
+     * All the fields are unsigned 32 bit integers, so the seconds only run
+     * out in 2106 and not in 2038.
+     */
+    @Test
+    public void testUnsignedFields() {
+        // Jan 1st, 2100
+        final long ts = 4102444800123L;
+        final PcapRecordHeader header = PcapRecordHeader.createDefaultHeader(ts);
+        assertThat(header.getTimeStampSeconds(), is(4102444800L));
+        assertThat(header.getTimeStampMicroOrNanoSeconds(), is(123000L));
+
+        header.setTotalLength(0xFFFFFFFFL);
+        assertThat(header.getTotalLength(), is(0xFFFFFFFFL));
+
+        final byte[] bytes = new byte[PcapRecordHeader.SIZE];
+        bytes[0] = (byte) 0xF0;
+        bytes[8] = (byte) 0x80;
+        final PcapRecordHeader bigEndian = new PcapRecordHeader(ByteOrder.BIG_ENDIAN, Buffers.wrap(bytes));
+        assertThat(bigEndian.getTimeStampSeconds(), is(0xF0000000L));
+        assertThat(bigEndian.getCapturedLength(), is(0x80000000L));
+    }
+
 }
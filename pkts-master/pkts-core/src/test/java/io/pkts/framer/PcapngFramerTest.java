@@ -0,0 +1,391 @@
+package io.pkts.framer;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import io.pkts.Pcap;
+import io.pkts.PktsTestBase;
+import io.pkts.buffer.PooledBufferAllocator;
+import io.pkts.packet.PCapPacket;
+import io.pkts.protocol.Protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The pcapng files are generated from the classic pcaps in the test resources
+ * so that we can check that we get the exact same packets out of them.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public class PcapngFramerTest extends PktsTestBase {
+
+    private List<Record> sipp;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        this.sipp = load("sipp.pcap");
+    }
+
+    @Test
+    public void testLittleEndian() throws Exception {
+        final Writer writer = new Writer(ByteOrder.LITTLE_ENDIAN);
+        writer.interfaceDescription(1, 65535, -1, 0);
+        writer.enhancedPackets(0, this.sipp, 6);
+
+        final List<Record> records = read(writer.toByteArray());
+        assertRecords(records, this.sipp, 1);
+        assertThat(countSip(writer.toByteArray()), is(30));
+    }
+
+    @Test
+    public void testBigEndian() throws Exception {
+        final Writer writer = new Writer(ByteOrder.BIG_ENDIAN);
+        writer.interfaceDescription(1, 65535, -1, 0);
+        writer.enhancedPackets(0, this.sipp, 6);
+
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(writer.toByteArray()));
+        assertThat(pcap.getPcapHeader().getDataLinkType(), is(1));
+        assertThat(pcap.getPcapHeader().timestampsInNs(), is(false));
+        pcap.close();
+
+        assertRecords(read(writer.toByteArray()), this.sipp, 1);
+        assertThat(countSip(writer.toByteArray()), is(30));
+    }
+
+    /**
+     * Three interfaces, one with the default resolution, one with nanoseconds
+     * and one with a binary resolution and an offset, and the packets spread
+     * out over them. A name resolution, interface statistics and a block we
+     * don't know about in between.
+     */
+    @Test
+    public void testMultipleInterfaces() throws Exception {
+        final Writer writer = new Writer(ByteOrder.LITTLE_ENDIAN);
+        writer.block(PcapngFramer.NAME_RESOLUTION_BLOCK, new byte[] { 0, 0, 0, 0 });
+        writer.interfaceDescription(1, 65535, -1, 0);
+        writer.interfaceDescription(1, 65535, 9, 0);
+        writer.interfaceDescription(1, 65535, 0x80 | 24, 1000);
+
+        for (int i = 0; i < this.sipp.size(); ++i) {
+            final Record record = this.sipp.get(i);
+            switch (i % 3) {
+            case 0:
+                writer.enhancedPacket(0, record.time, record);
+                break;
+            case 1:
+                writer.enhancedPacket(1, record.time * 1000, record);
+                break;
+            default:
+                writer.enhancedPacket(2, ((record.time / 1000000 - 1000) << 24) + (record.time % 1000000 << 24)
+                        / 1000000, record);
+                writer.block(PcapngFramer.INTERFACE_STATISTICS_BLOCK, new byte[12]);
+                writer.block(0x0BAD, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+                break;
+            }
+        }
+
+        final List<Record> records = read(writer.toByteArray());
+        assertThat(records.size(), is(30));
+        for (int i = 0; i < records.size(); ++i) {
+            final Record expected = this.sipp.get(i);
+            final Record actual = records.get(i);
+            assertArrayEquals(expected.data, actual.data);
+            if (i % 3 == 1) {
+                assertThat(actual.time, is(expected.time * 1000));
+            } else if (i % 3 == 2) {
+                // 2^-24 is finer than microseconds so we get nanoseconds,
+                // which are off by less than 2^-24 s (~60 ns) due to the
+                // rounding when the file was written.
+                final long diff = expected.time * 1000 - actual.time;
+                assertThat(diff >= 0 && diff < 60, is(true));
+            } else {
+                assertThat(actual.time, is(expected.time));
+            }
+        }
+        assertThat(countSip(writer.toByteArray()), is(30));
+    }
+
+    /**
+     * A second section in the other byte order, with a different link type.
+     */
+    @Test
+    public void testMultipleSections() throws Exception {
+        final List<Record> sll = load("sipp_sll.pcap");
+
+        final Writer writer = new Writer(ByteOrder.LITTLE_ENDIAN);
+        writer.interfaceDescription(1, 65535, -1, 0);
+        writer.enhancedPackets(0, this.sipp, 6);
+        writer.sectionHeader(ByteOrder.BIG_ENDIAN);
+        writer.interfaceDescription(113, 65535, -1, 0);
+        writer.enhancedPackets(0, sll, 6);
+
+        final List<Record> expected = new ArrayList<>(this.sipp);
+        expected.addAll(sll);
+        assertRecords(read(writer.toByteArray()), expected, 1);
+        assertThat(countSip(writer.toByteArray()), is(30 + countSip(sll)));
+    }
+
+    /**
+     * The Simple Packet Block has no time stamp so it gets the one of the
+     * previous packet and it is cut off at the snap length of the interface.
+     */
+    @Test
+    public void testSimplePacketBlock() throws Exception {
+        final Writer writer = new Writer(ByteOrder.LITTLE_ENDIAN);
+        writer.interfaceDescription(1, 100, -1, 0);
+        writer.enhancedPacket(0, 1000000, this.sipp.get(0).truncate(100));
+        writer.simplePacket(this.sipp.get(1).data);
+
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(writer.toByteArray()));
+        final List<PCapPacket> packets = new ArrayList<>();
+        pcap.loop(packet -> {
+            packets.add((PCapPacket) packet);
+            return true;
+        });
+        pcap.close();
+
+        assertThat(packets.size(), is(2));
+        assertThat(packets.get(1).getArrivalTime(), is(1000000L));
+        assertThat(packets.get(1).getCapturedLength(), is(100L));
+        assertThat(packets.get(1).getTotalLength(), is((long) this.sipp.get(1).data.length));
+        assertThat(packets.get(1).getPayload().getReadableBytes(), is(100));
+    }
+
+    /**
+     * A file that is cut off in the middle of a block, e.g. because it is still
+     * being written to, ends at the last complete block.
+     */
+    @Test
+    public void testTruncated() throws Exception {
+        final Writer writer = new Writer(ByteOrder.LITTLE_ENDIAN);
+        writer.interfaceDescription(1, 65535, -1, 0);
+        writer.enhancedPackets(0, this.sipp, 6);
+        final byte[] full = writer.toByteArray();
+        final byte[] truncated = new byte[full.length - 100];
+        System.arraycopy(full, 0, truncated, 0, truncated.length);
+
+        assertRecords(read(truncated), this.sipp.subList(0, 29), 1);
+    }
+
+    @Test
+    public void testOpenMappedAndPooled() throws Exception {
+        final Writer writer = new Writer(ByteOrder.BIG_ENDIAN);
+        writer.interfaceDescription(1, 65535, -1, 0);
+        writer.enhancedPackets(0, this.sipp, 6);
+
+        final Path file = Files.createTempFile("pkts", ".pcapng");
+        try {
+            Files.write(file, writer.toByteArray());
+            final Pcap pcap = Pcap.openMapped(file, 1000);
+            final List<Record> records = new ArrayList<>();
+            pcap.loop(packet -> {
+                records.add(new Record(packet.getArrivalTime(), packet.getPayload().getArray(),
+                        ((PCapPacket) packet).getTotalLength()));
+                return true;
+            });
+            pcap.close();
+            assertRecords(records, this.sipp, 1);
+        } finally {
+            Files.delete(file);
+        }
+
+        final PooledBufferAllocator allocator = new PooledBufferAllocator(true);
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(writer.toByteArray()), allocator);
+        final int[] count = new int[1];
+        pcap.loop(packet -> {
+            ++count[0];
+            return true;
+        });
+        pcap.close();
+        assertThat(count[0], is(30));
+        allocator.checkForLeaks();
+    }
+
+    @Test
+    public void testPooledStops() throws Exception {
+        final Writer writer = new Writer(ByteOrder.LITTLE_ENDIAN);
+        writer.interfaceDescription(1, 65535, -1, 0);
+        writer.enhancedPackets(0, this.sipp, 6);
+
+        final PooledBufferAllocator allocator = new PooledBufferAllocator(true);
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(writer.toByteArray()), allocator);
+        final int[] count = new int[1];
+        pcap.loop(packet -> ++count[0] < 3);
+        pcap.close();
+        assertThat(count[0], is(3));
+        allocator.checkForLeaks();
+    }
+
+    private static void assertRecords(final List<Record> actual, final List<Record> expected, final long factor) {
+        assertThat(actual.size(), is(expected.size()));
+        for (int i = 0; i < actual.size(); ++i) {
+            assertThat(actual.get(i).time, is(expected.get(i).time * factor));
+            assertThat(actual.get(i).length, is(expected.get(i).length));
+            assertArrayEquals(expected.get(i).data, actual.get(i).data);
+        }
+    }
+
+    private static int countSip(final List<Record> records) {
+        int count = 0;
+        for (final Record record : records) {
+            count += new String(record.data).contains("SIP/2.0") ? 1 : 0;
+        }
+        return count;
+    }
+
+    private static int countSip(final byte[] pcapng) throws Exception {
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(pcapng));
+        final int[] count = new int[1];
+        pcap.loop(packet -> {
+            if (packet.hasProtocol(Protocol.SIP)) {
+                ++count[0];
+            }
+            return true;
+        });
+        pcap.close();
+        return count[0];
+    }
+
+    private static List<Record> read(final byte[] pcapng) throws Exception {
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(pcapng));
+        final List<Record> records = new ArrayList<>();
+        pcap.loop(packet -> {
+            records.add(new Record(packet.getArrivalTime(), packet.getPayload().getArray(),
+                    ((PCapPacket) packet).getTotalLength()));
+            return true;
+        });
+        pcap.close();
+        return records;
+    }
+
+    private static List<Record> load(final String resource) throws Exception {
+        final Pcap pcap = Pcap.openStream(PktsTestBase.class.getResourceAsStream(resource));
+        final List<Record> records = new ArrayList<>();
+        pcap.loop(packet -> {
+            records.add(new Record(packet.getArrivalTime(), packet.getPayload().getArray(),
+                    ((PCapPacket) packet).getTotalLength()));
+            return true;
+        });
+        pcap.close();
+        return records;
+    }
+
+    private static final class Record {
+        private final long time;
+        private final byte[] data;
+        private final long length;
+
+        private Record(final long time, final byte[] data, final long length) {
+            this.time = time;
+            this.data = data;
+            this.length = length;
+        }
+
+        private Record truncate(final int size) {
+            final byte[] copy = new byte[size];
+            System.arraycopy(this.data, 0, copy, 0, size);
+            return new Record(this.time, copy, this.length);
+        }
+    }
+
+    /**
+     * Just enough of a pcapng writer to produce the files for the tests.
+     */
+    private static final class Writer {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private ByteOrder byteOrder;
+
+        private Writer(final ByteOrder byteOrder) {
+            sectionHeader(byteOrder);
+        }
+
+        private void sectionHeader(final ByteOrder byteOrder) {
+            this.byteOrder = byteOrder;
+            final ByteBuffer body = allocate(16);
+            body.putInt(0x1A2B3C4D).putShort((short) 1).putShort((short) 0).putLong(-1);
+            block(PcapngFramer.SECTION_HEADER_BLOCK, body.array());
+        }
+
+        /**
+         * @param resolution
+         *            the if_tsresol option or -1 to leave it out.
+         * @param offset
+         *            the if_tsoffset option, left out if zero.
+         */
+        private void interfaceDescription(final int linkType, final int snapLength, final int resolution,
+                final long offset) {
+            final ByteBuffer body = allocate(8 + 8 + 12 + 4);
+            body.putShort((short) linkType).putShort((short) 0).putInt(snapLength);
+            if (resolution != -1) {
+                body.putShort((short) 9).putShort((short) 1).put((byte) resolution).put(new byte[3]);
+            }
+            if (offset != 0) {
+                body.putShort((short) 14).putShort((short) 8).putLong(offset);
+            }
+            body.putShort((short) 0).putShort((short) 0);
+            block(PcapngFramer.INTERFACE_DESCRIPTION_BLOCK, body.array(), body.position());
+        }
+
+        /**
+         * @param exponent
+         *            the resolution of the interface, 10^-exponent.
+         */
+        private void enhancedPackets(final int id, final List<Record> records, final int exponent) {
+            for (final Record record : records) {
+                final long time = exponent >= 6 ? record.time * (long) Math.pow(10, exponent - 6) : record.time;
+                enhancedPacket(id, time, record);
+            }
+        }
+
+        private void enhancedPacket(final int id, final long time, final Record record) {
+            final ByteBuffer body = allocate(20 + pad(record.data.length));
+            body.putInt(id).putInt((int) (time >>> 32)).putInt((int) time).putInt(record.data.length)
+                    .putInt((int) record.length).put(record.data);
+            block(PcapngFramer.ENHANCED_PACKET_BLOCK, body.array());
+        }
+
+        private void simplePacket(final byte[] data) {
+            final ByteBuffer body = allocate(4 + pad(data.length));
+            body.putInt(data.length).put(data);
+            block(PcapngFramer.SIMPLE_PACKET_BLOCK, body.array());
+        }
+
+        private void block(final int type, final byte[] body) {
+            block(type, body, body.length);
+        }
+
+        private void block(final int type, final byte[] body, final int length) {
+            final int total = 12 + pad(length);
+            final ByteBuffer block = allocate(total);
+            block.putInt(type).putInt(total).put(body, 0, length);
+            block.position(total - 4);
+            block.putInt(total);
+            this.out.write(block.array(), 0, total);
+        }
+
+        private ByteBuffer allocate(final int size) {
+            return ByteBuffer.allocate(size).order(this.byteOrder);
+        }
+
+        private static int pad(final int length) {
+            return length + 3 & ~3;
+        }
+
+        private byte[] toByteArray() {
+            return this.out.toByteArray();
+        }
+    }
+
+}
@@ -0,0 +1,199 @@
+/**
+ *
+ */
+package io.pkts.index;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import io.pkts.Pcap;
+import io.pkts.PktsTestBase;
+import io.pkts.packet.IPPacket;
+import io.pkts.packet.UDPPacket;
+import io.pkts.packet.sip.SipPacket;
+import io.pkts.protocol.Protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class PcapIndexTest {
+
+    private Path pcapFile;
+
+    private Path indexFile;
+
+    @Before
+    public void setUp() throws Exception {
+        this.pcapFile = Files.createTempFile("pkts", ".pcap");
+        try (InputStream in = PktsTestBase.class.getResourceAsStream("sipp.pcap")) {
+            Files.copy(in, this.pcapFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        this.indexFile = PcapIndex.sidecar(this.pcapFile);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(this.pcapFile);
+        Files.deleteIfExists(this.indexFile);
+    }
+
+    /**
+     * Looping over the records of a Call-ID must give us the exact same
+     * packets as going through the whole pcap with a filter.
+     */
+    @Test
+    public void testFindCallId() throws Exception {
+        assertThat(PcapIndexer.index(this.pcapFile, this.indexFile), is(30L));
+
+        final String callId = "1-16732@127.0.1.1";
+        final List<Long> expected = loop(Pcap.openStream(this.pcapFile.toFile()), "sip.Call-ID == " + callId);
+        assertTrue(expected.size() > 0);
+
+        try (PcapIndex index = PcapIndex.open(this.indexFile)) {
+            assertThat(index.getRecordCount(), is(30L));
+            assertThat(loop(index.findCallId(callId)), is(expected));
+            assertThat(index.findCallId("nope@127.0.1.1").length, is(0));
+        }
+    }
+
+    /**
+     * With tiny blocks, every Call-ID ends up in a different block than most
+     * others, which must not matter.
+     */
+    @Test
+    public void testManyBlocks() throws Exception {
+        final Map<String, Integer> callIds = new HashMap<>();
+        final Pcap pcap = Pcap.openStream(this.pcapFile.toFile());
+        final PcapIndexer indexer = new PcapIndexer(pcap.getPcapHeader());
+        indexer.setBlockSize(32);
+        pcap.loop(packet -> {
+            indexer.nextPacket(packet);
+            final SipPacket sip = (SipPacket) packet.getPacket(Protocol.SIP);
+            callIds.merge(sip.getCallIDHeader().getValue().toString(), 1, Integer::sum);
+            return true;
+        });
+        pcap.close();
+        indexer.write(this.indexFile);
+
+        try (PcapIndex index = PcapIndex.open(this.indexFile)) {
+            assertTrue(index.getBlockCount() > 5);
+            assertThat(callIds.size(), is(5));
+            for (final Map.Entry<String, Integer> entry : callIds.entrySet()) {
+                assertThat(index.findCallId(entry.getKey()).length, is(entry.getValue()));
+                assertThat(loop(index.findCallId(entry.getKey())).size(), is(entry.getValue()));
+            }
+            assertThat(index.findCallId("nope").length, is(0));
+            assertThat(index.findCallId("").length, is(0));
+            assertThat(index.findCallId("\u00ff\u00ff").length, is(0));
+        }
+    }
+
+    /**
+     * A flow is found no matter which end we start with.
+     */
+    @Test
+    public void testFindFlow() throws Exception {
+        PcapIndexer.index(this.pcapFile, this.indexFile);
+
+        final List<String> flow = new ArrayList<>();
+        final Pcap pcap = Pcap.openStream(this.pcapFile.toFile());
+        pcap.loop(packet -> {
+            final UDPPacket udp = (UDPPacket) packet.getPacket(Protocol.UDP);
+            final IPPacket ip = udp.getParentPacket();
+            flow.add(ip.getSourceIP());
+            flow.add(Integer.toString(udp.getSourcePort()));
+            flow.add(ip.getDestinationIP());
+            flow.add(Integer.toString(udp.getDestinationPort()));
+            return false;
+        });
+        pcap.close();
+
+        final String ipA = flow.get(0);
+        final int portA = Integer.parseInt(flow.get(1));
+        final String ipB = flow.get(2);
+        final int portB = Integer.parseInt(flow.get(3));
+        final String filter = "udp.port == " + portA + " and udp.port == " + portB + " and ip.addr == " + ipA
+                + " and ip.addr == " + ipB;
+        final List<Long> expected = loop(Pcap.openStream(this.pcapFile.toFile()), filter);
+        assertTrue(expected.size() > 1);
+
+        try (PcapIndex index = PcapIndex.open(this.indexFile)) {
+            assertThat(loop(index.findFlow(Protocol.UDP, ipA, portA, ipB, portB)), is(expected));
+            assertThat(loop(index.findFlow(Protocol.UDP, ipB, portB, ipA, portA)), is(expected));
+            assertThat(index.findFlow(Protocol.TCP, ipA, portA, ipB, portB).length, is(0));
+            assertThat(index.findFlow(Protocol.UDP, ipA, portA + 1, ipB, portB).length, is(0));
+        }
+    }
+
+    @Test
+    public void testFindTime() throws Exception {
+        PcapIndexer.index(this.pcapFile, this.indexFile);
+        final List<Long> all = loop(Pcap.openStream(this.pcapFile.toFile()), null);
+        final long first = all.get(0) / 1000000L;
+        final long last = all.get(all.size() - 1) / 1000000L;
+
+        try (PcapIndex index = PcapIndex.open(this.indexFile)) {
+            assertThat(loop(index.findTime(first, last)), is(all));
+            assertThat(loop(index.findTime(0, Long.MAX_VALUE)), is(all));
+            assertThat(index.findTime(last + 1, Long.MAX_VALUE).length, is(0));
+            assertThat(index.findTime(last, first - 1).length, is(0));
+
+            int count = 0;
+            for (final long time : all) {
+                if (time / 1000000L == first) {
+                    ++count;
+                }
+            }
+            assertThat(index.findTime(first, first).length, is(count));
+        }
+    }
+
+    @Test
+    public void testNotAnIndex() throws Exception {
+        try {
+            PcapIndex.open(this.pcapFile);
+            fail("Expected an IOException since this is a pcap and not an index");
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * The arrival times of the records at the given offsets.
+     */
+    private List<Long> loop(final long[] offsets) throws IOException {
+        final List<Long> times = new ArrayList<>();
+        PcapIndex.loop(this.pcapFile, offsets, packet -> {
+            times.add(packet.getArrivalTime());
+            return true;
+        });
+        return times;
+    }
+
+    private static List<Long> loop(final Pcap pcap, final String filter) throws IOException {
+        final List<Long> times = new ArrayList<>();
+        pcap.setFilter(filter);
+        pcap.loop(packet -> {
+            times.add(packet.getArrivalTime());
+            return true;
+        });
+        pcap.close();
+        return times;
+    }
+
+}
@@ -0,0 +1,79 @@
+/**
+ *
+ */
+package io.pkts.packet.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import io.pkts.PktsTestBase;
+import io.pkts.packet.Packet;
+import io.pkts.protocol.Protocol;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class AbstractPacketTest extends PktsTestBase {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @After
+    public void tearDown() throws Exception {
+        super.tearDown();
+    }
+
+    /**
+     * Walking the protocol stack over and over again should only frame each
+     * layer once and therefore we should get the very same instances back.
+     */
+    @Test
+    public void testGetPacketFramesEachLayerOnce() throws Exception {
+        final List<Packet> packets = loadStream("sipp.pcap");
+        for (final Packet packet : packets) {
+            final Packet sip = packet.getPacket(Protocol.SIP);
+            assertThat(packet.hasProtocol(Protocol.SIP), is(true));
+            assertThat(packet.hasProtocol(Protocol.TCP), is(false));
+            assertThat(packet.hasProtocol(Protocol.RTP), is(false));
+            assertThat(packet.getPacket(Protocol.SIP), sameInstance(sip));
+            assertThat(packet.getPacket(Protocol.UDP), sameInstance(sip.getParentPacket()));
+            assertThat(packet.getPacket(Protocol.IPv4), sameInstance(sip.getParentPacket().getParentPacket()));
+        }
+    }
+
+    /**
+     * Even if we have framed the entire stack, writing the packet should
+     * still produce the exact same bytes.
+     */
+    @Test
+    public void testWriteAfterFraming() throws Exception {
+        final Packet packet = loadStream("sipp.pcap").get(0);
+
+        final ByteArrayOutputStream before = new ByteArrayOutputStream();
+        packet.write(before);
+
+        assertThat(packet.hasProtocol(Protocol.SDP), is(true));
+
+        final ByteArrayOutputStream after = new ByteArrayOutputStream();
+        packet.write(after);
+        assertThat(after.toByteArray(), is(before.toByteArray()));
+    }
+
+}
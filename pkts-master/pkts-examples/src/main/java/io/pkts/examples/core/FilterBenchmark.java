@@ -0,0 +1,149 @@
+package io.pkts.examples.core;
+
+import io.pkts.Pcap;
+import io.pkts.filters.Filter;
+import io.pkts.filters.FilterException;
+import io.pkts.filters.FilterFactory;
+import io.pkts.filters.SipCallIdFilter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A rough comparison of how fast we can loop over a pcap using different
+ * filters, see {@link FilterFactory#createFilter(String)}. The pcap looks
+ * like a typical capture off of a media gateway, i.e., mostly RTP with the
+ * odd SIP message in between.
+ *
+ * Looking for a Call-ID on its own means that every packet, RTP or SIP, has
+ * to be framed all the way up to the application layer, which is also what
+ * the {@link SipCallIdFilter} did on its own before there were any filter
+ * expressions. Adding a check on the port means that only the SIP packets
+ * ever get framed at all since the cheap checks are always evaluated first
+ * and those read the IP and UDP headers straight out of the raw bytes.
+ *
+ * This is not a JMH benchmark, so take the numbers with a pinch of salt.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public class FilterBenchmark {
+
+    private static final int PACKETS = 1000000;
+
+    /**
+     * One in this many packets is a SIP message.
+     */
+    private static final int SIP_RATIO = 20;
+
+    private static final String[] EXPRESSIONS = {
+            "sip.Call-ID == 17@10.1.0.1",
+            "udp.port == 5060 and sip.Call-ID == 17@10.1.0.1",
+            "sip.method == INVITE",
+            "udp.dstport == 5060 and sip.method == INVITE",
+            "ip.src == 10.1.0.0/16 and udp.dstport == 20000-30000",
+            "not rtp" };
+
+    public static void main(final String... args) throws Exception {
+        final byte[] pcap = generate(PACKETS);
+
+        final Map<String, Filter> filters = new LinkedHashMap<>();
+        filters.put("<none>", null);
+        filters.put("SipCallIdFilter (no filter expressions)", new SipCallIdFilter("17@10.1.0.1"));
+        for (final String expression : EXPRESSIONS) {
+            filters.put(expression, FilterFactory.getInstance().createFilter(expression));
+        }
+
+        for (int i = 0; i < 3; ++i) {
+            for (final Map.Entry<String, Filter> filter : filters.entrySet()) {
+                run(pcap, filter.getKey(), filter.getValue(), i == 2);
+            }
+        }
+    }
+
+    /**
+     * Same as setting the filter on the {@link Pcap}, which only takes
+     * expressions.
+     */
+    private static void run(final byte[] data, final String name, final Filter filter, final boolean print)
+            throws IOException {
+        final long[] accepted = new long[1];
+        final long start = System.nanoTime();
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(data));
+        pcap.loop(packet -> {
+            try {
+                if (filter == null || filter.accept(packet)) {
+                    ++accepted[0];
+                }
+            } catch (final FilterException e) {
+                throw new IOException(e);
+            }
+            return true;
+        });
+        pcap.close();
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        if (print) {
+            System.out.printf("%-55s %7d accepted, %.0f packets/s%n", name, accepted[0], PACKETS / seconds);
+        }
+    }
+
+    private static byte[] generate(final int count) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(count * 250);
+        final ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535).putInt(1);
+        out.write(header.array(), 0, 24);
+
+        final ByteBuffer record = ByteBuffer.allocate(2048);
+        for (int i = 0; i < count; ++i) {
+            final int stream = i % 1000;
+            final byte[] payload;
+            final int srcPort;
+            final int dstPort;
+            if (i % SIP_RATIO == 0) {
+                payload = invite(i / SIP_RATIO);
+                srcPort = 5060;
+                dstPort = 5060;
+            } else {
+                payload = new byte[12 + 160];
+                payload[0] = (byte) 0x80;
+                ByteBuffer.wrap(payload).putShort(2, (short) i).putInt(4, 160 * i).putInt(8, stream);
+                srcPort = 20000 + 2 * stream;
+                dstPort = 30000 - 2 * stream;
+            }
+
+            final int frameLength = 14 + 20 + 8 + payload.length;
+            final long time = 1500000000000000L + i * 20L;
+            record.clear();
+            record.order(ByteOrder.LITTLE_ENDIAN);
+            record.putInt((int) (time / 1000000)).putInt((int) (time % 1000000));
+            record.putInt(frameLength).putInt(frameLength);
+            record.order(ByteOrder.BIG_ENDIAN);
+            record.put(new byte[] { 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 6 }).putShort((short) 0x0800);
+            record.put((byte) 0x45).put((byte) 0).putShort((short) (frameLength - 14)).putInt(0);
+            record.put((byte) 64).put((byte) 17).putShort((short) 0).putInt(0x0A010000 | stream).putInt(0x0A020001);
+            record.putShort((short) srcPort).putShort((short) dstPort).putShort((short) (8 + payload.length))
+                    .putShort((short) 0);
+            record.put(payload);
+            out.write(record.array(), 0, record.position());
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] invite(final int i) {
+        return new StringBuilder("INVITE sip:bob@10.2.0.1 SIP/2.0\r\n")
+                .append("Via: SIP/2.0/UDP 10.1.0.1:5060;branch=z9hG4bK-").append(i).append("\r\n")
+                .append("From: <sip:alice@10.1.0.1>;tag=").append(i).append("\r\n")
+                .append("To: <sip:bob@10.2.0.1>\r\n")
+                .append("Call-ID: ").append(i).append("@10.1.0.1\r\n")
+                .append("CSeq: 1 INVITE\r\n")
+                .append("Contact: <sip:alice@10.1.0.1>\r\n")
+                .append("Max-Forwards: 70\r\n")
+                .append("Content-Length: 0\r\n")
+                .append("\r\n").toString().getBytes();
+    }
+}
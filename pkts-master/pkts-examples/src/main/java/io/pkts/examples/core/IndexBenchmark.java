@@ -0,0 +1,161 @@
+package io.pkts.examples.core;
+
+import io.pkts.Pcap;
+import io.pkts.index.PcapIndex;
+import io.pkts.index.PcapIndexer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A rough comparison of getting hold of all the packets of a single call by
+ * going through the entire pcap with a Call-ID filter versus looking up the
+ * Call-ID in the {@link PcapIndex} of the pcap and only reading those
+ * packets.
+ *
+ * The pcap is written to a temp file and looks like a typical capture off of
+ * a media gateway, i.e., mostly RTP with the odd SIP message in between. The
+ * operating system will most likely have all of it cached, so reading the
+ * whole pcap off of an actual disk is a lot slower than what this shows.
+ *
+ * This is not a JMH benchmark, so take the numbers with a pinch of salt.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public class IndexBenchmark {
+
+    private static final int PACKETS = 1000000;
+
+    /**
+     * One in this many packets is a SIP message.
+     */
+    private static final int SIP_RATIO = 20;
+
+    /**
+     * The number of SIP messages per call.
+     */
+    private static final int CALL_LENGTH = 4;
+
+    public static void main(final String... args) throws Exception {
+        final Path pcapFile = Files.createTempFile("pkts", ".pcap");
+        final Path indexFile = PcapIndex.sidecar(pcapFile);
+        try {
+            generate(pcapFile, PACKETS);
+
+            long start = System.nanoTime();
+            PcapIndexer.index(pcapFile, indexFile);
+            System.out.printf("Indexed %d packets (%d MB) in %.2f s, the index is %d KB%n", PACKETS,
+                    Files.size(pcapFile) / 1000000, (System.nanoTime() - start) / 1e9, Files.size(indexFile) / 1000);
+
+            final String[] callIds = { "17@10.1.0.1", "5000@10.1.0.1", "12000@10.1.0.1" };
+            for (int i = 0; i < 3; ++i) {
+                for (final String callId : callIds) {
+                    final boolean print = i == 2;
+                    start = System.nanoTime();
+                    final long scanned = scan(pcapFile, callId);
+                    final double scanSeconds = (System.nanoTime() - start) / 1e9;
+
+                    start = System.nanoTime();
+                    final long indexed = lookup(pcapFile, indexFile, callId);
+                    final double indexSeconds = (System.nanoTime() - start) / 1e9;
+
+                    if (print) {
+                        System.out.printf("%-15s scan: %d packets in %8.2f ms, index: %d packets in %6.2f ms%n",
+                                callId, scanned, scanSeconds * 1000, indexed, indexSeconds * 1000);
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(pcapFile);
+            Files.deleteIfExists(indexFile);
+        }
+    }
+
+    private static long scan(final Path pcapFile, final String callId) throws IOException {
+        final long[] count = new long[1];
+        try (InputStream in = Files.newInputStream(pcapFile)) {
+            final Pcap pcap = Pcap.openStream(in);
+            pcap.setFilter("sip.Call-ID == " + callId);
+            pcap.loop(packet -> {
+                ++count[0];
+                return true;
+            });
+            pcap.close();
+        }
+        return count[0];
+    }
+
+    private static long lookup(final Path pcapFile, final Path indexFile, final String callId) throws IOException {
+        final long[] count = new long[1];
+        try (PcapIndex index = PcapIndex.open(indexFile)) {
+            PcapIndex.loop(pcapFile, index.findCallId(callId), packet -> {
+                ++count[0];
+                return true;
+            });
+        }
+        return count[0];
+    }
+
+    private static void generate(final Path file, final int count) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 20)) {
+            final ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535)
+                    .putInt(1);
+            out.write(header.array(), 0, 24);
+
+            final ByteBuffer record = ByteBuffer.allocate(2048);
+            for (int i = 0; i < count; ++i) {
+                final int stream = i % 1000;
+                final byte[] payload;
+                final int srcPort;
+                final int dstPort;
+                if (i % SIP_RATIO == 0) {
+                    payload = invite(i / SIP_RATIO / CALL_LENGTH);
+                    srcPort = 5060;
+                    dstPort = 5060;
+                } else {
+                    payload = new byte[12 + 160];
+                    payload[0] = (byte) 0x80;
+                    ByteBuffer.wrap(payload).putShort(2, (short) i).putInt(4, 160 * i).putInt(8, stream);
+                    srcPort = 20000 + 2 * stream;
+                    dstPort = 30000 - 2 * stream;
+                }
+
+                final int frameLength = 14 + 20 + 8 + payload.length;
+                final long time = 1500000000000000L + i * 20L;
+                record.clear();
+                record.order(ByteOrder.LITTLE_ENDIAN);
+                record.putInt((int) (time / 1000000)).putInt((int) (time % 1000000));
+                record.putInt(frameLength).putInt(frameLength);
+                record.order(ByteOrder.BIG_ENDIAN);
+                record.put(new byte[] { 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 6 }).putShort((short) 0x0800);
+                record.put((byte) 0x45).put((byte) 0).putShort((short) (frameLength - 14)).putInt(0);
+                record.put((byte) 64).put((byte) 17).putShort((short) 0).putInt(0x0A010000 | stream)
+                        .putInt(0x0A020001);
+                record.putShort((short) srcPort).putShort((short) dstPort).putShort((short) (8 + payload.length))
+                        .putShort((short) 0);
+                record.put(payload);
+                out.write(record.array(), 0, record.position());
+            }
+        }
+    }
+
+    private static byte[] invite(final int i) {
+        return new StringBuilder("INVITE sip:bob@10.2.0.1 SIP/2.0\r\n")
+                .append("Via: SIP/2.0/UDP 10.1.0.1:5060;branch=z9hG4bK-").append(i).append("\r\n")
+                .append("From: <sip:alice@10.1.0.1>;tag=").append(i).append("\r\n")
+                .append("To: <sip:bob@10.2.0.1>\r\n")
+                .append("Call-ID: ").append(i).append("@10.1.0.1\r\n")
+                .append("CSeq: 1 INVITE\r\n")
+                .append("Contact: <sip:alice@10.1.0.1>\r\n")
+                .append("Max-Forwards: 70\r\n")
+                .append("Content-Length: 0\r\n")
+                .append("\r\n").toString().getBytes();
+    }
+}
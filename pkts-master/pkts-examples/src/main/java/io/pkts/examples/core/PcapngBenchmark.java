@@ -0,0 +1,112 @@
+package io.pkts.examples.core;
+
+import io.pkts.Pcap;
+import io.pkts.protocol.Protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A rough comparison of looping over a classic pcap and a pcapng file
+ * containing the exact same packets, both when only the records are read and
+ * when every packet is framed all the way up to the RTP layer.
+ *
+ * The files are generated in memory. Run with e.g. -Xmx2g.
+ *
+ * This is not a JMH benchmark, so take the numbers with a pinch of salt.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public class PcapngBenchmark {
+
+    private static final int PACKETS = 1000000;
+
+    private static final int RTP_SIZE = 12 + 160;
+
+    public static void main(final String... args) throws Exception {
+        final byte[] pcap = generate(PACKETS, false);
+        final byte[] pcapng = generate(PACKETS, true);
+
+        for (int i = 0; i < 3; ++i) {
+            final boolean print = i == 2;
+            run("pcap", pcap, false, print);
+            run("pcapng", pcapng, false, print);
+            run("pcap (framed)", pcap, true, print);
+            run("pcapng (framed)", pcapng, true, print);
+        }
+    }
+
+    private static void run(final String name, final byte[] data, final boolean frame, final boolean print)
+            throws IOException {
+        final long[] count = new long[1];
+        final long start = System.nanoTime();
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(data));
+        pcap.loop(packet -> {
+            if (!frame || packet.hasProtocol(Protocol.RTP)) {
+                ++count[0];
+            }
+            return true;
+        });
+        pcap.close();
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        if (print) {
+            System.out.printf("%-16s %d packets in %.2f s (%.0f packets/s, %.0f MB/s)%n", name, count[0], seconds,
+                    count[0] / seconds, data.length / seconds / 1e6);
+        }
+    }
+
+    private static byte[] generate(final int count, final boolean pcapng) {
+        final int frameLength = 14 + 20 + 8 + RTP_SIZE;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(count * (32 + frameLength));
+        if (pcapng) {
+            // section header block and a single ethernet interface with the
+            // default microsecond resolution
+            final ByteBuffer header = ByteBuffer.allocate(28 + 20).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0x0A0D0D0A).putInt(28).putInt(0x1A2B3C4D).putShort((short) 1).putShort((short) 0)
+                    .putLong(-1).putInt(28);
+            header.putInt(1).putInt(20).putShort((short) 1).putShort((short) 0).putInt(65535).putInt(20);
+            out.write(header.array(), 0, header.position());
+        } else {
+            final ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535)
+                    .putInt(1);
+            out.write(header.array(), 0, 24);
+        }
+
+        final ByteBuffer record = ByteBuffer.allocate(32 + frameLength + 4);
+        for (int i = 0; i < count; ++i) {
+            final int stream = i % 1000;
+            final long time = 1500000000000000L + i * 20L;
+            record.clear();
+            record.order(ByteOrder.LITTLE_ENDIAN);
+            final int padded = frameLength + 3 & ~3;
+            if (pcapng) {
+                record.putInt(6).putInt(32 + padded).putInt(0).putInt((int) (time >>> 32)).putInt((int) time);
+            } else {
+                record.putInt((int) (time / 1000000)).putInt((int) (time % 1000000));
+            }
+            record.putInt(frameLength).putInt(frameLength);
+
+            record.order(ByteOrder.BIG_ENDIAN);
+            record.put(new byte[] { 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 6 }).putShort((short) 0x0800);
+            record.put((byte) 0x45).put((byte) 0).putShort((short) (frameLength - 14)).putInt(0);
+            record.put((byte) 64).put((byte) 17).putShort((short) 0).putInt(0x0A010000 | stream).putInt(0x0A020001);
+            record.putShort((short) (20000 + 2 * stream)).putShort((short) (30000 - 2 * stream))
+                    .putShort((short) (8 + RTP_SIZE)).putShort((short) 0);
+            record.put((byte) 0x80).put((byte) 0).putShort((short) i).putInt(160 * i).putInt(stream);
+            record.put(new byte[160]);
+
+            if (pcapng) {
+                record.put(new byte[padded - frameLength]);
+                record.order(ByteOrder.LITTLE_ENDIAN);
+                record.putInt(32 + padded);
+            }
+            out.write(record.array(), 0, record.position());
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,89 @@
+package io.pkts.examples.siplib;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
+import io.pkts.buffer.NioBuffer;
+
+import java.io.IOException;
+
+/**
+ * A rough comparison of the byte scanning that the SIP parser relies on, i.e.
+ * {@link Buffer#readUntilDoubleCRLF()}, {@link Buffer#readLine()} and
+ * {@link Buffer#indexOf(int, byte...)}, over a real SIP message. A buffer
+ * wrapping a byte-array is scanned eight bytes at a time while the
+ * {@link NioBuffer} still goes through the byte-by-byte version, which is
+ * what every buffer used to do.
+ *
+ * This is not a JMH benchmark, so take the numbers with a pinch of salt.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public class SipLibBufferScanBenchmark {
+
+    private static final int WARMUP = 200000;
+    private static final int ITERATIONS = 1000000;
+
+    private static final byte[] INVITE = new StringBuilder("INVITE sip:bob@127.0.0.1:5060 SIP/2.0\r\n")
+            .append("Via: SIP/2.0/UDP 127.0.1.1:5061;branch=z9hG4bK-28976-1-0\r\n")
+            .append("Via: SIP/2.0/UDP 10.36.10.10:5060;branch=z9hG4bK-4-0,SIP/2.0/UDP 10.36.10.11;branch=z9hG4bK-5\r\n")
+            .append("Record-Route: <sip:10.36.10.10;transport=udp;lr>\r\n")
+            .append("Route: <sip:10.36.10.12;transport=udp;lr>\r\n")
+            .append("From: alice <sip:alice@127.0.1.1:5061>;tag=28976SIPpTag001\r\n")
+            .append("To: bob <sip:bob@127.0.0.1:5060>\r\n")
+            .append("Call-ID: 1-28976@127.0.1.1\r\n")
+            .append("CSeq: 1 INVITE\r\n")
+            .append("Contact: sip:alice@127.0.1.1:5061\r\n")
+            .append("Max-Forwards: 70\r\n")
+            .append("Subject: Performance Test\r\n")
+            .append("User-Agent: pkts.io\r\n")
+            .append("Content-Type: application/sdp\r\n")
+            .append("Content-Length: 129\r\n")
+            .append("\r\n")
+            .append("v=0\r\n")
+            .append("o=user1 53655765 2353687637 IN IP4 127.0.1.1\r\n")
+            .append("s=-\r\n")
+            .append("c=IN IP4 127.0.1.1\r\n")
+            .append("t=0 0\r\n")
+            .append("m=audio 6000 RTP/AVP 0\r\n")
+            .append("a=rtpmap:0 PCMU/8000\r\n").toString().getBytes();
+
+    private interface Wrapper {
+        Buffer wrap(byte[] data);
+    }
+
+    public static void main(final String... args) throws Exception {
+        final Wrapper array = Buffers::wrap;
+        final Wrapper nio = data -> new NioBuffer(java.nio.ByteBuffer.wrap(data));
+
+        run("byte-by-byte", nio, WARMUP);
+        run("array scan", array, WARMUP);
+
+        final double slow = run("byte-by-byte", nio, ITERATIONS);
+        final double fast = run("array scan", array, ITERATIONS);
+        System.out.printf("byte-by-byte %.0f msg/s, array scan %.0f msg/s (%.1fx)%n", slow, fast, fast / slow);
+    }
+
+    private static double run(final String name, final Wrapper wrapper, final int iterations) throws IOException {
+        long checksum = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            final Buffer buffer = wrapper.wrap(INVITE);
+            final Buffer headers = buffer.readUntilDoubleCRLF();
+            checksum += buffer.getReadableBytes();
+
+            Buffer line;
+            while ((line = headers.readLine()) != null) {
+                checksum += line.indexOf(64, (byte) ':');
+                checksum += line.indexOf(128, (byte) ';', (byte) ',');
+            }
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        // just so that the JIT can't throw the work away
+        if (checksum == 42) {
+            System.out.println(name);
+        }
+
+        return iterations / (elapsed / 1e9);
+    }
+}
@@ -0,0 +1,74 @@
+package io.pkts.examples.siplib;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
+import io.pkts.packet.sip.SipMessage;
+
+import java.io.IOException;
+
+/**
+ * A rough comparison of how many messages per second we can frame when all
+ * we care about is the Call-ID and the CSeq, which is what most analytics
+ * tools look at. {@link SipMessage#frame(Buffer)} parses all the common
+ * headers up front while {@link SipMessage#frameLazy(Buffer)} only parses the
+ * ones we actually ask for.
+ *
+ * This is not a JMH benchmark, so take the numbers with a pinch of salt, but
+ * the difference is large enough to show.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public class SipLibLazyFramingBenchmark {
+
+    private static final int WARMUP = 200000;
+    private static final int ITERATIONS = 1000000;
+
+    private static final byte[] INVITE = new StringBuilder("INVITE sip:bob@127.0.0.1:5060 SIP/2.0\r\n")
+            .append("Via: SIP/2.0/UDP 127.0.1.1:5061;branch=z9hG4bK-28976-1-0\r\n")
+            .append("Via: SIP/2.0/UDP 10.36.10.10:5060;branch=z9hG4bK-4-0,SIP/2.0/UDP 10.36.10.11;branch=z9hG4bK-5\r\n")
+            .append("Record-Route: <sip:10.36.10.10;transport=udp;lr>\r\n")
+            .append("Route: <sip:10.36.10.12;transport=udp;lr>\r\n")
+            .append("From: alice <sip:alice@127.0.1.1:5061>;tag=28976SIPpTag001\r\n")
+            .append("To: bob <sip:bob@127.0.0.1:5060>\r\n")
+            .append("Call-ID: 1-28976@127.0.1.1\r\n")
+            .append("CSeq: 1 INVITE\r\n")
+            .append("Contact: sip:alice@127.0.1.1:5061\r\n")
+            .append("Max-Forwards: 70\r\n")
+            .append("Subject: Performance Test\r\n")
+            .append("User-Agent: pkts.io\r\n")
+            .append("Content-Type: application/sdp\r\n")
+            .append("Content-Length: 4\r\n")
+            .append("\r\n")
+            .append("abcd").toString().getBytes();
+
+    private interface Framer {
+        SipMessage frame(Buffer buffer) throws IOException;
+    }
+
+    public static void main(final String... args) throws Exception {
+        run("regular", SipMessage::frame, WARMUP);
+        run("lazy", SipMessage::frameLazy, WARMUP);
+
+        final double regular = run("regular", SipMessage::frame, ITERATIONS);
+        final double lazy = run("lazy", SipMessage::frameLazy, ITERATIONS);
+        System.out.printf("Call-ID only: regular %.0f msg/s, lazy %.0f msg/s (%.1fx)%n", regular, lazy, lazy / regular);
+    }
+
+    private static double run(final String name, final Framer framer, final int iterations) throws IOException {
+        long checksum = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            final SipMessage msg = framer.frame(Buffers.wrap(INVITE));
+            checksum += msg.getCallIDHeader().getCallId().getReadableBytes();
+            checksum += msg.getCSeqHeader().getSeqNumber();
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        // just so that the JIT can't throw the work away
+        if (checksum == 42) {
+            System.out.println(name);
+        }
+
+        return iterations / (elapsed / 1e9);
+    }
+}
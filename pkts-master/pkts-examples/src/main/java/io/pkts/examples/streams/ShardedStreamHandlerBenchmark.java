@@ -0,0 +1,122 @@
+package io.pkts.examples.streams;
+
+import io.pkts.Pcap;
+import io.pkts.packet.rtp.RtpPacket;
+import io.pkts.streams.Stream;
+import io.pkts.streams.StreamHandler;
+import io.pkts.streams.StreamListener;
+import io.pkts.streams.impl.DefaultStreamHandler;
+import io.pkts.streams.impl.ShardedStreamHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A rough comparison of the {@link DefaultStreamHandler} and the
+ * {@link ShardedStreamHandler} when processing a large number of concurrent
+ * RTP streams, which is what makes up the bulk of the traffic on a busy
+ * media link. The sharded handler is fed through
+ * {@link Pcap#loop(io.pkts.PacketHandler, ForkJoinPool)} so that the framing
+ * is done in parallel as well.
+ *
+ * The pcap is generated in memory. Run with e.g. -Xmx2g.
+ *
+ * This is not a JMH benchmark, so take the numbers with a pinch of salt.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public class ShardedStreamHandlerBenchmark {
+
+    private static final int STREAMS = 2000;
+
+    private static final int PACKETS_PER_STREAM = 500;
+
+    private static final int RTP_SIZE = 12 + 160;
+
+    public static void main(final String... args) throws Exception {
+        final int shards = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        final byte[] pcap = generate(STREAMS, PACKETS_PER_STREAM);
+
+        for (int i = 0; i < 3; ++i) {
+            final boolean print = i == 2;
+            run("default", pcap, new DefaultStreamHandler(), null, print);
+            final ForkJoinPool pool = new ForkJoinPool(shards);
+            run("sharded (" + shards + ")", pcap, new ShardedStreamHandler(shards), pool, print);
+            pool.shutdown();
+        }
+    }
+
+    private static void run(final String name, final byte[] data, final StreamHandler handler,
+            final ForkJoinPool pool, final boolean print) throws IOException {
+        final LongAdder packets = new LongAdder();
+        handler.addStreamListener(new StreamListener<RtpPacket>() {
+            @Override
+            public void startStream(final Stream<RtpPacket> stream, final RtpPacket packet) {
+                packets.increment();
+            }
+
+            @Override
+            public void packetReceived(final Stream<RtpPacket> stream, final RtpPacket packet) {
+                packets.increment();
+            }
+
+            @Override
+            public void endStream(final Stream<RtpPacket> stream) {
+            }
+        });
+
+        final long start = System.nanoTime();
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(data));
+        if (pool == null) {
+            pcap.loop(handler);
+        } else {
+            pcap.loop(handler, pool);
+            ((ShardedStreamHandler) handler).close();
+        }
+        pcap.close();
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        if (print) {
+            final double bits = packets.sum() * (16 + 14 + 20 + 8 + RTP_SIZE) * 8.0;
+            System.out.printf("%-14s %d packets in %.2f s (%.0f packets/s, %.2f Gbps)%n", name, packets.sum(),
+                    seconds, packets.sum() / seconds, bits / seconds / 1e9);
+        }
+    }
+
+    /**
+     * All streams send a packet every 20 ms, interleaved.
+     */
+    private static byte[] generate(final int streams, final int packets) {
+        final int frameLength = 14 + 20 + 8 + RTP_SIZE;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(24 + streams * packets * (16 + frameLength));
+        final ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535).putInt(1);
+        out.write(header.array(), 0, 24);
+
+        final ByteBuffer record = ByteBuffer.allocate(16 + frameLength);
+        for (int i = 0; i < packets; ++i) {
+            for (int s = 0; s < streams; ++s) {
+                final long time = 1500000000000000L + i * 20000L + s;
+                record.clear();
+                record.order(ByteOrder.LITTLE_ENDIAN);
+                record.putInt((int) (time / 1000000)).putInt((int) (time % 1000000));
+                record.putInt(frameLength).putInt(frameLength);
+                record.order(ByteOrder.BIG_ENDIAN);
+                record.put(new byte[] { 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 6 }).putShort((short) 0x0800);
+                record.put((byte) 0x45).put((byte) 0).putShort((short) (frameLength - 14)).putInt(0);
+                record.put((byte) 64).put((byte) 17).putShort((short) 0).putInt(0x0A000000 | s).putInt(0x0AFF0001);
+                record.putShort((short) (10000 + 2 * s)).putShort((short) 20000).putShort((short) (8 + RTP_SIZE))
+                        .putShort((short) 0);
+                record.put((byte) 0x80).put((byte) 0).putShort((short) i).putInt(160 * i).putInt(0x1000 + s);
+                record.put(new byte[160]);
+                out.write(record.array(), 0, record.position());
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,149 @@
+package io.pkts.examples.streams;
+
+import io.pkts.Pcap;
+import io.pkts.packet.sip.impl.SipMessageStreamBuilder;
+import io.pkts.streams.impl.TcpSipReassembler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A rough benchmark of the {@link TcpSipReassembler} with a large number of
+ * concurrent connections. Every connection sends a single REGISTER split in
+ * two segments and the segments are interleaved so that every connection has
+ * a partial message outstanding before any of them completes, which is the
+ * worst case as far as memory is concerned.
+ *
+ * The pcap is generated in memory so the numbers include the framing done by
+ * {@link Pcap} itself. Run with e.g. -Xmx1g.
+ *
+ * This is not a JMH benchmark, so take the numbers with a pinch of salt.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public class TcpSipReassemblyBenchmark {
+
+    private static final int CONNECTIONS = 100000;
+
+    private static final int SYN = 0x02;
+    private static final int FIN = 0x01;
+    private static final int PSH_ACK = 0x18;
+
+    public static void main(final String... args) throws Exception {
+        final int connections = args.length > 0 ? Integer.parseInt(args[0]) : CONNECTIONS;
+        final byte[] pcap = generate(connections);
+
+        // warm up
+        run(pcap, connections, false);
+        run(pcap, connections, true);
+    }
+
+    private static void run(final byte[] data, final int connections, final boolean print) throws IOException {
+        final SipMessageStreamBuilder.DefaultConfiguration config = new SipMessageStreamBuilder.DefaultConfiguration();
+        config.setMaxAllowedInitialLineSize(256);
+        config.setMaxAllowedHeadersSize(1024);
+        config.setMaxAllowedContentLength(256);
+
+        final TcpSipReassembler reassembler = new TcpSipReassembler((tcp, msg) -> {
+        }, config, TcpSipReassembler.DEFAULT_MAX_OUT_OF_ORDER_BYTES, 2 * connections);
+
+        final long[] packets = new long[1];
+        final long[] peak = new long[2];
+        System.gc();
+        final long start = System.nanoTime();
+        final Pcap pcap = Pcap.openStream(new ByteArrayInputStream(data));
+        pcap.loop(packet -> {
+            reassembler.nextPacket(packet);
+            if (++packets[0] == 2L * connections) {
+                // every connection is now waiting for the second half. Note
+                // that the heap also includes the pcap itself.
+                System.gc();
+                final Runtime runtime = Runtime.getRuntime();
+                peak[0] = reassembler.getConnections();
+                peak[1] = runtime.totalMemory() - runtime.freeMemory();
+            }
+            return true;
+        });
+        pcap.close();
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        if (print) {
+            System.out.printf("%d packets, %d messages in %.2f s (%.0f packets/s, %.0f msg/s)%n", packets[0],
+                    reassembler.getMessages(), seconds, packets[0] / seconds, reassembler.getMessages() / seconds);
+            System.out.printf("%d concurrent connections, ~%d MB heap in use, %d left once closed%n", peak[0],
+                    peak[1] / (1024 * 1024), reassembler.getConnections());
+        }
+    }
+
+    /**
+     * Every connection gets a SYN, the first half of the REGISTER and then the
+     * second half along with the FIN, in three rounds.
+     */
+    private static byte[] generate(final int connections) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(connections * 700);
+        final ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535).putInt(1);
+        out.write(header.array());
+
+        for (int round = 0; round < 3; ++round) {
+            for (int i = 0; i < connections; ++i) {
+                final byte[] msg = register(i);
+                final int half = msg.length / 2;
+                switch (round) {
+                case 0:
+                    write(out, i, SYN, 1000, new byte[0], 0, 0);
+                    break;
+                case 1:
+                    write(out, i, PSH_ACK, 1001, msg, 0, half);
+                    break;
+                default:
+                    write(out, i, PSH_ACK | FIN, 1001 + half, msg, half, msg.length - half);
+                    break;
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] register(final int i) {
+        return new StringBuilder("REGISTER sip:example.com SIP/2.0\r\n")
+                .append("Via: SIP/2.0/TCP 10.0.0.1:5060;branch=z9hG4bK-").append(i).append("\r\n")
+                .append("From: <sip:user").append(i).append("@example.com>;tag=").append(i).append("\r\n")
+                .append("To: <sip:user").append(i).append("@example.com>\r\n")
+                .append("Call-ID: ").append(i).append("@10.0.0.1\r\n")
+                .append("CSeq: 1 REGISTER\r\n")
+                .append("Contact: <sip:user").append(i).append("@10.0.0.1;transport=tcp>\r\n")
+                .append("Max-Forwards: 70\r\n")
+                .append("Expires: 3600\r\n")
+                .append("Content-Length: 0\r\n")
+                .append("\r\n").toString().getBytes();
+    }
+
+    private static void write(final ByteArrayOutputStream out, final int connection, final int flags,
+            final int seq, final byte[] payload, final int offset, final int length) {
+        final int frameLength = 14 + 20 + 20 + length;
+        final ByteBuffer record = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(1500000000).putInt(0).putInt(frameLength).putInt(frameLength);
+        out.write(record.array(), 0, 16);
+
+        final ByteBuffer frame = ByteBuffer.allocate(frameLength);
+
+        // ethernet
+        frame.put(new byte[] { 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 6 }).putShort((short) 0x0800);
+
+        // ipv4, no one checks the checksum
+        frame.put((byte) 0x45).put((byte) 0).putShort((short) (40 + length)).putShort((short) 0);
+        frame.putShort((short) 0x4000).put((byte) 64).put((byte) 6).putShort((short) 0);
+        frame.putInt(0x0A000000 | connection).putInt(0x0AFF0001);
+
+        // tcp
+        frame.putShort((short) (10000 + connection % 50000)).putShort((short) 5060).putInt(seq).putInt(1);
+        frame.put((byte) 0x50).put((byte) flags).putShort((short) 65535).putShort((short) 0).putShort((short) 0);
+
+        frame.put(payload, offset, length);
+        out.write(frame.array(), 0, frameLength);
+    }
+}
@@ -700,6 +700,19 @@ public interface SipMessage extends Cloneable {
         return SipParser.frame(buffer);
     }
 
+    /**
+     * Frame the supplied buffer into a {@link SipMessage} without parsing any of the headers. Each
+     * header is parsed the first time it is asked for, which makes this a lot cheaper than
+     * {@link #frame(Buffer)} if you only ever look at a few of them.
+     *
+     * @param buffer
+     * @return the framed {@link SipMessage}
+     */
+    static SipMessage frameLazy(final Buffer buffer) throws SipParseException, IOException {
+        assertNotNull(buffer);
+        return SipParser.frameLazy(buffer);
+    }
+
     /**
      * 
      * @param buffer
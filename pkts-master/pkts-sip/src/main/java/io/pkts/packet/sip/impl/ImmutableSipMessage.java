@@ -6,7 +6,6 @@ import io.pkts.packet.sip.SipParseException;
 import io.pkts.packet.sip.header.CSeqHeader;
 import io.pkts.packet.sip.header.CallIdHeader;
 import io.pkts.packet.sip.header.ContactHeader;
-import io.pkts.packet.sip.header.ContentLengthHeader;
 import io.pkts.packet.sip.header.ContentTypeHeader;
 import io.pkts.packet.sip.header.ExpiresHeader;
 import io.pkts.packet.sip.header.FromHeader;
@@ -16,7 +15,9 @@ import io.pkts.packet.sip.header.RouteHeader;
 import io.pkts.packet.sip.header.SipHeader;
 import io.pkts.packet.sip.header.ToHeader;
 import io.pkts.packet.sip.header.ViaHeader;
+import io.pkts.packet.sip.header.impl.SipHeaderImpl;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -31,17 +32,30 @@ public abstract class ImmutableSipMessage implements SipMessage {
     private static final String I_AM_IMMUTABLE_NO_CAN_DO = "I am immutable, no can do";
     private final Buffer message;
     private final SipInitialLine initialLine;
-    private final Map<String, List<SipHeader>> headers;
     private final Buffer body;
-    private final SipHeader toHeader;
-    private final SipHeader fromHeader;
-    private final SipHeader cSeqHeader;
-    private final SipHeader callIdHeader;
-    private final SipHeader maxForwardsHeader;
-    private final SipHeader viaHeader;
-    private final SipHeader routeHeader;
-    private final SipHeader recordRouteHeader;
-    private final SipHeader contactHeader;
+
+    /**
+     * All the headers in the order they appeared. Built on first use if this message was framed
+     * lazily.
+     */
+    private volatile SipHeaderList headers;
+
+    /**
+     * The headers keyed by their names, see {@link SipHeaderList#toMap()}. Only built if someone asks
+     * for them that way.
+     */
+    private volatile Map<String, List<SipHeader>> headerValues;
+
+    /**
+     * The first header of each kind, indexed by the ids in {@link SipHeaderNames}. These are filled
+     * in as they are asked for.
+     */
+    private final SipHeader[] systemHeaders = new SipHeader[SipHeaderNames.COUNT];
+
+    /**
+     * Only set if this message was framed lazily, see {@link SipParser#frameLazy(Buffer)}.
+     */
+    private final SipHeaderIndex index;
 
     /**
      *
@@ -66,17 +80,120 @@ public abstract class ImmutableSipMessage implements SipMessage {
                                   final Buffer body) {
         this.message = message;
         this.initialLine = initialLine;
+        this.headers = SipHeaderList.fromMap(headers);
+        this.body = body;
+        this.index = null;
+        this.systemHeaders[SipHeaderNames.TO] = toHeader;
+        this.systemHeaders[SipHeaderNames.FROM] = fromHeader;
+        this.systemHeaders[SipHeaderNames.CSEQ] = cSeqHeader;
+        this.systemHeaders[SipHeaderNames.CALL_ID] = callIdHeader;
+        this.systemHeaders[SipHeaderNames.MAX_FORWARDS] = maxForwardsHeader;
+        this.systemHeaders[SipHeaderNames.VIA] = viaHeader;
+        this.systemHeaders[SipHeaderNames.ROUTE] = routeHeader;
+        this.systemHeaders[SipHeaderNames.RECORD_ROUTE] = recordRouteHeader;
+        this.systemHeaders[SipHeaderNames.CONTACT] = contactHeader;
+    }
+
+    /**
+     * @param message the full immutable buffer which has the entire SIP message in it
+     * @param initialLine the parsed initial line (which is just a reference into the message buffer)
+     * @param headers all the headers, in order
+     * @param body
+     */
+    ImmutableSipMessage(final Buffer message,
+                        final SipInitialLine initialLine,
+                        final SipHeaderList headers,
+                        final Buffer body) {
+        this.message = message;
+        this.initialLine = initialLine;
         this.headers = headers;
         this.body = body;
-        this.toHeader = toHeader;
-        this.fromHeader = fromHeader;
-        this.cSeqHeader = cSeqHeader;
-        this.callIdHeader = callIdHeader;
-        this.maxForwardsHeader = maxForwardsHeader;
-        this.viaHeader = viaHeader;
-        this.routeHeader = routeHeader;
-        this.recordRouteHeader = recordRouteHeader;
-        this.contactHeader = contactHeader;
+        this.index = null;
+    }
+
+    /**
+     * For a message that has been framed lazily, none of the headers have been parsed yet.
+     *
+     * @param message the full immutable buffer which has the entire SIP message in it
+     * @param initialLine the parsed initial line (which is just a reference into the message buffer)
+     * @param index where the headers are within the message
+     * @param body
+     */
+    ImmutableSipMessage(final Buffer message,
+                        final SipInitialLine initialLine,
+                        final SipHeaderIndex index,
+                        final Buffer body) {
+        this.message = message;
+        this.initialLine = initialLine;
+        this.headers = null;
+        this.body = body;
+        this.index = index;
+    }
+
+    /**
+     * Get hold of the first header with the given id, parsing it if no one has asked for it
+     * before.
+     */
+    private SipHeader systemHeader(final int id) {
+        SipHeader header = systemHeaders[id];
+        if (header == null) {
+            final SipHeaderList headers = this.headers;
+            if (headers != null) {
+                header = headers.first(id);
+            } else {
+                try {
+                    header = index.findFirst(message, id);
+                } catch (final IOException e) {
+                    throw new SipParseException(0, "Unable to parse the header", e);
+                }
+            }
+
+            if (header != null) {
+                // the header is immutable so it doesn't matter if two threads race here
+                header = header.ensure();
+                systemHeaders[id] = header;
+            }
+        }
+        return header;
+    }
+
+    private SipHeaderList headers() {
+        SipHeaderList headers = this.headers;
+        if (headers == null) {
+            headers = buildHeaders();
+            this.headers = headers;
+        }
+        return headers;
+    }
+
+    /**
+     * Build up the headers of a lazily framed message in the same way as {@link SipParser#frame(Buffer)}
+     * would have.
+     */
+    private SipHeaderList buildHeaders() {
+        final SipHeaderList headers = new SipHeaderList(index.size());
+        final boolean[] seen = new boolean[SipHeaderNames.COUNT];
+        try {
+            for (int line = 0; line < index.size(); ++line) {
+                final int id = index.id(line);
+                final Buffer name = index.name(message, line);
+                for (final Buffer value : index.values(message, name, line)) {
+                    SipHeader header = new SipHeaderImpl(name, value);
+                    if (id == SipHeaderNames.CONTENT_LENGTH) {
+                        header = header.ensure();
+                    } else if (SipHeaderNames.isSystemHeader(id) && !seen[id]) {
+                        // same instance as the getters hand out, just like the regular framing
+                        seen[id] = true;
+                        final SipHeader first = systemHeader(id);
+                        header = first != null ? first : header;
+                    }
+                    headers.add(id, header);
+                }
+            }
+        } catch (final IOException e) {
+            throw new SipParseException(0, "Unable to parse the headers", e);
+        }
+        return headers;
     }
 
     @Override
@@ -91,24 +208,23 @@ public abstract class ImmutableSipMessage implements SipMessage {
 
     @Override
     public List<SipHeader> getAllHeaders() {
-        final List<SipHeader> allHeaders = new ArrayList<>();
-        for(final List<SipHeader> headerValues : headers.values()) {
-            allHeaders.addAll(headerValues);
-        }
-
-        return allHeaders;
+        return headers().toList();
     }
 
     @Override
     public Map<String, List<SipHeader>> getHeaderValues() {
-
-        return headers;
+        Map<String, List<SipHeader>> headerValues = this.headerValues;
+        if (headerValues == null) {
+            headerValues = headers().toMap();
+            this.headerValues = headerValues;
+        }
+        return headerValues;
     }
 
 
     @Override
     public int countNoOfHeaders() {
-        return headers.size();
+        return headers().countDistinct();
     }
 
     @Override
@@ -132,12 +248,20 @@ public abstract class ImmutableSipMessage implements SipMessage {
 
     @Override
     public Optional<SipHeader> getHeader(final Buffer headerName) throws SipParseException {
+        final int id = SipHeaderNames.lookup(headerName);
+        if (id != SipHeaderNames.UNKNOWN) {
+            return Optional.ofNullable(headers().first(id));
+        }
         return getHeader(headerName.toString());
     }
 
     @Override
     public List<SipHeader> getHeaders(final Buffer headerName) throws SipParseException {
         PreConditions.assertNotEmpty(headerName, "The name of the header cannot be null or the empty buffer");
+        final int id = SipHeaderNames.lookup(headerName);
+        if (id != SipHeaderNames.UNKNOWN) {
+            return headers().all(id);
+        }
         return getHeaders(headerName.toString());
     }
 
@@ -145,9 +269,7 @@ public abstract class ImmutableSipMessage implements SipMessage {
     public List<SipHeader> getHeaders(final String headerName) throws SipParseException {
         PreConditions.assertNotEmpty(headerName, "The name of the header cannot be null or the empty string");
 
-        final List<SipHeader> headerValues = headers.get(headerName);
-
-        return headerValues == null || headerValues.isEmpty() ? Collections.emptyList() : new ArrayList<>(headerValues);
+        return headers().byName(headerName);
     }
 
 
@@ -158,24 +280,27 @@ public abstract class ImmutableSipMessage implements SipMessage {
 
     @Override
     public FromHeader getFromHeader() throws SipParseException {
-        return fromHeader != null ? fromHeader.ensure().toFromHeader() : null;
+        final SipHeader header = systemHeader(SipHeaderNames.FROM);
+        return header != null ? header.ensure().toFromHeader() : null;
     }
 
     @Override
     public ToHeader getToHeader() throws SipParseException {
-        return toHeader != null ? toHeader.ensure().toToHeader() : null;
+        final SipHeader header = systemHeader(SipHeaderNames.TO);
+        return header != null ? header.ensure().toToHeader() : null;
     }
 
     @Override
     public ViaHeader getViaHeader() throws SipParseException {
-        return viaHeader != null ? viaHeader.ensure().toViaHeader() : null;
+        final SipHeader header = systemHeader(SipHeaderNames.VIA);
+        return header != null ? header.ensure().toViaHeader() : null;
     }
 
     @Override
     public List<ViaHeader> getViaHeaders() throws SipParseException {
 
-        final List<SipHeader> headerValues = headers.get(ViaHeader.NAME.toString());
-        if(headerValues == null || headerValues.isEmpty()) {
+        final List<SipHeader> headerValues = headers().all(SipHeaderNames.VIA);
+        if(headerValues.isEmpty()) {
             return Collections.emptyList();
         }
 
@@ -189,19 +314,21 @@ public abstract class ImmutableSipMessage implements SipMessage {
 
     @Override
     public MaxForwardsHeader getMaxForwards() throws SipParseException {
-        return maxForwardsHeader != null ? maxForwardsHeader.ensure().toMaxForwardsHeader() : null;
+        final SipHeader header = systemHeader(SipHeaderNames.MAX_FORWARDS);
+        return header != null ? header.ensure().toMaxForwardsHeader() : null;
     }
 
     @Override
     public RecordRouteHeader getRecordRouteHeader() throws SipParseException {
-        return recordRouteHeader != null ? recordRouteHeader.ensure().toRecordRouteHeader() : null;
+        final SipHeader header = systemHeader(SipHeaderNames.RECORD_ROUTE);
+        return header != null ? header.ensure().toRecordRouteHeader() : null;
     }
 
     @Override
     public List<RecordRouteHeader> getRecordRouteHeaders() throws SipParseException {
 
-        final List<SipHeader> headerValues = headers.get(RecordRouteHeader.NAME.toString());
-        if(headerValues == null || headerValues.isEmpty()) {
+        final List<SipHeader> headerValues = headers().all(SipHeaderNames.RECORD_ROUTE);
+        if(headerValues.isEmpty()) {
             return Collections.emptyList();
         }
 
@@ -215,13 +342,14 @@ public abstract class ImmutableSipMessage implements SipMessage {
 
     @Override
     public RouteHeader getRouteHeader() throws SipParseException {
-        return routeHeader != null ? routeHeader.ensure().toRouteHeader() : null;
+        final SipHeader header = systemHeader(SipHeaderNames.ROUTE);
+        return header != null ? header.ensure().toRouteHeader() : null;
     }
 
     @Override
     public List<RouteHeader> getRouteHeaders() throws SipParseException {
-        final List<SipHeader> headerValues = headers.get(RouteHeader.NAME.toString());
-        if(headerValues == null || headerValues.isEmpty()) {
+        final List<SipHeader> headerValues = headers().all(SipHeaderNames.ROUTE);
+        if(headerValues.isEmpty()) {
             return Collections.emptyList();
         }
 
@@ -235,35 +363,38 @@ public abstract class ImmutableSipMessage implements SipMessage {
 
     @Override
     public ExpiresHeader getExpiresHeader() throws SipParseException {
-        final SipHeader header = findHeader(ExpiresHeader.NAME.toString());
+        final SipHeader header = systemHeader(SipHeaderNames.EXPIRES);
         return header != null ? header.ensure().toExpiresHeader() : null;
     }
 
     @Override
     public ContactHeader getContactHeader() throws SipParseException {
-        return contactHeader != null ? contactHeader.ensure().toContactHeader() : null;
+        final SipHeader header = systemHeader(SipHeaderNames.CONTACT);
+        return header != null ? header.ensure().toContactHeader() : null;
     }
 
     @Override
     public ContentTypeHeader getContentTypeHeader() throws SipParseException {
-        final SipHeader header = findHeader(ContentTypeHeader.NAME.toString());
+        final SipHeader header = systemHeader(SipHeaderNames.CONTENT_TYPE);
         return header != null ? header.ensure().toContentTypeHeader() : null;
     }
 
     @Override
     public int getContentLength() throws SipParseException {
-        final SipHeader header = findHeader(ContentLengthHeader.NAME.toString());
+        final SipHeader header = systemHeader(SipHeaderNames.CONTENT_LENGTH);
         return header != null ? header.ensure().toContentLengthHeader().getContentLength() : 0;
     }
 
     @Override
     public CallIdHeader getCallIDHeader() throws SipParseException {
-        return callIdHeader != null ? callIdHeader.ensure().toCallIdHeader() : null;
+        final SipHeader header = systemHeader(SipHeaderNames.CALL_ID);
+        return header != null ? header.ensure().toCallIdHeader() : null;
     }
 
     @Override
     public CSeqHeader getCSeqHeader() throws SipParseException {
-        return cSeqHeader != null ? cSeqHeader.ensure().toCSeqHeader() : null;
+        final SipHeader header = systemHeader(SipHeaderNames.CSEQ);
+        return header != null ? header.ensure().toCSeqHeader() : null;
     }
 
     @Override
@@ -278,8 +409,8 @@ public abstract class ImmutableSipMessage implements SipMessage {
     }
 
     private SipHeader findHeader(final String name) {
-        final List<SipHeader> headerValues = headers.get(name);
-        return headerValues != null && !headerValues.isEmpty() ? headerValues.get(0) :null;
+        final List<SipHeader> headerValues = headers().byName(name);
+        return !headerValues.isEmpty() ? headerValues.get(0) :null;
     }
 
 
@@ -52,6 +52,26 @@ public class ImmutableSipRequest extends ImmutableSipMessage implements SipReque
               body);
     }
 
+    /**
+     * A request framed by {@link SipParser#frame(Buffer)}.
+     */
+    ImmutableSipRequest(final Buffer message,
+                        final SipRequestLine initialLine,
+                        final SipHeaderList headers,
+                        final Buffer body) {
+        super(message, initialLine, headers, body);
+    }
+
+    /**
+     * A lazily framed request, see {@link SipParser#frameLazy(Buffer)}.
+     */
+    ImmutableSipRequest(final Buffer message,
+                        final SipRequestLine initialLine,
+                        final SipHeaderIndex index,
+                        final Buffer body) {
+        super(message, initialLine, index, body);
+    }
+
     @Override
     public URI getRequestUri() throws SipParseException {
         return getInitialLineAsObject().toRequestLine().getRequestUri();
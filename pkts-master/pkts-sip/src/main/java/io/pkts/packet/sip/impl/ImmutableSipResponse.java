@@ -49,6 +49,26 @@ public class ImmutableSipResponse extends ImmutableSipMessage implements SipResp
               body);
     }
 
+    /**
+     * A response framed by {@link SipParser#frame(Buffer)}.
+     */
+    ImmutableSipResponse(final Buffer message,
+                         final SipResponseLine initialLine,
+                         final SipHeaderList headers,
+                         final Buffer body) {
+        super(message, initialLine, headers, body);
+    }
+
+    /**
+     * A lazily framed response, see {@link SipParser#frameLazy(Buffer)}.
+     */
+    ImmutableSipResponse(final Buffer message,
+                         final SipResponseLine initialLine,
+                         final SipHeaderIndex index,
+                         final Buffer body) {
+        super(message, initialLine, index, body);
+    }
+
     @Override
     public Buffer getMethod() throws SipParseException {
         final CSeqHeader cseq = getCSeqHeader();
@@ -0,0 +1,118 @@
+package io.pkts.packet.sip.impl;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.packet.sip.header.SipHeader;
+import io.pkts.packet.sip.header.impl.SipHeaderImpl;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A compact index over the header lines of a SIP message that has been framed
+ * lazily (see {@link SipParser#frameLazy(Buffer)}).
+ *
+ * For every header line we only remember where the name and the value are
+ * within the message, and the id of the name (see {@link SipHeaderNames}). The
+ * values are not split up, nor are any {@link SipHeader}s created, until
+ * someone actually asks for them.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+final class SipHeaderIndex {
+
+    private static final int FIELDS = 4;
+    private static final int NAME_START = 0;
+    private static final int NAME_STOP = 1;
+    private static final int VALUE_START = 2;
+    private static final int LINE_STOP = 3;
+
+    /**
+     * Four ints per header line: start and stop of the name, start of the
+     * value and the end of the line (including the CRLF). All relative to
+     * the start of the message.
+     */
+    private int[] offsets;
+    private byte[] ids;
+    private int size;
+
+    SipHeaderIndex() {
+        this.offsets = new int[16 * FIELDS];
+        this.ids = new byte[16];
+    }
+
+    /**
+     * @param id        the id of the header name, see {@link SipHeaderNames}
+     * @param nameStart
+     * @param nameStop
+     * @param valueStart
+     * @param lineStop  the index just after the LF ending the header line
+     *                  (including any folded lines)
+     */
+    void add(final int id, final int nameStart, final int nameStop, final int valueStart, final int lineStop) {
+        if (this.size == this.ids.length) {
+            final int[] newOffsets = new int[this.offsets.length * 2];
+            System.arraycopy(this.offsets, 0, newOffsets, 0, this.offsets.length);
+            this.offsets = newOffsets;
+
+            final byte[] newIds = new byte[this.ids.length * 2];
+            System.arraycopy(this.ids, 0, newIds, 0, this.ids.length);
+            this.ids = newIds;
+        }
+
+        final int i = this.size * FIELDS;
+        this.offsets[i + NAME_START] = nameStart;
+        this.offsets[i + NAME_STOP] = nameStop;
+        this.offsets[i + VALUE_START] = valueStart;
+        this.offsets[i + LINE_STOP] = lineStop;
+        this.ids[this.size] = (byte) id;
+        ++this.size;
+    }
+
+    /**
+     * @return the number of header lines, which may be less than the number of
+     *         headers since one line can have many values.
+     */
+    int size() {
+        return this.size;
+    }
+
+    int id(final int line) {
+        return this.ids[line];
+    }
+
+    Buffer name(final Buffer message, final int line) {
+        final int i = line * FIELDS;
+        return message.slice(this.offsets[i + NAME_START], this.offsets[i + NAME_STOP]);
+    }
+
+    /**
+     * Split up the value(s) of the given header line in exactly the same way
+     * as the regular framing does.
+     */
+    List<Buffer> values(final Buffer message, final Buffer name, final int line) throws IOException {
+        final int i = line * FIELDS;
+        final Buffer value = message.slice(this.offsets[i + VALUE_START], this.offsets[i + LINE_STOP]);
+        final List<Buffer> values = SipParser.readHeaderValues(name, value).values;
+        return values == null ? Collections.emptyList() : values;
+    }
+
+    /**
+     * Find the first value of the first header with the given id.
+     *
+     * @return the header, which has not been "ensured", or null if there is
+     *         no such header
+     */
+    SipHeader findFirst(final Buffer message, final int id) throws IOException {
+        for (int line = 0; line < this.size; ++line) {
+            if (this.ids[line] == id) {
+                final Buffer name = name(message, line);
+                final List<Buffer> values = values(message, name, line);
+                if (!values.isEmpty()) {
+                    return new SipHeaderImpl(name, values.get(0));
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,179 @@
+package io.pkts.packet.sip.impl;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
+import io.pkts.packet.sip.header.SipHeader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The headers of a SIP message in the order they appeared, each one tagged
+ * with the id of its name (see {@link SipHeaderNames}). All lookups of well
+ * known headers are done by id, so neither building nor searching this list
+ * creates any Strings.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+final class SipHeaderList {
+
+    private SipHeader[] headers;
+    private byte[] ids;
+    private int size;
+
+    SipHeaderList(final int capacity) {
+        this.headers = new SipHeader[Math.max(capacity, 4)];
+        this.ids = new byte[this.headers.length];
+    }
+
+    /**
+     * Convert headers kept by name, which is how the builders keep them.
+     */
+    static SipHeaderList fromMap(final Map<String, List<SipHeader>> headers) {
+        int count = 0;
+        for (final List<SipHeader> values : headers.values()) {
+            count += values.size();
+        }
+
+        final SipHeaderList list = new SipHeaderList(count);
+        for (final List<SipHeader> values : headers.values()) {
+            for (final SipHeader header : values) {
+                list.add(SipHeaderNames.lookup(header.getName()), header);
+            }
+        }
+        return list;
+    }
+
+    void add(final int id, final SipHeader header) {
+        if (this.size == this.headers.length) {
+            final SipHeader[] newHeaders = new SipHeader[this.size * 2];
+            System.arraycopy(this.headers, 0, newHeaders, 0, this.size);
+            this.headers = newHeaders;
+
+            final byte[] newIds = new byte[this.size * 2];
+            System.arraycopy(this.ids, 0, newIds, 0, this.size);
+            this.ids = newIds;
+        }
+
+        this.headers[this.size] = header;
+        this.ids[this.size] = (byte) id;
+        ++this.size;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the first header with the given id or null if there is none
+     */
+    SipHeader first(final int id) {
+        for (int i = 0; i < this.size; ++i) {
+            if (this.ids[i] == id) {
+                return this.headers[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return all the headers with the given id, in the order they appeared
+     */
+    List<SipHeader> all(final int id) {
+        List<SipHeader> result = null;
+        for (int i = 0; i < this.size; ++i) {
+            if (this.ids[i] == id) {
+                if (result == null) {
+                    result = new ArrayList<>(4);
+                }
+                result.add(this.headers[i]);
+            }
+        }
+        return result == null ? Collections.emptyList() : result;
+    }
+
+    /**
+     * Find the headers by name. Header names are case insensitive and the well
+     * known ones are matched by id, which means that the compact form of a name
+     * also finds the headers using the full name, and vice versa.
+     */
+    List<SipHeader> byName(final String name) {
+        final int id = SipHeaderNames.lookup(name);
+        if (id != SipHeaderNames.UNKNOWN) {
+            return all(id);
+        }
+
+        final Buffer wanted = Buffers.wrap(name);
+        List<SipHeader> result = null;
+        for (int i = 0; i < this.size; ++i) {
+            if (this.ids[i] == SipHeaderNames.UNKNOWN && this.headers[i].getName().equalsIgnoreCase(wanted)) {
+                if (result == null) {
+                    result = new ArrayList<>(4);
+                }
+                result.add(this.headers[i]);
+            }
+        }
+        return result == null ? Collections.emptyList() : result;
+    }
+
+    List<SipHeader> toList() {
+        final List<SipHeader> list = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; ++i) {
+            list.add(this.headers[i]);
+        }
+        return list;
+    }
+
+    /**
+     * @return the number of different headers, where the headers are told
+     *         apart the same way as {@link #byName(String)} does
+     */
+    int countDistinct() {
+        long known = 0;
+        int count = 0;
+        for (int i = 0; i < this.size; ++i) {
+            final int id = this.ids[i];
+            if (id != SipHeaderNames.UNKNOWN) {
+                if ((known & 1L << id) == 0) {
+                    known |= 1L << id;
+                    ++count;
+                }
+            } else if (firstUnknown(this.headers[i].getName()) == i) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the index of the first unknown header with the given name
+     */
+    private int firstUnknown(final Buffer name) {
+        for (int i = 0; i < this.size; ++i) {
+            if (this.ids[i] == SipHeaderNames.UNKNOWN && this.headers[i].getName().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the headers keyed by name, grouped the same way as
+     *         {@link #byName(String)} does. The well known headers are keyed
+     *         by their full name, no matter if the compact form was used, and
+     *         the other headers by their name as it first appeared.
+     */
+    Map<String, List<SipHeader>> toMap() {
+        final Map<String, List<SipHeader>> map = new HashMap<>();
+        for (int i = 0; i < this.size; ++i) {
+            final int id = this.ids[i];
+            final Buffer name = id != SipHeaderNames.UNKNOWN ? SipHeaderNames.name(id)
+                    : this.headers[firstUnknown(this.headers[i].getName())].getName();
+            map.computeIfAbsent(name.toString(), k -> new ArrayList<>(4)).add(this.headers[i]);
+        }
+        return map;
+    }
+}
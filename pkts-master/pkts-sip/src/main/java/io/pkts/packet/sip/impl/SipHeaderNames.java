@@ -0,0 +1,239 @@
+package io.pkts.packet.sip.impl;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
+
+import java.io.IOException;
+
+/**
+ * A table of the well known SIP header names, each of which is given a small
+ * integer id. Looking up the id of a header name is done straight on the raw
+ * bytes, ignoring case and with the compact forms mapping to the same id as
+ * the full names, so that we don't have to create a String (or hash the
+ * header name the way {@link Buffer#hashCode()} does) for every header we
+ * parse.
+ *
+ * Any header name not in the table is {@link #UNKNOWN}.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class SipHeaderNames {
+
+    public static final int UNKNOWN = 0;
+    public static final int TO = 1;
+    public static final int FROM = 2;
+    public static final int CSEQ = 3;
+    public static final int CALL_ID = 4;
+    public static final int MAX_FORWARDS = 5;
+    public static final int VIA = 6;
+    public static final int ROUTE = 7;
+    public static final int RECORD_ROUTE = 8;
+    public static final int CONTACT = 9;
+    public static final int CONTENT_LENGTH = 10;
+    public static final int CONTENT_TYPE = 11;
+    public static final int EXPIRES = 12;
+    public static final int SUBJECT = 13;
+    public static final int SUPPORTED = 14;
+    public static final int REQUIRE = 15;
+    public static final int ALLOW = 16;
+    public static final int ALLOW_EVENTS = 17;
+    public static final int EVENT = 18;
+    public static final int REFER_TO = 19;
+    public static final int USER_AGENT = 20;
+    public static final int SERVER = 21;
+    public static final int ACCEPT = 22;
+    public static final int CONTENT_ENCODING = 23;
+    public static final int AUTHORIZATION = 24;
+    public static final int PROXY_AUTHORIZATION = 25;
+    public static final int WWW_AUTHENTICATE = 26;
+    public static final int PROXY_AUTHENTICATE = 27;
+
+    /**
+     * The number of ids, i.e. the size of an array indexed by header id.
+     */
+    public static final int COUNT = 28;
+
+    /**
+     * The full name of each header, indexed by id.
+     */
+    private static final Buffer[] NAMES = new Buffer[COUNT];
+
+    /**
+     * Open addressing hash table. Each slot holds the index into
+     * {@link #ENTRY_NAMES} / {@link #ENTRY_IDS} plus one, zero being an empty
+     * slot.
+     */
+    private static final int[] SLOTS = new int[128];
+    private static final byte[][] ENTRY_NAMES = new byte[64][];
+    private static final int[] ENTRY_IDS = new int[64];
+    private static int entries;
+    private static int maxLength;
+
+    static {
+        add(TO, "To", "t");
+        add(FROM, "From", "f");
+        add(CSEQ, "CSeq", null);
+        add(CALL_ID, "Call-ID", "i");
+        add(MAX_FORWARDS, "Max-Forwards", null);
+        add(VIA, "Via", "v");
+        add(ROUTE, "Route", null);
+        add(RECORD_ROUTE, "Record-Route", null);
+        add(CONTACT, "Contact", "m");
+        add(CONTENT_LENGTH, "Content-Length", "l");
+        add(CONTENT_TYPE, "Content-Type", "c");
+        add(EXPIRES, "Expires", null);
+        add(SUBJECT, "Subject", "s");
+        add(SUPPORTED, "Supported", "k");
+        add(REQUIRE, "Require", null);
+        add(ALLOW, "Allow", null);
+        add(ALLOW_EVENTS, "Allow-Events", "u");
+        add(EVENT, "Event", "o");
+        add(REFER_TO, "Refer-To", "r");
+        add(USER_AGENT, "User-Agent", null);
+        add(SERVER, "Server", null);
+        add(ACCEPT, "Accept", null);
+        add(CONTENT_ENCODING, "Content-Encoding", "e");
+        add(AUTHORIZATION, "Authorization", null);
+        add(PROXY_AUTHORIZATION, "Proxy-Authorization", null);
+        add(WWW_AUTHENTICATE, "WWW-Authenticate", null);
+        add(PROXY_AUTHENTICATE, "Proxy-Authenticate", null);
+    }
+
+    private SipHeaderNames() {
+        // left empty intentionally
+    }
+
+    private static void add(final int id, final String name, final String compactName) {
+        NAMES[id] = Buffers.wrap(name);
+        addEntry(id, name.getBytes());
+        if (compactName != null) {
+            addEntry(id, compactName.getBytes());
+        }
+    }
+
+    private static void addEntry(final int id, final byte[] name) {
+        ENTRY_NAMES[entries] = name;
+        ENTRY_IDS[entries] = id;
+        maxLength = Math.max(maxLength, name.length);
+
+        int hash = 0;
+        for (final byte b : name) {
+            hash = 31 * hash + fold(b);
+        }
+
+        int slot = mix(hash);
+        while (SLOTS[slot] != 0) {
+            slot = (slot + 1) & (SLOTS.length - 1);
+        }
+        SLOTS[slot] = ++entries;
+    }
+
+    /**
+     * Get the id of the header name, which is the readable bytes of the
+     * buffer. The buffer is left untouched.
+     *
+     * @return the id or {@link #UNKNOWN}
+     */
+    public static int lookup(final Buffer name) {
+        final int length = name.getReadableBytes();
+        if (length == 0 || length > maxLength) {
+            return UNKNOWN;
+        }
+
+        try {
+            final int offset = name.getReaderIndex();
+            int hash = 0;
+            for (int i = 0; i < length; ++i) {
+                hash = 31 * hash + fold(name.getByte(offset + i));
+            }
+
+            for (int slot = mix(hash); SLOTS[slot] != 0; slot = (slot + 1) & (SLOTS.length - 1)) {
+                final int entry = SLOTS[slot] - 1;
+                final byte[] candidate = ENTRY_NAMES[entry];
+                if (candidate.length == length && equalsIgnoreCase(candidate, name, offset)) {
+                    return ENTRY_IDS[entry];
+                }
+            }
+        } catch (final IOException e) {
+            // can't happen since we stay within the readable bytes
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Same as {@link #lookup(Buffer)} but for a name given as a String.
+     */
+    public static int lookup(final CharSequence name) {
+        final int length = name.length();
+        if (length == 0 || length > maxLength) {
+            return UNKNOWN;
+        }
+
+        int hash = 0;
+        for (int i = 0; i < length; ++i) {
+            hash = 31 * hash + fold((byte) name.charAt(i));
+        }
+
+        for (int slot = mix(hash); SLOTS[slot] != 0; slot = (slot + 1) & (SLOTS.length - 1)) {
+            final int entry = SLOTS[slot] - 1;
+            final byte[] candidate = ENTRY_NAMES[entry];
+            if (candidate.length == length && equalsIgnoreCase(candidate, name)) {
+                return ENTRY_IDS[entry];
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * The headers that no SIP stack can function without and therefore are
+     * fully parsed when a message is framed (the first one of each anyway).
+     */
+    static boolean isSystemHeader(final int id) {
+        return id >= TO && id <= CONTACT;
+    }
+
+    /**
+     * @return the full name of the header with the given id, or null for
+     *         {@link #UNKNOWN}
+     */
+    public static Buffer name(final int id) {
+        return NAMES[id];
+    }
+
+    /**
+     * Header names are tokens so setting the 0x20 bit turns upper case ASCII
+     * letters into lower case without changing any other character that may
+     * be part of a name (other than '_', which can't be mistaken for any other
+     * token character). Only used for the hash, the actual comparison is exact.
+     */
+    private static int fold(final byte b) {
+        return b | 0x20;
+    }
+
+    private static int mix(final int hash) {
+        return (hash ^ (hash >>> 7) ^ (hash >>> 16)) & (SLOTS.length - 1);
+    }
+
+    private static boolean equalsIgnoreCase(final byte[] a, final Buffer b, final int offset) throws IOException {
+        for (int i = 0; i < a.length; ++i) {
+            if (!equalsIgnoreCase(a[i], b.getByte(offset + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalsIgnoreCase(final byte[] a, final CharSequence b) {
+        for (int i = 0; i < a.length; ++i) {
+            final char c = b.charAt(i);
+            if (c > 0x7F || !equalsIgnoreCase(a[i], (byte) c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equalsIgnoreCase(final byte a, final byte b) {
+        return a == b || ((a | 0x20) == (b | 0x20) && (a | 0x20) >= 'a' && (a | 0x20) <= 'z');
+    }
+}
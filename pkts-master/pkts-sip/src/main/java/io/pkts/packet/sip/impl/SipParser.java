@@ -25,10 +25,13 @@ import io.pkts.packet.sip.header.impl.SipHeaderImpl;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 
 
@@ -197,7 +200,22 @@ public class SipParser {
 
     public static final Buffer WSS = Buffers.wrap("wss");
 
-    public static final Map<Buffer, Function<SipHeader, ? extends SipHeader>> framers = new HashMap<>();
+    /**
+     * The framers by header name. Register a framer here to have headers by that name framed
+     * into something more specific than a plain {@link SipHeader}, which also goes for the well
+     * known headers, where the framer registered replaces the built-in one.
+     */
+    public static final Map<Buffer, Function<SipHeader, ? extends SipHeader>> framers = new FramerMap();
+
+    /**
+     * The framers of the well known headers indexed by the id of the header name (see
+     * {@link SipHeaderNames}) so that finding the framer of the common headers doesn't require
+     * hashing the name. The compact forms are kept apart since the compact Call-ID is framed
+     * differently than its full name. Both are rebuilt from {@link #framers} whenever it changes.
+     */
+    private static volatile List<Function<SipHeader, ? extends SipHeader>> knownFramers;
+
+    private static volatile List<Function<SipHeader, ? extends SipHeader>> compactFramers;
 
     static {
         framers.put(CallIdHeader.NAME, header -> CallIdHeader.frame(header.getValue()));
@@ -232,11 +250,89 @@ public class SipParser {
         framers.put(ViaHeader.COMPACT_NAME, header -> ViaHeader.frame(header.getValue()));
     }
 
+    /**
+     * Keeps {@link #knownFramers} and {@link #compactFramers} in sync with what is registered.
+     * Changing the map is expected to be rare, the framers are typically registered once at
+     * start up, so the ids are simply worked out again every time it does.
+     */
+    private static final class FramerMap extends AbstractMap<Buffer, Function<SipHeader, ? extends SipHeader>> {
+
+        private final Map<Buffer, Function<SipHeader, ? extends SipHeader>> map = new HashMap<>();
+
+        @Override
+        public Function<SipHeader, ? extends SipHeader> get(final Object key) {
+            return this.map.get(key);
+        }
+
+        @Override
+        public boolean containsKey(final Object key) {
+            return this.map.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return this.map.size();
+        }
+
+        @Override
+        public Function<SipHeader, ? extends SipHeader> put(final Buffer key,
+                                                            final Function<SipHeader, ? extends SipHeader> value) {
+            final Function<SipHeader, ? extends SipHeader> previous = this.map.put(key, value);
+            index();
+            return previous;
+        }
+
+        @Override
+        public Function<SipHeader, ? extends SipHeader> remove(final Object key) {
+            if (!this.map.containsKey(key)) {
+                return null;
+            }
+            final Function<SipHeader, ? extends SipHeader> previous = this.map.remove(key);
+            index();
+            return previous;
+        }
+
+        @Override
+        public void clear() {
+            this.map.clear();
+            index();
+        }
+
+        /**
+         * Read only, all changes have to go through {@link #put(Buffer, Function)} and friends.
+         */
+        @Override
+        public Set<Entry<Buffer, Function<SipHeader, ? extends SipHeader>>> entrySet() {
+            return Collections.unmodifiableMap(this.map).entrySet();
+        }
+
+        private void index() {
+            final List<Function<SipHeader, ? extends SipHeader>> known =
+                    new ArrayList<>(Collections.nCopies(SipHeaderNames.COUNT, null));
+            final List<Function<SipHeader, ? extends SipHeader>> compact =
+                    new ArrayList<>(Collections.nCopies(SipHeaderNames.COUNT, null));
+            for (final Map.Entry<Buffer, Function<SipHeader, ? extends SipHeader>> entry : this.map.entrySet()) {
+                final int id = SipHeaderNames.lookup(entry.getKey());
+                if (id != SipHeaderNames.UNKNOWN) {
+                    (entry.getKey().getReadableBytes() == 1 ? compact : known).set(id, entry.getValue());
+                }
+            }
+            knownFramers = known;
+            compactFramers = compact;
+        }
+    }
+
     /**
      * For the given header name, return a function that will convert a generic header instance
      * into one with the correct subtype.
      */
     public static Function<SipHeader, ? extends SipHeader> getFramer(final Buffer b) {
+        final int id = SipHeaderNames.lookup(b);
+        if (id != SipHeaderNames.UNKNOWN) {
+            return (b.getReadableBytes() == 1 ? compactFramers : knownFramers).get(id);
+        }
+
+        // Headers that aren't well known only have a framer if someone registered one.
         // For headers that have the expected capitalization, do a quick case-sensitive
         // search. If that fails do a slower case-insensitive search.
         final Function<SipHeader, ? extends SipHeader> framer = framers.get(b);
@@ -2158,59 +2254,28 @@ public class SipParser {
         // Move along as long as we actually can consume an header and
         Buffer headerName;
         SipHeader header;
-        SipHeader toHeader = null;
-        SipHeader fromHeader = null;
-        SipHeader cSeqHeader = null;
-        SipHeader callIdHeader = null;
-        SipHeader maxForwardsHeader = null;
-        SipHeader viaHeader = null;
-        SipHeader routeHeader = null;
-        SipHeader recordRouteHeader = null;
-        SipHeader contactHeader = null;
-        final Map<String, List<SipHeader>> headers = new HashMap<>();
+        final SipHeaderList headers = new SipHeaderList(16);
+        final boolean[] seen = new boolean[SipHeaderNames.COUNT];
         int contentLength = 0;
 
         while (consumeCRLF(buffer) != 2 && (headerName = SipParser.nextHeaderName(buffer)) != null) {
+            final int id = SipHeaderNames.lookup(headerName);
             final List<Buffer> values = readHeaderValues(headerName, buffer).values;
             for (final Buffer value : values) {
                 header = new SipHeaderImpl(headerName, value);
                 // The headers that are most commonly used will be fully
                 // parsed just because no stack can really function without
                 // looking into these headers.
-                if (header.isContentLengthHeader()) {
+                if (id == SipHeaderNames.CONTENT_LENGTH) {
                     final ContentLengthHeader l = header.ensure().toContentLengthHeader();
                     contentLength = l.getContentLength();
                     header = l;
-                } else if (contactHeader == null && header.isContactHeader()) {
-                    header = header.ensure();
-                    contactHeader = header;
-                } else if (cSeqHeader == null && header.isCSeqHeader()) {
-                    header = header.ensure();
-                    cSeqHeader = header;
-                } else if ( maxForwardsHeader == null && header.isMaxForwardsHeader()) {
-                    header = header.ensure();
-                    maxForwardsHeader = header;
-                } else if (fromHeader == null && header.isFromHeader()) {
-                    header = header.ensure();
-                    fromHeader = header;
-                } else if (toHeader == null && header.isToHeader()) {
+                } else if (SipHeaderNames.isSystemHeader(id) && !seen[id]) {
                     header = header.ensure();
-                    toHeader = header;
-                } else if (viaHeader == null && header.isViaHeader()) {
-                    header = header.ensure();
-                    viaHeader = header;
-                } else if (callIdHeader == null && header.isCallIdHeader()) {
-                    header = header.ensure();
-                    callIdHeader = header;
-                } else if (routeHeader == null && header.isRouteHeader()) {
-                    header = header.ensure();
-                    routeHeader = header;
-                } else if (recordRouteHeader == null && header.isRecordRouteHeader()) {
-                    header = header.ensure();
-                    recordRouteHeader = header;
+                    seen[id] = true;
                 }
 
-                headers.computeIfAbsent(headerName.toString(), k -> new ArrayList<>(4)).add(header);
+                headers.add(id, header);
             }
         }
 
@@ -2229,33 +2294,89 @@ public class SipParser {
         final Buffer msg = buffer.slice(startIndex, buffer.getReaderIndex());
 
         if (initialLine.isRequestLine()) {
-            return new ImmutableSipRequest(msg,
-                                           initialLine.toRequestLine(),
-                                           headers,
-                                           toHeader,
-                                           fromHeader,
-                                           cSeqHeader,
-                                           callIdHeader,
-                                           maxForwardsHeader,
-                                           viaHeader,
-                                           routeHeader,
-                                           recordRouteHeader,
-                                           contactHeader,
-                                           payload);
+            return new ImmutableSipRequest(msg, initialLine.toRequestLine(), headers, payload);
         } else {
-            return new ImmutableSipResponse(msg,
-                                            initialLine.toResponseLine(),
-                                            headers,
-                                            toHeader,
-                                            fromHeader,
-                                            cSeqHeader,
-                                            callIdHeader,
-                                            maxForwardsHeader,
-                                            viaHeader,
-                                            routeHeader,
-                                            recordRouteHeader,
-                                            contactHeader,
-                                            payload);
+            return new ImmutableSipResponse(msg, initialLine.toResponseLine(), headers, payload);
+        }
+    }
+
+    /**
+     * Frame the supplied buffer into a {@link SipMessage} but, unlike {@link #frame(Buffer)},
+     * without parsing any of the headers up front. Only the position of each header name and
+     * value is recorded, the headers are then parsed the first time they are asked for.
+     *
+     * This is considerably cheaper when only a few headers (e.g. the Call-ID and CSeq) are
+     * of interest. The only header that is always parsed is the Content-Length since we need it
+     * to find the body.
+     *
+     * @param buffer
+     * @return the framed {@link SipMessage}
+     */
+    public static SipMessage frameLazy(final Buffer buffer) throws IOException {
+
+        if (!couldBeSipMessage(buffer)) {
+            throw new SipParseException(0, "Cannot be a SIP message because is doesnt start with \"SIP\" "
+                                           + "(for responses) or a method (for requests)");
+        }
+
+        final int startIndex = buffer.getReaderIndex();
+
+        final SipInitialLine initialLine = SipInitialLine.parse(buffer.readLine());
+
+        final SipHeaderIndex index = new SipHeaderIndex();
+        int contentLength = 0;
+
+        while (consumeCRLF(buffer) != 2) {
+            final int nameStart = buffer.getReaderIndex();
+            final Buffer headerName = SipParser.nextHeaderName(buffer);
+            if (headerName == null) {
+                break;
+            }
+
+            final int valueStart = buffer.getReaderIndex();
+            consumeHeaderLine(buffer);
+            final int lineStop = buffer.getReaderIndex();
+
+            final int id = SipHeaderNames.lookup(headerName);
+            index.add(id,
+                      nameStart - startIndex,
+                      nameStart - startIndex + headerName.getReadableBytes(),
+                      valueStart - startIndex,
+                      lineStop - startIndex);
+
+            if (id == SipHeaderNames.CONTENT_LENGTH) {
+                final List<Buffer> values = readHeaderValues(headerName, buffer.slice(valueStart, lineStop)).values;
+                if (!values.isEmpty()) {
+                    contentLength = new SipHeaderImpl(headerName, values.get(0)).ensure()
+                            .toContentLengthHeader().getContentLength();
+                }
+            }
+        }
+
+        Buffer payload = null;
+        if (contentLength > 0 && buffer.hasReadableBytes()) {
+            payload = buffer.readBytes(Math.min(contentLength, buffer.getReadableBytes()));
+        } else {
+            payload = Buffers.EMPTY_BUFFER;
+        }
+
+        final Buffer msg = buffer.slice(startIndex, buffer.getReaderIndex());
+
+        if (initialLine.isRequestLine()) {
+            return new ImmutableSipRequest(msg, initialLine.toRequestLine(), index, payload);
+        } else {
+            return new ImmutableSipResponse(msg, initialLine.toResponseLine(), index, payload);
+        }
+    }
+
+    /**
+     * Consume the rest of a header line, including the CRLF and any folded lines following it.
+     */
+    private static void consumeHeaderLine(final Buffer buffer) throws IOException {
+        while (buffer.hasReadableBytes()) {
+            if (buffer.readByte() == LF && !isNext(buffer, SP) && !isNext(buffer, HTAB)) {
+                return;
+            }
         }
     }
 
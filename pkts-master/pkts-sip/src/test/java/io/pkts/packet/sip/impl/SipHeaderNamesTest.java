@@ -0,0 +1,157 @@
+package io.pkts.packet.sip.impl;
+
+import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
+import io.pkts.packet.sip.SipMessage;
+import io.pkts.packet.sip.header.CallIdHeader;
+import io.pkts.packet.sip.header.SipHeader;
+import io.pkts.packet.sip.header.ViaHeader;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class SipHeaderNamesTest {
+
+    @Test
+    public void testLookupAllNames() throws Exception {
+        for (int id = 1; id < SipHeaderNames.COUNT; ++id) {
+            final String name = SipHeaderNames.name(id).toString();
+            assertThat(SipHeaderNames.lookup(name), is(id));
+            assertThat(SipHeaderNames.lookup(name.toLowerCase()), is(id));
+            assertThat(SipHeaderNames.lookup(name.toUpperCase()), is(id));
+            assertThat(SipHeaderNames.lookup(Buffers.wrap(name.toLowerCase())), is(id));
+        }
+    }
+
+    @Test
+    public void testLookupCompactNames() throws Exception {
+        assertThat(SipHeaderNames.lookup(Buffers.wrap("t")), is(SipHeaderNames.TO));
+        assertThat(SipHeaderNames.lookup(Buffers.wrap("F")), is(SipHeaderNames.FROM));
+        assertThat(SipHeaderNames.lookup(Buffers.wrap("i")), is(SipHeaderNames.CALL_ID));
+        assertThat(SipHeaderNames.lookup(Buffers.wrap("v")), is(SipHeaderNames.VIA));
+        assertThat(SipHeaderNames.lookup(Buffers.wrap("m")), is(SipHeaderNames.CONTACT));
+        assertThat(SipHeaderNames.lookup(Buffers.wrap("l")), is(SipHeaderNames.CONTENT_LENGTH));
+        assertThat(SipHeaderNames.lookup(Buffers.wrap("c")), is(SipHeaderNames.CONTENT_TYPE));
+        assertThat(SipHeaderNames.lookup(Buffers.wrap("k")), is(SipHeaderNames.SUPPORTED));
+    }
+
+    @Test
+    public void testLookupUnknown() throws Exception {
+        assertThat(SipHeaderNames.lookup(Buffers.wrap("X-Hello")), is(SipHeaderNames.UNKNOWN));
+        assertThat(SipHeaderNames.lookup(Buffers.wrap("a")), is(SipHeaderNames.UNKNOWN));
+        assertThat(SipHeaderNames.lookup(Buffers.wrap("Vias")), is(SipHeaderNames.UNKNOWN));
+        assertThat(SipHeaderNames.lookup(Buffers.wrap("Call_ID")), is(SipHeaderNames.UNKNOWN));
+        assertThat(SipHeaderNames.lookup(""), is(SipHeaderNames.UNKNOWN));
+        assertThat(SipHeaderNames.lookup("Proxy-Authenticate-And-Then-Some"), is(SipHeaderNames.UNKNOWN));
+    }
+
+    /**
+     * The name is only the readable bytes of the buffer, not whatever
+     * surrounds it.
+     */
+    @Test
+    public void testLookupSlice() throws Exception {
+        final Buffer buffer = Buffers.wrap("Call-ID: 1234");
+        assertThat(SipHeaderNames.lookup(buffer.slice(0, 7)), is(SipHeaderNames.CALL_ID));
+        assertThat(SipHeaderNames.lookup(buffer.slice(0, 4)), is(SipHeaderNames.UNKNOWN));
+
+        buffer.readBytes(5);
+        assertThat(SipHeaderNames.lookup(buffer.readBytes(2)), is(SipHeaderNames.UNKNOWN));
+
+        final Buffer via = Buffers.wrap("xxVIAxx");
+        via.readBytes(2);
+        assertThat(SipHeaderNames.lookup(via.readBytes(3)), is(SipHeaderNames.VIA));
+    }
+
+    @Test
+    public void testFramersByName() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("REGISTER sip:127.0.0.1 SIP/2.0\r\n");
+        sb.append("v: SIP/2.0/UDP 10.0.1.14:5069;rport;branch=z9hG4bK662351435\r\n");
+        sb.append("VIA: SIP/2.0/UDP 10.0.1.15:5069;branch=z9hG4bK-2\r\n");
+        sb.append("f: <sip:jonas@127.0.0.1>;tag=1923738050\r\n");
+        sb.append("t: <sip:jonas@127.0.0.1>\r\n");
+        sb.append("i: 123641868\r\n");
+        sb.append("CSeq: 1 REGISTER\r\n");
+        sb.append("Content-Length: 0\r\n");
+        sb.append("\r\n");
+
+        final SipMessage msg = SipMessage.frame(sb.toString());
+        assertThat(msg.getCallIDHeader().getCallId().toString(), is("123641868"));
+        assertThat(msg.getViaHeaders().size(), is(2));
+        assertThat(msg.getHeaders("Via").size(), is(2));
+        assertThat(msg.getHeaders("v").size(), is(2));
+        assertThat(msg.getHeader("call-id").get().ensure(), instanceOf(CallIdHeader.class));
+        assertThat(msg.getHeader("VIA").get().ensure(), instanceOf(ViaHeader.class));
+    }
+
+    /**
+     * A framer registered for a well known header replaces the built-in one, no matter the case of
+     * the name it is registered or looked up by.
+     */
+    @Test
+    public void testRegisteredFramerWins() throws Exception {
+        final Buffer name = Buffers.wrap("expires");
+        final Function<SipHeader, ? extends SipHeader> framer = header -> header;
+        final Function<SipHeader, ? extends SipHeader> builtIn = SipParser.getFramer(Buffers.wrap("Expires"));
+        SipParser.framers.put(name, framer);
+        try {
+            assertThat(SipParser.getFramer(Buffers.wrap("Expires")) == framer, is(true));
+            assertThat(SipParser.getFramer(Buffers.wrap("EXPIRES")) == framer, is(true));
+        } finally {
+            SipParser.framers.remove(name);
+        }
+        assertThat(SipParser.getFramer(Buffers.wrap("Expires")) == builtIn, is(true));
+
+        final Buffer unknown = Buffers.wrap("X-Hello");
+        SipParser.framers.put(unknown, framer);
+        try {
+            assertThat(SipParser.getFramer(Buffers.wrap("x-hello")) == framer, is(true));
+        } finally {
+            SipParser.framers.remove(unknown);
+        }
+        assertThat(SipParser.getFramer(Buffers.wrap("X-Hello")), is((Object) null));
+    }
+
+    /**
+     * The headers grouped by name must be grouped the same way as when asking for them by name.
+     */
+    @Test
+    public void testHeaderValuesByName() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("REGISTER sip:127.0.0.1 SIP/2.0\r\n");
+        sb.append("v: SIP/2.0/UDP 10.0.1.14:5069;rport;branch=z9hG4bK662351435\r\n");
+        sb.append("VIA: SIP/2.0/UDP 10.0.1.15:5069;branch=z9hG4bK-2\r\n");
+        sb.append("f: <sip:jonas@127.0.0.1>;tag=1923738050\r\n");
+        sb.append("To: <sip:jonas@127.0.0.1>\r\n");
+        sb.append("i: 123641868\r\n");
+        sb.append("CSeq: 1 REGISTER\r\n");
+        sb.append("X-Hello: 1\r\n");
+        sb.append("x-hello: 2\r\n");
+        sb.append("Content-Length: 0\r\n");
+        sb.append("\r\n");
+
+        for (final SipMessage msg : new SipMessage[] { SipMessage.frame(sb.toString()),
+                SipParser.frameLazy(Buffers.wrap(sb.toString())) }) {
+            final Map<String, List<SipHeader>> values = msg.getHeaderValues();
+            assertThat(values.keySet(), is((Object) new HashSet<>(Arrays.asList("Via", "From", "To", "Call-ID",
+                    "CSeq", "X-Hello", "Content-Length"))));
+            for (final Map.Entry<String, List<SipHeader>> entry : values.entrySet()) {
+                assertThat(entry.getValue(), is(msg.getHeaders(entry.getKey())));
+            }
+            assertThat(values.get("X-Hello").size(), is(2));
+            assertThat(msg.countNoOfHeaders(), is(7));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package io.pkts.packet.sip.impl;
+
+import io.pkts.PktsTestBase;
+import io.pkts.RawData;
+import io.pkts.buffer.Buffers;
+import io.pkts.packet.sip.SipMessage;
+import io.pkts.packet.sip.header.SipHeader;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * A message framed lazily must look exactly the same as one framed the
+ * regular way, no matter in which order the headers are asked for.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public class SipParserFrameLazyTest extends PktsTestBase {
+
+    @Test
+    public void testSameAsRegularFraming() throws Exception {
+        assertSameAsRegularFraming(RawData.sipInvite);
+        assertSameAsRegularFraming(RawData.sipInviteOneRecordRouteHeader);
+        assertSameAsRegularFraming(RawData.sipInviteThreeRecordRoutes);
+        assertSameAsRegularFraming(RawData.sipInviteOneRouteHeader);
+        assertSameAsRegularFraming(RawData.sipInviteTwoRouteHeaders);
+        assertSameAsRegularFraming(RawData.sipInviteThreeRouteHeaders);
+        assertSameAsRegularFraming(RawData.sipInviteFourViaHeaders);
+        assertSameAsRegularFraming(RawData.twoHundredOkFourViaOnOneLine);
+        assertSameAsRegularFraming(sipFrameBuffer.getArray());
+        assertSameAsRegularFraming(sipFrameBuffer180Response.getArray());
+    }
+
+    @Test
+    public void testCallIdOnly() throws Exception {
+        final SipMessage msg = SipMessage.frameLazy(Buffers.wrap(RawData.sipInviteFourViaHeaders));
+        final SipMessage expected = SipMessage.frame(Buffers.wrap(RawData.sipInviteFourViaHeaders));
+        assertThat(msg.getCallIDHeader().getCallId(), is(expected.getCallIDHeader().getCallId()));
+        assertThat(msg.getCSeqHeader().getSeqNumber(), is(expected.getCSeqHeader().getSeqNumber()));
+        assertThat(msg.getContent(), is(expected.getContent()));
+        assertThat(msg.toBuffer(), is(expected.toBuffer()));
+    }
+
+    @Test
+    public void testCompactFoldedAndEmptyHeaders() throws Exception {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("REGISTER sip:127.0.0.1 SIP/2.0\r\n");
+        sb.append("v: SIP/2.0/UDP 10.0.1.14:5069;rport;branch=z9hG4bK662351435\r\n");
+        sb.append("f: <sip:jonas@127.0.0.1>;tag=1923738050\r\n");
+        sb.append("t: <sip:jonas@127.0.0.1>\r\n");
+        sb.append("Hello: \r\n");
+        sb.append("i: 123641868\r\n");
+        sb.append("CSeq: 1 REGISTER\r\n");
+        sb.append("Subject: hello,\r\n");
+        sb.append(" world\r\n");
+        sb.append("l: 4\r\n");
+        sb.append("\r\n");
+        sb.append("abcd");
+
+        final SipMessage lazy = SipMessage.frameLazy(Buffers.wrap(sb.toString()));
+        assertThat(lazy.getCallIDHeader().getCallId().toString(), is("123641868"));
+        assertThat(lazy.getFromHeader().getTag().toString(), is("1923738050"));
+        assertThat(lazy.getViaHeader().getBranch().toString(), is("z9hG4bK662351435"));
+        assertThat(lazy.getContent().toString(), is("abcd"));
+        assertThat(lazy.getContentLength(), is(4));
+        assertThat(lazy.getMaxForwards(), nullValue());
+
+        final SipMessage eager = SipMessage.frame(Buffers.wrap(sb.toString()));
+        assertThat(lazy.getHeader("Subject").get().getValue(), is(eager.getHeader("Subject").get().getValue()));
+        assertThat(lazy.getHeader("Hello").get().getValue(), is(eager.getHeader("Hello").get().getValue()));
+        assertSameHeaders(lazy, eager);
+    }
+
+    private void assertSameAsRegularFraming(final byte[] data) throws Exception {
+        final SipMessage eager = SipMessage.frame(Buffers.wrap(data));
+
+        // first through the getters for the system headers...
+        SipMessage lazy = SipMessage.frameLazy(Buffers.wrap(data));
+        assertSameSystemHeaders(lazy, eager);
+        assertSameHeaders(lazy, eager);
+
+        // ... and then the other way around
+        lazy = SipMessage.frameLazy(Buffers.wrap(data));
+        assertSameHeaders(lazy, eager);
+        assertSameSystemHeaders(lazy, eager);
+
+        assertThat(lazy.toBuffer(), is(eager.toBuffer()));
+        assertThat(lazy.getContent(), is(eager.getContent()));
+        assertThat(lazy.getInitialLine(), is(eager.getInitialLine()));
+    }
+
+    private static void assertSameSystemHeaders(final SipMessage lazy, final SipMessage eager) throws Exception {
+        assertThat(String.valueOf(lazy.getToHeader()), is(String.valueOf(eager.getToHeader())));
+        assertThat(String.valueOf(lazy.getFromHeader()), is(String.valueOf(eager.getFromHeader())));
+        assertThat(String.valueOf(lazy.getCSeqHeader()), is(String.valueOf(eager.getCSeqHeader())));
+        assertThat(String.valueOf(lazy.getCallIDHeader()), is(String.valueOf(eager.getCallIDHeader())));
+        assertThat(String.valueOf(lazy.getMaxForwards()), is(String.valueOf(eager.getMaxForwards())));
+        assertThat(String.valueOf(lazy.getViaHeader()), is(String.valueOf(eager.getViaHeader())));
+        assertThat(String.valueOf(lazy.getRouteHeader()), is(String.valueOf(eager.getRouteHeader())));
+        assertThat(String.valueOf(lazy.getRecordRouteHeader()), is(String.valueOf(eager.getRecordRouteHeader())));
+        assertThat(String.valueOf(lazy.getContactHeader()), is(String.valueOf(eager.getContactHeader())));
+        assertThat(lazy.getContentLength(), is(eager.getContentLength()));
+        assertThat(lazy.getViaHeaders().toString(), is(eager.getViaHeaders().toString()));
+        assertThat(lazy.getRouteHeaders().toString(), is(eager.getRouteHeaders().toString()));
+        assertThat(lazy.getRecordRouteHeaders().toString(), is(eager.getRecordRouteHeaders().toString()));
+    }
+
+    private static void assertSameHeaders(final SipMessage lazy, final SipMessage eager) throws Exception {
+        assertThat(lazy.countNoOfHeaders(), is(eager.countNoOfHeaders()));
+        final Map<String, List<SipHeader>> expected = eager.getHeaderValues();
+        final Map<String, List<SipHeader>> actual = lazy.getHeaderValues();
+        assertThat(actual.keySet(), is(expected.keySet()));
+        for (final String name : expected.keySet()) {
+            assertThat(actual.get(name).toString(), is(expected.get(name).toString()));
+            for (int i = 0; i < expected.get(name).size(); ++i) {
+                assertThat(actual.get(name).get(i).getClass().getName(),
+                        is(expected.get(name).get(i).getClass().getName()));
+            }
+        }
+    }
+}
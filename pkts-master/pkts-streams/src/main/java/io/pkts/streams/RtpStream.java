@@ -15,14 +15,37 @@ import io.pkts.packet.rtp.RtpPacket;
  */
 public interface RtpStream extends Stream<RtpPacket> {
 
+    /**
+     * The highest interarrival jitter, as defined by RFC 3550 section 6.4.1,
+     * seen during the life time of this stream.
+     * 
+     * @return the jitter in the same unit as {@link RtpPacket#getArrivalTime()}
+     */
     long getMaxJitter();
 
+    /**
+     * The mean of the interarrival jitter.
+     * 
+     * @return the jitter in the same unit as {@link RtpPacket#getArrivalTime()}
+     */
     long getMeanJitter();
 
+    /**
+     * The longest time between two consecutive packets.
+     * 
+     * @return the delta in the same unit as {@link RtpPacket#getArrivalTime()}
+     */
     long getMaxDelta();
 
+    /**
+     * The number of packets that never showed up, judging by the sequence
+     * numbers.
+     */
     long getLostPackets();
 
+    /**
+     * The number of packets that didn't arrive in sequence.
+     */
     long getSequenceErrors();
 
 }
@@ -0,0 +1,26 @@
+package io.pkts.streams;
+
+import io.pkts.packet.TCPPacket;
+import io.pkts.packet.sip.SipMessage;
+
+/**
+ * SIP messages sent over a stream based transport, such as TCP, are not
+ * aligned with the packets carrying them. A message may be split across many
+ * segments or a single segment may contain several messages. Once the stream
+ * has been reassembled and a complete {@link SipMessage} has been framed, it
+ * is handed to this listener.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public interface SipMessageListener {
+
+    /**
+     * @param packet
+     *            the TCP segment that completed the message, which is the one
+     *            to look at for things like the arrival time and the addresses
+     *            of the connection.
+     * @param message
+     *            the SIP message.
+     */
+    void onMessage(TCPPacket packet, SipMessage message);
+}
@@ -63,4 +63,25 @@ public interface StreamListener<T extends Packet> {
      */
     void endStream(Stream<T> stream);
 
+    /**
+     * Called when the {@link StreamHandler} lets go of a {@link Stream} in
+     * order to bound its memory usage. This happens either when the
+     * {@link Stream} has been idle for too long, when there are too many
+     * {@link Stream}s being tracked at the same time or when the
+     * {@link Stream} ended a while ago and no longer is needed for catching
+     * late retransmissions.
+     * 
+     * A {@link Stream} that expires before it ended (for SIP, see
+     * {@link SipStream#isTerminated()}) will never see a call to
+     * {@link #endStream(Stream)}, so this is the last chance to e.g. write it
+     * to file. Any {@link Packet}s showing up after
+     * this will be considered part of a new {@link Stream}.
+     * 
+     * @param stream
+     *            the {@link Stream} that is about to be released.
+     */
+    default void expired(final Stream<T> stream) {
+        // left empty intentionally
+    }
+
 }
@@ -11,72 +11,236 @@ import io.pkts.streams.StreamId;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.NavigableSet;
-import java.util.TreeSet;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
+ * An {@link RtpStream} that computes its statistics as the packets arrive, as
+ * described in RFC 3550 appendix A.1 (sequence numbers and loss) and A.8
+ * (interarrival jitter). The state kept per stream is fixed in size so unless
+ * the stream has been asked to retain its packets, which it needs in order to
+ * be able to {@link #write(OutputStream)} them, no packets are kept around.
+ * 
+ * All times, including the jitter, are in the same unit as
+ * {@link RtpPacket#getArrivalTime()}, which for most pcaps is microseconds.
+ * The jitter is computed under that assumption, i.e., for pcaps with
+ * nanosecond resolution it will be off by a factor of 1000.
+ * 
  * @author jonas@jonasborjesson.com
  * 
  */
 public final class DefaultRtpStream implements RtpStream {
 
-    private static final Logger logger = LoggerFactory.getLogger(DefaultRtpStream.class);
+    /**
+     * Same limits as the example code in RFC 3550 appendix A.1. A jump in
+     * sequence numbers larger than MAX_DROPOUT is considered an error unless
+     * the next packet continues from where the jump ended, in which case the
+     * sender has been restarted. Anything that is up to MAX_MISORDER behind
+     * is a packet arriving out of order (or a duplicate).
+     */
+    private static final int MAX_DROPOUT = 3000;
+    private static final int MAX_MISORDER = 100;
+    private static final int RTP_SEQ_MOD = 1 << 16;
+
+    private static final long TICKS_PER_SECOND = 1000000L;
 
     private final PcapGlobalHeader globalHeader;
 
     private final LongStreamId ssrc;
 
-    private final NavigableSet<RtpPacket> packets;
+    /**
+     * The RTP clock rate of the payload, which is needed to relate the RTP
+     * timestamps to the time of arrival.
+     */
+    private final int clockRate;
+
+    /**
+     * Only if the stream has been asked to retain its packets, otherwise null.
+     */
+    private final List<RtpPacket> packets;
+
+    private long firstArrival = -1;
+    private long lastArrival = -1;
+    private long lastTimestamp;
+    private long maxDelta;
+
+    private int baseSeq;
+    private int maxSeq;
+    private int badSeq;
+    private long cycles;
+    private long received;
+    private long sequenceErrors;
+
+    /**
+     * The current jitter estimate along with the sum of all the estimates so
+     * far so that we can figure out the mean.
+     */
+    private double jitter;
+    private double maxJitter;
+    private double totalJitter;
+    private long jitterSamples;
 
     /**
      * 
      */
     public DefaultRtpStream(final PcapGlobalHeader globalHeader, final long ssrc) {
+        this(globalHeader, ssrc, 8000, false);
+    }
+
+    /**
+     * 
+     * @param globalHeader
+     * @param ssrc
+     * @param clockRate
+     *            the RTP clock rate, see {@link #getClockRate(int)}.
+     * @param retainPackets
+     *            whether all packets should be kept so that the stream can be
+     *            written to file later on.
+     */
+    public DefaultRtpStream(final PcapGlobalHeader globalHeader, final long ssrc, final int clockRate,
+            final boolean retainPackets) {
+        if (clockRate <= 0) {
+            throw new IllegalArgumentException("The clock rate must be positive");
+        }
         this.globalHeader = globalHeader;
         this.ssrc = new LongStreamId(ssrc);
-        this.packets = new TreeSet<RtpPacket>(new PacketComparator());
+        this.clockRate = clockRate;
+        this.packets = retainPackets ? new ArrayList<RtpPacket>() : null;
     }
 
-    public void onPacket(final RtpPacket msg) {
+    /**
+     * The clock rate of the static payload types as listed in RFC 3551. The
+     * dynamic ones (96 - 127) are negotiated through e.g. SDP, which we don't
+     * know about, so they are assumed to run at 8000 Hz, which is what most
+     * telephony codecs use.
+     * 
+     * @param payloadType
+     * @return
+     */
+    public static int getClockRate(final int payloadType) {
+        switch (payloadType) {
+        case 6:
+            return 16000;
+        case 10:
+        case 11:
+            return 44100;
+        case 16:
+            return 11025;
+        case 17:
+            return 22050;
+        case 14:
+        case 25:
+        case 26:
+        case 28:
+        case 31:
+        case 32:
+        case 33:
+        case 34:
+            return 90000;
+        default:
+            return 8000;
+        }
+    }
+
+    public void onPacket(final RtpPacket msg) throws IOException {
 
         if (msg == null) {
             return;
         }
 
-        final RtpPacket previousMsg = this.packets.isEmpty() ? null : this.packets.last();
-        this.packets.add(msg);
+        if (this.packets != null) {
+            this.packets.add(msg);
+        }
 
-        if (previousMsg != null && msg.getArrivalTime() < previousMsg.getArrivalTime()) {
-            redrive();
+        final long arrival = msg.getArrivalTime();
+        final long timestamp = msg.getTimestamp();
+        final int seq = msg.getSeqNumber();
+
+        if (this.firstArrival == -1) {
+            this.firstArrival = arrival;
+            this.lastArrival = arrival;
+            this.lastTimestamp = timestamp;
+            initSequence(seq);
+            ++this.received;
             return;
         }
 
+        updateJitter(arrival, timestamp);
+        updateSequence(seq);
+    }
+
+    private void initSequence(final int seq) {
+        this.baseSeq = seq;
+        this.maxSeq = seq;
+        this.badSeq = RTP_SEQ_MOD + 1;
+        this.cycles = 0;
+        this.received = 0;
     }
 
     /**
-     * If we merge multiple pcaps we may get packets "arriving" out-of-order. For now, this is a
-     * very simple approach where we just redrive everything, which won't be the most efficient if
-     * you merge a large pcap that was captured before the pcap you already loaded but the merge
-     * command should take care of that and make sure that we merge things in the correct order so
-     * therefore we dont care here...
+     * RFC 3550 appendix A.1, minus the probation since by the time a packet
+     * has been framed as RTP we have already decided that it is.
      */
-    private void redrive() {
-        // TODO
-        if (logger.isInfoEnabled()) {
-            logger.info("Out-of-sequence event detected. Redriving all traffic.");
+    private void updateSequence(final int seq) {
+        final int delta = seq - this.maxSeq & 0xFFFF;
+        if (delta == 0) {
+            // duplicate
+            ++this.sequenceErrors;
+        } else if (delta < MAX_DROPOUT) {
+            if (seq < this.maxSeq) {
+                this.cycles += RTP_SEQ_MOD;
+            }
+            this.maxSeq = seq;
+        } else if (delta <= RTP_SEQ_MOD - MAX_MISORDER) {
+            if (seq == this.badSeq) {
+                // two sequential packets, assume that the other side restarted
+                // without telling us so just re-sync
+                initSequence(seq);
+            } else {
+                ++this.sequenceErrors;
+                this.badSeq = seq + 1 & 0xFFFF;
+                return;
+            }
+        } else {
+            // out of order
+            ++this.sequenceErrors;
         }
+        ++this.received;
+    }
+
+    /**
+     * RFC 3550 appendix A.8. The jitter is the smoothed mean deviation of the
+     * difference in transit time between two packets, which is the same as
+     * the difference between how far apart they arrived and how far apart they
+     * were sent according to their RTP timestamps.
+     */
+    private void updateJitter(final long arrival, final long timestamp) {
+        final long delta = arrival - this.lastArrival;
+        this.maxDelta = Math.max(this.maxDelta, delta);
 
+        // the timestamps are 32 bits and will wrap around
+        final int sent = (int) (timestamp - this.lastTimestamp);
+        final double d = Math.abs(delta - sent * (double) TICKS_PER_SECOND / this.clockRate);
+        this.jitter += (d - this.jitter) / 16;
+        this.maxJitter = Math.max(this.maxJitter, this.jitter);
+        this.totalJitter += this.jitter;
+        ++this.jitterSamples;
+
+        this.lastArrival = arrival;
+        this.lastTimestamp = timestamp;
     }
 
     /**
      * {@inheritDoc}
+     * 
+     * Note, unless the stream has been asked to retain its packets this list
+     * will always be empty.
      */
     @Override
     public List<RtpPacket> getPackets() {
+        if (this.packets == null) {
+            return Collections.emptyList();
+        }
         return new ArrayList<RtpPacket>(this.packets);
     }
 
@@ -85,8 +249,7 @@ public final class DefaultRtpStream implements RtpStream {
      */
     @Override
     public long getDuration() {
-        // TODO Auto-generated method stub
-        return 0;
+        return this.lastArrival - this.firstArrival;
     }
 
     /**
@@ -94,11 +257,7 @@ public final class DefaultRtpStream implements RtpStream {
      */
     @Override
     public long getTimeOfFirstPacket() {
-        if (this.packets.isEmpty()) {
-            return -1;
-        }
-
-        return this.packets.first().getArrivalTime();
+        return this.firstArrival;
     }
 
     /**
@@ -106,11 +265,7 @@ public final class DefaultRtpStream implements RtpStream {
      */
     @Override
     public long getTimeOfLastPacket() {
-        if (this.packets.isEmpty()) {
-            return -1;
-        }
-
-        return this.packets.last().getArrivalTime();
+        return this.lastArrival;
     }
 
     /**
@@ -121,43 +276,68 @@ public final class DefaultRtpStream implements RtpStream {
         return this.ssrc;
     }
 
+    public int getClockRate() {
+        return this.clockRate;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void write(final OutputStream out) throws IOException {
-        // TODO Auto-generated method stub
+        if (this.packets == null) {
+            throw new IllegalStateException("The stream has not been asked to retain its packets");
+        }
+        for (final RtpPacket pkt : this.packets) {
+            pkt.write(out);
+        }
+    }
 
+    public PcapGlobalHeader getGlobalHeader() {
+        return this.globalHeader;
     }
 
     @Override
     public long getMaxJitter() {
-        // TODO Auto-generated method stub
-        return 0;
+        return Math.round(this.maxJitter);
     }
 
     @Override
     public long getMeanJitter() {
-        // TODO Auto-generated method stub
-        return 0;
+        if (this.jitterSamples == 0) {
+            return 0;
+        }
+        return Math.round(this.totalJitter / this.jitterSamples);
     }
 
     @Override
     public long getMaxDelta() {
-        // TODO Auto-generated method stub
-        return 0;
+        return this.maxDelta;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * The number of packets expected, based on the highest sequence number
+     * seen, minus the number of packets received. Since duplicates are
+     * counted as received this could end up negative, in which case zero is
+     * returned.
+     */
     @Override
     public long getLostPackets() {
-        // TODO Auto-generated method stub
-        return 0;
+        final long expected = this.cycles + this.maxSeq - this.baseSeq + 1;
+        return Math.max(0, expected - this.received);
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * The number of duplicates, packets arriving out of order and large jumps
+     * in sequence numbers.
+     */
     @Override
     public long getSequenceErrors() {
-        // TODO Auto-generated method stub
-        return 0;
+        return this.sequenceErrors;
     }
 
 }
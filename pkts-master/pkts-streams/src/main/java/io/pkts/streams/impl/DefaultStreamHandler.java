@@ -3,6 +3,7 @@
  */
 package io.pkts.streams.impl;
 
+import io.pkts.Clock;
 import io.pkts.frame.Frame;
 import io.pkts.framer.FramerManager;
 import io.pkts.packet.IPPacket;
@@ -12,6 +13,7 @@ import io.pkts.packet.rtp.RtpPacket;
 import io.pkts.packet.sip.SipPacket;
 import io.pkts.protocol.Protocol;
 import io.pkts.streams.FragmentListener;
+import io.pkts.streams.RtpStream;
 import io.pkts.streams.SipStatistics;
 import io.pkts.streams.Stream;
 import io.pkts.streams.StreamHandler;
@@ -47,6 +49,11 @@ public final class DefaultStreamHandler implements StreamHandler {
      */
     private final FramerManager framerManager;
 
+    /**
+     * The clock the SIP and RTP streams are timed out by.
+     */
+    private final Clock clock;
+
     /**
      * The handler that deals with SIP.
      */
@@ -59,15 +66,58 @@ public final class DefaultStreamHandler implements StreamHandler {
 
     /**
      * If any IP fragments are detected, then we will consule this listener.
+     * By default, IPv4 fragments are reassembled by a
+     * {@link IPv4FragmentReassembler}.
      */
     private FragmentListener fragmentListener;
 
+    /**
+     * The limits handed to the {@link SipStreamHandler} once it is created.
+     */
+    private final long sipIdleTimeout;
+    private final int maxLiveSipStreams;
+    private final long sipTerminatedLinger;
+
+    /**
+     * Whether the {@link RtpStream}s should keep their packets around, see
+     * {@link #setRetainRtpPackets(boolean)}.
+     */
+    private boolean retainRtpPackets;
+
     /**
      * 
      */
     public DefaultStreamHandler() {
+        this(SipStreamHandler.DEFAULT_IDLE_TIMEOUT, SipStreamHandler.DEFAULT_MAX_LIVE_STREAMS,
+                SipStreamHandler.DEFAULT_TERMINATED_LINGER);
+    }
+
+    /**
+     * See {@link SipStreamHandler#SipStreamHandler(FramerManager, long, int, long)}
+     * for how the SIP streams are expired.
+     * 
+     * @param sipIdleTimeout
+     * @param maxLiveSipStreams
+     * @param sipTerminatedLinger
+     */
+    public DefaultStreamHandler(final long sipIdleTimeout, final int maxLiveSipStreams,
+            final long sipTerminatedLinger) {
+        this(FramerManager.getInstance().getClock(), sipIdleTimeout, maxLiveSipStreams, sipTerminatedLinger);
+    }
+
+    /**
+     * Used by the {@link ShardedStreamHandler}, where every shard runs on its
+     * own thread and keeps its own time.
+     */
+    DefaultStreamHandler(final Clock clock, final long sipIdleTimeout, final int maxLiveSipStreams,
+            final long sipTerminatedLinger) {
         // should really be injected.
         this.framerManager = FramerManager.getInstance();
+        this.clock = clock;
+        this.fragmentListener = new IPv4FragmentReassembler();
+        this.sipIdleTimeout = sipIdleTimeout;
+        this.maxLiveSipStreams = maxLiveSipStreams;
+        this.sipTerminatedLinger = sipTerminatedLinger;
     }
 
     /**
@@ -125,12 +175,14 @@ public final class DefaultStreamHandler implements StreamHandler {
             final Class<?> parameterArgClass = (Class<?>) parameterArgType;
             if (parameterArgClass.equals(SipPacket.class)) {
                 if (this.sipStreamHandler == null) {
-                    this.sipStreamHandler = new SipStreamHandler(this.framerManager);
+                    this.sipStreamHandler = new SipStreamHandler(this.framerManager, this.clock, this.sipIdleTimeout,
+                            this.maxLiveSipStreams, this.sipTerminatedLinger);
                 }
                 this.sipStreamHandler.addListener((StreamListener<SipPacket>) listener);
             } else if (parameterArgClass.equals(RtpPacket.class)) {
                 if (this.rtpStreamHandler == null) {
-                    this.rtpStreamHandler = new RtpStreamHandler(this.framerManager);
+                    this.rtpStreamHandler = new RtpStreamHandler(this.framerManager, this.clock,
+                            RtpStreamHandler.DEFAULT_IDLE_TIMEOUT, this.retainRtpPackets);
                 }
                 this.rtpStreamHandler.addListener((StreamListener<RtpPacket>) listener);
             }
@@ -169,6 +221,9 @@ public final class DefaultStreamHandler implements StreamHandler {
     }
 
     /**
+     * Replace the default {@link IPv4FragmentReassembler}. Setting the
+     * listener to null means that all fragmented packets will be dropped.
+     * 
      * @param listener
      */
     @Override
@@ -176,6 +231,36 @@ public final class DefaultStreamHandler implements StreamHandler {
         this.fragmentListener = listener;
     }
 
+    /**
+     * Expire all streams that are due at the given point in time. Typically
+     * used with {@link Long#MAX_VALUE} once the last packet has been
+     * processed so that every remaining stream is handed to
+     * {@link StreamListener#expired(Stream)}.
+     * 
+     * @param now
+     *            in the same unit as {@link Packet#getArrivalTime()}.
+     */
+    public void expire(final long now) {
+        if (this.sipStreamHandler != null) {
+            this.sipStreamHandler.expire(now);
+        }
+        if (this.rtpStreamHandler != null) {
+            this.rtpStreamHandler.expire(now);
+        }
+    }
+
+    /**
+     * By default an {@link RtpStream} only keeps its statistics and not the
+     * packets themselves. If you need the packets, e.g. in order to write the
+     * stream to file, then turn this on before the {@link StreamListener} for
+     * RTP is added.
+     * 
+     * @param retain
+     */
+    public void setRetainRtpPackets(final boolean retain) {
+        this.retainRtpPackets = retain;
+    }
+
     @Override
     public SipStatistics getSipStatistics() {
         if (this.sipStreamHandler != null) {
@@ -0,0 +1,533 @@
+package io.pkts.streams.impl;
+
+import io.pkts.Clock;
+import io.pkts.buffer.Buffer;
+import io.pkts.buffer.Buffers;
+import io.pkts.framer.FramerManager;
+import io.pkts.framer.IPv4Framer;
+import io.pkts.packet.IPPacket;
+import io.pkts.packet.IPv4Packet;
+import io.pkts.packet.Packet;
+import io.pkts.streams.FragmentListener;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link FragmentListener} that reassembles fragmented IPv4 datagrams.
+ *
+ * Fragments are grouped by source, destination, identification and protocol
+ * (RFC 791) and the parts of the datagram that are still missing are kept
+ * track of through a list of "holes" as described in RFC 815. Once the last
+ * hole has been filled in, a new {@link IPv4Packet} is created with the
+ * reassembled payload and a header based on the one in the first fragment,
+ * with the fragmentation flags and offset cleared (any IP options are
+ * dropped). The new packet has the same parent as the fragment that completed
+ * the datagram so the rest of the protocol stack, e.g. UDP and SIP, is framed
+ * just as if the datagram never had been fragmented to begin with.
+ *
+ * To protect against fragments that never complete, every datagram has to be
+ * reassembled within {@link #DEFAULT_TIMEOUT a certain time} of its first
+ * fragment. The time is taken from the {@link FramerManager} clock, which is
+ * driven by the timestamps of the packets in the pcap, so the timeout is in
+ * the same unit as {@link Packet#getArrivalTime()}. There is also an upper
+ * limit on the size of any single datagram as well as on the total number of
+ * bytes held across all datagrams, when the latter is reached the oldest
+ * datagrams are thrown away to make room for new ones.
+ *
+ * Fragments overlapping data we already have are dealt with according to the
+ * {@link OverlapPolicy}. Fragments that contradict each other in ways that
+ * cannot be resolved, e.g. two "last" fragments with different lengths, cause
+ * the entire datagram to be dropped.
+ *
+ * Note that this class is not thread safe.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class IPv4FragmentReassembler implements FragmentListener {
+
+    /**
+     * What to do when a fragment overlaps data that we already have received.
+     */
+    public enum OverlapPolicy {
+        /**
+         * The data that arrived first wins, only the holes are filled in.
+         */
+        FIRST,
+
+        /**
+         * The data that arrived last wins and overwrites what we had.
+         */
+        LAST,
+
+        /**
+         * Overlapping fragments are considered an attack (or broken) and the
+         * entire datagram is dropped.
+         */
+        DISCARD;
+    }
+
+    /**
+     * 30 seconds (same as Linux) in microseconds, which is the resolution of
+     * the timestamps in most pcaps.
+     */
+    public static final long DEFAULT_TIMEOUT = 30000000L;
+
+    /**
+     * The largest datagram IPv4 can express.
+     */
+    public static final int DEFAULT_MAX_DATAGRAM_SIZE = 65535;
+
+    public static final long DEFAULT_MAX_MEMORY = 4 * 1024 * 1024;
+
+    private static final int HEADER_LENGTH = 20;
+
+    private static final IPv4Framer ipv4Framer = new IPv4Framer();
+
+    private final Clock clock;
+
+    private final long timeout;
+
+    private final int maxDatagramSize;
+
+    private final long maxMemory;
+
+    private final OverlapPolicy overlapPolicy;
+
+    /**
+     * All the datagrams currently being reassembled in the order they were
+     * created, which also is the order in which they will time out.
+     */
+    private final Map<Key, Datagram> datagrams = new LinkedHashMap<>();
+
+    private long memory;
+
+    private long reassembled;
+
+    private long expired;
+
+    private long dropped;
+
+    public IPv4FragmentReassembler() {
+        this(FramerManager.getInstance().getClock(), DEFAULT_TIMEOUT, DEFAULT_MAX_DATAGRAM_SIZE,
+                DEFAULT_MAX_MEMORY, OverlapPolicy.FIRST);
+    }
+
+    /**
+     * @param clock
+     *            the clock driving the timeouts, which typically is the one of
+     *            the {@link FramerManager}.
+     * @param timeout
+     *            the time, in the unit of the clock, a datagram has to be
+     *            reassembled within, counting from its first fragment.
+     * @param maxDatagramSize
+     *            the largest datagram, including the IP header, we are willing
+     *            to reassemble.
+     * @param maxMemory
+     *            the maximum number of bytes held across all the datagrams
+     *            being reassembled.
+     * @param overlapPolicy
+     *            what to do with overlapping fragments.
+     */
+    public IPv4FragmentReassembler(final Clock clock, final long timeout, final int maxDatagramSize,
+            final long maxMemory, final OverlapPolicy overlapPolicy) {
+        if (clock == null) {
+            throw new IllegalArgumentException("The clock cannot be null");
+        }
+        if (overlapPolicy == null) {
+            throw new IllegalArgumentException("The overlap policy cannot be null");
+        }
+        if (timeout <= 0 || maxDatagramSize <= HEADER_LENGTH || maxMemory <= 0) {
+            throw new IllegalArgumentException("The timeout and the memory limits must be greater than zero");
+        }
+        this.clock = clock;
+        this.timeout = timeout;
+        this.maxDatagramSize = Math.min(maxDatagramSize, DEFAULT_MAX_DATAGRAM_SIZE);
+        this.maxMemory = maxMemory;
+        this.overlapPolicy = overlapPolicy;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Only IPv4 fragments are reassembled, anything else is dropped.
+     */
+    @Override
+    public IPPacket handleFragment(final IPPacket ipPacket) {
+        expire(this.clock.currentTimeMillis());
+
+        if (!(ipPacket instanceof IPv4Packet)) {
+            ++this.dropped;
+            return null;
+        }
+
+        final IPv4Packet ip = (IPv4Packet) ipPacket;
+        final Buffer buffer = ip.getPayload();
+        final byte[] payload = buffer == null ? new byte[0] : buffer.getArray();
+        final int first = ip.getFragmentOffset() * 8;
+        final int length = ip.getTotalIPLength() - ip.getHeaderLength();
+        final int last = first + length - 1;
+        final boolean more = ip.isMoreFragmentsSet();
+
+        // truncated by the capture or simply bogus. Also, all but the last
+        // fragment must be a multiple of eight bytes.
+        if (length <= 0 || payload.length < length || more && (length & 7) != 0) {
+            ++this.dropped;
+            return null;
+        }
+
+        final Key key = new Key(ip);
+        Datagram datagram = this.datagrams.get(key);
+        if (datagram == null) {
+            datagram = new Datagram(this.clock.currentTimeMillis());
+            this.datagrams.put(key, datagram);
+        }
+
+        if (!datagram.accept(first, last, more, this.maxDatagramSize - HEADER_LENGTH)
+                || this.overlapPolicy == OverlapPolicy.DISCARD && datagram.overlaps(first, last)
+                || !ensureCapacity(key, datagram, last + 1)) {
+            drop(key, datagram);
+            return null;
+        }
+
+        datagram.fill(ip, payload, first, last, more, this.overlapPolicy == OverlapPolicy.LAST);
+        if (!datagram.isComplete()) {
+            return null;
+        }
+
+        this.datagrams.remove(key);
+        this.memory -= datagram.data.length;
+        ++this.reassembled;
+        return datagram.toPacket(ip.getParentPacket());
+    }
+
+    /**
+     * Throw away all datagrams that should have been reassembled by now.
+     *
+     * @param now
+     *            the current time according to the clock.
+     */
+    public void expire(final long now) {
+        final Iterator<Datagram> it = this.datagrams.values().iterator();
+        while (it.hasNext()) {
+            final Datagram datagram = it.next();
+            if (now - datagram.created < this.timeout) {
+                return;
+            }
+            it.remove();
+            this.memory -= datagram.data.length;
+            ++this.expired;
+        }
+    }
+
+    /**
+     * @return the number of datagrams successfully reassembled.
+     */
+    public long getReassembled() {
+        return this.reassembled;
+    }
+
+    /**
+     * @return the number of datagrams that timed out before they could be
+     *         reassembled.
+     */
+    public long getExpired() {
+        return this.expired;
+    }
+
+    /**
+     * @return the number of fragments and datagrams dropped because they were
+     *         broken, overlapping (depending on the {@link OverlapPolicy}) or
+     *         simply didn't fit within the memory limits.
+     */
+    public long getDropped() {
+        return this.dropped;
+    }
+
+    /**
+     * @return the number of datagrams currently being reassembled.
+     */
+    public int getPending() {
+        return this.datagrams.size();
+    }
+
+    /**
+     * @return the number of bytes currently held by the datagrams being
+     *         reassembled.
+     */
+    public long getMemory() {
+        return this.memory;
+    }
+
+    private void drop(final Key key, final Datagram datagram) {
+        this.datagrams.remove(key);
+        this.memory -= datagram.data.length;
+        ++this.dropped;
+    }
+
+    /**
+     * Make sure that the datagram is large enough to hold the given number of
+     * bytes, evicting the oldest datagrams if we are running out of memory.
+     *
+     * @return false if there simply isn't enough room for the datagram.
+     */
+    private boolean ensureCapacity(final Key key, final Datagram datagram, final int size) {
+        if (datagram.data.length >= size) {
+            return true;
+        }
+
+        final int capacity = Math.min(Math.max(size, datagram.data.length * 2), this.maxDatagramSize - HEADER_LENGTH);
+        final int needed = capacity - datagram.data.length;
+        final Iterator<Map.Entry<Key, Datagram>> it = this.datagrams.entrySet().iterator();
+        while (this.memory + needed > this.maxMemory && it.hasNext()) {
+            final Map.Entry<Key, Datagram> entry = it.next();
+            if (entry.getKey().equals(key)) {
+                continue;
+            }
+            it.remove();
+            this.memory -= entry.getValue().data.length;
+            ++this.dropped;
+        }
+
+        if (this.memory + needed > this.maxMemory) {
+            return false;
+        }
+
+        final byte[] data = new byte[capacity];
+        System.arraycopy(datagram.data, 0, data, 0, datagram.data.length);
+        datagram.data = data;
+        this.memory += needed;
+        return true;
+    }
+
+    /**
+     * The fields that identifies which datagram a fragment belongs to.
+     */
+    private static final class Key {
+        private final int source;
+        private final int destination;
+        private final int identification;
+        private final int protocol;
+
+        private Key(final IPv4Packet ip) {
+            this.source = ip.getRawSourceIpInt();
+            this.destination = ip.getRawDestinationIpInt();
+            this.identification = ip.getIdentification();
+            this.protocol = ip.getProtocolNumber();
+        }
+
+        @Override
+        public int hashCode() {
+            int result = this.source;
+            result = 31 * result + this.destination;
+            result = 31 * result + this.identification;
+            return 31 * result + this.protocol;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return this.source == other.source && this.destination == other.destination
+                    && this.identification == other.identification && this.protocol == other.protocol;
+        }
+    }
+
+    /**
+     * A datagram being reassembled.
+     */
+    private static final class Datagram {
+
+        private static final int INFINITY = Integer.MAX_VALUE;
+
+        private final long created;
+
+        private byte[] data = new byte[0];
+
+        /**
+         * The holes, i.e. the missing parts of the datagram, as pairs of first
+         * and last (inclusive) offsets. Until we have seen the last fragment
+         * the size of the datagram is unknown so the last hole stretches to
+         * infinity.
+         */
+        private int[] holes = new int[] { 0, INFINITY };
+
+        private int noOfHoles = 1;
+
+        /**
+         * The size of the payload, which is known once the last fragment has
+         * been received.
+         */
+        private int size = -1;
+
+        /**
+         * The end of the data received so far.
+         */
+        private int end;
+
+        /**
+         * The header of the first fragment, which becomes the header of the
+         * reassembled datagram.
+         */
+        private int source;
+        private int destination;
+        private int identification;
+        private int protocol;
+        private int timeToLive;
+        private int typeOfService;
+
+        private Datagram(final long created) {
+            this.created = created;
+        }
+
+        /**
+         * Check so that the fragment is consistent with what we have received
+         * so far.
+         */
+        private boolean accept(final int first, final int last, final boolean more, final int maxSize) {
+            if (last >= maxSize) {
+                return false;
+            }
+
+            if (this.size != -1) {
+                return last < this.size && (more || last + 1 == this.size);
+            }
+
+            // the last fragment cannot end before data we already have
+            return more || last + 1 >= this.end;
+        }
+
+        private boolean overlaps(final int first, final int last) {
+            int missing = 0;
+            for (int i = 0; i < this.noOfHoles; ++i) {
+                final int from = Math.max(first, this.holes[2 * i]);
+                final int to = Math.min(last, this.holes[2 * i + 1]);
+                if (from <= to) {
+                    missing += to - from + 1;
+                }
+            }
+            return missing != last - first + 1;
+        }
+
+        private void fill(final IPv4Packet ip, final byte[] payload, final int first, final int last,
+                final boolean more, final boolean overwrite) {
+            if (first == 0) {
+                this.source = ip.getRawSourceIpInt();
+                this.destination = ip.getRawDestinationIpInt();
+                this.identification = ip.getIdentification();
+                this.protocol = ip.getProtocolNumber();
+                this.timeToLive = ip.getTimeToLive();
+                this.typeOfService = ip.getTypeOfService();
+            }
+
+            if (overwrite) {
+                System.arraycopy(payload, 0, this.data, first, last - first + 1);
+            }
+
+            // RFC 815, every hole the fragment touches is replaced by the
+            // (at most two) parts of the hole the fragment doesn't cover.
+            final int[] old = this.holes;
+            final int count = this.noOfHoles;
+            this.holes = new int[2 * count + 2];
+            this.noOfHoles = 0;
+            for (int i = 0; i < count; ++i) {
+                final int holeFirst = old[2 * i];
+                final int holeLast = old[2 * i + 1];
+                if (!more && holeFirst > last) {
+                    // beyond the end of the datagram
+                    continue;
+                }
+
+                if (first > holeLast || last < holeFirst) {
+                    addHole(holeFirst, holeLast);
+                    continue;
+                }
+
+                if (!overwrite) {
+                    final int from = Math.max(first, holeFirst);
+                    final int to = Math.min(last, holeLast);
+                    System.arraycopy(payload, from - first, this.data, from, to - from + 1);
+                }
+
+                if (first > holeFirst) {
+                    addHole(holeFirst, first - 1);
+                }
+                if (last < holeLast && more) {
+                    addHole(last + 1, holeLast);
+                }
+            }
+
+            this.end = Math.max(this.end, last + 1);
+            if (!more) {
+                this.size = last + 1;
+            }
+        }
+
+        private void addHole(final int first, final int last) {
+            this.holes[2 * this.noOfHoles] = first;
+            this.holes[2 * this.noOfHoles + 1] = last;
+            ++this.noOfHoles;
+        }
+
+        private boolean isComplete() {
+            return this.noOfHoles == 0;
+        }
+
+        private IPv4Packet toPacket(final Packet parent) {
+            final byte[] bytes = new byte[HEADER_LENGTH + this.size];
+            final int totalLength = bytes.length;
+            bytes[0] = 0x45;
+            bytes[1] = (byte) this.typeOfService;
+            bytes[2] = (byte) (totalLength >>> 8);
+            bytes[3] = (byte) totalLength;
+            bytes[4] = (byte) (this.identification >>> 8);
+            bytes[5] = (byte) this.identification;
+            bytes[8] = (byte) this.timeToLive;
+            bytes[9] = (byte) this.protocol;
+            putInt(bytes, 12, this.source);
+            putInt(bytes, 16, this.destination);
+            final int checksum = checksum(bytes);
+            bytes[10] = (byte) (checksum >>> 8);
+            bytes[11] = (byte) checksum;
+            System.arraycopy(this.data, 0, bytes, HEADER_LENGTH, this.size);
+
+            try {
+                return ipv4Framer.frame(parent, Buffers.wrap(bytes));
+            } catch (final IOException e) {
+                // cannot happen since we are framing a byte-array
+                throw new RuntimeException("Unable to frame the reassembled IPv4 packet", e);
+            }
+        }
+
+        private static void putInt(final byte[] bytes, final int index, final int value) {
+            bytes[index] = (byte) (value >>> 24);
+            bytes[index + 1] = (byte) (value >>> 16);
+            bytes[index + 2] = (byte) (value >>> 8);
+            bytes[index + 3] = (byte) value;
+        }
+
+        /**
+         * RFC 1071 - Computing the Internet Checksum
+         */
+        private static int checksum(final byte[] bytes) {
+            long sum = 0;
+            for (int i = 0; i < HEADER_LENGTH; i += 2) {
+                sum += (bytes[i] & 0xFF) << 8 | bytes[i + 1] & 0xFF;
+            }
+
+            while (sum >> 16 != 0) {
+                sum = (sum & 0xffff) + (sum >> 16);
+            }
+
+            return (int) ~sum & 0xFFFF;
+        }
+    }
+
+}
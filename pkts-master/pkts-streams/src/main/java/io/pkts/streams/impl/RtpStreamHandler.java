@@ -3,6 +3,7 @@
  */
 package io.pkts.streams.impl;
 
+import io.pkts.Clock;
 import io.pkts.frame.PcapGlobalHeader;
 import io.pkts.framer.Framer;
 import io.pkts.framer.FramerManager;
@@ -14,22 +15,40 @@ import io.pkts.streams.RtpStream;
 import io.pkts.streams.StreamListener;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * There is nothing in the RTP stream itself that says that it has ended (RTCP
+ * BYE aside) so a stream is considered to have ended once no packets have
+ * been seen for a while, as measured by the clock of the
+ * {@link FramerManager}. At that point the registered listener is told that
+ * the stream ended and that it has been let go of.
+ * 
  * @author jonas@jonasborjesson.com
  */
 public class RtpStreamHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(RtpStreamHandler.class);
 
+    /**
+     * 30 seconds, in microseconds, which is in line with the media timeouts
+     * typically found in SBCs and the like.
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 30L * 1000000L;
+
     private StreamListener<RtpPacket> rtpListener;
 
-    private final Map<Long, DefaultRtpStream> streams = new HashMap<Long, DefaultRtpStream>();
+    /**
+     * Kept in access order, i.e., the stream that has been quiet for the
+     * longest is always at the head.
+     */
+    private final Map<Long, DefaultRtpStream> streams = new LinkedHashMap<Long, DefaultRtpStream>(16, 0.75f, true);
 
     /**
      * We use the framer manager to update hints when it comes to what protocols the
@@ -39,17 +58,55 @@ public class RtpStreamHandler {
      */
     private final FramerManager framerManager;
 
+    private final Clock clock;
+
+    private final long idleTimeout;
+
+    private final boolean retainPackets;
+
     /**
      * 
      */
     public RtpStreamHandler(final FramerManager framerManager) {
+        this(framerManager, DEFAULT_IDLE_TIMEOUT, false);
+    }
+
+    /**
+     * 
+     * @param framerManager
+     * @param idleTimeout
+     *            for how long a stream may go without any packets before it
+     *            is considered to have ended, in the same unit as
+     *            {@link Packet#getArrivalTime()}.
+     * @param retainPackets
+     *            whether the streams should keep all their packets, which is
+     *            only needed if you want to write them to file. Otherwise the
+     *            streams only keep their statistics.
+     */
+    public RtpStreamHandler(final FramerManager framerManager, final long idleTimeout, final boolean retainPackets) {
+        this(framerManager, framerManager.getClock(), idleTimeout, retainPackets);
+    }
+
+    /**
+     * Same as above but the streams are timed out according to the given
+     * {@link Clock} instead of the one of the {@link FramerManager}.
+     */
+    public RtpStreamHandler(final FramerManager framerManager, final Clock clock, final long idleTimeout,
+            final boolean retainPackets) {
+        if (idleTimeout <= 0) {
+            throw new IllegalArgumentException("The idle timeout must be positive");
+        }
         this.framerManager = framerManager;
+        this.clock = clock;
+        this.idleTimeout = idleTimeout;
+        this.retainPackets = retainPackets;
     }
 
     public void processFrame(final Packet frame) throws PacketParseException {
         try {
             final RtpPacket rtp = (RtpPacket) frame.getPacket(Protocol.RTP);
             final long ssrc = rtp.getSyncronizationSource();
+            expire(this.clock.currentTimeMillis());
             DefaultRtpStream stream = this.streams.get(ssrc);
             if (stream == null) {
                 // TODO: need to fix this.
@@ -63,10 +120,13 @@ public class RtpStreamHandler {
                             + "link type isn't recognized. Currently only Ethernet II "
                             + "and Linux SLL (linux cooked capture) are implemented");
                 }
-                stream = new DefaultRtpStream(header, ssrc);
+                final int clockRate = DefaultRtpStream.getClockRate(rtp.getPayloadType());
+                stream = new DefaultRtpStream(header, ssrc, clockRate, this.retainPackets);
+                stream.onPacket(rtp);
                 this.streams.put(ssrc, stream);
                 notifyStartStream(stream, rtp);
             } else {
+                stream.onPacket(rtp);
                 notifyPacketReceived(stream, rtp);
             }
         } catch (final IOException e) {
@@ -75,6 +135,38 @@ public class RtpStreamHandler {
         }
     }
 
+    /**
+     * End all streams that have been quiet for longer than the idle timeout.
+     * This is done every time a packet is processed but once all packets have
+     * been processed you can call this method with {@link Long#MAX_VALUE} to
+     * end all remaining streams.
+     * 
+     * @param now
+     *            the current time according to the clock of the
+     *            {@link FramerManager}.
+     */
+    public void expire(final long now) {
+        final Iterator<DefaultRtpStream> it = this.streams.values().iterator();
+        while (it.hasNext()) {
+            final DefaultRtpStream stream = it.next();
+            if (now != Long.MAX_VALUE && now - stream.getTimeOfLastPacket() < this.idleTimeout) {
+                return;
+            }
+            it.remove();
+            notifyEndStream(stream);
+            notifyExpired(stream);
+        }
+    }
+
+    /**
+     * A snapshot of the streams that haven't ended yet, keyed by SSRC. Our own
+     * map is in access order, so even a lookup would reshuffle it, hence the
+     * copy.
+     */
+    public Map<Long, ? extends RtpStream> getStreams() {
+        return Collections.unmodifiableMap(new LinkedHashMap<Long, RtpStream>(this.streams));
+    }
+
     public void addListener(final StreamListener<RtpPacket> listener) {
         this.rtpListener = listener;
     }
@@ -97,4 +189,10 @@ public class RtpStreamHandler {
         }
     }
 
+    private void notifyExpired(final RtpStream stream) {
+        if (this.rtpListener != null) {
+            this.rtpListener.expired(stream);
+        }
+    }
+
 }
@@ -0,0 +1,457 @@
+package io.pkts.streams.impl;
+
+import io.pkts.Pcap;
+import io.pkts.packet.IPPacket;
+import io.pkts.packet.PCapPacket;
+import io.pkts.packet.Packet;
+import io.pkts.packet.rtp.RtpPacket;
+import io.pkts.packet.sip.SipPacket;
+import io.pkts.protocol.Protocol;
+import io.pkts.streams.FragmentListener;
+import io.pkts.streams.SipStatistics;
+import io.pkts.streams.Stream;
+import io.pkts.streams.StreamHandler;
+import io.pkts.streams.StreamId;
+import io.pkts.streams.StreamListener;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link StreamHandler} that spreads the work over a number of shards, each
+ * with its own thread and its own {@link DefaultStreamHandler}. A SIP message
+ * is sent to the shard given by the hash of its Call-ID and an RTP packet to
+ * the shard given by its SSRC, so every packet belonging to the same stream
+ * ends up on the same shard, in the order they were captured.
+ *
+ * The thread calling {@link #nextPacket(Packet)} (i.e., the one looping over
+ * the pcap) still has to reassemble any IP fragments and figure out the
+ * Call-ID or SSRC, which means that it frames the packet. Use
+ * {@link Pcap#loop(io.pkts.PacketHandler, ForkJoinPool)} to have that done in
+ * parallel as well.
+ *
+ * Note that the {@link StreamListener}s are called from the shards, i.e., they
+ * must be thread safe. All calls concerning a particular stream are made from
+ * the same thread though. The listeners must be added before the first packet.
+ *
+ * Once all packets have been processed you must {@link #close()} the handler,
+ * which waits for the shards to finish. Since the shards own their streams and
+ * statistics, {@link #getStreams()} and {@link #getSipStatistics()} can only be
+ * asked for after that.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class ShardedStreamHandler implements StreamHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedStreamHandler.class);
+
+    /**
+     * The packets are handed over to the shards in batches of this size to
+     * keep the cost of going through the queue down.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    /**
+     * A shard that has had nothing to do for this long takes over the batch
+     * that is being filled up for it, so packets trickling in slowly (e.g.
+     * from a live capture) are not held back until the batch is full.
+     */
+    private static final long FLUSH_INTERVAL_MS = 10;
+
+    /**
+     * How many batches each shard may have waiting before the thread calling
+     * {@link #nextPacket(Packet)} is blocked.
+     */
+    private static final int QUEUE_CAPACITY = 256;
+
+    /**
+     * Tells a shard to stop.
+     */
+    private static final Packet[] POISON = new Packet[0];
+
+    private final Shard[] shards;
+
+    private FragmentListener fragmentListener;
+
+    private volatile boolean closed;
+
+    /**
+     * One shard per available processor.
+     */
+    public ShardedStreamHandler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ShardedStreamHandler(final int shards) {
+        this(shards, SipStreamHandler.DEFAULT_IDLE_TIMEOUT, SipStreamHandler.DEFAULT_MAX_LIVE_STREAMS,
+                SipStreamHandler.DEFAULT_TERMINATED_LINGER);
+    }
+
+    /**
+     * See {@link DefaultStreamHandler#DefaultStreamHandler(long, int, long)}.
+     * Note that the max number of live SIP streams applies to each shard.
+     *
+     * @param shards
+     *            the number of shards.
+     * @param sipIdleTimeout
+     * @param maxLiveSipStreams
+     * @param sipTerminatedLinger
+     */
+    public ShardedStreamHandler(final int shards, final long sipIdleTimeout, final int maxLiveSipStreams,
+            final long sipTerminatedLinger) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("The number of shards must be positive");
+        }
+        this.fragmentListener = new IPv4FragmentReassembler();
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; ++i) {
+            this.shards[i] = new Shard(i, sipIdleTimeout, maxLiveSipStreams, sipTerminatedLinger);
+        }
+        for (final Shard shard : this.shards) {
+            shard.thread.start();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean nextPacket(Packet packet) {
+        if (this.closed) {
+            throw new IllegalStateException("The handler has been closed");
+        }
+
+        try {
+            if (packet.hasProtocol(Protocol.IPv4)) {
+                final IPPacket ip = (IPPacket) packet.getPacket(Protocol.IPv4);
+                if (ip.isFragmented()) {
+                    packet = handleFragmentation(ip);
+                    if (packet == null) {
+                        return true;
+                    }
+                }
+            }
+
+            final int hash;
+            if (packet.hasProtocol(Protocol.SIP)) {
+                final SipPacket sip = (SipPacket) packet.getPacket(Protocol.SIP);
+                hash = sip.getCallIDHeader().getValue().hashCode();
+            } else if (packet.hasProtocol(Protocol.RTP)) {
+                final RtpPacket rtp = (RtpPacket) packet.getPacket(Protocol.RTP);
+                hash = Long.hashCode(rtp.getSyncronizationSource());
+            } else {
+                return true;
+            }
+
+            final int spread = hash ^ hash >>> 16;
+            this.shards[(spread & 0x7FFFFFFF) % this.shards.length].add(packet);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (final Exception e) {
+            // same as the DefaultStreamHandler, a packet we cannot make
+            // sense of is just skipped
+            logger.warn("Unable to figure out which shard the packet belongs to", e);
+        }
+
+        return true;
+    }
+
+    private IPPacket handleFragmentation(final IPPacket ipPacket) {
+        if (this.fragmentListener == null) {
+            return null;
+        }
+        try {
+            return this.fragmentListener.handleFragment(ipPacket);
+        } catch (final Throwable t) {
+            logger.warn("Exception thrown by FragmentListener when processing the IP frame", t);
+        }
+        return null;
+    }
+
+    /**
+     * The same {@link StreamListener} is added to every shard.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void addStreamListener(final StreamListener<? extends Packet> listener)
+            throws IllegalArgumentException {
+        for (final Shard shard : this.shards) {
+            shard.handler.addStreamListener(listener);
+        }
+    }
+
+    /**
+     * The fragments are reassembled before the packets are handed over to
+     * the shards so the {@link FragmentListener} is only ever called from the
+     * thread calling {@link #nextPacket(Packet)}.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void setFragmentListener(final FragmentListener listener) {
+        this.fragmentListener = listener;
+    }
+
+    /**
+     * The statistics of all the shards added up. Only allowed once the
+     * handler has been closed.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public SipStatistics getSipStatistics() {
+        ensureClosed();
+        final SipStreamHandler.SipStatisticsImpl stats = new SipStreamHandler.SipStatisticsImpl();
+        boolean sip = false;
+        for (final Shard shard : this.shards) {
+            final SipStatistics shardStats = shard.handler.getSipStatistics();
+            if (shardStats != null) {
+                stats.add((SipStreamHandler.SipStatisticsImpl) shardStats);
+                sip = true;
+            }
+        }
+        return sip ? stats : null;
+    }
+
+    /**
+     * The streams of all the shards. Only allowed once the handler has been
+     * closed.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<StreamId, ? extends Stream> getStreams() {
+        ensureClosed();
+        Map<StreamId, Stream> streams = null;
+        for (final Shard shard : this.shards) {
+            final Map<StreamId, ? extends Stream> shardStreams = shard.handler.getStreams();
+            if (shardStreams != null) {
+                if (streams == null) {
+                    streams = new HashMap<StreamId, Stream>();
+                }
+                streams.putAll(shardStreams);
+            }
+        }
+        return streams;
+    }
+
+    /**
+     * See {@link DefaultStreamHandler#expire(long)}. Since the shards may
+     * only be touched by their own threads while running, this is only
+     * allowed once the handler has been closed.
+     *
+     * @param now
+     */
+    public void expire(final long now) {
+        ensureClosed();
+        for (final Shard shard : this.shards) {
+            shard.handler.expire(now);
+        }
+    }
+
+    /**
+     * The shards may only be touched by their own threads while running.
+     */
+    private void ensureClosed() {
+        if (!this.closed) {
+            throw new IllegalStateException("The handler must be closed before the shards can be accessed");
+        }
+    }
+
+    /**
+     * Hand over whatever is left to the shards and wait for them to process
+     * it. Once closed, no more packets can be added.
+     */
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+
+        boolean interrupted = false;
+        for (final Shard shard : this.shards) {
+            try {
+                shard.flush();
+                shard.queue.put(POISON);
+            } catch (final InterruptedException e) {
+                interrupted = true;
+                shard.thread.interrupt();
+            }
+        }
+
+        for (final Shard shard : this.shards) {
+            try {
+                shard.thread.join();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A shard has its own {@link DefaultStreamHandler}, which is only ever
+     * touched by the thread of the shard, and its own clock, which is driven
+     * by the packets handed to it.
+     */
+    private static final class Shard implements Runnable {
+
+        private final BlockingQueue<Packet[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        private final DefaultStreamHandler handler;
+
+        private final Thread thread;
+
+        /**
+         * The batch currently being filled up by the thread calling
+         * {@link ShardedStreamHandler#nextPacket(Packet)}. Guarded by the
+         * lock since the shard takes it over once it has been idle for a
+         * while.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+        private Packet[] batch = new Packet[BATCH_SIZE];
+        private int count;
+
+        /**
+         * The arrival time of the packet currently being processed.
+         */
+        private long now;
+
+        private Shard(final int index, final long sipIdleTimeout, final int maxLiveSipStreams,
+                final long sipTerminatedLinger) {
+            this.handler = new DefaultStreamHandler(() -> this.now, sipIdleTimeout, maxLiveSipStreams,
+                    sipTerminatedLinger);
+            // the fragments have already been dealt with
+            this.handler.setFragmentListener(null);
+            this.thread = new Thread(this, "pkts-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        private void add(final Packet packet) throws InterruptedException {
+            // if the packets come out of a pool they will be handed back as
+            // soon as nextPacket returns, unless we say otherwise.
+            final PCapPacket pcap = root(packet);
+            if (pcap != null) {
+                pcap.retain();
+            }
+            this.lock.lock();
+            try {
+                this.batch[this.count++] = packet;
+                if (this.count == BATCH_SIZE) {
+                    // still holding the lock so that the shard cannot take
+                    // over the next batch before this one is queued
+                    this.queue.put(this.batch);
+                    this.batch = new Packet[BATCH_SIZE];
+                    this.count = 0;
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        private void flush() throws InterruptedException {
+            this.lock.lock();
+            try {
+                if (this.count == 0) {
+                    return;
+                }
+                this.queue.put(copy(this.batch, this.count));
+                this.batch = new Packet[BATCH_SIZE];
+                this.count = 0;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        /**
+         * Called by the shard once it has been idle for a while. The batch is
+         * left alone if someone is adding to it right now, in which case it
+         * will be handed over soon enough anyway, or if a batch was queued in
+         * the meantime, since that one has to be processed first.
+         *
+         * @return the packets of the batch being filled up or null if there
+         *         are none or they cannot be taken over right now.
+         */
+        private Packet[] takeOver() {
+            if (!this.lock.tryLock()) {
+                return null;
+            }
+            try {
+                if (this.count == 0 || !this.queue.isEmpty()) {
+                    return null;
+                }
+                final Packet[] packets = copy(this.batch, this.count);
+                this.batch = new Packet[BATCH_SIZE];
+                this.count = 0;
+                return packets;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    Packet[] packets = this.queue.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    if (packets == null) {
+                        packets = takeOver();
+                        if (packets == null) {
+                            continue;
+                        }
+                    }
+                    if (packets == POISON) {
+                        return;
+                    }
+                    for (final Packet packet : packets) {
+                        process(packet);
+                    }
+                }
+            } catch (final InterruptedException e) {
+                logger.warn("Shard {} was interrupted, remaining packets are dropped", this.thread.getName());
+            }
+        }
+
+        private void process(final Packet packet) {
+            try {
+                this.now = packet.getArrivalTime();
+                this.handler.nextPacket(packet);
+            } catch (final RuntimeException e) {
+                logger.warn("Exception thrown when processing the packet", e);
+            } finally {
+                final PCapPacket pcap = root(packet);
+                if (pcap != null) {
+                    pcap.release();
+                }
+            }
+        }
+
+        private static Packet[] copy(final Packet[] packets, final int count) {
+            final Packet[] copy = new Packet[count];
+            System.arraycopy(packets, 0, copy, 0, count);
+            return copy;
+        }
+
+        private static PCapPacket root(final Packet packet) {
+            Packet root = packet;
+            while (root.getParentPacket() != null) {
+                root = root.getParentPacket();
+            }
+            return root instanceof PCapPacket ? (PCapPacket) root : null;
+        }
+    }
+
+}
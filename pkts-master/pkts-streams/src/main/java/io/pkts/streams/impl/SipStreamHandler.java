@@ -3,6 +3,7 @@
  */
 package io.pkts.streams.impl;
 
+import io.pkts.Clock;
 import io.pkts.frame.PcapGlobalHeader;
 import io.pkts.framer.Framer;
 import io.pkts.framer.FramerManager;
@@ -22,7 +23,8 @@ import io.pkts.streams.StreamId;
 import io.pkts.streams.StreamListener;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import org.slf4j.Logger;
@@ -35,8 +37,35 @@ public class SipStreamHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(SipStreamHandler.class);
 
-    private final Map<StreamId, BasicSipStream> sipStreams = new HashMap<StreamId, BasicSipStream>();
-    private final Map<StreamId, BasicSipStream> terminatedStreams = new HashMap<StreamId, BasicSipStream>();
+    /**
+     * One hour, in microseconds since that is the resolution of the pcap
+     * clock (for most pcaps anyway).
+     */
+    public static final long DEFAULT_IDLE_TIMEOUT = 60L * 60L * 1000000L;
+
+    public static final int DEFAULT_MAX_LIVE_STREAMS = 100000;
+
+    /**
+     * 64 * T1, which is how long a SIP transaction may keep retransmitting,
+     * in microseconds.
+     */
+    public static final long DEFAULT_TERMINATED_LINGER = 32L * 1000000L;
+
+    /**
+     * Both maps are kept in access order, which is the order in which the
+     * streams were last active, so the ones to expire are always found at the
+     * head.
+     */
+    private final Map<StreamId, BasicSipStream> sipStreams = new LinkedHashMap<StreamId, BasicSipStream>(16, 0.75f, true);
+    private final Map<StreamId, BasicSipStream> terminatedStreams = new LinkedHashMap<StreamId, BasicSipStream>(16, 0.75f, true);
+
+    private final Clock clock;
+
+    private final long idleTimeout;
+
+    private final int maxLiveStreams;
+
+    private final long terminatedLinger;
 
     private StreamListener<SipPacket> sipListener;
 
@@ -55,7 +84,46 @@ public class SipStreamHandler {
      * 
      */
     public SipStreamHandler(final FramerManager framerManager) {
+        this(framerManager, DEFAULT_IDLE_TIMEOUT, DEFAULT_MAX_LIVE_STREAMS, DEFAULT_TERMINATED_LINGER);
+    }
+
+    /**
+     * All times are measured by the clock of the {@link FramerManager}, i.e.
+     * in the same unit as {@link Packet#getArrivalTime()}.
+     * 
+     * @param framerManager
+     * @param idleTimeout
+     *            how long a stream that hasn't ended may go without any
+     *            messages before it is expired.
+     * @param maxLiveStreams
+     *            the maximum number of streams that haven't ended. Once
+     *            reached, the one that has been idle the longest is expired.
+     * @param terminatedLinger
+     *            how long an ended stream is kept around, since the last
+     *            message, in order to catch any retransmissions.
+     */
+    public SipStreamHandler(final FramerManager framerManager, final long idleTimeout, final int maxLiveStreams,
+            final long terminatedLinger) {
+        this(framerManager, framerManager.getClock(), idleTimeout, maxLiveStreams, terminatedLinger);
+    }
+
+    /**
+     * Same as above but the streams are timed out according to the given
+     * {@link Clock} instead of the one of the {@link FramerManager}, which is
+     * what you want if the packets aren't processed by the thread looping over
+     * the pcap.
+     */
+    public SipStreamHandler(final FramerManager framerManager, final Clock clock, final long idleTimeout,
+            final int maxLiveStreams, final long terminatedLinger) {
+        if (idleTimeout <= 0 || maxLiveStreams <= 0 || terminatedLinger < 0) {
+            throw new IllegalArgumentException("The idle timeout and the max number of streams must be positive "
+                    + "and the linger time cannot be negative");
+        }
         this.framerManager = framerManager;
+        this.clock = clock;
+        this.idleTimeout = idleTimeout;
+        this.maxLiveStreams = maxLiveStreams;
+        this.terminatedLinger = terminatedLinger;
     }
 
     private StreamId getStreamId(final SipPacket msg) throws SipPacketParseException {
@@ -75,6 +143,7 @@ public class SipStreamHandler {
                 return;
             }
             this.stats.count(msg);
+            expire(this.clock.currentTimeMillis());
             if (msg.isInfo() || msg.isOptions() || msg.isMessage()) {
                 return;
             }
@@ -99,6 +168,9 @@ public class SipStreamHandler {
                 stream.addMessage(msg);
                 notifyStartStream(stream, msg);
                 this.sipStreams.put(id, stream);
+                if (this.sipStreams.size() > this.maxLiveStreams) {
+                    expireEldest(this.sipStreams);
+                }
             } else {
                 final boolean wasAlreadyTerminated = stream.isTerminated();
                 stream.addMessage(msg);
@@ -115,6 +187,47 @@ public class SipStreamHandler {
         }
     }
 
+    /**
+     * Expire all streams that have been idle for too long and all ended
+     * streams that have been lingering long enough. This is done every time
+     * a message is processed but if you e.g. want to release all the
+     * remaining streams once the capture has been processed, call this
+     * method with {@link Long#MAX_VALUE}.
+     * 
+     * @param now
+     *            the current time according to the clock of the
+     *            {@link FramerManager}.
+     */
+    public void expire(final long now) {
+        expire(this.sipStreams, now, this.idleTimeout);
+        expire(this.terminatedStreams, now, this.terminatedLinger);
+    }
+
+    private void expire(final Map<StreamId, BasicSipStream> streams, final long now, final long timeout) {
+        final Iterator<BasicSipStream> it = streams.values().iterator();
+        while (it.hasNext()) {
+            final BasicSipStream stream = it.next();
+            if (now != Long.MAX_VALUE && now - stream.getTimeOfLastPacket() < timeout) {
+                return;
+            }
+            it.remove();
+            notifyExpired(stream);
+        }
+    }
+
+    private void expireEldest(final Map<StreamId, BasicSipStream> streams) {
+        final Iterator<BasicSipStream> it = streams.values().iterator();
+        final BasicSipStream stream = it.next();
+        it.remove();
+        notifyExpired(stream);
+    }
+
+    private void notifyExpired(final SipStream stream) {
+        if (this.sipListener != null) {
+            this.sipListener.expired(stream);
+        }
+    }
+
     private void notifyStartStream(final SipStream stream, final SipPacket pkt) {
         if (this.sipListener != null) {
             this.sipListener.startStream(stream, pkt);
@@ -170,7 +283,7 @@ public class SipStreamHandler {
         return this.stats;
     }
 
-    private static class SipStatisticsImpl implements SipStatistics {
+    static class SipStatisticsImpl implements SipStatistics {
 
         private long total;
 
@@ -194,6 +307,23 @@ public class SipStreamHandler {
             // left empty intentionally
         }
 
+        /**
+         * Add the numbers of another {@link SipStatisticsImpl} to this one.
+         */
+        public void add(final SipStatisticsImpl other) {
+            this.total += other.total;
+            this.inviteRequests += other.inviteRequests;
+            this.byeRequests += other.byeRequests;
+            this.ackRequests += other.ackRequests;
+            this.optionsRequests += other.optionsRequests;
+            this.messageRequests += other.messageRequests;
+            this.infoRequests += other.infoRequests;
+            this.cancelRequests += other.cancelRequests;
+            for (int i = 0; i < this.responses.length; ++i) {
+                this.responses[i] += other.responses[i];
+            }
+        }
+
         public void count(final SipPacket msg) throws SipPacketParseException {
             ++this.total;
             if (msg.isRequest()) {
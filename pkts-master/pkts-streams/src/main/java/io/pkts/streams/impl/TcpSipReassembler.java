@@ -0,0 +1,430 @@
+package io.pkts.streams.impl;
+
+import io.pkts.PacketHandler;
+import io.pkts.buffer.Buffer;
+import io.pkts.packet.IPPacket;
+import io.pkts.packet.Packet;
+import io.pkts.packet.TCPPacket;
+import io.pkts.packet.sip.SipMessage;
+import io.pkts.packet.sip.impl.SipMessageStreamBuilder;
+import io.pkts.protocol.Protocol;
+import io.pkts.streams.SipMessageListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reassembles TCP streams and frames the SIP messages sent over them.
+ *
+ * Framing every TCP segment on its own, which is what the regular protocol
+ * stack does, only works as long as every segment happens to contain exactly
+ * one SIP message. In reality, a large INVITE is split across several
+ * segments and several small messages may be sent in a single segment.
+ * Therefore, the payload of every direction of every connection is put back in
+ * sequence order and fed to a {@link SipMessageStreamBuilder}, which emits
+ * complete {@link SipMessage}s to the {@link SipMessageListener} as soon as
+ * they have been received.
+ *
+ * <ul>
+ * <li>Retransmitted data, i.e. data we already have seen, is dropped.</li>
+ * <li>Segments arriving ahead of the data we are waiting for are held on to,
+ * but only up to a certain number of bytes per direction. When that limit is
+ * reached, we assume that the missing data never will show up (e.g. the
+ * capture dropped it), skip ahead and throw away the partial message.</li>
+ * <li>A connection is forgotten as soon as it is reset and every direction is
+ * forgotten once all its data, up to and including the FIN, has been
+ * received.</li>
+ * <li>The size of a single message is limited by the
+ * {@link SipMessageStreamBuilder.Configuration} and a message that doesn't fit,
+ * or cannot be parsed, is dropped along with whatever is left of the segment.
+ * Since most SIP stacks start every message in a new segment, this is usually
+ * enough to get back on track.</li>
+ * <li>Finally, the number of connections kept track of is limited and when
+ * that limit is reached, the connection that has been idle the longest is
+ * thrown away.</li>
+ * </ul>
+ *
+ * Idle connections are cheap since the buffer for framing messages is only
+ * held on to while there actually is a partial message to hold on to.
+ *
+ * Note that this class is not thread safe.
+ *
+ * @author jonas@jonasborjesson.com
+ */
+public final class TcpSipReassembler implements PacketHandler {
+
+    public static final int DEFAULT_MAX_OUT_OF_ORDER_BYTES = 64 * 1024;
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 250000;
+
+    private final SipMessageListener listener;
+
+    private final SipMessageStreamBuilder.Configuration config;
+
+    private final int maxOutOfOrderBytes;
+
+    /**
+     * Every direction of every connection, in access order so that the one
+     * that has been idle the longest is the one evicted when there are too
+     * many.
+     */
+    private final Map<Key, Flow> flows;
+
+    private long messages;
+
+    private long errors;
+
+    private long gaps;
+
+    private long retransmissions;
+
+    public TcpSipReassembler(final SipMessageListener listener) {
+        this(listener, new SipMessageStreamBuilder.DefaultConfiguration(), DEFAULT_MAX_OUT_OF_ORDER_BYTES,
+                DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * @param listener
+     *            the listener that will receive all the SIP messages.
+     * @param config
+     *            the configuration for the {@link SipMessageStreamBuilder},
+     *            which limits the size of the messages.
+     * @param maxOutOfOrderBytes
+     *            the maximum number of bytes, per direction, we are willing to
+     *            hold on to while waiting for missing data.
+     * @param maxConnections
+     *            the maximum number of directions (so in practice, twice the
+     *            number of connections) to keep track of.
+     */
+    public TcpSipReassembler(final SipMessageListener listener, final SipMessageStreamBuilder.Configuration config,
+            final int maxOutOfOrderBytes, final int maxConnections) {
+        if (listener == null) {
+            throw new IllegalArgumentException("The listener cannot be null");
+        }
+        if (config == null) {
+            throw new IllegalArgumentException("The configuration cannot be null");
+        }
+        if (maxOutOfOrderBytes < 0 || maxConnections <= 0) {
+            throw new IllegalArgumentException("The limits cannot be negative");
+        }
+        this.listener = listener;
+        this.config = config;
+        this.maxOutOfOrderBytes = maxOutOfOrderBytes;
+        this.flows = new LinkedHashMap<Key, Flow>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, Flow> eldest) {
+                return size() > maxConnections;
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Anything that isn't TCP is simply ignored.
+     */
+    @Override
+    public boolean nextPacket(final Packet packet) throws IOException {
+        if (packet.hasProtocol(Protocol.TCP)) {
+            process((TCPPacket) packet.getPacket(Protocol.TCP));
+        }
+        return true;
+    }
+
+    /**
+     * Process a single TCP segment.
+     *
+     * @param tcp
+     */
+    public void process(final TCPPacket tcp) {
+        final Key key = new Key(tcp);
+        if (tcp.isRST()) {
+            this.flows.remove(key);
+            this.flows.remove(key.reverse());
+            return;
+        }
+
+        // the SYN consumes one sequence number.
+        final long seq = tcp.isSYN() ? tcp.getSequenceNumber() + 1 & 0xFFFFFFFFL : tcp.getSequenceNumber();
+        final Buffer payload = tcp.getPayload();
+        final int length = payload == null ? 0 : payload.getReadableBytes();
+        Flow flow = this.flows.get(key);
+        if (flow == null || tcp.isSYN() && flow.nextSeq != seq) {
+            // don't let e.g. the last ACK after a FIN bring the flow back
+            if (!tcp.isSYN() && length == 0) {
+                return;
+            }
+            flow = new Flow(seq);
+            this.flows.put(key, flow);
+        }
+
+        if (length > 0) {
+            receive(flow, seq, payload.getArray(), tcp);
+        }
+
+        if (tcp.isFIN()) {
+            flow.finSeq = seq + length & 0xFFFFFFFFL;
+        }
+
+        if (flow.finSeq == flow.nextSeq && flow.pending == null) {
+            this.flows.remove(key);
+        }
+    }
+
+    /**
+     * @return the number of SIP messages framed so far.
+     */
+    public long getMessages() {
+        return this.messages;
+    }
+
+    /**
+     * @return the number of times we had to give up on a message because it
+     *         either was too large or simply broken.
+     */
+    public long getErrors() {
+        return this.errors;
+    }
+
+    /**
+     * @return the number of times we have given up waiting for missing data.
+     */
+    public long getGaps() {
+        return this.gaps;
+    }
+
+    /**
+     * @return the number of segments containing data we already had.
+     */
+    public long getRetransmissions() {
+        return this.retransmissions;
+    }
+
+    /**
+     * @return the number of directions currently being kept track of.
+     */
+    public int getConnections() {
+        return this.flows.size();
+    }
+
+    private void receive(final Flow flow, final long seq, final byte[] data, final TCPPacket tcp) {
+        final int offset = (int) (seq - flow.nextSeq);
+        if (offset > 0) {
+            hold(flow, seq, data, tcp);
+            return;
+        }
+
+        if (offset < 0) {
+            ++this.retransmissions;
+            if (-offset >= data.length) {
+                return;
+            }
+            flow.nextSeq = seq + data.length & 0xFFFFFFFFL;
+            deliver(flow, Arrays.copyOfRange(data, -offset, data.length), tcp);
+        } else {
+            flow.nextSeq = seq + data.length & 0xFFFFFFFFL;
+            deliver(flow, data, tcp);
+        }
+
+        drain(flow, tcp);
+    }
+
+    /**
+     * Hold on to a segment that arrived before the data preceding it. The
+     * segments are kept sorted on their sequence number.
+     */
+    private void hold(final Flow flow, final long seq, final byte[] data, final TCPPacket tcp) {
+        if (flow.pending == null) {
+            flow.pending = new ArrayList<>(4);
+        }
+
+        final List<Segment> pending = flow.pending;
+        int i = 0;
+        while (i < pending.size() && (int) (pending.get(i).seq - seq) < 0) {
+            ++i;
+        }
+
+        if (i < pending.size() && pending.get(i).seq == seq && pending.get(i).data.length >= data.length) {
+            ++this.retransmissions;
+            return;
+        }
+
+        pending.add(i, new Segment(seq, data));
+        flow.pendingBytes += data.length;
+
+        // whatever we are waiting for isn't going to show up in time so skip
+        // ahead to the first segment we have.
+        while (flow.pendingBytes > this.maxOutOfOrderBytes) {
+            ++this.gaps;
+            flow.builder = null;
+            flow.nextSeq = pending.get(0).seq;
+            drain(flow, tcp);
+        }
+    }
+
+    /**
+     * Deliver all the held segments that now are in sequence.
+     */
+    private void drain(final Flow flow, final TCPPacket tcp) {
+        final List<Segment> pending = flow.pending;
+        while (pending != null && !pending.isEmpty()) {
+            final Segment segment = pending.get(0);
+            final int offset = (int) (segment.seq - flow.nextSeq);
+            if (offset > 0) {
+                return;
+            }
+
+            pending.remove(0);
+            flow.pendingBytes -= segment.data.length;
+            if (-offset < segment.data.length) {
+                flow.nextSeq = segment.seq + segment.data.length & 0xFFFFFFFFL;
+                deliver(flow, offset == 0 ? segment.data : Arrays.copyOfRange(segment.data, -offset,
+                        segment.data.length), tcp);
+            }
+        }
+
+        flow.pending = null;
+    }
+
+    /**
+     * Feed in-sequence data to the message builder of the flow, emitting every
+     * message it completes.
+     */
+    private void deliver(final Flow flow, final byte[] data, final TCPPacket tcp) {
+        int offset = 0;
+        while (offset < data.length) {
+            if (flow.builder == null) {
+                flow.builder = new SipMessageStreamBuilder(this.config);
+            }
+
+            final SipMessageStreamBuilder builder = flow.builder;
+            final int length = Math.min(data.length - offset, builder.getWritableBytes());
+            if (length == 0) {
+                // the message is larger than we are willing to accept
+                ++this.errors;
+                flow.builder = null;
+                return;
+            }
+
+            try {
+                builder.process(offset == 0 && length == data.length ? data : Arrays.copyOfRange(data, offset,
+                        offset + length));
+                offset += length;
+
+                while (builder.isDone()) {
+                    final SipMessage msg = builder.build();
+                    ++this.messages;
+                    this.listener.onMessage(tcp, msg);
+                    if (!builder.hasUnprocessData()) {
+                        // nothing left of the next message, no need to hang
+                        // on to the buffer
+                        flow.builder = null;
+                        break;
+                    }
+                    builder.process();
+                }
+            } catch (final RuntimeException e) {
+                // the builder complains about broken messages in many
+                // different ways, all we can do is to give up on this one
+                ++this.errors;
+                flow.builder = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Identifies one direction of a TCP connection.
+     */
+    private static final class Key {
+        private final byte[] source;
+        private final byte[] destination;
+        private final int ports;
+
+        private Key(final TCPPacket tcp) {
+            final IPPacket ip = tcp.getParentPacket();
+            this.source = ip.getRawSourceIP();
+            this.destination = ip.getRawDestinationIP();
+            this.ports = tcp.getSourcePort() << 16 | tcp.getDestinationPort();
+        }
+
+        private Key(final byte[] source, final byte[] destination, final int ports) {
+            this.source = source;
+            this.destination = destination;
+            this.ports = ports;
+        }
+
+        private Key reverse() {
+            return new Key(this.destination, this.source, this.ports >>> 16 | this.ports << 16);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Arrays.hashCode(this.source);
+            result = 31 * result + Arrays.hashCode(this.destination);
+            return 31 * result + this.ports;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return this.ports == other.ports && Arrays.equals(this.source, other.source)
+                    && Arrays.equals(this.destination, other.destination);
+        }
+    }
+
+    /**
+     * One direction of a TCP connection.
+     */
+    private static final class Flow {
+
+        /**
+         * The sequence number of the next byte we expect.
+         */
+        private long nextSeq;
+
+        /**
+         * The sequence number following the FIN, or -1 if we haven't seen it
+         * yet.
+         */
+        private long finSeq = -1;
+
+        /**
+         * Only around while there is a partial message.
+         */
+        private SipMessageStreamBuilder builder;
+
+        /**
+         * Segments received out of order, if any.
+         */
+        private List<Segment> pending;
+
+        private int pendingBytes;
+
+        private Flow(final long nextSeq) {
+            this.nextSeq = nextSeq;
+        }
+    }
+
+    private static final class Segment {
+        private final long seq;
+        private final byte[] data;
+
+        private Segment(final long seq, final byte[] data) {
+            this.seq = seq;
+            this.data = data;
+        }
+    }
+}
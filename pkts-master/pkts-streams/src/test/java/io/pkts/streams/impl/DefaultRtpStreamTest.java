@@ -0,0 +1,255 @@
+package io.pkts.streams.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import io.pkts.Pcap;
+import io.pkts.framer.FramerManager;
+import io.pkts.frame.PcapGlobalHeader;
+import io.pkts.packet.rtp.RtpPacket;
+import io.pkts.protocol.Protocol;
+import io.pkts.streams.RtpStream;
+import io.pkts.streams.Stream;
+import io.pkts.streams.StreamListener;
+import io.pkts.streams.StreamsTestBase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Runs synthetic RTP flows, 8000 Hz with a packet every 20 ms, through the
+ * {@link DefaultRtpStream} and checks the statistics against what RFC 3550
+ * says they should be.
+ * 
+ * @author jonas@jonasborjesson.com
+ */
+public class DefaultRtpStreamTest extends StreamsTestBase {
+
+    private static final long SSRC = 0x12345678L;
+
+    /**
+     * Every packet in a flow is described by its arrival time (microseconds),
+     * sequence number and RTP timestamp.
+     */
+    private final List<long[]> flow = new ArrayList<>();
+
+    private void generate(final int count, final int firstSeq) {
+        for (int i = 0; i < count; ++i) {
+            this.flow.add(new long[] { 1000000L + i * 20000L, firstSeq + i & 0xFFFF, 160L * i });
+        }
+    }
+
+    private Pcap open() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535).putInt(1);
+        out.write(header.array());
+
+        for (final long[] pkt : this.flow) {
+            final int frameLength = 14 + 20 + 8 + 12 + 160;
+            final ByteBuffer record = ByteBuffer.allocate(16 + frameLength);
+            record.order(ByteOrder.LITTLE_ENDIAN);
+            record.putInt((int) (pkt[0] / 1000000)).putInt((int) (pkt[0] % 1000000));
+            record.putInt(frameLength).putInt(frameLength);
+            record.order(ByteOrder.BIG_ENDIAN);
+            record.put(new byte[] { 0, 1, 2, 3, 4, 5, 0, 1, 2, 3, 4, 6 }).putShort((short) 0x0800);
+            record.put((byte) 0x45).put((byte) 0).putShort((short) (frameLength - 14)).putInt(0);
+            record.put((byte) 64).put((byte) 17).putShort((short) 0).putInt(0x0A000001).putInt(0x0A000002);
+            record.putShort((short) 10000).putShort((short) 20000).putShort((short) (frameLength - 34)).putShort((short) 0);
+            record.put((byte) 0x80).put((byte) 0).putShort((short) pkt[1]).putInt((int) pkt[2]).putInt((int) SSRC);
+            out.write(record.array());
+        }
+
+        return Pcap.openStream(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private List<RtpPacket> frame() throws Exception {
+        final List<RtpPacket> packets = new ArrayList<>();
+        final Pcap pcap = open();
+        pcap.loop(packet -> {
+            packets.add((RtpPacket) packet.getPacket(Protocol.RTP));
+            return true;
+        });
+        pcap.close();
+        return packets;
+    }
+
+    private DefaultRtpStream run() throws Exception {
+        final DefaultRtpStream stream = new DefaultRtpStream(
+                PcapGlobalHeader.createDefaultHeader(Protocol.ETHERNET_II), SSRC);
+        for (final RtpPacket rtp : frame()) {
+            stream.onPacket(rtp);
+        }
+        return stream;
+    }
+
+    @Test
+    public void testPerfectFlow() throws Exception {
+        generate(100, 1);
+        final DefaultRtpStream stream = run();
+        assertThat(stream.getMaxJitter(), is(0L));
+        assertThat(stream.getMeanJitter(), is(0L));
+        assertThat(stream.getLostPackets(), is(0L));
+        assertThat(stream.getSequenceErrors(), is(0L));
+        assertThat(stream.getMaxDelta(), is(20000L));
+        assertThat(stream.getTimeOfFirstPacket(), is(1000000L));
+        assertThat(stream.getDuration(), is(99 * 20000L));
+
+        // no packets are kept around unless asked for
+        assertThat(stream.getPackets().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testSequenceNumberWrap() throws Exception {
+        generate(100, 65500);
+        final DefaultRtpStream stream = run();
+        assertThat(stream.getLostPackets(), is(0L));
+        assertThat(stream.getSequenceErrors(), is(0L));
+    }
+
+    @Test
+    public void testLoss() throws Exception {
+        generate(100, 65530);
+        this.flow.subList(3, 8).clear();
+        final DefaultRtpStream stream = run();
+        assertThat(stream.getLostPackets(), is(5L));
+        assertThat(stream.getSequenceErrors(), is(0L));
+        assertThat(stream.getMaxDelta(), is(6 * 20000L));
+
+        // the timestamps still match the arrival times
+        assertThat(stream.getMaxJitter(), is(0L));
+    }
+
+    @Test
+    public void testOutOfOrderAndDuplicates() throws Exception {
+        generate(100, 1);
+        Collections.swap(this.flow, 10, 11);
+        this.flow.add(21, this.flow.get(20));
+        final DefaultRtpStream stream = run();
+        assertThat(stream.getLostPackets(), is(0L));
+        assertThat(stream.getSequenceErrors(), is(2L));
+    }
+
+    /**
+     * If the sequence numbers all of a sudden jump a lot it is an error, but
+     * if they keep on counting from there the sender has simply been
+     * restarted and we start over.
+     */
+    @Test
+    public void testRestart() throws Exception {
+        generate(100, 1);
+        for (int i = 50; i < 100; ++i) {
+            this.flow.get(i)[1] += 10000;
+        }
+        final DefaultRtpStream stream = run();
+        assertThat(stream.getSequenceErrors(), is(1L));
+        assertThat(stream.getLostPackets(), is(0L));
+    }
+
+    /**
+     * Every other packet arrives 5 ms late, which means that the transit time
+     * differs by 5 ms between every pair of packets and the jitter estimate
+     * approaches 5 ms as J(k) = 5000 * (1 - (15/16)^k).
+     */
+    @Test
+    public void testJitter() throws Exception {
+        generate(100, 1);
+        for (int i = 1; i < 100; i += 2) {
+            this.flow.get(i)[0] += 5000;
+        }
+        final DefaultRtpStream stream = run();
+
+        double total = 0;
+        for (int k = 1; k < 100; ++k) {
+            total += 5000 * (1 - Math.pow(15.0 / 16.0, k));
+        }
+        assertThat(stream.getMaxJitter(), is(Math.round(5000 * (1 - Math.pow(15.0 / 16.0, 99)))));
+        assertThat(stream.getMeanJitter(), is(Math.round(total / 99)));
+        assertThat(stream.getMaxDelta(), is(25000L));
+        assertThat(stream.getLostPackets(), is(0L));
+    }
+
+    /**
+     * Two bursts with the same SSRC a minute apart are two different streams
+     * since the first one ended once it had been quiet for 30 seconds.
+     */
+    @Test
+    public void testEndByInactivity() throws Exception {
+        generate(10, 1);
+        for (int i = 0; i < 10; ++i) {
+            this.flow.add(new long[] { 61000000L + i * 20000L, 100 + i, 8000L * 60 + 160L * i });
+        }
+        final List<String> events = new ArrayList<>();
+        final DefaultStreamHandler handler = new DefaultStreamHandler();
+        handler.setRetainRtpPackets(true);
+        handler.addStreamListener(new StreamListener<RtpPacket>() {
+            @Override
+            public void startStream(final Stream<RtpPacket> stream, final RtpPacket packet) {
+                events.add("start");
+            }
+
+            @Override
+            public void packetReceived(final Stream<RtpPacket> stream, final RtpPacket packet) {
+            }
+
+            @Override
+            public void endStream(final Stream<RtpPacket> stream) {
+                events.add("end " + stream.getPackets().size());
+            }
+
+            @Override
+            public void expired(final Stream<RtpPacket> stream) {
+                events.add("expired");
+            }
+        });
+        // the streams are timed out according to the pcap clock, which is
+        // only ticking when we are looping over the pcap
+        final Pcap pcap = open();
+        pcap.loop(handler);
+        pcap.close();
+        assertThat(events.toString(), is("[start, end 10, expired, start]"));
+
+        handler.expire(Long.MAX_VALUE);
+        assertThat(events.toString(), is("[start, end 10, expired, start, end 10, expired]"));
+    }
+
+    /**
+     * The streams handed out are a snapshot that can't be used to mess with
+     * the ones of the handler.
+     */
+    @Test
+    public void testStreamsAreASnapshot() throws Exception {
+        generate(10, 1);
+        final RtpStreamHandler handler = new RtpStreamHandler(FramerManager.getInstance(), () -> 0L,
+                RtpStreamHandler.DEFAULT_IDLE_TIMEOUT, false);
+        final Pcap pcap = open();
+        pcap.loop(packet -> {
+            handler.processFrame(packet);
+            return true;
+        });
+        pcap.close();
+
+        final Map<Long, ? extends RtpStream> streams = handler.getStreams();
+        assertThat(streams.size(), is(1));
+        assertThat(streams.containsKey(SSRC), is(true));
+        try {
+            streams.remove(SSRC);
+            fail("Expected the streams to be unmodifiable");
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+
+        handler.expire(Long.MAX_VALUE);
+        assertThat(streams.size(), is(1));
+        assertThat(handler.getStreams().isEmpty(), is(true));
+    }
+
+}
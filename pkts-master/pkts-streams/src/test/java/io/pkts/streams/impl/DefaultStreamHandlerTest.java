@@ -94,6 +94,97 @@ public class DefaultStreamHandlerTest extends StreamsTestBase {
         assertStream(streamCounter.streams.get(4), 470, 1002963);
     }
 
+    private StreamCounter run(final DefaultStreamHandler streamHandler) throws Exception {
+        final Pcap pcap = Pcap.openStream(StreamsTestBase.class.getResourceAsStream("sipp.pcap"));
+        final StreamCounter streamCounter = new StreamCounter();
+        streamHandler.addStreamListener(streamCounter);
+        pcap.loop(streamHandler);
+        pcap.close();
+        return streamCounter;
+    }
+
+    /**
+     * All calls in the sipp.pcap end and once they have lingered for a while
+     * they are let go of, the last one when we flush everything at the end.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testExpireTerminatedStreams() throws Exception {
+        final DefaultStreamHandler streamHandler = new DefaultStreamHandler(SipStreamHandler.DEFAULT_IDLE_TIMEOUT,
+                SipStreamHandler.DEFAULT_MAX_LIVE_STREAMS, 100000);
+        final StreamCounter streamCounter = run(streamHandler);
+        assertThat(streamCounter.startCount, is(5));
+        assertThat(streamCounter.endCount, is(5));
+        assertThat(streamCounter.expired.size(), is(4));
+
+        streamHandler.expire(Long.MAX_VALUE);
+        assertThat(streamCounter.expired, is(streamCounter.streams));
+        assertThat(streamHandler.getStreams().isEmpty(), is(true));
+    }
+
+    /**
+     * Every call in the sipp.pcap lasts for about a second so if a stream is
+     * only allowed to be idle for half of that, the BYE will be seen as the
+     * start of a new stream.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testIdleTimeout() throws Exception {
+        final DefaultStreamHandler streamHandler = new DefaultStreamHandler(500000,
+                SipStreamHandler.DEFAULT_MAX_LIVE_STREAMS, SipStreamHandler.DEFAULT_TERMINATED_LINGER);
+        final StreamCounter streamCounter = run(streamHandler);
+        assertThat(streamCounter.startCount, is(10));
+        assertThat(streamCounter.packetCount, is(30));
+        assertThat(streamCounter.endCount, is(0));
+        assertThat(streamCounter.expired.size(), is(9));
+        assertThat(streamHandler.getStreams().size(), is(1));
+    }
+
+    /**
+     * The calls in the sipp.pcap overlap so if only a single live stream is
+     * allowed, most of them will be expired before they end.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testMaxLiveStreams() throws Exception {
+        final DefaultStreamHandler streamHandler = new DefaultStreamHandler(SipStreamHandler.DEFAULT_IDLE_TIMEOUT, 1,
+                SipStreamHandler.DEFAULT_TERMINATED_LINGER);
+        final StreamCounter streamCounter = run(streamHandler);
+        assertThat(streamCounter.startCount, is(11));
+        assertThat(streamCounter.endCount, is(1));
+        assertThat(streamCounter.expired.size(), is(10));
+        assertThat(streamHandler.getStreams().size() <= 1, is(true));
+    }
+
+    /**
+     * The INVITE in the fragmented_invite.pcap has been split up into several
+     * IP fragments and is only seen once those have been reassembled.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testFragmentedSip() throws Exception {
+        final StreamCounter streamCounter = new StreamCounter();
+        final StreamHandler streamHandler = new DefaultStreamHandler();
+        streamHandler.addStreamListener(streamCounter);
+        Pcap pcap = Pcap.openStream(StreamsTestBase.class.getResourceAsStream("fragmented_invite.pcap"));
+        pcap.loop(streamHandler);
+        pcap.close();
+        assertThat(streamCounter.startCount, is(1));
+
+        final StreamCounter droppingCounter = new StreamCounter();
+        final StreamHandler droppingHandler = new DefaultStreamHandler();
+        droppingHandler.addStreamListener(droppingCounter);
+        droppingHandler.setFragmentListener(null);
+        pcap = Pcap.openStream(StreamsTestBase.class.getResourceAsStream("fragmented_invite.pcap"));
+        pcap.loop(droppingHandler);
+        pcap.close();
+        assertThat(droppingCounter.startCount, is(0));
+    }
+
     /**
      * Make sure that the {@link SipStream} has the expected PDD etc.
      * 
@@ -189,6 +280,7 @@ public class DefaultStreamHandlerTest extends StreamsTestBase {
         public int startCount;
         public int packetCount;
         public int endCount;
+        public List<Stream<SipPacket>> expired = new ArrayList<Stream<SipPacket>>();
 
         public List<Stream<SipPacket>> getStreams() {
             return this.streams;
@@ -215,6 +307,11 @@ public class DefaultStreamHandlerTest extends StreamsTestBase {
             ++this.endCount;
         }
 
+        @Override
+        public void expired(final Stream<SipPacket> stream) {
+            this.expired.add(stream);
+        }
+
     }
 
 }
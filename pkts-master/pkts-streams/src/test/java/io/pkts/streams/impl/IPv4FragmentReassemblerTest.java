@@ -0,0 +1,165 @@
+package io.pkts.streams.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import io.pkts.Clock;
+import io.pkts.Pcap;
+import io.pkts.packet.IPPacket;
+import io.pkts.packet.IPv4Packet;
+import io.pkts.packet.UDPPacket;
+import io.pkts.packet.sip.SipPacket;
+import io.pkts.protocol.Protocol;
+import io.pkts.streams.StreamsTestBase;
+import io.pkts.streams.impl.IPv4FragmentReassembler.OverlapPolicy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class IPv4FragmentReassemblerTest extends StreamsTestBase {
+
+    /**
+     * All the fragments of the one and only SIP message in the
+     * fragmented_invite.pcap, which is an INVITE with a large SDP split up
+     * into six fragments.
+     */
+    private List<IPv4Packet> fragments;
+
+    private long now;
+
+    private final Clock clock = () -> this.now;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        this.fragments = new ArrayList<>();
+        final Pcap pcap = Pcap.openStream(StreamsTestBase.class.getResourceAsStream("fragmented_invite.pcap"));
+        pcap.loop(packet -> {
+            if (packet.hasProtocol(Protocol.IPv4)) {
+                final IPv4Packet ip = (IPv4Packet) packet.getPacket(Protocol.IPv4);
+                if (ip.isFragmented()) {
+                    this.fragments.add(ip);
+                }
+            }
+            return true;
+        });
+        pcap.close();
+        assertThat(this.fragments.size(), is(6));
+    }
+
+    private IPv4FragmentReassembler reassembler(final OverlapPolicy policy) {
+        return new IPv4FragmentReassembler(this.clock, 1000, IPv4FragmentReassembler.DEFAULT_MAX_DATAGRAM_SIZE,
+                IPv4FragmentReassembler.DEFAULT_MAX_MEMORY, policy);
+    }
+
+    private IPPacket feed(final IPv4FragmentReassembler reassembler, final List<IPv4Packet> fragments) {
+        IPPacket result = null;
+        for (final IPv4Packet fragment : fragments) {
+            assertThat(result, is(nullValue()));
+            result = reassembler.handleFragment(fragment);
+        }
+        return result;
+    }
+
+    private void assertSip(final IPPacket packet) throws Exception {
+        assertThat(packet, is(notNullValue()));
+        assertThat(packet.isFragmented(), is(false));
+        assertThat(((IPv4Packet) packet).verifyIpChecksum(), is(true));
+
+        int length = 0;
+        for (final IPv4Packet fragment : this.fragments) {
+            length += fragment.getTotalIPLength() - fragment.getHeaderLength();
+        }
+        assertThat(packet.getTotalIPLength(), is(length + 20));
+
+        final UDPPacket udp = (UDPPacket) packet.getPacket(Protocol.UDP);
+        assertThat(udp.getPayload().getReadableBytes(), is(length - 8));
+
+        final SipPacket sip = (SipPacket) packet.getPacket(Protocol.SIP);
+        assertThat(sip.isInvite(), is(true));
+        assertThat(sip.getRawContent().getReadableBytes() > 0, is(true));
+        assertThat(packet.hasProtocol(Protocol.ETHERNET_II), is(true));
+    }
+
+    @Test
+    public void testReassemble() throws Exception {
+        final IPv4FragmentReassembler reassembler = reassembler(OverlapPolicy.FIRST);
+        assertSip(feed(reassembler, this.fragments));
+        assertThat(reassembler.getReassembled(), is(1L));
+        assertThat(reassembler.getPending(), is(0));
+        assertThat(reassembler.getMemory(), is(0L));
+    }
+
+    @Test
+    public void testReassembleOutOfOrder() throws Exception {
+        final List<IPv4Packet> reversed = new ArrayList<>(this.fragments);
+        Collections.reverse(reversed);
+        assertSip(feed(reassembler(OverlapPolicy.FIRST), reversed));
+    }
+
+    /**
+     * A duplicated fragment overlaps itself, which is fine unless we have
+     * been asked to discard datagrams with overlapping fragments.
+     */
+    @Test
+    public void testOverlap() throws Exception {
+        final List<IPv4Packet> duplicated = new ArrayList<>(this.fragments);
+        duplicated.add(1, this.fragments.get(0));
+
+        assertSip(feed(reassembler(OverlapPolicy.FIRST), duplicated));
+        assertSip(feed(reassembler(OverlapPolicy.LAST), duplicated));
+
+        final IPv4FragmentReassembler reassembler = reassembler(OverlapPolicy.DISCARD);
+        assertThat(reassembler.handleFragment(this.fragments.get(0)), is(nullValue()));
+        assertThat(reassembler.handleFragment(this.fragments.get(0)), is(nullValue()));
+        assertThat(reassembler.getDropped(), is(1L));
+        assertThat(reassembler.getPending(), is(0));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        final IPv4FragmentReassembler reassembler = reassembler(OverlapPolicy.FIRST);
+        this.now = 5000;
+        final List<IPv4Packet> fragments = new ArrayList<>(this.fragments);
+        assertThat(reassembler.handleFragment(fragments.remove(0)), is(nullValue()));
+        assertThat(reassembler.getPending(), is(1));
+
+        this.now += 1000;
+        for (final IPv4Packet fragment : fragments) {
+            assertThat(reassembler.handleFragment(fragment), is(nullValue()));
+        }
+        assertThat(reassembler.getExpired(), is(1L));
+        assertThat(reassembler.getReassembled(), is(0L));
+
+        // the remaining fragments started a new datagram, which the first
+        // fragment now completes.
+        assertSip(reassembler.handleFragment(this.fragments.get(0)));
+    }
+
+    @Test
+    public void testMemoryLimit() throws Exception {
+        final IPv4FragmentReassembler reassembler = new IPv4FragmentReassembler(this.clock, 1000,
+                IPv4FragmentReassembler.DEFAULT_MAX_DATAGRAM_SIZE, 100, OverlapPolicy.FIRST);
+        assertThat(feed(reassembler, this.fragments), is(nullValue()));
+        assertThat(reassembler.getReassembled(), is(0L));
+        assertThat(reassembler.getMemory() <= 100, is(true));
+    }
+
+    @Test
+    public void testDatagramTooLarge() throws Exception {
+        final IPv4FragmentReassembler reassembler = new IPv4FragmentReassembler(this.clock, 1000, 100,
+                IPv4FragmentReassembler.DEFAULT_MAX_MEMORY, OverlapPolicy.FIRST);
+        assertThat(feed(reassembler, this.fragments), is(nullValue()));
+        assertThat(reassembler.getReassembled(), is(0L));
+    }
+
+}
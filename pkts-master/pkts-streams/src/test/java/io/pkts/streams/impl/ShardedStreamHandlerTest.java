@@ -0,0 +1,197 @@
+package io.pkts.streams.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import io.pkts.Pcap;
+import io.pkts.packet.Packet;
+import io.pkts.packet.rtp.RtpPacket;
+import io.pkts.packet.sip.SipPacket;
+import io.pkts.streams.SipStatistics;
+import io.pkts.streams.Stream;
+import io.pkts.streams.StreamListener;
+import io.pkts.streams.StreamsTestBase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class ShardedStreamHandlerTest extends StreamsTestBase {
+
+    private void run(final String resource, final ShardedStreamHandler handler) throws Exception {
+        final Pcap pcap = Pcap.openStream(StreamsTestBase.class.getResourceAsStream(resource));
+        pcap.loop(handler);
+        pcap.close();
+        handler.close();
+    }
+
+    /**
+     * Same as {@link DefaultStreamHandlerTest#testBasicSipStreamDetection()}
+     * but with the calls spread over a couple of shards.
+     */
+    @Test
+    public void testSip() throws Exception {
+        final ShardedStreamHandler handler = new ShardedStreamHandler(3);
+        final Recorder<SipPacket> recorder = new Recorder<SipPacket>() {
+            @Override
+            public void endStream(final Stream<SipPacket> stream) {
+                super.endStream(stream);
+            }
+        };
+        handler.addStreamListener(recorder);
+        run("sipp.pcap", handler);
+
+        assertThat(recorder.started.size(), is(5));
+        assertThat(recorder.ended.size(), is(5));
+        assertThat(recorder.packets, is(30));
+        assertThat(recorder.outOfOrder, is(0));
+
+        // every stream must have been handled by a single shard
+        for (final Set<String> threads : recorder.threads.values()) {
+            assertThat(threads.size(), is(1));
+        }
+
+        final SipStatistics stats = handler.getSipStatistics();
+        assertThat(stats.totalSipMessages(), is(30L));
+        assertThat(stats.totalInviteRequests(), is(5L));
+        assertThat(stats.totalByeRequests(), is(5L));
+        assertThat(handler.getStreams().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testRtp() throws Exception {
+        final ShardedStreamHandler handler = new ShardedStreamHandler(2);
+        final Recorder<RtpPacket> recorder = new Recorder<RtpPacket>() {
+            @Override
+            public void endStream(final Stream<RtpPacket> stream) {
+                super.endStream(stream);
+            }
+        };
+        handler.addStreamListener(recorder);
+        run("sip_rtp.pcap", handler);
+
+        assertThat(recorder.started.size(), is(1));
+        assertThat(recorder.packets, is(501));
+        assertThat(recorder.outOfOrder, is(0));
+        assertThat(recorder.ended.size(), is(0));
+
+        handler.expire(Long.MAX_VALUE);
+        assertThat(recorder.ended.size(), is(1));
+    }
+
+    /**
+     * The 30 packets of the pcap never fill up a batch so they must be handed
+     * over to the shard once it has been idle for a while, not only when the
+     * handler is closed.
+     */
+    @Test(timeout = 5000)
+    public void testPartialBatchIsHandedOver() throws Exception {
+        final ShardedStreamHandler handler = new ShardedStreamHandler(1);
+        final Recorder<SipPacket> recorder = new Recorder<SipPacket>() {
+            @Override
+            public void endStream(final Stream<SipPacket> stream) {
+                super.endStream(stream);
+            }
+        };
+        handler.addStreamListener(recorder);
+        final Pcap pcap = Pcap.openStream(StreamsTestBase.class.getResourceAsStream("sipp.pcap"));
+        pcap.loop(handler);
+        pcap.close();
+
+        try {
+            while (recorder.getPackets() < 30) {
+                Thread.sleep(5);
+            }
+            assertThat(recorder.getOutOfOrder(), is(0));
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStreamsBeforeClose() throws Exception {
+        final ShardedStreamHandler handler = new ShardedStreamHandler(1);
+        try {
+            handler.getStreams();
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testStatisticsBeforeClose() throws Exception {
+        final ShardedStreamHandler handler = new ShardedStreamHandler(1);
+        try {
+            handler.getSipStatistics();
+        } finally {
+            handler.close();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExpireBeforeClose() throws Exception {
+        final ShardedStreamHandler handler = new ShardedStreamHandler(1);
+        try {
+            handler.expire(Long.MAX_VALUE);
+        } finally {
+            handler.close();
+        }
+    }
+
+    /**
+     * Records what the shards are doing. Note that the endStream method has
+     * to be overridden by a parameterized subclass since the type of the
+     * listener is figured out through reflection.
+     */
+    private static class Recorder<T extends Packet> implements StreamListener<T> {
+
+        private final List<Stream<T>> started = new ArrayList<>();
+        private final List<Stream<T>> ended = new ArrayList<>();
+        private final Map<Stream<T>, Set<String>> threads = new HashMap<>();
+        private final Map<Stream<T>, Long> lastArrival = new HashMap<>();
+        private int packets;
+        private int outOfOrder;
+
+        private synchronized int getPackets() {
+            return this.packets;
+        }
+
+        private synchronized int getOutOfOrder() {
+            return this.outOfOrder;
+        }
+
+        private synchronized void record(final Stream<T> stream, final T packet) {
+            ++this.packets;
+            final String thread = Thread.currentThread().getName();
+            this.threads.computeIfAbsent(stream, s -> new HashSet<>()).add(thread);
+            final Long last = this.lastArrival.put(stream, packet.getArrivalTime());
+            if (last != null && last > packet.getArrivalTime()) {
+                ++this.outOfOrder;
+            }
+        }
+
+        @Override
+        public synchronized void startStream(final Stream<T> stream, final T packet) {
+            this.started.add(stream);
+            record(stream, packet);
+        }
+
+        @Override
+        public void packetReceived(final Stream<T> stream, final T packet) {
+            record(stream, packet);
+        }
+
+        @Override
+        public synchronized void endStream(final Stream<T> stream) {
+            this.ended.add(stream);
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+package io.pkts.streams.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import io.pkts.Pcap;
+import io.pkts.packet.Packet;
+import io.pkts.packet.sip.SipMessage;
+import io.pkts.packet.sip.impl.SipMessageStreamBuilder;
+import io.pkts.streams.StreamsTestBase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * @author jonas@jonasborjesson.com
+ */
+public class TcpSipReassemblerTest extends StreamsTestBase {
+
+    private final List<SipMessage> messages = new ArrayList<>();
+
+    private List<Packet> load(final String resource) throws Exception {
+        final List<Packet> packets = new ArrayList<>();
+        final Pcap pcap = Pcap.openStream(StreamsTestBase.class.getResourceAsStream(resource));
+        pcap.loop(packet -> {
+            packets.add(packet);
+            return true;
+        });
+        pcap.close();
+        return packets;
+    }
+
+    private void feed(final TcpSipReassembler reassembler, final List<Packet> packets) throws Exception {
+        for (final Packet packet : packets) {
+            reassembler.nextPacket(packet);
+        }
+    }
+
+    private void assertMessages(final String... expected) {
+        assertThat(this.messages.size(), is(expected.length));
+        for (int i = 0; i < expected.length; ++i) {
+            assertThat(this.messages.get(i).getInitialLine().toString(), is(expected[i]));
+        }
+    }
+
+    /**
+     * The INVITE in the fragmented_tcp_sip.pcap, which has a lot of headers,
+     * is sent in three segments and is followed by five more messages, all in
+     * their own segments.
+     */
+    @Test
+    public void testMessageAcrossSegments() throws Exception {
+        final TcpSipReassembler reassembler = new TcpSipReassembler((tcp, msg) -> this.messages.add(msg));
+        feed(reassembler, load("fragmented_tcp_sip.pcap"));
+
+        assertMessages("INVITE sip:service@10.108.158.224:5060 SIP/2.0",
+                "SIP/2.0 180 Ringing",
+                "SIP/2.0 200 OK",
+                "ACK sip:service@10.108.158.224:5060 SIP/2.0",
+                "BYE sip:service@10.108.158.224:5060 SIP/2.0",
+                "SIP/2.0 200 OK");
+
+        final SipMessage invite = this.messages.get(0);
+        assertThat(invite.getContent().getReadableBytes(), is(invite.getContentLength()));
+        assertThat(invite.getAllHeaders().size() > 40, is(true));
+
+        assertThat(reassembler.getMessages(), is(6L));
+        assertThat(reassembler.getErrors(), is(0L));
+
+        // both sides closed the connection
+        assertThat(reassembler.getConnections(), is(0));
+    }
+
+    @Test
+    public void testOutOfOrderAndRetransmissions() throws Exception {
+        final List<Packet> packets = load("fragmented_tcp_sip.pcap");
+
+        // the second and third part of the INVITE swap places and the first
+        // part is retransmitted a couple of times, the last time after the
+        // 200 OK to the INVITE
+        Collections.swap(packets, 5, 7);
+        packets.add(6, packets.get(3));
+        packets.add(12, packets.get(3));
+
+        final TcpSipReassembler reassembler = new TcpSipReassembler((tcp, msg) -> this.messages.add(msg));
+        feed(reassembler, packets);
+        assertThat(this.messages.size(), is(6));
+        assertThat(this.messages.get(0).isRequest(), is(true));
+        assertThat(this.messages.get(0).isInvite(), is(true));
+        assertThat(reassembler.getRetransmissions(), is(2L));
+        assertThat(reassembler.getErrors(), is(0L));
+    }
+
+    /**
+     * If we are not allowed to hold on to any segments received out of order,
+     * the INVITE is lost since we cannot wait for its missing part. The
+     * remainder of the INVITE cannot be parsed but everything after it can.
+     */
+    @Test
+    public void testGap() throws Exception {
+        final List<Packet> packets = load("fragmented_tcp_sip.pcap");
+        packets.remove(5);
+
+        final TcpSipReassembler reassembler = new TcpSipReassembler((tcp, msg) -> this.messages.add(msg),
+                new SipMessageStreamBuilder.DefaultConfiguration(), 0, TcpSipReassembler.DEFAULT_MAX_CONNECTIONS);
+        feed(reassembler, packets);
+        assertThat(reassembler.getGaps(), is(1L));
+        assertThat(reassembler.getErrors(), is(1L));
+        assertMessages("SIP/2.0 180 Ringing",
+                "SIP/2.0 200 OK",
+                "ACK sip:service@10.108.158.224:5060 SIP/2.0",
+                "BYE sip:service@10.108.158.224:5060 SIP/2.0",
+                "SIP/2.0 200 OK");
+    }
+
+    /**
+     * The sip_tcp_pipelined.pcap contains three OPTIONS sent over two
+     * segments where the first segment contains two and a half message. The
+     * sequence numbers wrap around within the first segment and the connection
+     * is reset at the end.
+     */
+    @Test
+    public void testPipelinedMessages() throws Exception {
+        final List<Packet> packets = load("sip_tcp_pipelined.pcap");
+        final Packet reset = packets.remove(packets.size() - 1);
+
+        final TcpSipReassembler reassembler = new TcpSipReassembler((tcp, msg) -> this.messages.add(msg));
+        feed(reassembler, packets);
+        assertThat(this.messages.size(), is(3));
+        for (int i = 0; i < 3; ++i) {
+            assertThat(this.messages.get(i).getCallIDHeader().getValue().toString(),
+                    is("pipelined-" + (i + 1) + "@10.36.10.10"));
+        }
+        assertThat(reassembler.getConnections(), is(1));
+
+        reassembler.nextPacket(reset);
+        assertThat(reassembler.getConnections(), is(0));
+    }
+
+    /**
+     * A message that doesn't fit within the configured limits is dropped.
+     */
+    @Test
+    public void testMessageTooLarge() throws Exception {
+        final SipMessageStreamBuilder.DefaultConfiguration config = new SipMessageStreamBuilder.DefaultConfiguration();
+        config.setMaxAllowedHeadersSize(1024);
+        config.setMaxAllowedContentLength(1024);
+
+        final TcpSipReassembler reassembler = new TcpSipReassembler((tcp, msg) -> this.messages.add(msg), config,
+                TcpSipReassembler.DEFAULT_MAX_OUT_OF_ORDER_BYTES, TcpSipReassembler.DEFAULT_MAX_CONNECTIONS);
+        feed(reassembler, load("fragmented_tcp_sip.pcap"));
+        assertThat(reassembler.getErrors(), is(1L));
+        assertThat(this.messages.size(), is(5));
+        assertThat(this.messages.get(0).isResponse(), is(true));
+    }
+
+}
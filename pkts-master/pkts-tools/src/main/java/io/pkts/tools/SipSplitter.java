@@ -227,6 +227,21 @@ public final class SipSplitter implements StreamListener<SipPacket>, FragmentLis
         }
     }
 
+    /**
+     * Streams that ended have already been counted so they only have to be
+     * forgotten, the ones that never ended are counted as is.
+     */
+    @Override
+    public void expired(final Stream<SipPacket> stream) {
+        try {
+            if (this.streams.remove(stream.getStreamIdentifier()) == null) {
+                count((SipStream) stream);
+            }
+        } catch (final SipPacketParseException e) {
+            e.toString();
+        }
+    }
+
     @Override
     public IPPacket handleFragment(final IPPacket ipPacket) {
         ++this.fragmented;